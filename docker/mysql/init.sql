@@ -3,15 +3,20 @@ CREATE DATABASE IF NOT EXISTS userdb CHARACTER SET utf8mb4 COLLATE utf8mb4_unico
 
 USE userdb;
 
--- 用户行为事件表
+-- 用户行为事件表 (按 event_time 做 RANGE COLUMNS 分区，主键须包含分区列)
+-- 只建 pmax 分区，日/月分区由消费者的 EventPartitionManager 预建，过期分区整体 DROP
 CREATE TABLE IF NOT EXISTS user_behavior_events (
-    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    id BIGINT AUTO_INCREMENT,
     user_id VARCHAR(100) NOT NULL,
-    event_type VARCHAR(50) NOT NULL,
-    source VARCHAR(50) NOT NULL,
-    event_time TIMESTAMP NOT NULL,
+    user_ord INT NULL,
+    event_type VARCHAR(50) NULL,
+    event_type_id SMALLINT UNSIGNED NULL,
+    source VARCHAR(50) NULL,
+    source_id SMALLINT UNSIGNED NULL,
+    event_time DATETIME(6) NOT NULL,
     session_id VARCHAR(100),
     device_info TEXT,
+    device_info_id SMALLINT UNSIGNED NULL,
     ip_address VARCHAR(45),
     event_data JSON,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -19,27 +24,112 @@ CREATE TABLE IF NOT EXISTS user_behavior_events (
     
     INDEX idx_user_id (user_id),
     INDEX idx_event_type (event_type),
+    INDEX idx_event_type_id_time (event_type_id, event_time),
     INDEX idx_event_time (event_time),
     INDEX idx_user_event_time (user_id, event_time),
-    INDEX idx_created_at (created_at)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+    INDEX idx_user_ord_time (user_ord, event_time),
+    INDEX idx_created_at (created_at),
+    PRIMARY KEY (id, event_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci
+PARTITION BY RANGE COLUMNS(event_time) (
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
 
--- 用户行为统计表
+-- 用户行为统计表 (日汇总，由消费者按 用户 × 事件类型 × 来源 增量upsert)
 CREATE TABLE IF NOT EXISTS user_behavior_stats (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     user_id VARCHAR(100) NOT NULL,
     event_type VARCHAR(50) NOT NULL,
+    source VARCHAR(50) NOT NULL DEFAULT '',
     event_count BIGINT DEFAULT 0,
-    last_event_time TIMESTAMP,
+    last_event_time TIMESTAMP NULL,
     stat_date DATE NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     
-    UNIQUE KEY uk_user_event_date (user_id, event_type, stat_date),
+    UNIQUE KEY uk_user_event_source_date (user_id, event_type, source, stat_date),
     INDEX idx_stat_date (stat_date),
     INDEX idx_event_type_date (event_type, stat_date)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 用户行为小时汇总表
+CREATE TABLE IF NOT EXISTS user_behavior_stats_hourly (
+    user_id VARCHAR(100) NOT NULL,
+    event_type VARCHAR(50) NOT NULL,
+    source VARCHAR(50) NOT NULL,
+    stat_hour DATETIME NOT NULL,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    last_event_time TIMESTAMP NULL,
+    
+    PRIMARY KEY (user_id, event_type, source, stat_hour),
+    INDEX idx_user_hour (user_id, stat_hour),
+    INDEX idx_hour_type (stat_hour, event_type)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 事件时间窗口结果表 (消费者关闭窗口时写入，每个实例一行)
+CREATE TABLE IF NOT EXISTS event_window_stats (
+    window_name VARCHAR(32) NOT NULL,
+    window_start DATETIME NOT NULL,
+    window_end DATETIME NOT NULL,
+    dim_key VARCHAR(100) NOT NULL,
+    emitter VARCHAR(150) NOT NULL,
+    event_count BIGINT NOT NULL,
+    emitted_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    
+    PRIMARY KEY (window_name, window_start, dim_key, emitter),
+    INDEX idx_window_key (window_name, dim_key, window_start)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 用户会话表 (消费者会话窗口关闭时写入)
+CREATE TABLE IF NOT EXISTS user_sessions (
+    user_id VARCHAR(100) NOT NULL,
+    session_id VARCHAR(100) NOT NULL DEFAULT '',
+    session_start DATETIME(3) NOT NULL,
+    session_end DATETIME(3) NOT NULL,
+    duration_ms BIGINT NOT NULL,
+    event_count INT NOT NULL,
+    bounce TINYINT(1) NOT NULL,
+    emitter VARCHAR(150) NOT NULL,
+    
+    PRIMARY KEY (user_id, session_id, session_start),
+    INDEX idx_session_start (session_start)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 用户ID字典 (消费者与查询服务共用的连续用户编号，user_id 区分大小写)
+CREATE TABLE IF NOT EXISTS user_dictionary (
+    user_ord INT NOT NULL AUTO_INCREMENT,
+    user_id VARCHAR(100) COLLATE utf8mb4_bin NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    
+    PRIMARY KEY (user_ord),
+    UNIQUE KEY uk_user_id (user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 事件低基数字段的查找表 (user_behavior_events 存 SMALLINT id，只有没有id的值才写字符串列)
+CREATE TABLE IF NOT EXISTS event_type_dict (
+    id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,
+    value VARCHAR(50) COLLATE utf8mb4_bin NOT NULL,
+    
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_value (value)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS event_source_dict (
+    id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,
+    value VARCHAR(50) COLLATE utf8mb4_bin NOT NULL,
+    
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_value (value)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS device_info_dict (
+    id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,
+    value VARCHAR(255) COLLATE utf8mb4_bin NOT NULL,
+    
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_value (value)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- 创建数据库用户和权限
 CREATE USER IF NOT EXISTS 'user'@'%' IDENTIFIED BY 'password';
 GRANT ALL PRIVILEGES ON userdb.* TO 'user'@'%';
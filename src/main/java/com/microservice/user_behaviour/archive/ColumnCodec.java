@@ -0,0 +1,142 @@
+package com.microservice.user_behaviour.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Low-level helpers shared by the segment writer and reader: unsigned LEB128 varints, zigzag
+ * for signed deltas, length-prefixed UTF-8 strings and Deflate compression of column blocks.
+ */
+final class ColumnCodec {
+
+    private ColumnCodec() {
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, rawLength - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != rawLength) {
+                throw new IOException("Corrupt column block: expected " + rawLength + " bytes, got " + read);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Growable output buffer for one column block
+     */
+    static final class Out {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void writeByte(int value) {
+            bytes.write(value);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        /**
+         * Null is written as length 0, other strings as length + 1
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1L);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Reader over a decompressed column block
+     */
+    static final class In {
+        private final byte[] bytes;
+        private int position;
+
+        In(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        String readString() {
+            int length = (int) readVarint();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(bytes, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.microservice.user_behaviour.archive;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * 冷数据归档段文件格式 (消费者写入，查询服务读取)
+ *
+ * 每个自然日一个或多个文件：events-yyyyMMdd.seg，或按来源标记和序号分块的 events-yyyyMMdd-{tag}-{part}.seg
+ * (归档时每块行数有上限，同一来源重新归档时整组替换)。文件内行按 (event_time, id) 排序，按列存储：
+ * 文件头 (魔数、版本、日期、行数) + 各列的压缩数据块 + 列目录 (编码、空值数、min/max、偏移)
+ * + user_id 布隆过滤器 (版本2起) + 目录偏移和魔数。
+ * 数值列用 zigzag 差值 varint (DELTA)；字符串列按基数选择原文 (PLAIN)、排序字典码 (DICT) 或字典码游程 (DICT_RLE)。
+ * 每个数据块单独 Deflate 压缩，读取时只解压用到的列，min/max 和用户过滤器用于跳过整个文件。
+ */
+public final class EventSegment {
+
+    static final int MAGIC = 0x55425347;
+    static final short VERSION = 2;
+
+    public static final String ID = "id";
+    public static final String USER_ID = "user_id";
+    public static final String EVENT_TYPE = "event_type";
+    public static final String SOURCE = "source";
+    public static final String EVENT_TIME = "event_time";
+    public static final String SESSION_ID = "session_id";
+    public static final String DEVICE_INFO = "device_info";
+    public static final String IP_ADDRESS = "ip_address";
+    public static final String EVENT_DATA = "event_data";
+    public static final String PROCESSED_TIME = "processed_time";
+    public static final String TOPIC = "topic";
+    public static final String PARTITION = "partition";
+    public static final String OFFSET = "offset";
+
+    public enum Type {
+        LONG, STRING
+    }
+
+    public enum Encoding {
+        DELTA, PLAIN, DICT, DICT_RLE
+    }
+
+    public record Column(String name, Type type) {
+    }
+
+    /**
+     * 列的存储顺序，也是写入行 (Object[]) 的值顺序；时间列为 EventTimes 毫秒
+     */
+    public static final List<Column> COLUMNS = List.of(
+            new Column(ID, Type.LONG),
+            new Column(USER_ID, Type.STRING),
+            new Column(EVENT_TYPE, Type.STRING),
+            new Column(SOURCE, Type.STRING),
+            new Column(EVENT_TIME, Type.LONG),
+            new Column(SESSION_ID, Type.STRING),
+            new Column(DEVICE_INFO, Type.STRING),
+            new Column(IP_ADDRESS, Type.STRING),
+            new Column(EVENT_DATA, Type.STRING),
+            new Column(PROCESSED_TIME, Type.LONG),
+            new Column(TOPIC, Type.STRING),
+            new Column(PARTITION, Type.LONG),
+            new Column(OFFSET, Type.LONG));
+
+    /**
+     * 列目录项；min/max 为 Long 或 String，全为空或字符串过长时为 null
+     */
+    public record ColumnMeta(String name, Type type, Encoding encoding, int nullCount,
+                             Object min, Object max, long offset, int length, int rawLength) {
+    }
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".seg";
+    private static final int DAY_LENGTH = 8;
+
+    private EventSegment() {
+    }
+
+    public static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            if (COLUMNS.get(i).name().equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + column);
+    }
+
+    /**
+     * 某天的段文件路径
+     */
+    public static Path file(Path dir, LocalDate day) {
+        return dir.resolve(PREFIX + DAY_FORMAT.format(day) + SUFFIX);
+    }
+
+    /**
+     * 某天来自某个来源 (如分区名) 的第 part 块段文件路径
+     */
+    public static Path file(Path dir, LocalDate day, String tag, int part) {
+        return dir.resolve(PREFIX + DAY_FORMAT.format(day) + "-" + tag + "-" + part + SUFFIX);
+    }
+
+    /**
+     * 从文件名解析日期，不是段文件时返回null
+     */
+    public static LocalDate dayOf(Path file) {
+        String name = file.getFileName().toString();
+        int dayEnd = PREFIX.length() + DAY_LENGTH;
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX) || name.length() < dayEnd + SUFFIX.length()
+                || (name.length() > dayEnd + SUFFIX.length() && name.charAt(dayEnd) != '-')) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(PREFIX.length(), dayEnd), DAY_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从分块段文件名解析来源标记，按天的单个文件或不是段文件时返回null
+     */
+    public static String tagOf(Path file) {
+        if (dayOf(file) == null) {
+            return null;
+        }
+        String name = file.getFileName().toString();
+        String rest = name.substring(PREFIX.length() + DAY_LENGTH, name.length() - SUFFIX.length());
+        int partStart = rest.lastIndexOf('-');
+        return partStart > 1 ? rest.substring(1, partStart) : null;
+    }
+}
@@ -0,0 +1,259 @@
+package com.microservice.user_behaviour.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.microservice.user_behaviour.archive.EventSegment.ColumnMeta;
+import com.microservice.user_behaviour.archive.EventSegment.Encoding;
+import com.microservice.user_behaviour.archive.EventSegment.Type;
+
+/**
+ * 读取段文件：打开时只读文件头和列目录，列数据按需解压成基本类型数组
+ */
+public final class EventSegmentReader implements Closeable {
+
+    /** 文件头: 魔数(4) + 版本(2) + 日期(4) + 行数(4) */
+    private static final int HEADER_LENGTH = 14;
+    /** 文件尾: 目录偏移(8) + 魔数(4) */
+    private static final int FOOTER_LENGTH = 12;
+
+    /**
+     * 数值列；空值行的值无意义，由 nulls 标记
+     */
+    public record LongColumn(long[] values, BitSet nulls) {
+    }
+
+    /**
+     * 字符串列：codes[i] 为 0 表示空值，否则为 dictionary[codes[i] - 1]；
+     * sorted 时字典有序 (DICT / DICT_RLE)，PLAIN 列的字典就是逐行的值
+     */
+    public record StringColumn(String[] dictionary, int[] codes, boolean sorted) {
+
+        public String value(int row) {
+            return codes[row] == 0 ? null : dictionary[codes[row] - 1];
+        }
+
+        /**
+         * 值对应的码，不存在时返回 -1
+         */
+        public int codeOf(String value) {
+            if (sorted) {
+                int index = Arrays.binarySearch(dictionary, value);
+                return index >= 0 ? index + 1 : -1;
+            }
+            return -1;
+        }
+    }
+
+    private final FileChannel channel;
+    private final LocalDate day;
+    private final int rowCount;
+    private final Map<String, ColumnMeta> columns = new LinkedHashMap<>();
+    /** 版本1的文件没有用户过滤器 */
+    private final BloomFilter userFilter;
+
+    private EventSegmentReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < HEADER_LENGTH + FOOTER_LENGTH) {
+            throw new IOException("Not a segment file (too short)");
+        }
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(read(0, HEADER_LENGTH)));
+        if (header.readInt() != EventSegment.MAGIC) {
+            throw new IOException("Not a segment file (bad magic)");
+        }
+        short version = header.readShort();
+        if (version < 1 || version > EventSegment.VERSION) {
+            throw new IOException("Unsupported segment version " + version);
+        }
+        this.day = LocalDate.ofEpochDay(header.readInt());
+        this.rowCount = header.readInt();
+
+        DataInputStream footer = new DataInputStream(new ByteArrayInputStream(read(size - FOOTER_LENGTH, FOOTER_LENGTH)));
+        long directoryOffset = footer.readLong();
+        if (footer.readInt() != EventSegment.MAGIC) {
+            throw new IOException("Truncated segment file");
+        }
+        DataInputStream directory = new DataInputStream(new ByteArrayInputStream(
+                read(directoryOffset, (int) (size - FOOTER_LENGTH - directoryOffset))));
+        int count = directory.readShort();
+        for (int i = 0; i < count; i++) {
+            String name = directory.readUTF();
+            Type type = Type.values()[directory.readByte()];
+            Encoding encoding = Encoding.values()[directory.readByte()];
+            int nullCount = directory.readInt();
+            Object min = readStat(directory, type);
+            Object max = readStat(directory, type);
+            columns.put(name, new ColumnMeta(name, type, encoding, nullCount, min, max,
+                    directory.readLong(), directory.readInt(), directory.readInt()));
+        }
+        if (version >= 2) {
+            int hashes = directory.readUnsignedByte();
+            byte[] bits = new byte[directory.readInt()];
+            directory.readFully(bits);
+            this.userFilter = new BloomFilter(hashes, bits);
+        } else {
+            this.userFilter = null;
+        }
+    }
+
+    public static EventSegmentReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new EventSegmentReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public LocalDate day() {
+        return day;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 按文件尾的布隆过滤器判断该段是否可能包含某个用户 (约1%误判，不会漏判)，无需解压 user_id 列
+     */
+    public boolean mightContainUser(String userId) {
+        return userFilter == null || userFilter.mightContain(userId);
+    }
+
+    public ColumnMeta meta(String column) {
+        ColumnMeta meta = columns.get(column);
+        if (meta == null) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        return meta;
+    }
+
+    public LongColumn longs(String column) throws IOException {
+        ColumnMeta meta = meta(column);
+        if (meta.type() != Type.LONG) {
+            throw new IllegalArgumentException(column + " is not a LONG column");
+        }
+        ColumnCodec.In in = new ColumnCodec.In(block(meta));
+        BitSet nulls = new BitSet();
+        if (in.readByte() == 1) {
+            for (int b = 0; b < (rowCount + 7) / 8; b++) {
+                int bits = in.readByte();
+                for (int j = 0; j < 8 && bits != 0; j++, bits >>>= 1) {
+                    if ((bits & 1) != 0) {
+                        nulls.set(b * 8 + j);
+                    }
+                }
+            }
+        }
+        long[] values = new long[rowCount];
+        long previous = 0;
+        for (int i = 0; i < rowCount; i++) {
+            previous += ColumnCodec.unzigzag(in.readVarint());
+            values[i] = previous;
+        }
+        return new LongColumn(values, nulls);
+    }
+
+    public StringColumn strings(String column) throws IOException {
+        ColumnMeta meta = meta(column);
+        if (meta.type() != Type.STRING) {
+            throw new IllegalArgumentException(column + " is not a STRING column");
+        }
+        ColumnCodec.In in = new ColumnCodec.In(block(meta));
+        int[] codes = new int[rowCount];
+        if (meta.encoding() == Encoding.PLAIN) {
+            String[] values = new String[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = in.readString();
+                codes[i] = values[i] == null ? 0 : i + 1;
+            }
+            return new StringColumn(values, codes, false);
+        }
+
+        String[] dictionary = new String[(int) in.readVarint()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+        if (meta.encoding() == Encoding.DICT_RLE) {
+            int runs = (int) in.readVarint();
+            int row = 0;
+            for (int r = 0; r < runs; r++) {
+                int code = (int) in.readVarint();
+                int length = (int) in.readVarint();
+                Arrays.fill(codes, row, row + length, code);
+                row += length;
+            }
+        } else {
+            for (int i = 0; i < rowCount; i++) {
+                codes[i] = (int) in.readVarint();
+            }
+        }
+        return new StringColumn(dictionary, codes, true);
+    }
+
+    /**
+     * 解码全部列，按 {@link EventSegment#COLUMNS} 顺序返回每一行 (用于合并写入)
+     */
+    public List<Object[]> readRows() throws IOException {
+        List<Object[]> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(new Object[EventSegment.COLUMNS.size()]);
+        }
+        for (int c = 0; c < EventSegment.COLUMNS.size(); c++) {
+            EventSegment.Column column = EventSegment.COLUMNS.get(c);
+            if (column.type() == Type.LONG) {
+                LongColumn values = longs(column.name());
+                for (int i = 0; i < rowCount; i++) {
+                    rows.get(i)[c] = values.nulls().get(i) ? null : values.values()[i];
+                }
+            } else {
+                StringColumn values = strings(column.name());
+                for (int i = 0; i < rowCount; i++) {
+                    rows.get(i)[c] = values.value(i);
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private byte[] block(ColumnMeta meta) throws IOException {
+        return ColumnCodec.inflate(read(meta.offset(), meta.length()), meta.rawLength());
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static Object readStat(DataInputStream in, Type type) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return type == Type.LONG ? (Object) in.readLong() : in.readUTF();
+    }
+}
@@ -0,0 +1,278 @@
+package com.microservice.user_behaviour.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.microservice.user_behaviour.archive.EventSegment.Column;
+import com.microservice.user_behaviour.archive.EventSegment.ColumnMeta;
+import com.microservice.user_behaviour.archive.EventSegment.Encoding;
+import com.microservice.user_behaviour.archive.EventSegment.Type;
+
+/**
+ * 在内存中收集一天的事件行，按列编码后写成段文件；行数由调用方控制 (归档时按块写入，每块有行数上限)
+ *
+ * 先写临时文件并 fsync，再原子替换目标文件，读取方不会看到写了一半的段。
+ */
+public final class EventSegmentWriter {
+
+    /** 超过该长度的字符串不记录 min/max */
+    private static final int MAX_STATS_LENGTH = 256;
+
+    private static final int ID_INDEX = EventSegment.indexOf(EventSegment.ID);
+    private static final int EVENT_TIME_INDEX = EventSegment.indexOf(EventSegment.EVENT_TIME);
+
+    private static final Comparator<Object[]> ROW_ORDER = Comparator
+            .comparingLong((Object[] row) -> (Long) row[EVENT_TIME_INDEX])
+            .thenComparingLong(row -> (Long) row[ID_INDEX]);
+
+    private final LocalDate day;
+    private final List<Object[]> rows = new ArrayList<>();
+
+    public EventSegmentWriter(LocalDate day) {
+        this.day = day;
+    }
+
+    /**
+     * 添加一行，值按 {@link EventSegment#COLUMNS} 顺序 (Long / String / null)；id 和 event_time 不能为空
+     */
+    public void add(Object[] row) {
+        if (row.length != EventSegment.COLUMNS.size()) {
+            throw new IllegalArgumentException("Expected " + EventSegment.COLUMNS.size() + " values, got " + row.length);
+        }
+        if (row[ID_INDEX] == null || row[EVENT_TIME_INDEX] == null) {
+            throw new IllegalArgumentException("id and event_time are required");
+        }
+        rows.add(row);
+    }
+
+    public LocalDate day() {
+        return day;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * 写入段文件 (已存在时替换)
+     *
+     * @return 文件字节数
+     */
+    public long write(Path file) throws IOException {
+        rows.sort(ROW_ORDER);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(counter);
+            out.writeInt(EventSegment.MAGIC);
+            out.writeShort(EventSegment.VERSION);
+            out.writeInt((int) day.toEpochDay());
+            out.writeInt(rows.size());
+
+            List<ColumnMeta> metas = new ArrayList<>();
+            for (int c = 0; c < EventSegment.COLUMNS.size(); c++) {
+                Column column = EventSegment.COLUMNS.get(c);
+                Block block = column.type() == Type.LONG ? encodeLongs(c) : encodeStrings(c);
+                byte[] compressed = ColumnCodec.deflate(block.raw);
+                long offset = counter.count;
+                out.write(compressed);
+                metas.add(new ColumnMeta(column.name(), column.type(), block.encoding, block.nullCount,
+                        block.min, block.max, offset, compressed.length, block.raw.length));
+            }
+
+            long directoryOffset = counter.count;
+            out.writeShort(metas.size());
+            for (ColumnMeta meta : metas) {
+                out.writeUTF(meta.name());
+                out.writeByte(meta.type().ordinal());
+                out.writeByte(meta.encoding().ordinal());
+                out.writeInt(meta.nullCount());
+                writeStat(out, meta.type(), meta.min());
+                writeStat(out, meta.type(), meta.max());
+                out.writeLong(meta.offset());
+                out.writeInt(meta.length());
+                out.writeInt(meta.rawLength());
+            }
+            BloomFilter users = userFilter();
+            out.writeByte(users.hashes());
+            out.writeInt(users.bits().length);
+            out.write(users.bits());
+            out.writeLong(directoryOffset);
+            out.writeInt(EventSegment.MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(file);
+    }
+
+    private BloomFilter userFilter() {
+        int c = EventSegment.indexOf(EventSegment.USER_ID);
+        Set<String> users = new HashSet<>();
+        for (Object[] row : rows) {
+            if (row[c] != null) {
+                users.add((String) row[c]);
+            }
+        }
+        return BloomFilter.of(users);
+    }
+
+    private static void writeStat(DataOutputStream out, Type type, Object value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value == null) {
+            return;
+        }
+        if (type == Type.LONG) {
+            out.writeLong((Long) value);
+        } else {
+            out.writeUTF((String) value);
+        }
+    }
+
+    /**
+     * DELTA: 是否有空值 (有则跟空值位图) + 各行与上一行差值的 zigzag varint，空值行沿用上一行的值
+     */
+    private Block encodeLongs(int c) {
+        int n = rows.size();
+        byte[] nulls = new byte[(n + 7) / 8];
+        int nullCount = 0;
+        Long min = null;
+        Long max = null;
+        for (int i = 0; i < n; i++) {
+            Long value = (Long) rows.get(i)[c];
+            if (value == null) {
+                nulls[i >> 3] |= (byte) (1 << (i & 7));
+                nullCount++;
+            } else {
+                min = min == null ? value : Math.min(min, value);
+                max = max == null ? value : Math.max(max, value);
+            }
+        }
+
+        ColumnCodec.Out out = new ColumnCodec.Out();
+        out.writeByte(nullCount > 0 ? 1 : 0);
+        if (nullCount > 0) {
+            for (byte b : nulls) {
+                out.writeByte(b);
+            }
+        }
+        long previous = 0;
+        for (int i = 0; i < n; i++) {
+            Long value = (Long) rows.get(i)[c];
+            long current = value == null ? previous : value;
+            out.writeVarint(ColumnCodec.zigzag(current - previous));
+            previous = current;
+        }
+        return new Block(Encoding.DELTA, out.toByteArray(), nullCount, min, max);
+    }
+
+    /**
+     * 不同值超过行数一半时用 PLAIN，否则用排序字典 (码0为空值)，码的游程数不到行数一半时用 DICT_RLE
+     */
+    private Block encodeStrings(int c) {
+        int n = rows.size();
+        TreeSet<String> distinct = new TreeSet<>();
+        int nullCount = 0;
+        for (Object[] row : rows) {
+            String value = (String) row[c];
+            if (value == null) {
+                nullCount++;
+            } else {
+                distinct.add(value);
+            }
+        }
+        String min = distinct.isEmpty() || distinct.first().length() > MAX_STATS_LENGTH ? null : distinct.first();
+        String max = distinct.isEmpty() || distinct.last().length() > MAX_STATS_LENGTH ? null : distinct.last();
+
+        ColumnCodec.Out out = new ColumnCodec.Out();
+        if (distinct.size() * 2L > n) {
+            for (Object[] row : rows) {
+                out.writeString((String) row[c]);
+            }
+            return new Block(Encoding.PLAIN, out.toByteArray(), nullCount, min, max);
+        }
+
+        Map<String, Integer> codes = new HashMap<>();
+        out.writeVarint(distinct.size());
+        for (String value : distinct) {
+            codes.put(value, codes.size() + 1);
+            out.writeString(value);
+        }
+        int[] rowCodes = new int[n];
+        int runs = 0;
+        for (int i = 0; i < n; i++) {
+            String value = (String) rows.get(i)[c];
+            rowCodes[i] = value == null ? 0 : codes.get(value);
+            if (i == 0 || rowCodes[i] != rowCodes[i - 1]) {
+                runs++;
+            }
+        }
+
+        if (runs * 2L < n) {
+            out.writeVarint(runs);
+            int start = 0;
+            for (int i = 1; i <= n; i++) {
+                if (i == n || rowCodes[i] != rowCodes[start]) {
+                    out.writeVarint(rowCodes[start]);
+                    out.writeVarint(i - start);
+                    start = i;
+                }
+            }
+            return new Block(Encoding.DICT_RLE, out.toByteArray(), nullCount, min, max);
+        }
+        for (int code : rowCodes) {
+            out.writeVarint(code);
+        }
+        return new Block(Encoding.DICT, out.toByteArray(), nullCount, min, max);
+    }
+
+    private record Block(Encoding encoding, byte[] raw, int nullCount, Object min, Object max) {
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+        private long count;
+
+        CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+    }
+}
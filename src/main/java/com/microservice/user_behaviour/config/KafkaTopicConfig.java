@@ -26,6 +26,12 @@ public class KafkaTopicConfig {
     
     @Value("${user.behavior.topic.default}")
     private String defaultTopic;
+    
+    @Value("${user.behavior.topic.dead-letter:user-behavior-dlt}")
+    private String deadLetterTopic;
+    
+    @Value("${user.behavior.topic.alerts:user-behavior-alerts}")
+    private String alertTopic;
 
     @Bean
     public NewTopic userBehaviorTopic() {
@@ -74,4 +80,20 @@ public class KafkaTopicConfig {
                 .replicas(1)
                 .build();
     }
-} 
\ No newline at end of file
+    
+    @Bean
+    public NewTopic deadLetterTopic() {
+        return TopicBuilder.name(deadLetterTopic)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
+    
+    @Bean
+    public NewTopic alertTopic() {
+        return TopicBuilder.name(alertTopic)
+                .partitions(1)
+                .replicas(1)
+                .build();
+    }
+}
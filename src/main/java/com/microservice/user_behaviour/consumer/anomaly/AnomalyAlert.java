@@ -0,0 +1,19 @@
+package com.microservice.user_behaviour.consumer.anomaly;
+
+import java.time.LocalDateTime;
+
+/**
+ * 某事件类型在某一分钟的速率异常
+ *
+ * @param observed 该分钟的事件数
+ * @param expected 基线期望值
+ * @param zScore   (observed - expected) / 标准差
+ */
+public record AnomalyAlert(String eventType, Kind kind, LocalDateTime minute, long observed,
+                           double expected, double zScore, LocalDateTime detectedAt) {
+
+    public enum Kind {
+        SPIKE,
+        DROP
+    }
+}
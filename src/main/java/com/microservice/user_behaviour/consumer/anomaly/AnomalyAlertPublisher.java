@@ -0,0 +1,44 @@
+package com.microservice.user_behaviour.consumer.anomaly;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把速率异常以JSON发布到告警topic，key为事件类型。
+ * 告警是尽力而为的通知，异步发送，失败只记录日志。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class AnomalyAlertPublisher {
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${user.behavior.topic.alerts:user-behavior-alerts}")
+    private String alertTopic;
+
+    public void publish(AnomalyAlert alert) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(alert);
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing anomaly alert {}", alert, e);
+            return;
+        }
+        kafkaTemplate.send(alertTopic, alert.eventType(), payload).whenComplete((result, ex) -> {
+            if (ex != null) {
+                log.error("Failed to publish anomaly alert for {} to {}", alert.eventType(), alertTopic, ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,225 @@
+package com.microservice.user_behaviour.consumer.anomaly;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.util.EventTimes;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按事件类型的每分钟速率异常检测
+ *
+ * 监听线程对每个事件只做一次 LongAdder 累加 (O(1))。每分钟结束后由调度线程取出各类型的计数，
+ * 与基线比较：短期基线是每分钟速率的EWMA均值/方差，季节基线是前几天同一小时的平均每分钟速率，
+ * 两者都就绪时取平均。|z| 超过阈值且偏差超过 anomaly.min-delta 时产生 SPIKE/DROP 告警，
+ * 发布到告警topic并保留最近若干条供查询。同一类型同一方向的告警在冷却期内只发一次。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class RateAnomalyDetector {
+
+    static final long MINUTE_MILLIS = 60_000L;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    // 尚未告警过；取 Long.MIN_VALUE / 2 使冷却判断中的减法不会溢出
+    private static final long NEVER = Long.MIN_VALUE / 2;
+
+    private final AnomalyAlertPublisher publisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${anomaly.ewma.alpha:0.1}")
+    private double alpha;
+
+    @Value("${anomaly.seasonal.alpha:0.3}")
+    private double seasonalAlpha;
+
+    @Value("${anomaly.threshold:4.0}")
+    private double threshold;
+
+    @Value("${anomaly.min-delta:20}")
+    private double minDelta;
+
+    @Value("${anomaly.warmup-minutes:15}")
+    private int warmupMinutes;
+
+    @Value("${anomaly.cooldown-minutes:5}")
+    private int cooldownMinutes;
+
+    @Value("${anomaly.recent-alerts:100}")
+    private int recentAlertsSize;
+
+    private final ConcurrentHashMap<String, RateState> states = new ConcurrentHashMap<>();
+    private final Deque<AnomalyAlert> recentAlerts = new ArrayDeque<>();
+    private final AtomicLong alertCount = new AtomicLong(0);
+    private volatile long openMinute;
+
+    public RateAnomalyDetector(AnomalyAlertPublisher publisher, MeterRegistry meterRegistry) {
+        this.publisher = publisher;
+        this.meterRegistry = meterRegistry;
+        this.openMinute = minuteOf(now());
+    }
+
+    /**
+     * 单个事件类型的速率状态；counter 由监听线程累加，其余字段只由调度线程访问
+     */
+    static final class RateState {
+        final LongAdder counter = new LongAdder();
+        double mean;
+        double variance;
+        long minutesObserved;
+        final double[] seasonal = new double[24];
+        final boolean[] seasonalReady = new boolean[24];
+        long hourSum;
+        int hourMinutes;
+        long lastSpikeMinute = NEVER;
+        long lastDropMinute = NEVER;
+    }
+
+    /**
+     * 记录一个事件 (处理时间)
+     */
+    public void record(String eventType) {
+        RateState state = states.get(eventType);
+        if (state == null) {
+            state = states.computeIfAbsent(eventType, k -> new RateState());
+        }
+        state.counter.increment();
+    }
+
+    /**
+     * 每秒检查一次分钟是否结束，使异常在分钟结束后一秒内被发现
+     */
+    @Scheduled(fixedDelayString = "${anomaly.tick.interval:1000}")
+    public void tick() {
+        long minute = minuteOf(now());
+        while (openMinute < minute) {
+            closeMinute(openMinute);
+            openMinute += MINUTE_MILLIS;
+        }
+    }
+
+    /**
+     * 结束一分钟：评估并更新每个事件类型的基线
+     */
+    synchronized List<AnomalyAlert> closeMinute(long minuteStart) {
+        List<AnomalyAlert> alerts = new ArrayList<>();
+        states.forEach((eventType, state) -> {
+            AnomalyAlert alert = evaluate(eventType, state, minuteStart, state.counter.sumThenReset());
+            if (alert != null) {
+                alerts.add(alert);
+            }
+        });
+        for (AnomalyAlert alert : alerts) {
+            alertCount.incrementAndGet();
+            meterRegistry.counter("consumer.anomaly.alerts", "kind", alert.kind().name()).increment();
+            log.warn("Rate anomaly {} for {} at {}: observed {}, expected {}, z={}", alert.kind(), alert.eventType(),
+                    alert.minute(), alert.observed(), String.format("%.1f", alert.expected()),
+                    String.format("%.2f", alert.zScore()));
+            recentAlerts.addFirst(alert);
+            while (recentAlerts.size() > recentAlertsSize) {
+                recentAlerts.removeLast();
+            }
+            publisher.publish(alert);
+        }
+        return alerts;
+    }
+
+    private AnomalyAlert evaluate(String eventType, RateState state, long minuteStart, long count) {
+        int hour = (int) Math.floorMod(Math.floorDiv(minuteStart, HOUR_MILLIS), 24L);
+        double expected = state.seasonalReady[hour] ? (state.mean + state.seasonal[hour]) / 2 : state.mean;
+        // 方差下限取泊松噪声，避免低流量类型因随机波动告警
+        double stdDev = Math.max(Math.sqrt(state.variance), Math.max(Math.sqrt(expected), 1.0));
+        double z = (count - expected) / stdDev;
+
+        AnomalyAlert alert = null;
+        long cooldown = cooldownMinutes * MINUTE_MILLIS;
+        if (state.minutesObserved >= warmupMinutes) {
+            if (z >= threshold && count - expected >= minDelta && minuteStart - state.lastSpikeMinute >= cooldown) {
+                state.lastSpikeMinute = minuteStart;
+                alert = newAlert(eventType, AnomalyAlert.Kind.SPIKE, minuteStart, count, expected, z);
+            } else if (z <= -threshold && expected - count >= minDelta && minuteStart - state.lastDropMinute >= cooldown) {
+                state.lastDropMinute = minuteStart;
+                alert = newAlert(eventType, AnomalyAlert.Kind.DROP, minuteStart, count, expected, z);
+            }
+        }
+
+        // 更新EWMA均值和方差
+        double diff = count - state.mean;
+        if (state.minutesObserved == 0) {
+            state.mean = count;
+        } else {
+            state.mean += alpha * diff;
+            state.variance = (1 - alpha) * (state.variance + alpha * diff * diff);
+        }
+        state.minutesObserved++;
+
+        // 一个小时结束时把该小时的平均每分钟速率并入季节基线
+        state.hourSum += count;
+        state.hourMinutes++;
+        if (Math.floorMod(minuteStart + MINUTE_MILLIS, HOUR_MILLIS) == 0) {
+            double hourRate = (double) state.hourSum / state.hourMinutes;
+            if (state.hourMinutes >= 45) { // 不完整的小时(如刚启动)不计入季节基线
+                state.seasonal[hour] = state.seasonalReady[hour]
+                        ? (1 - seasonalAlpha) * state.seasonal[hour] + seasonalAlpha * hourRate
+                        : hourRate;
+                state.seasonalReady[hour] = true;
+            }
+            state.hourSum = 0;
+            state.hourMinutes = 0;
+        }
+        return alert;
+    }
+
+    private AnomalyAlert newAlert(String eventType, AnomalyAlert.Kind kind, long minuteStart, long count,
+                                  double expected, double z) {
+        return new AnomalyAlert(eventType, kind, EventTimes.toLocalDateTime(minuteStart), count,
+                expected, z, LocalDateTime.now());
+    }
+
+    private static long minuteOf(long millis) {
+        return Math.floorDiv(millis, MINUTE_MILLIS) * MINUTE_MILLIS;
+    }
+
+    private static long now() {
+        return EventTimes.toMillis(LocalDateTime.now());
+    }
+
+    /**
+     * 最近的告警 (新的在前)
+     */
+    public synchronized List<AnomalyAlert> getRecentAlerts() {
+        return new ArrayList<>(recentAlerts);
+    }
+
+    /**
+     * 获取异常检测统计信息
+     */
+    public synchronized Map<String, Object> getDetectorStats() {
+        Map<String, Object> baselines = new HashMap<>();
+        states.forEach((eventType, state) -> baselines.put(eventType, Map.of(
+                "meanPerMinute", state.mean,
+                "stdDevPerMinute", Math.sqrt(state.variance),
+                "minutesObserved", state.minutesObserved)));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("eventTypes", states.size());
+        stats.put("alerts", alertCount.get());
+        stats.put("baselines", baselines);
+        stats.put("threshold", threshold);
+        return stats;
+    }
+}
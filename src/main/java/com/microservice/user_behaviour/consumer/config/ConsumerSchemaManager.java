@@ -0,0 +1,187 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the tables the consumer writes with plain JDBC (not managed by Hibernate ddl-auto).
+ * The same DDL lives in docker/mysql/init.sql; every statement is idempotent.
+ * <p>
+ * Column migrations rebuild their table, which blocks writers to a hot table for as long as the
+ * copy takes. A migration of a table holding more than schema.migration.max-rows rows is
+ * therefore not applied at startup; its statement is logged to be run with an online schema
+ * change tool instead, as EventPartitionManager does for the partitioning conversion. The
+ * consumer writes (and the query service reads) the migrated columns unconditionally, so startup
+ * fails until every migration has been applied rather than dead-lettering every batch.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class ConsumerSchemaManager {
+
+    static final List<String> DDL = List.of(
+            "CREATE TABLE IF NOT EXISTS event_window_stats ("
+                    + " window_name VARCHAR(32) NOT NULL,"
+                    + " window_start DATETIME NOT NULL,"
+                    + " window_end DATETIME NOT NULL,"
+                    + " dim_key VARCHAR(100) NOT NULL,"
+                    + " emitter VARCHAR(150) NOT NULL,"
+                    + " event_count BIGINT NOT NULL,"
+                    + " emitted_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,"
+                    + " PRIMARY KEY (window_name, window_start, dim_key, emitter),"
+                    + " INDEX idx_window_key (window_name, dim_key, window_start)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS user_behavior_stats_hourly ("
+                    + " user_id VARCHAR(100) NOT NULL,"
+                    + " event_type VARCHAR(50) NOT NULL,"
+                    + " source VARCHAR(50) NOT NULL,"
+                    + " stat_hour DATETIME NOT NULL,"
+                    + " event_count BIGINT NOT NULL DEFAULT 0,"
+                    + " last_event_time TIMESTAMP NULL,"
+                    + " PRIMARY KEY (user_id, event_type, source, stat_hour),"
+                    + " INDEX idx_user_hour (user_id, stat_hour),"
+                    + " INDEX idx_hour_type (stat_hour, event_type)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS user_behavior_stats ("
+                    + " id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                    + " user_id VARCHAR(100) NOT NULL,"
+                    + " event_type VARCHAR(50) NOT NULL,"
+                    + " source VARCHAR(50) NOT NULL DEFAULT '',"
+                    + " event_count BIGINT DEFAULT 0,"
+                    + " last_event_time TIMESTAMP NULL,"
+                    + " stat_date DATE NOT NULL,"
+                    + " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+                    + " updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,"
+                    + " UNIQUE KEY uk_user_event_source_date (user_id, event_type, source, stat_date),"
+                    + " INDEX idx_stat_date (stat_date),"
+                    + " INDEX idx_event_type_date (event_type, stat_date)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS user_sessions ("
+                    + " user_id VARCHAR(100) NOT NULL,"
+                    + " session_id VARCHAR(100) NOT NULL DEFAULT '',"
+                    + " session_start DATETIME(3) NOT NULL,"
+                    + " session_end DATETIME(3) NOT NULL,"
+                    + " duration_ms BIGINT NOT NULL,"
+                    + " event_count INT NOT NULL,"
+                    + " bounce TINYINT(1) NOT NULL,"
+                    + " emitter VARCHAR(150) NOT NULL,"
+                    + " PRIMARY KEY (user_id, session_id, session_start),"
+                    + " INDEX idx_session_start (session_start)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS user_dictionary ("
+                    + " user_ord INT NOT NULL AUTO_INCREMENT,"
+                    + " user_id VARCHAR(100) COLLATE utf8mb4_bin NOT NULL,"
+                    + " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+                    + " PRIMARY KEY (user_ord),"
+                    + " UNIQUE KEY uk_user_id (user_id)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS event_type_dict ("
+                    + " id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,"
+                    + " value VARCHAR(50) COLLATE utf8mb4_bin NOT NULL,"
+                    + " PRIMARY KEY (id),"
+                    + " UNIQUE KEY uk_value (value)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS event_source_dict ("
+                    + " id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,"
+                    + " value VARCHAR(50) COLLATE utf8mb4_bin NOT NULL,"
+                    + " PRIMARY KEY (id),"
+                    + " UNIQUE KEY uk_value (value)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci",
+            "CREATE TABLE IF NOT EXISTS device_info_dict ("
+                    + " id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT,"
+                    + " value VARCHAR(255) COLLATE utf8mb4_bin NOT NULL,"
+                    + " PRIMARY KEY (id),"
+                    + " UNIQUE KEY uk_value (value)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci"
+    );
+
+    /**
+     * Column additions for tables created by older versions of init.sql: column -> ALTER statement
+     */
+    static final List<String[]> COLUMN_MIGRATIONS = List.of(
+            new String[] {"user_behavior_stats", "source",
+                    "ALTER TABLE user_behavior_stats"
+                            + " ADD COLUMN source VARCHAR(50) NOT NULL DEFAULT '' AFTER event_type,"
+                            + " DROP INDEX uk_user_event_date,"
+                            + " ADD UNIQUE KEY uk_user_event_source_date (user_id, event_type, source, stat_date)"},
+            new String[] {"user_behavior_events", "user_ord",
+                    "ALTER TABLE user_behavior_events"
+                            + " ADD COLUMN user_ord INT NULL AFTER user_id,"
+                            + " ADD INDEX idx_user_ord_time (user_ord, event_time)"},
+            new String[] {"user_behavior_events", "event_type_id",
+                    "ALTER TABLE user_behavior_events"
+                            + " ADD COLUMN event_type_id SMALLINT UNSIGNED NULL AFTER event_type,"
+                            + " ADD COLUMN source_id SMALLINT UNSIGNED NULL AFTER source,"
+                            + " ADD COLUMN device_info_id SMALLINT UNSIGNED NULL AFTER device_info,"
+                            + " MODIFY event_type VARCHAR(50) NULL,"
+                            + " MODIFY source VARCHAR(50) NULL,"
+                            + " ADD INDEX idx_event_type_id_time (event_type_id, event_time)"}
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${schema.migration.max-rows:1000000}")
+    private long migrationMaxRows;
+
+    @PostConstruct
+    public void createTables() {
+        for (String ddl : DDL) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (Exception e) {
+                log.error("Error applying consumer schema statement: {}", ddl, e);
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (String[] migration : COLUMN_MIGRATIONS) {
+            try {
+                if (!columnExists(migration[0], migration[1]) && !migrate(migration[0], migration[1], migration[2])) {
+                    missing.add(migration[0] + "." + migration[1]);
+                }
+            } catch (Exception e) {
+                log.error("Error migrating {}.{}", migration[0], migration[1], e);
+                missing.add(migration[0] + "." + migration[1]);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Consumer schema lacks columns " + missing
+                    + "; apply the logged migrations before starting consumers");
+        }
+        log.info("Consumer schema checked ({} statements)", DDL.size() + COLUMN_MIGRATIONS.size());
+    }
+
+    /**
+     * @return whether the migration was applied
+     */
+    private boolean migrate(String table, String column, String ddl) {
+        Long rows = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(table_rows), 0) FROM information_schema.tables"
+                        + " WHERE table_schema = DATABASE() AND table_name = ?", Long.class, table);
+        if (rows != null && rows > migrationMaxRows) {
+            log.error("{} lacks column {} and holds about {} rows (limit {}); apply this migration with an online "
+                    + "schema change tool before starting consumers:\n{}", table, column, rows, migrationMaxRows, ddl);
+            return false;
+        }
+        jdbcTemplate.execute(ddl);
+        log.info("Added column {}.{} (about {} rows)", table, column, rows);
+        return true;
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns"
+                        + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?",
+                Integer.class, table, column);
+        return count != null && count > 0;
+    }
+}
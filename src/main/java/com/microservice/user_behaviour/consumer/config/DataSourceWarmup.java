@@ -0,0 +1,68 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.microservice.user_behaviour.consumer.repository.UserBehaviorBatchWriter;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opens the pool's idle connections and prepares the batch insert on each of them at startup,
+ * so the first flushes after a deploy don't pay TCP/auth setup and statement preparation.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class DataSourceWarmup {
+
+    private final DataSource dataSource;
+
+    @Value("${spring.datasource.hikari.minimum-idle:4}")
+    private int warmConnections;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        List<Connection> connections = new ArrayList<>(warmConnections);
+        try {
+            // Hold all connections at once so the pool has to open distinct ones
+            for (int i = 0; i < warmConnections; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT 1");
+                }
+                // With cachePrepStmts the prepared insert stays in this connection's cache
+                try (PreparedStatement ignored = connection.prepareStatement(UserBehaviorBatchWriter.INSERT_SQL)) {
+                    // prepare only
+                }
+            }
+            log.info("Warmed up {} database connections in {} ms", connections.size(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("Database warm-up failed after {} connections, continuing cold", connections.size(), e);
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (Exception e) {
+                    log.debug("Error returning warm-up connection", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import com.microservice.user_behaviour.archive.EventSegment;
+import com.microservice.user_behaviour.archive.EventSegmentWriter;
+import com.microservice.user_behaviour.dictionary.EventAttributeSql;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves old partitions of user_behavior_events to the cold tier as columnar segment files under
+ * archive.dir (see {@link EventSegment}).
+ * <p>
+ * {@link EventPartitionManager} first swaps the partition's rows into an empty staging table
+ * (EXCHANGE PARTITION) and drops the partition right away, so no event can land in it between
+ * the count and the drop; late events go to the next partition and are archived with it. The
+ * staging table no longer changes, so it is archived at leisure: rows are read with the
+ * dictionary columns decoded (the files are self-contained) in keyset pages ordered by
+ * (event_time, id), and every day is written in parts of at most archive.segment.max-rows rows,
+ * so memory is bounded by one part rather than one day. The parts are named after the staging
+ * table's partition and replace any parts of an earlier attempt, which makes re-running a staging
+ * table idempotent. The staging table is only dropped once the number of archived rows matches
+ * its row count; a staging table left over from a failed run is archived again on the next run.
+ */
+@Component
+@Slf4j
+@Profile("consumer")
+public class EventArchiver {
+
+    static final String STAGING_PREFIX = "user_behavior_events_archive_";
+
+    private static final int PAGE_SIZE = 10_000;
+
+    private static final String SELECT_PAGE = "SELECT e.id, e.user_id, "
+            + EventAttributeSql.EVENT_TYPE + ", " + EventAttributeSql.SOURCE + ", e.event_time, e.session_id, "
+            + EventAttributeSql.DEVICE_INFO + ", e.ip_address, e.event_data, e.processed_time, e.topic, "
+            + "e.`partition`, e.`offset` FROM %s e" + EventAttributeSql.DECODE_JOINS
+            + "%sORDER BY e.event_time, e.id LIMIT " + PAGE_SIZE;
+
+    private static final String AFTER = "WHERE e.event_time > ? OR (e.event_time = ? AND e.id > ?) ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${archive.after-days:90}")
+    private int afterDays;
+
+    @Value("${archive.dir:./data/archive}")
+    private String archiveDir;
+
+    @Value("${archive.segment.max-rows:500000}")
+    private int segmentMaxRows;
+
+    private final AtomicLong archivedPartitions = new AtomicLong(0);
+    private final AtomicLong archivedRows = new AtomicLong(0);
+
+    public EventArchiver(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Partitions ending on or before this day are archived
+     */
+    public LocalDate cutoff(LocalDate today) {
+        return today.minusDays(afterDays);
+    }
+
+    /**
+     * Name of the staging table a partition is exchanged into
+     */
+    public String stagingTable(String partition) {
+        return STAGING_PREFIX + partition;
+    }
+
+    /**
+     * Staging tables left over from runs that did not finish
+     */
+    public List<String> stagingTables() {
+        return jdbcTemplate.queryForList(
+                "SELECT table_name FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name LIKE ?",
+                String.class, STAGING_PREFIX.replace("_", "\\_") + "%");
+    }
+
+    /**
+     * Write all rows of a staging table to segment files and drop the table
+     *
+     * @return number of rows archived
+     * @throws IllegalStateException if fewer rows were archived than the table holds (it is kept)
+     */
+    public long archiveStaging(String staging) throws IOException {
+        String tag = staging.substring(STAGING_PREFIX.length());
+        Path dir = Paths.get(archiveDir);
+        deleteSegments(dir, tag);
+
+        long total = 0;
+        int files = 0;
+        EventSegmentWriter writer = null;
+        int part = 0;
+        Page page = new Page();
+        do {
+            page.next(staging);
+            for (Object[] row : page.rows) {
+                LocalDate day = EventTimes.toLocalDateTime((Long) row[4]).toLocalDate();
+                if (writer != null && (!writer.day().equals(day) || writer.size() >= segmentMaxRows)) {
+                    write(writer, EventSegment.file(dir, writer.day(), tag, part));
+                    files++;
+                    part = writer.day().equals(day) ? part + 1 : 0;
+                    writer = null;
+                }
+                if (writer == null) {
+                    writer = new EventSegmentWriter(day);
+                }
+                writer.add(row);
+                total++;
+            }
+        } while (page.rows.size() == PAGE_SIZE);
+        if (writer != null) {
+            write(writer, EventSegment.file(dir, writer.day(), tag, part));
+            files++;
+        }
+
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + staging, Long.class);
+        if (count == null || count != total) {
+            throw new IllegalStateException("Staging table " + staging + " holds " + count + " rows but "
+                    + total + " were archived; it is kept and retried on the next run");
+        }
+        jdbcTemplate.execute("DROP TABLE " + staging);
+        archivedPartitions.incrementAndGet();
+        archivedRows.addAndGet(total);
+        log.info("Archived {} rows of partition {} to {} segment files in {}", total, tag, files, dir.toAbsolutePath());
+        return total;
+    }
+
+    /**
+     * One keyset page of a staging table; the exact event_time of the last row is kept because
+     * the archived millis are coarser than DATETIME(6)
+     */
+    private final class Page {
+
+        private final List<Object[]> rows = new ArrayList<>(PAGE_SIZE);
+        private LocalDateTime lastTime;
+        private long lastId;
+
+        void next(String staging) {
+            rows.clear();
+            RowCallbackHandler handler = rs -> {
+                rows.add(toRow(rs));
+                lastTime = rs.getObject(5, LocalDateTime.class);
+                lastId = rs.getLong(1);
+            };
+            if (lastTime == null) {
+                jdbcTemplate.query(String.format(SELECT_PAGE, staging, ""), handler);
+            } else {
+                jdbcTemplate.query(String.format(SELECT_PAGE, staging, AFTER), handler, lastTime, lastTime, lastId);
+            }
+        }
+    }
+
+    private static void write(EventSegmentWriter writer, Path file) throws IOException {
+        long bytes = writer.write(file);
+        log.debug("Wrote segment {}: {} rows, {} bytes", file.getFileName(), writer.size(), bytes);
+    }
+
+    /**
+     * Remove the parts an earlier attempt wrote for the same staging table
+     */
+    private static void deleteSegments(Path dir, String tag) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> stale = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.filter(path -> tag.equals(EventSegment.tagOf(path))).forEach(stale::add);
+        }
+        for (Path path : stale) {
+            Files.delete(path);
+        }
+        if (!stale.isEmpty()) {
+            log.info("Replacing {} segment files of an earlier attempt to archive partition {}", stale.size(), tag);
+        }
+    }
+
+    private static Object[] toRow(ResultSet rs) throws SQLException {
+        LocalDateTime eventTime = rs.getObject(5, LocalDateTime.class);
+        LocalDateTime processedTime = rs.getObject(10, LocalDateTime.class);
+        long partition = rs.getLong(12);
+        Long kafkaPartition = rs.wasNull() ? null : partition;
+        long offset = rs.getLong(13);
+        Long kafkaOffset = rs.wasNull() ? null : offset;
+        return new Object[] {
+                rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), EventTimes.toMillis(eventTime),
+                rs.getString(6), rs.getString(7), rs.getString(8), rs.getString(9),
+                processedTime == null ? null : EventTimes.toMillis(processedTime),
+                rs.getString(11), kafkaPartition, kafkaOffset
+        };
+    }
+
+    /**
+     * 获取归档状态
+     */
+    public Map<String, Object> getArchiveStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("afterDays", afterDays);
+        stats.put("dir", Paths.get(archiveDir).toAbsolutePath().toString());
+        stats.put("archivedPartitions", archivedPartitions.get());
+        stats.put("archivedRows", archivedRows.get());
+        long files = 0;
+        long bytes = 0;
+        Path dir = Paths.get(archiveDir);
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> paths = Files.list(dir)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    if (EventSegment.dayOf(path) != null) {
+                        files++;
+                        bytes += Files.size(path);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to list archive directory {}", dir, e);
+            }
+        }
+        stats.put("segmentFiles", files);
+        stats.put("segmentBytes", bytes);
+        return stats;
+    }
+}
@@ -0,0 +1,137 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.microservice.user_behaviour.dictionary.EventAttributeEncoder;
+import com.microservice.user_behaviour.dictionary.EventAttributeEncoder.Attribute;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Migrates rows written before dictionary encoding: walks user_behavior_events in id ranges,
+ * assigns ids to the distinct event_type / source / device_info strings of each range and
+ * replaces the strings by their ids. One range per tick keeps each UPDATE short.
+ * <p>
+ * The last id at the first run is the target: later rows are written encoded by the batch
+ * writer. Cursor and target are kept in Redis so a restart resumes where it stopped, and a
+ * short-lived lock lets only one consumer instance work at a time. Until the cursor passes the
+ * target, filters by event type miss the rows it has not reached yet.
+ */
+@Component
+@Slf4j
+@Profile("consumer")
+public class EventAttributeBackfill {
+
+    static final String CURSOR_KEY = "dictionary:backfill:cursor";
+    static final String TARGET_KEY = "dictionary:backfill:target";
+    static final String DONE_KEY = "dictionary:backfill:done";
+    static final String LOCK_KEY = "dictionary:backfill:lock";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final EventAttributeEncoder encoder;
+    private final String instanceId;
+
+    @Value("${dictionary.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dictionary.backfill.chunk-size:20000}")
+    private long chunkSize;
+
+    private volatile boolean done;
+
+    public EventAttributeBackfill(JdbcTemplate jdbcTemplate, StringRedisTemplate stringRedisTemplate,
+                                  EventAttributeEncoder encoder,
+                                  @Value("${eureka.instance.instance-id:${spring.application.name}}") String instanceId) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.encoder = encoder;
+        this.instanceId = instanceId;
+    }
+
+    @Scheduled(initialDelayString = "${dictionary.backfill.interval:5000}", fixedDelayString = "${dictionary.backfill.interval:5000}")
+    public void backfillNextRange() {
+        if (!enabled || done) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(DONE_KEY))) {
+                done = true;
+                return;
+            }
+            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, instanceId, Duration.ofMinutes(5)))) {
+                return;
+            }
+            try {
+                runLocked();
+            } finally {
+                if (instanceId.equals(stringRedisTemplate.opsForValue().get(LOCK_KEY))) {
+                    stringRedisTemplate.delete(LOCK_KEY);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling dictionary ids of user_behavior_events", e);
+        }
+    }
+
+    private void runLocked() {
+        String storedTarget = stringRedisTemplate.opsForValue().get(TARGET_KEY);
+        long target;
+        if (storedTarget != null) {
+            target = Long.parseLong(storedTarget);
+        } else {
+            target = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM user_behavior_events", Long.class);
+            stringRedisTemplate.opsForValue().set(TARGET_KEY, String.valueOf(target));
+            log.info("Starting dictionary backfill of user_behavior_events up to id {}", target);
+        }
+        String storedCursor = stringRedisTemplate.opsForValue().get(CURSOR_KEY);
+        long cursor = storedCursor != null ? Long.parseLong(storedCursor)
+                : jdbcTemplate.queryForObject("SELECT COALESCE(MIN(id), 0) FROM user_behavior_events", Long.class);
+        if (cursor > target) {
+            stringRedisTemplate.opsForValue().set(DONE_KEY, String.valueOf(target));
+            done = true;
+            log.info("Dictionary backfill of user_behavior_events complete (last id {})", target);
+            return;
+        }
+
+        long end = cursor + chunkSize;
+        int updated = backfillRange(cursor, end);
+        stringRedisTemplate.opsForValue().set(CURSOR_KEY, String.valueOf(end));
+        log.debug("Dictionary backfill encoded {} column values in ids [{}, {})", updated, cursor, end);
+    }
+
+    /**
+     * Encode the string columns of the rows with from <= id < to
+     *
+     * @return number of column values replaced by ids
+     */
+    int backfillRange(long from, long to) {
+        int updated = 0;
+        for (Attribute attribute : Attribute.values()) {
+            List<String> values = jdbcTemplate.queryForList(
+                    "SELECT DISTINCT " + attribute.column() + " FROM user_behavior_events"
+                            + " WHERE id >= ? AND id < ? AND " + attribute.idColumn() + " IS NULL"
+                            + " AND " + attribute.column() + " IS NOT NULL",
+                    String.class, from, to);
+            if (values.isEmpty()) {
+                continue;
+            }
+            encoder.encode(attribute, values);
+            updated += jdbcTemplate.update(
+                    "UPDATE user_behavior_events e JOIN " + attribute.table() + " d"
+                            + " ON d.value = e." + attribute.column() + " COLLATE utf8mb4_bin"
+                            + " SET e." + attribute.idColumn() + " = d.id, e." + attribute.column() + " = NULL"
+                            + " WHERE e.id >= ? AND e.id < ? AND e." + attribute.idColumn() + " IS NULL",
+                    from, to);
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,372 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps user_behavior_events RANGE COLUMNS partitioned on event_time (one partition per month by
+ * default, or per day) so that time-bounded queries are pruned to the partitions they touch and retention is
+ * a metadata-only DROP PARTITION instead of a massive DELETE.
+ * <p>
+ * Partition p{start} holds [start, next start); the first partition also holds everything older
+ * and a trailing pmax (MAXVALUE) catches events from beyond the pre-created range, so no insert
+ * ever fails for lack of a partition. Every run pre-creates partitions for the next
+ * partition.precreate periods by splitting the (normally empty) pmax and drops partitions that
+ * end on or before today - partition.retention-days. When the cold tier is enabled, partitions
+ * older than archive.after-days are exchanged into a staging table, dropped, and written to
+ * segment files by {@link EventArchiver}.
+ * <p>
+ * A table that is not partitioned yet is converted on startup if it holds at most
+ * partition.convert.max-rows rows; the conversion rebuilds the table (event_time becomes
+ * DATETIME, the primary key becomes (id, event_time)), so larger tables are left alone and the
+ * statements to run with an online schema change tool are logged instead.
+ * <p>
+ * Maintenance runs on the scheduler, shortly after startup and then every
+ * partition.maintenance.interval, never on the startup thread. Monthly partitions keep the
+ * partition count (and the per-partition overhead of every DDL and query plan) small; daily
+ * partitions only pay off for retention or archiving at day precision. Only one instance
+ * maintains at a time; the holder renews the Redis lock after every DDL step and gives up if it
+ * has lost the lock.
+ */
+@Component
+@Slf4j
+@Profile("consumer")
+@DependsOn("consumerSchemaManager")
+public class EventPartitionManager {
+
+    static final String TABLE = "user_behavior_events";
+    static final String MAX_PARTITION = "pmax";
+    static final String LOCK_KEY = "partition:maintenance:lock";
+    static final Duration LOCK_TTL = Duration.ofHours(2);
+
+    enum Granularity {
+        DAY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+        MONTH(DateTimeFormatter.ofPattern("yyyyMM"));
+
+        private final DateTimeFormatter nameFormat;
+
+        Granularity(DateTimeFormatter nameFormat) {
+            this.nameFormat = nameFormat;
+        }
+
+        LocalDate start(LocalDate day) {
+            return this == DAY ? day : day.withDayOfMonth(1);
+        }
+
+        LocalDate next(LocalDate start) {
+            return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+        }
+
+        String name(LocalDate start) {
+            return "p" + nameFormat.format(start);
+        }
+    }
+
+    /**
+     * A partition and its exclusive upper bound (null for MAXVALUE)
+     */
+    record Partition(String name, LocalDate upperBound, long rows) {
+        boolean isMax() {
+            return upperBound == null;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final EventArchiver archiver;
+    private final String instanceId;
+
+    @Value("${partition.enabled:true}")
+    private boolean enabled;
+
+    @Value("${partition.granularity:MONTH}")
+    private Granularity granularity;
+
+    @Value("${partition.precreate:2}")
+    private int precreate;
+
+    @Value("${partition.retention-days:400}")
+    private int retentionDays;
+
+    @Value("${partition.convert.max-rows:1000000}")
+    private long convertMaxRows;
+
+    private final AtomicLong createdPartitions = new AtomicLong(0);
+    private final AtomicLong droppedPartitions = new AtomicLong(0);
+    private volatile LocalDateTime lastMaintenance;
+
+    public EventPartitionManager(JdbcTemplate jdbcTemplate, StringRedisTemplate stringRedisTemplate,
+                                 EventArchiver archiver,
+                                 @Value("${eureka.instance.instance-id:${spring.application.name}}") String instanceId) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.archiver = archiver;
+        this.instanceId = instanceId;
+    }
+
+    @Scheduled(initialDelayString = "${partition.maintenance.initial-delay:30000}",
+            fixedDelayString = "${partition.maintenance.interval:3600000}")
+    public void scheduledMaintenance() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, instanceId, LOCK_TTL))) {
+                log.debug("Partition maintenance is running on another instance");
+                return;
+            }
+            try {
+                maintain(LocalDate.now());
+            } finally {
+                if (instanceId.equals(stringRedisTemplate.opsForValue().get(LOCK_KEY))) {
+                    stringRedisTemplate.delete(LOCK_KEY);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error maintaining partitions of {}", TABLE, e);
+        }
+    }
+
+    synchronized void maintain(LocalDate today) throws IOException {
+        List<Partition> partitions = loadPartitions();
+        if (partitions.isEmpty()) {
+            if (!convert(today)) {
+                return;
+            }
+            partitions = loadPartitions();
+        }
+
+        List<LocalDate> starts = partitionsToCreate(partitions, granularity, today, precreate);
+        if (!starts.isEmpty()) {
+            jdbcTemplate.execute(addPartitionsSql(partitions, starts, granularity));
+            renewLock();
+            createdPartitions.addAndGet(starts.size());
+            log.info("Created {} partitions of {} ({} to {})", starts.size(), TABLE,
+                    granularity.name(starts.get(0)), granularity.name(starts.get(starts.size() - 1)));
+        }
+
+        if (archiver.isEnabled()) {
+            partitions = archive(partitions, archiver.cutoff(today));
+        }
+
+        List<String> expired = partitionsToDrop(partitions, today.minusDays(retentionDays));
+        if (!expired.isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(", ", expired));
+            droppedPartitions.addAndGet(expired.size());
+            log.info("Dropped {} expired partitions of {}: {}", expired.size(), TABLE, expired);
+        }
+        lastMaintenance = LocalDateTime.now();
+    }
+
+    /**
+     * Push the lock's expiry out again between long steps so another instance does not start
+     * maintaining concurrently
+     *
+     * @throws IllegalStateException if the lock expired and was taken by another instance
+     */
+    private void renewLock() {
+        if (!instanceId.equals(stringRedisTemplate.opsForValue().get(LOCK_KEY))) {
+            throw new IllegalStateException("Lost the partition maintenance lock " + LOCK_KEY);
+        }
+        stringRedisTemplate.expire(LOCK_KEY, LOCK_TTL);
+    }
+
+    /**
+     * Archive and drop, oldest first, the partitions ending on or before the cutoff; stops at the
+     * first partition that fails so nothing newer is dropped ahead of it.
+     * <p>
+     * Staging tables left over from an earlier run are archived first. Each partition is then
+     * exchanged with an empty staging table of the same structure and dropped immediately, so
+     * its rows leave the live table in two metadata-only statements and late events go to the
+     * next partition instead of being lost; the rows are archived from the staging table.
+     *
+     * @return the remaining partitions
+     */
+    private List<Partition> archive(List<Partition> partitions, LocalDate cutoff) throws IOException {
+        for (String staging : archiver.stagingTables()) {
+            log.info("Archiving staging table {} left over from an earlier run", staging);
+            archiver.archiveStaging(staging);
+            renewLock();
+        }
+
+        List<String> archivable = partitionsToDrop(partitions, cutoff);
+        for (String partition : archivable) {
+            String staging = archiver.stagingTable(partition);
+            jdbcTemplate.execute("CREATE TABLE " + staging + " LIKE " + TABLE);
+            jdbcTemplate.execute("ALTER TABLE " + staging + " REMOVE PARTITIONING");
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " EXCHANGE PARTITION " + partition + " WITH TABLE " + staging);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition);
+            renewLock();
+            archiver.archiveStaging(staging);
+            renewLock();
+        }
+        return archivable.isEmpty() ? partitions : loadPartitions();
+    }
+
+    /**
+     * Start days of the partitions missing between the last bounded partition and
+     * today + precreate periods
+     */
+    static List<LocalDate> partitionsToCreate(List<Partition> partitions, Granularity granularity,
+                                              LocalDate today, int precreate) {
+        LocalDate next = null;
+        for (Partition partition : partitions) {
+            if (!partition.isMax()) {
+                next = partition.upperBound();
+            }
+        }
+        LocalDate until = granularity.start(today);
+        for (int i = 0; i < precreate; i++) {
+            until = granularity.next(until);
+        }
+        if (next == null) {
+            next = granularity.start(today);
+        }
+
+        List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate start = next; !start.isAfter(until); start = granularity.next(start)) {
+            starts.add(start);
+        }
+        return starts;
+    }
+
+    /**
+     * Start days of the partitions a table is converted into: first (which also takes everything
+     * older) up to today + precreate periods
+     */
+    static List<LocalDate> conversionStarts(LocalDate first, Granularity granularity, LocalDate today, int precreate) {
+        // a partition ending at first makes partitionsToCreate start at first itself
+        return partitionsToCreate(List.of(new Partition("", first, 0)), granularity, today, precreate);
+    }
+
+    /**
+     * Bounded partitions whose rows are all older than the cutoff
+     */
+    static List<String> partitionsToDrop(List<Partition> partitions, LocalDate cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (!partition.isMax() && !partition.upperBound().isAfter(cutoff)) {
+                expired.add(partition.name());
+            }
+        }
+        return expired;
+    }
+
+    static String addPartitionsSql(List<Partition> partitions, List<LocalDate> starts, Granularity granularity) {
+        boolean hasMax = !partitions.isEmpty() && partitions.get(partitions.size() - 1).isMax();
+        String definitions = definitions(starts, granularity, hasMax);
+        return hasMax
+                ? "ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO (" + definitions + ")"
+                : "ALTER TABLE " + TABLE + " ADD PARTITION (" + definitions + ")";
+    }
+
+    static String definitions(List<LocalDate> starts, Granularity granularity, boolean withMax) {
+        List<String> definitions = new ArrayList<>();
+        for (LocalDate start : starts) {
+            definitions.add("PARTITION " + granularity.name(start)
+                    + " VALUES LESS THAN ('" + granularity.next(start) + "')");
+        }
+        if (withMax) {
+            definitions.add("PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE)");
+        }
+        return String.join(", ", definitions);
+    }
+
+    /**
+     * Partitions in order; empty if the table is not partitioned
+     */
+    List<Partition> loadPartitions() {
+        return jdbcTemplate.query(
+                "SELECT partition_name, partition_description, table_rows FROM information_schema.partitions"
+                        + " WHERE table_schema = DATABASE() AND table_name = ? AND partition_name IS NOT NULL"
+                        + " ORDER BY partition_ordinal_position",
+                (rs, rowNum) -> new Partition(rs.getString(1), parseBound(rs.getString(2)), rs.getLong(3)),
+                TABLE);
+    }
+
+    static LocalDate parseBound(String description) {
+        if (description == null || description.equalsIgnoreCase("MAXVALUE")) {
+            return null;
+        }
+        String value = description.replace("'", "").trim();
+        return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value);
+    }
+
+    private boolean convert(LocalDate today) {
+        Long rows = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(table_rows), 0) FROM information_schema.tables"
+                        + " WHERE table_schema = DATABASE() AND table_name = ?", Long.class, TABLE);
+        LocalDate first = granularity.start(today.minusDays(retentionDays));
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(event_time) FROM " + TABLE, LocalDateTime.class);
+        if (oldest != null && oldest.toLocalDate().isAfter(first)) {
+            first = granularity.start(oldest.toLocalDate());
+        }
+        List<LocalDate> starts = conversionStarts(first, granularity, today, precreate);
+
+        List<String> statements = new ArrayList<>();
+        String dataType = jdbcTemplate.queryForObject(
+                "SELECT data_type FROM information_schema.columns"
+                        + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = 'event_time'",
+                String.class, TABLE);
+        if (!"datetime".equalsIgnoreCase(dataType)) {
+            statements.add("ALTER TABLE " + TABLE + " MODIFY event_time DATETIME(6) NOT NULL");
+        }
+        statements.add("ALTER TABLE " + TABLE + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, event_time)");
+        statements.add("ALTER TABLE " + TABLE + " PARTITION BY RANGE COLUMNS(event_time) ("
+                + definitions(starts, granularity, true) + ")");
+
+        if (rows != null && rows > convertMaxRows) {
+            log.warn("{} is not partitioned and holds about {} rows (limit {}); convert it with an online schema "
+                    + "change tool, partition maintenance is skipped until then:\n{}",
+                    TABLE, rows, convertMaxRows, String.join(";\n", statements));
+            return false;
+        }
+        log.info("Converting {} (about {} rows) to {} partitions", TABLE, rows, granularity);
+        statements.forEach(jdbcTemplate::execute);
+        createdPartitions.addAndGet(starts.size() + 1);
+        return true;
+    }
+
+    /**
+     * 获取分区状态
+     */
+    public Map<String, Object> getPartitionStats() {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        for (Partition partition : loadPartitions()) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("name", partition.name());
+            info.put("lessThan", partition.isMax() ? "MAXVALUE" : partition.upperBound().toString());
+            info.put("rows", partition.rows());
+            partitions.add(info);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("granularity", granularity.name());
+        stats.put("precreate", precreate);
+        stats.put("retentionDays", retentionDays);
+        stats.put("createdPartitions", createdPartitions.get());
+        stats.put("droppedPartitions", droppedPartitions.get());
+        stats.put("lastMaintenance", lastMaintenance != null ? lastMaintenance.toString() : null);
+        stats.put("partitions", partitions);
+        stats.put("archive", archiver.getArchiveStats());
+        return stats;
+    }
+}
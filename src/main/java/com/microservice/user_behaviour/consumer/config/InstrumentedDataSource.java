@@ -0,0 +1,62 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * DataSource wrapper that times every connection checkout as seen by the caller
+ * (consumer.db.connection.acquire). The consumer writer takes exactly one connection
+ * per flushed buffer, so this is the per-flush acquisition latency; pool-internal
+ * wait and usage are reported by Hikari's own hikaricp.* meters.
+ * <p>
+ * Closing the wrapper closes the wrapped pool, so it can be the only DataSource bean.
+ */
+public class InstrumentedDataSource extends DelegatingDataSource implements Closeable {
+
+    private final Timer acquireTimer;
+
+    public InstrumentedDataSource(DataSource target, MeterRegistry meterRegistry) {
+        super(target);
+        this.acquireTimer = Timer.builder("consumer.db.connection.acquire")
+                .description("Time to obtain a JDBC connection from the pool")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (getTargetDataSource() instanceof Closeable target) {
+            target.close();
+        }
+    }
+}
@@ -13,8 +13,12 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.util.backoff.FixedBackOff;
 
+import com.microservice.user_behaviour.consumer.listener.ListenerBackpressureController;
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
 
 @Configuration
@@ -31,6 +35,9 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.auto-offset-reset}")
     private String autoOffsetReset;
     
+    @Value("${app.retry.backoff-ms:1000}")
+    private long retryBackoffMs;
+    
     @Bean
     public ConsumerFactory<String, UserBehaviorEvent> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -43,13 +50,16 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
         
+        // Undeserializable values arrive as null with the failure in a header instead of
+        // failing the poll, so they can be dead-lettered like any other poison record
         return new DefaultKafkaConsumerFactory<>(props,
                 new StringDeserializer(),
-                new JsonDeserializer<>(UserBehaviorEvent.class, false));
+                new ErrorHandlingDeserializer<>(new JsonDeserializer<>(UserBehaviorEvent.class, false)));
     }
     
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, UserBehaviorEvent> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, UserBehaviorEvent> kafkaListenerContainerFactory(
+            ListenerBackpressureController backpressureController) {
         ConcurrentKafkaListenerContainerFactory<String, UserBehaviorEvent> factory = 
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
@@ -58,6 +68,12 @@ public class KafkaConsumerConfig {
         factory.setBatchListener(true);
         // Enable manual acknowledgment for better control
         factory.getContainerProperties().setAckMode(org.springframework.kafka.listener.ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        // Re-apply backpressure pauses to partitions assigned during a rebalance
+        factory.getContainerProperties().setConsumerRebalanceListener(backpressureController);
+        // Transient failures (database, Redis, dead-letter topic) retry the batch from its
+        // uncommitted offsets; poison records are handled by the listener itself
+        factory.setCommonErrorHandler(new DefaultErrorHandler(
+                new FixedBackOff(retryBackoffMs, FixedBackOff.UNLIMITED_ATTEMPTS)));
         // Set concurrency (number of consumer threads)
         factory.setConcurrency(3);
         return factory;
@@ -0,0 +1,204 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.microservice.user_behaviour.dictionary.EventAttributeSql;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One-off rebuild of the rollup tables (user_behavior_stats_hourly / user_behavior_stats) from
+ * user_behavior_events, for events stored before StatsRollupAggregator started feeding them.
+ * <p>
+ * Walks the events table hour by hour from its oldest event up to the hour of the first run.
+ * Each hour is replaced rather than added to (DELETE + INSERT ... SELECT in one transaction), so
+ * hours the aggregator already counted are not doubled and a restart can simply redo the hour it
+ * stopped in; a day's row in user_behavior_stats is rebuilt from its hourly rows once its last
+ * hour is done, and the day of the target hour once that day is over (its later hours come from
+ * the live aggregator), after which the backfill is marked done. An hour is only rebuilt once it is settle-minutes in the past, and hours without
+ * rows in the events table (archived partitions) are left as they are. Cursor and target are kept
+ * in Redis and a short-lived lock lets only one consumer instance work at a time.
+ */
+@Component
+@Slf4j
+@Profile("consumer")
+public class StatsRollupBackfill {
+
+    static final String CURSOR_KEY = "rollup:backfill:cursor";
+    static final String TARGET_KEY = "rollup:backfill:target";
+    static final String DONE_KEY = "rollup:backfill:done";
+    static final String LOCK_KEY = "rollup:backfill:lock";
+
+    static final String REBUILD_HOURLY_SQL = "INSERT INTO user_behavior_stats_hourly "
+            + "(user_id, event_type, source, stat_hour, event_count, last_event_time) "
+            + "SELECT e.user_id, " + EventAttributeSql.EVENT_TYPE + ", COALESCE(ds.value, e.source, ''), ?, "
+            + "COUNT(*), MAX(e.event_time) FROM user_behavior_events e" + EventAttributeSql.DECODE_JOINS
+            + "WHERE e.event_time >= ? AND e.event_time < ? GROUP BY 1, 2, 3 "
+            + "ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), "
+            + "last_event_time = GREATEST(COALESCE(last_event_time, VALUES(last_event_time)), VALUES(last_event_time))";
+
+    static final String REBUILD_DAILY_SQL = "INSERT INTO user_behavior_stats "
+            + "(user_id, event_type, source, stat_date, event_count, last_event_time) "
+            + "SELECT h.user_id, h.event_type, h.source, ?, SUM(h.event_count), MAX(h.last_event_time) "
+            + "FROM user_behavior_stats_hourly h WHERE h.stat_hour >= ? AND h.stat_hour < ? "
+            + "GROUP BY h.user_id, h.event_type, h.source "
+            + "ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), "
+            + "last_event_time = GREATEST(COALESCE(last_event_time, VALUES(last_event_time)), VALUES(last_event_time))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String instanceId;
+
+    @Value("${rollup.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rollup.backfill.hours-per-run:24}")
+    private int hoursPerRun;
+
+    @Value("${rollup.backfill.settle-minutes:10}")
+    private long settleMinutes;
+
+    private volatile boolean done;
+
+    public StatsRollupBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                               StringRedisTemplate stringRedisTemplate,
+                               @Value("${eureka.instance.instance-id:${spring.application.name}}") String instanceId) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.instanceId = instanceId;
+    }
+
+    @Scheduled(initialDelayString = "${rollup.backfill.interval:5000}", fixedDelayString = "${rollup.backfill.interval:5000}")
+    public void backfillNextHours() {
+        if (!enabled || done) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(DONE_KEY))) {
+                done = true;
+                return;
+            }
+            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, instanceId, Duration.ofMinutes(5)))) {
+                return;
+            }
+            try {
+                runLocked(LocalDateTime.now());
+            } finally {
+                if (instanceId.equals(stringRedisTemplate.opsForValue().get(LOCK_KEY))) {
+                    stringRedisTemplate.delete(LOCK_KEY);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling the rollup tables from user_behavior_events", e);
+        }
+    }
+
+    void runLocked(LocalDateTime now) {
+        String storedTarget = stringRedisTemplate.opsForValue().get(TARGET_KEY);
+        LocalDateTime target;
+        if (storedTarget != null) {
+            target = LocalDateTime.parse(storedTarget);
+        } else {
+            target = now.truncatedTo(ChronoUnit.HOURS);
+            stringRedisTemplate.opsForValue().set(TARGET_KEY, target.toString());
+            log.info("Starting rollup backfill from user_behavior_events up to hour {}", target);
+        }
+        String storedCursor = stringRedisTemplate.opsForValue().get(CURSOR_KEY);
+        LocalDateTime cursor;
+        if (storedCursor != null) {
+            cursor = LocalDateTime.parse(storedCursor);
+        } else {
+            LocalDateTime oldest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(event_time) FROM user_behavior_events", LocalDateTime.class);
+            cursor = oldest == null ? target.plusHours(1) : oldest.truncatedTo(ChronoUnit.HOURS);
+        }
+
+        for (int i = 0; i < hoursPerRun; i++) {
+            if (cursor.isAfter(target)) {
+                if (!finishTargetDay(target, now)) {
+                    return;
+                }
+                stringRedisTemplate.opsForValue().set(DONE_KEY, target.toString());
+                done = true;
+                log.info("Rollup backfill from user_behavior_events complete (last hour {})", target);
+                return;
+            }
+            if (cursor.plusHours(1).plusMinutes(settleMinutes).isAfter(now)) {
+                return;
+            }
+            int rows = rebuildHour(cursor);
+            log.debug("Rollup backfill rebuilt {} hourly rows for {}", rows, cursor);
+            cursor = cursor.plusHours(1);
+            stringRedisTemplate.opsForValue().set(CURSOR_KEY, cursor.toString());
+        }
+    }
+
+    /**
+     * Replace the hourly rows of one hour with counts from the events table, and the daily rows of
+     * its day once it is the day's last hour
+     *
+     * @return number of hourly rows written, -1 if the hour has no events (left untouched)
+     */
+    int rebuildHour(LocalDateTime hour) {
+        LocalDateTime next = hour.plusHours(1);
+        boolean lastHourOfDay = next.getHour() == 0;
+        List<Integer> present = jdbcTemplate.queryForList(
+                "SELECT 1 FROM user_behavior_events WHERE event_time >= ? AND event_time < ? LIMIT 1",
+                Integer.class, hour, next);
+        Integer rows = transactionTemplate.execute(status -> {
+            int written = -1;
+            if (!present.isEmpty()) {
+                jdbcTemplate.update("DELETE FROM user_behavior_stats_hourly WHERE stat_hour = ?", hour);
+                written = jdbcTemplate.update(REBUILD_HOURLY_SQL, hour, hour, next);
+            }
+            if (lastHourOfDay) {
+                rebuildDay(hour.toLocalDate());
+            }
+            return written;
+        });
+        return rows == null ? -1 : rows;
+    }
+
+    /**
+     * Rebuild the daily rows of target's day unless its last hour already did. The hours after
+     * target were only counted live, so the day is rebuilt once it is over (plus settle-minutes),
+     * from the backfilled hourly rows up to target and the live hourly rows after it.
+     *
+     * @return whether the backfill can be marked done
+     */
+    boolean finishTargetDay(LocalDateTime target, LocalDateTime now) {
+        if (target.getHour() == 23) {
+            return true;
+        }
+        LocalDate day = target.toLocalDate();
+        if (day.plusDays(1).atStartOfDay().plusMinutes(settleMinutes).isAfter(now)) {
+            return false;
+        }
+        transactionTemplate.execute(status -> {
+            rebuildDay(day);
+            return null;
+        });
+        log.info("Rollup backfill rebuilt the daily rows of {}", day);
+        return true;
+    }
+
+    private void rebuildDay(LocalDate day) {
+        LocalDateTime dayStart = day.atStartOfDay();
+        jdbcTemplate.update("DELETE FROM user_behavior_stats WHERE stat_date = ?", day);
+        jdbcTemplate.update(REBUILD_DAILY_SQL, day, dayStart, dayStart.plusDays(1));
+    }
+}
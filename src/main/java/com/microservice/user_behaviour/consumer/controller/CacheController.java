@@ -6,15 +6,19 @@ import java.util.Set;
 
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.microservice.user_behaviour.consumer.service.CacheService;
 import com.microservice.user_behaviour.consumer.service.HotDataAnalysisService;
+import com.microservice.user_behaviour.consumer.service.HotDataSnapshot;
 import com.microservice.user_behaviour.consumer.service.UserBehaviorProcessingService;
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
 
@@ -81,6 +85,24 @@ public class CacheController {
         return ResponseEntity.ok(topUsers);
     }
     
+    /**
+     * 获取按时间衰减的趋势排行榜
+     * GET /api/cache/stats/trending?type=users|event-types&topN=10
+     */
+    @GetMapping("/stats/trending")
+    public ResponseEntity<Set<ZSetOperations.TypedTuple<Object>>> getTrending(
+            @RequestParam(defaultValue = "users") String type,
+            @RequestParam(defaultValue = "10") int topN) {
+        
+        log.info("Fetching top {} trending {}", topN, type);
+        
+        Set<ZSetOperations.TypedTuple<Object>> trending = "event-types".equals(type)
+                ? cacheService.getTrendingEventTypes(topN)
+                : cacheService.getTrendingUsers(topN);
+        
+        return ResponseEntity.ok(trending);
+    }
+    
     /**
      * 获取指定时间段的事件统计
      */
@@ -110,16 +132,36 @@ public class CacheController {
     }
     
     /**
-     * 获取实时热点数据报告
+     * 获取实时热点数据报告 (内存快照，支持 If-None-Match 条件请求)
      */
     @GetMapping("/hot-data/report")
-    public ResponseEntity<Map<String, Object>> getHotDataReport() {
-        
-        log.info("Generating hot data report");
+    public ResponseEntity<Map<String, Object>> getHotDataReport(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
-        Map<String, Object> report = hotDataAnalysisService.getHotDataReport();
+        HotDataSnapshot snapshot = hotDataAnalysisService.getSnapshot();
+        if (etagMatches(ifNoneMatch, snapshot.etag())) {
+            log.debug("Hot data report not modified (version {})", snapshot.version());
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.etag()).build();
+        }
         
-        return ResponseEntity.ok(report);
+        log.debug("Serving hot data report version {}", snapshot.version());
+        return ResponseEntity.ok().eTag(snapshot.etag()).body(snapshot.toReport());
+    }
+    
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -1,8 +1,10 @@
 package com.microservice.user_behaviour.consumer.controller;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
@@ -12,8 +14,17 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.microservice.user_behaviour.consumer.anomaly.RateAnomalyDetector;
+import com.microservice.user_behaviour.consumer.config.EventPartitionManager;
+import com.microservice.user_behaviour.consumer.funnel.FunnelEngine;
 import com.microservice.user_behaviour.consumer.repository.UserBehaviorRepository;
+import com.microservice.user_behaviour.consumer.service.ActiveUserBitmapWriter;
 import com.microservice.user_behaviour.consumer.service.UserBehaviorProcessingService;
+import com.microservice.user_behaviour.consumer.session.RedisSessionSink;
+import com.microservice.user_behaviour.consumer.session.SessionWindowEngine;
+import com.microservice.user_behaviour.consumer.window.EventTimeWindowEngine;
+import com.microservice.user_behaviour.dictionary.EventAttributeEncoder;
+import com.microservice.user_behaviour.dictionary.UserDictionary;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +38,15 @@ public class ProcessingStatsController {
 
     private final UserBehaviorRepository repository;
     private final UserBehaviorProcessingService processingService;
+    private final EventTimeWindowEngine windowEngine;
+    private final RateAnomalyDetector anomalyDetector;
+    private final SessionWindowEngine sessionEngine;
+    private final RedisSessionSink sessionStats;
+    private final FunnelEngine funnelEngine;
+    private final ActiveUserBitmapWriter bitmapWriter;
+    private final UserDictionary userDictionary;
+    private final EventAttributeEncoder attributeEncoder;
+    private final EventPartitionManager partitionManager;
     
     @GetMapping
     public ResponseEntity<Map<String, Object>> getStats() {
@@ -82,6 +102,51 @@ public class ProcessingStatsController {
         return ResponseEntity.ok(stats);
     }
 
+    @GetMapping("/windows")
+    public ResponseEntity<Map<String, Object>> getWindowStats() {
+        return ResponseEntity.ok(windowEngine.getWindowStats());
+    }
+
+    @GetMapping("/anomalies")
+    public ResponseEntity<Map<String, Object>> getAnomalies() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("recentAlerts", anomalyDetector.getRecentAlerts());
+        result.put("detector", anomalyDetector.getDetectorStats());
+        result.put("timestamp", LocalDateTime.now());
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> getSessionStats(@RequestParam(required = false) String date) {
+        LocalDate day = date == null || date.isEmpty() ? LocalDate.now() : LocalDate.parse(date);
+        Map<String, Object> result = new HashMap<>();
+        result.put("daily", sessionStats.getDailyStats(day));
+        result.put("engine", sessionEngine.getSessionStats());
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/funnels")
+    public ResponseEntity<Map<String, Object>> getFunnelStats() {
+        return ResponseEntity.ok(funnelEngine.getFunnelStats());
+    }
+
+    @GetMapping("/bitmaps")
+    public ResponseEntity<Map<String, Object>> getBitmapStats() {
+        return ResponseEntity.ok(bitmapWriter.getBitmapStats());
+    }
+
+    @GetMapping("/dictionary")
+    public ResponseEntity<Map<String, Object>> getDictionaryStats() {
+        Map<String, Object> stats = new HashMap<>(userDictionary.getDictionaryStats());
+        stats.put("attributes", attributeEncoder.getEncoderStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/partitions")
+    public ResponseEntity<Map<String, Object>> getPartitionStats() {
+        return ResponseEntity.ok(partitionManager.getPartitionStats());
+    }
+
     @GetMapping("/db-test")
     public ResponseEntity<Map<String, Object>> testDatabaseConnection() {
         Map<String, Object> result = new HashMap<>();
@@ -119,14 +184,15 @@ public class ProcessingStatsController {
         Map<String, Object> result = new HashMap<>();
         
         try {
-            // Trigger manual flush
+            // Trigger manual flush and wait for the writer to drain
             processingService.flushQueue();
+            boolean drained = processingService.awaitInFlightWrites(10, TimeUnit.SECONDS);
             
             // Get updated count
             long count = repository.count();
             
             result.put("status", "SUCCESS");
-            result.put("message", "Manual flush completed");
+            result.put("message", drained ? "Manual flush completed" : "Manual flush still in progress");
             result.put("totalEventsAfterFlush", count);
             result.put("timestamp", LocalDateTime.now());
             
@@ -21,7 +21,8 @@ import org.springframework.context.annotation.Profile;
        indexes = {
            @Index(name = "idx_user_id", columnList = "user_id"),
            @Index(name = "idx_event_type", columnList = "event_type"),
-           @Index(name = "idx_event_time", columnList = "event_time")
+           @Index(name = "idx_event_time", columnList = "event_time"),
+           @Index(name = "idx_user_ord_time", columnList = "user_ord, event_time")
        })
 @Data
 @Builder
@@ -37,10 +38,13 @@ public class UserBehaviorEntity {
     @Column(name = "user_id", nullable = false)
     private String userId;
     
-    @Column(name = "event_type", nullable = false)
+    @Column(name = "user_ord")
+    private Integer userOrd;
+    
+    @Column(name = "event_type")
     private String eventType;
     
-    @Column(name = "source", nullable = false)
+    @Column(name = "source")
     private String source;
     
     @Column(name = "event_time", nullable = false)
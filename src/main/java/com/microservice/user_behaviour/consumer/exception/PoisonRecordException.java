@@ -0,0 +1,21 @@
+package com.microservice.user_behaviour.consumer.exception;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a consumed record can never be processed, no matter how often it is retried
+ * (undeserializable value, missing required fields, unserializable event data).
+ * Such records are isolated from their batch and sent to the dead-letter topic.
+ */
+@Getter
+public class PoisonRecordException extends RuntimeException {
+
+    private final transient ConsumerRecord<?, ?> record;
+
+    public PoisonRecordException(String message, ConsumerRecord<?, ?> record, Throwable cause) {
+        super(message + " (" + record.topic() + "-" + record.partition() + "@" + record.offset() + ")", cause);
+        this.record = record;
+    }
+}
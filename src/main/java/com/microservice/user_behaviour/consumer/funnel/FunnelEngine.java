@@ -0,0 +1,230 @@
+package com.microservice.user_behaviour.consumer.funnel;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.EventTimes;
+import com.microservice.user_behaviour.util.FunnelDefinition;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 增量漏斗分析
+ *
+ * 每个用户每个漏斗只保存一个 long: (进入时间 << 8) | 已到达步数。首步事件开启一次尝试，
+ * 之后在 funnel.window-ms 内按顺序出现的下一步事件推进一步；超时或完成后的下一个首步事件开启新的尝试。
+ * 每推进一步，在进入时间所在的小时/天计数 funnel:{name}:hour|day:* 中对该步 +1
+ * (每个批次先在内存中折叠，再通过一次 pipeline HINCRBY)。写入失败的增量保留在内存中，合并进下一次写入，
+ * 因为用户状态已经推进，丢弃它们就等于永远漏计这些转化。
+ *
+ * 用户状态按用户哈希分片，每个分片是按访问顺序淘汰的 LinkedHashMap，总数不超过 funnel.max-users；
+ * 被淘汰用户的进行中尝试视为未转化。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class FunnelEngine {
+
+    private static final int SHARDS = 16;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final List<FunnelDefinition> funnels;
+    private final long windowMs;
+    private final long hourTtl;
+    private final long dayTtl;
+    private final Shard[] shards = new Shard[SHARDS];
+
+    private final AtomicLong stepsReached = new AtomicLong(0);
+    private final AtomicLong failedWrites = new AtomicLong(0);
+
+    /** 写入失败、等待合并进下一次写入的增量 */
+    private StepCounts failed;
+
+    public FunnelEngine(StringRedisTemplate stringRedisTemplate,
+                        @Value("${funnel.definitions:checkout:PAGE_VIEW>BUTTON_CLICK|LINK_CLICK>SEARCH>PURCHASE}") String definitions,
+                        @Value("${funnel.window-ms:86400000}") long windowMs,
+                        @Value("${funnel.max-users:1000000}") int maxUsers,
+                        @Value("${funnel.hour.ttl:691200}") long hourTtl,
+                        @Value("${funnel.day.ttl:34560000}") long dayTtl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.funnels = FunnelDefinition.parse(definitions);
+        this.windowMs = windowMs;
+        this.hourTtl = hourTtl;
+        this.dayTtl = dayTtl;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(Math.max(1, maxUsers / SHARDS));
+        }
+        log.info("Funnels enabled: {}", funnels);
+    }
+
+    private static final class Shard extends LinkedHashMap<String, long[]> {
+        private final int capacity;
+
+        Shard(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * 一个批次折叠后的计数增量: key -> (步骤编号 -> 增量)
+     */
+    record StepCounts(Map<String, Map<String, Long>> hourly, Map<String, Map<String, Long>> daily) {}
+
+    /**
+     * 按一批事件推进用户的漏斗状态，并把到达的步数写入小时/天计数
+     */
+    public void update(List<UserBehaviorEvent> events) {
+        StepCounts counts = advance(events);
+        synchronized (this) {
+            if (failed != null) {
+                merge(counts, failed);
+                failed = null;
+            }
+        }
+        if (counts.hourly().isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    write(ops, counts.hourly(), hourTtl);
+                    write(ops, counts.daily(), dayTtl);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            failedWrites.incrementAndGet();
+            log.error("Error writing funnel step counts for {} buckets, will retry with the next batch",
+                    counts.hourly().size(), e);
+            synchronized (this) {
+                if (failed != null) {
+                    merge(counts, failed);
+                }
+                failed = counts;
+            }
+        }
+    }
+
+    private static void merge(StepCounts into, StepCounts from) {
+        merge(into.hourly(), from.hourly());
+        merge(into.daily(), from.daily());
+    }
+
+    private static void merge(Map<String, Map<String, Long>> into, Map<String, Map<String, Long>> from) {
+        from.forEach((key, steps) -> {
+            Map<String, Long> target = into.computeIfAbsent(key, k -> new HashMap<>());
+            steps.forEach((step, count) -> target.merge(step, count, Long::sum));
+        });
+    }
+
+    private void write(RedisOperations<String, String> ops, Map<String, Map<String, Long>> buckets, long ttl) {
+        buckets.forEach((key, steps) -> {
+            steps.forEach((step, count) -> ops.opsForHash().increment(key, step, count));
+            ops.expire(key, ttl, TimeUnit.SECONDS);
+        });
+    }
+
+    /**
+     * 推进状态并返回折叠后的计数增量
+     */
+    StepCounts advance(List<UserBehaviorEvent> events) {
+        StepCounts increments = new StepCounts(new HashMap<>(), new HashMap<>());
+        for (UserBehaviorEvent event : events) {
+            if (event.getUserId() == null || event.getEventType() == null) {
+                continue;
+            }
+            long time = EventTimes.toMillis(event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now());
+            Shard shard = shards[(event.getUserId().hashCode() & 0x7fffffff) % SHARDS];
+            synchronized (shard) {
+                long[] states = shard.get(event.getUserId());
+                for (int f = 0; f < funnels.size(); f++) {
+                    long state = states != null ? states[f] : 0;
+                    long next = step(funnels.get(f), state, event.getEventType(), time);
+                    if (next == state) {
+                        continue;
+                    }
+                    if (states == null) {
+                        states = new long[funnels.size()];
+                        shard.put(event.getUserId(), states);
+                    }
+                    states[f] = next;
+                    count(increments, funnels.get(f), next);
+                }
+            }
+        }
+        return increments;
+    }
+
+    /**
+     * 单个漏斗的状态转移，返回新状态 (未变化时返回原状态)
+     */
+    long step(FunnelDefinition funnel, long state, String eventType, long time) {
+        int reached = (int) (state & 0xFF);
+        long entered = state >>> 8;
+        boolean open = reached > 0 && reached < funnel.steps().size() && time - entered <= windowMs;
+
+        if (open && time >= entered && funnel.matches(reached, eventType)) {
+            return (entered << 8) | (reached + 1);
+        }
+        if (!open && funnel.matches(0, eventType)) {
+            return (time << 8) | 1;
+        }
+        return state;
+    }
+
+    private void count(StepCounts increments, FunnelDefinition funnel, long state) {
+        LocalDateTime entered = EventTimes.toLocalDateTime(state >>> 8);
+        String step = String.valueOf((state & 0xFF) - 1);
+        increments.hourly().computeIfAbsent(funnel.hourKey(TimeBuckets.hourLabel(entered)), k -> new HashMap<>())
+                .merge(step, 1L, Long::sum);
+        increments.daily().computeIfAbsent(funnel.dayKey(TimeBuckets.dayLabel(entered)), k -> new HashMap<>())
+                .merge(step, 1L, Long::sum);
+        stepsReached.incrementAndGet();
+    }
+
+    /**
+     * 获取漏斗引擎统计信息
+     */
+    public Map<String, Object> getFunnelStats() {
+        int users = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                users += shard.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("funnels", funnels.stream().map(FunnelDefinition::name).toList());
+        stats.put("windowMs", windowMs);
+        stats.put("trackedUsers", users);
+        stats.put("stepsReached", stepsReached.get());
+        stats.put("failedWrites", failedWrites.get());
+        synchronized (this) {
+            stats.put("pendingRetryBuckets", failed != null ? failed.hourly().size() : 0);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,153 @@
+package com.microservice.user_behaviour.consumer.listener;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.user_behaviour.consumer.entity.UserBehaviorEntity;
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes records that can never be processed (or whose batch could never be written) to the
+ * dead-letter topic, together with the standard Spring Kafka DLT headers describing where they
+ * came from and why they failed.
+ * Sends are synchronous so a record is only skipped once its dead letter is acknowledged.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class DeadLetterPublisher {
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(DeadLetterPublisher.class);
+    private static final TypeReference<Map<String, Object>> EVENT_DATA_TYPE = new TypeReference<>() {};
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${user.behavior.topic.dead-letter:user-behavior-dlt}")
+    private String deadLetterTopic;
+
+    @Value("${app.dead-letter.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    /**
+     * Send a poison record to the dead-letter topic, failing if the broker does not acknowledge it
+     */
+    public void publish(ConsumerRecord<String, ?> record, Exception cause) {
+        send(record.topic(), record.partition(), record.offset(), record.timestamp(),
+                record.key(), payloadOf(record), record.headers(), cause);
+    }
+
+    /**
+     * Send an event whose batch could not be written to MySQL, rebuilt from its entity so it can
+     * be replayed onto the original topic
+     */
+    public void publishUnwritten(UserBehaviorEntity entity, Exception cause) {
+        long timestamp = entity.getEventTime() == null ? -1L : EventTimes.toMillis(entity.getEventTime());
+        send(entity.getTopic(), entity.getPartition() == null ? -1 : entity.getPartition(),
+                entity.getOffset() == null ? -1L : entity.getOffset(), timestamp,
+                entity.getUserId(), payloadOf(entity), List.of(), cause);
+    }
+
+    private void send(String topic, int partition, long offset, long timestamp, String key, String payload,
+                      Iterable<Header> headers, Exception cause) {
+        ProducerRecord<String, String> deadLetter = new ProducerRecord<>(deadLetterTopic, null, key, payload);
+
+        for (Header header : headers) {
+            if (!SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER.equals(header.key())) {
+                deadLetter.headers().add(header);
+            }
+        }
+        deadLetter.headers()
+                .add(KafkaHeaders.DLT_ORIGINAL_TOPIC, topic.getBytes(StandardCharsets.UTF_8))
+                .add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(partition).array())
+                .add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(offset).array())
+                .add(KafkaHeaders.DLT_ORIGINAL_TIMESTAMP, ByteBuffer.allocate(Long.BYTES).putLong(timestamp).array())
+                .add(KafkaHeaders.DLT_EXCEPTION_FQCN, rootCause(cause).getClass().getName().getBytes(StandardCharsets.UTF_8))
+                .add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+
+        try {
+            kafkaTemplate.send(deadLetter).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing dead letter", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to publish dead letter for " + topic + "-"
+                    + partition + "@" + offset, e);
+        }
+
+        meterRegistry.counter("consumer.dead-letter.records", "topic", topic).increment();
+        log.warn("Sent poison record {}-{}@{} to {}: {}", topic, partition, offset,
+                deadLetterTopic, cause.getMessage());
+    }
+
+    /**
+     * The entity as the JSON of the event it was converted from
+     */
+    private String payloadOf(UserBehaviorEntity entity) {
+        try {
+            UserBehaviorEvent event = UserBehaviorEvent.builder()
+                    .userId(entity.getUserId())
+                    .eventType(entity.getEventType())
+                    .source(entity.getSource())
+                    .eventTime(entity.getEventTime())
+                    .eventData(entity.getEventData() == null ? null
+                            : objectMapper.readValue(entity.getEventData(), EVENT_DATA_TYPE))
+                    .sessionId(entity.getSessionId())
+                    .deviceInfo(entity.getDeviceInfo())
+                    .ipAddress(entity.getIpAddress())
+                    .build();
+            return objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            return String.valueOf(entity);
+        }
+    }
+
+    /**
+     * The original value as JSON, or the raw bytes if the value could not be deserialized
+     */
+    private String payloadOf(ConsumerRecord<String, ?> record) {
+        if (record.value() == null) {
+            DeserializationException failure = SerializationUtils.getExceptionFromHeader(
+                    record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+            return failure == null || failure.getData() == null
+                    ? null : new String(failure.getData(), StandardCharsets.UTF_8);
+        }
+        try {
+            return objectMapper.writeValueAsString(record.value());
+        } catch (Exception e) {
+            return String.valueOf(record.value());
+        }
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,117 @@
+package com.microservice.user_behaviour.consumer.listener;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pauses and resumes the partitions of the user behavior listener container when
+ * downstream stages fall behind. Several independent conditions (reasons) can hold
+ * the partitions paused; they are resumed only once all of them have cleared.
+ * Partitions assigned while paused are paused as soon as they are assigned.
+ */
+@Component
+@Slf4j
+@Profile("consumer")
+public class ListenerBackpressureController implements ConsumerRebalanceListener {
+
+    public static final String LISTENER_ID = "userBehaviorListener";
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> activeReasons = ConcurrentHashMap.newKeySet();
+
+    public ListenerBackpressureController(KafkaListenerEndpointRegistry registry, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("consumer.backpressure.paused", activeReasons, reasons -> reasons.isEmpty() ? 0 : 1)
+                .description("1 while the listener partitions are paused for backpressure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Request a pause for the given reason. Repeated calls for an active reason are no-ops.
+     */
+    public void pause(String reason) {
+        if (activeReasons.add(reason)) {
+            meterRegistry.counter("consumer.backpressure.pause", "reason", reason).increment();
+            log.warn("Pausing listener {}: {}", LISTENER_ID, reason);
+            applyPauseState();
+        }
+    }
+
+    /**
+     * Clear a pause reason; the partitions resume when no reasons remain.
+     */
+    public void resume(String reason) {
+        if (activeReasons.remove(reason)) {
+            meterRegistry.counter("consumer.backpressure.resume", "reason", reason).increment();
+            log.info("Backpressure cleared for listener {}: {}", LISTENER_ID, reason);
+            applyPauseState();
+        }
+    }
+
+    public boolean isPaused() {
+        return !activeReasons.isEmpty();
+    }
+
+    public Set<String> getActiveReasons() {
+        return Set.copyOf(activeReasons);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        if (isPaused()) {
+            log.info("Partitions {} assigned while backpressure is active, pausing them", partitions);
+            applyPauseState();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        // nothing to do - pause requests for revoked partitions are dropped with the assignment
+    }
+
+    private synchronized void applyPauseState() {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container == null) {
+            log.warn("Listener container {} not found, cannot apply backpressure", LISTENER_ID);
+            return;
+        }
+
+        Collection<TopicPartition> assigned = container.getAssignedPartitions();
+        if (assigned == null) {
+            assigned = List.of();
+        }
+
+        boolean pause = !activeReasons.isEmpty();
+        int changed = 0;
+        for (TopicPartition partition : assigned) {
+            boolean pauseRequested = container.isPartitionPauseRequested(partition);
+            if (pause && !pauseRequested) {
+                container.pausePartition(partition);
+                changed++;
+            } else if (!pause && pauseRequested) {
+                container.resumePartition(partition);
+                changed++;
+            }
+        }
+
+        if (changed > 0) {
+            log.info("{} {} partitions of listener {}", pause ? "Paused" : "Resumed", changed, LISTENER_ID);
+        }
+    }
+}
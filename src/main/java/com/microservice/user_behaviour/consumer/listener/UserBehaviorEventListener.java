@@ -1,20 +1,20 @@
 package com.microservice.user_behaviour.consumer.listener;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import com.microservice.user_behaviour.consumer.exception.PoisonRecordException;
 import com.microservice.user_behaviour.consumer.service.UserBehaviorProcessingService;
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -25,6 +25,8 @@ import lombok.extern.slf4j.Slf4j;
 public class UserBehaviorEventListener implements BatchAcknowledgingMessageListener<String, UserBehaviorEvent> {
 
     private final UserBehaviorProcessingService processingService;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final MeterRegistry meterRegistry;
     
     /**
      * Listen for events on all user behavior topics
@@ -43,40 +45,51 @@ public class UserBehaviorEventListener implements BatchAcknowledgingMessageListe
     )
     @Override
     public void onMessage(List<ConsumerRecord<String, UserBehaviorEvent>> records, Acknowledgment acknowledgment) {
-        try {
-            log.info("Received batch of {} records", records.size());
-            
-            // Map to hold batch record metadata (uses the last record's metadata)
-            Map<String, Object> recordMetadata = new HashMap<>();
-            List<UserBehaviorEvent> events = records.stream()
-                    .map(record -> {
-                        // Set metadata from the last record (simplified approach)
-                        recordMetadata.put("topic", record.topic());
-                        recordMetadata.put("partition", record.partition());
-                        recordMetadata.put("offset", record.offset());
-                        
-                        // Log details about the record
-                        log.debug("Processing record: topic={}, partition={}, offset={}, key={}",
-                                record.topic(), record.partition(), record.offset(), record.key());
-                        
-                        return record.value();
-                    })
-                    .filter(event -> event != null) // Filter out any null events
-                    .toList();
-            
-            if (!events.isEmpty()) {
-                // Process the batch of events
-                processingService.processBatch(events, recordMetadata);
+        log.info("Received batch of {} records", records.size());
+        
+        // Poison records are isolated and dead-lettered; any other failure propagates so the
+        // container error handler retries the batch from the uncommitted offsets
+        processIsolatingPoison(records);
+        
+        // Acknowledge successful processing
+        acknowledgment.acknowledge();
+        log.debug("Batch processing completed and acknowledged");
+    }
+    
+    /**
+     * Process records, dead-lettering poison records until the rest of the batch applies cleanly.
+     * Records are all validated before any of them is applied and the exception carries the
+     * offending record, so each poison record is removed directly and nothing is applied until the
+     * final, clean attempt. If a dead letter cannot be sent the batch fails with nothing applied and
+     * is redelivered without duplicating side effects; k poison records cost k extra attempts.
+     */
+    void processIsolatingPoison(List<ConsumerRecord<String, UserBehaviorEvent>> records) {
+        List<ConsumerRecord<String, UserBehaviorEvent>> remaining = new ArrayList<>(records);
+        while (!remaining.isEmpty()) {
+            try {
+                processingService.processRecords(remaining);
+                return;
+            } catch (PoisonRecordException e) {
+                int index = indexOf(remaining, e.getRecord());
+                if (index < 0) {
+                    throw e;
+                }
+                meterRegistry.counter("consumer.dead-letter.isolations").increment();
+                log.warn("Poison record in batch of {}, dead-lettering it: {}", remaining.size(), e.getMessage());
+                deadLetterPublisher.publish(remaining.remove(index), e);
+            }
+        }
+    }
+    
+    private static int indexOf(List<ConsumerRecord<String, UserBehaviorEvent>> records, ConsumerRecord<?, ?> poison) {
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, UserBehaviorEvent> record = records.get(i);
+            if (record == poison || (record.topic().equals(poison.topic())
+                    && record.partition() == poison.partition() && record.offset() == poison.offset())) {
+                return i;
             }
-            
-            // Acknowledge successful processing
-            acknowledgment.acknowledge();
-            log.debug("Batch processing completed and acknowledged");
-        } catch (Exception e) {
-            log.error("Error processing Kafka records", e);
-            // Don't acknowledge to trigger redelivery
-            // Could implement more sophisticated error handling, like dead letter queue
         }
+        return -1;
     }
     
     /**
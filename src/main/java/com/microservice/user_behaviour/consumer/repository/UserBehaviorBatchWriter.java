@@ -0,0 +1,169 @@
+package com.microservice.user_behaviour.consumer.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.microservice.user_behaviour.consumer.entity.UserBehaviorEntity;
+import com.microservice.user_behaviour.dictionary.EventAttributeEncoder;
+import com.microservice.user_behaviour.dictionary.EventAttributeEncoder.Attribute;
+import com.microservice.user_behaviour.dictionary.UserDictionary;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk insert path for user_behavior_events.
+ * 
+ * Hibernate disables JDBC insert batching for IDENTITY ids, so saveAll issues one INSERT per
+ * entity. This writer sends the whole buffer as one JDBC batch on a single pooled connection,
+ * which the MySQL driver rewrites into multi-row INSERTs (rewriteBatchedStatements).
+ * Generated ids are not read back.
+ * <p>
+ * When dictionary.events.user-ord.enabled is set, each row also carries the user's dense
+ * ordinal from the shared {@link UserDictionary} (user_ord, indexed with event_time). A
+ * dictionary failure does not fail the insert; the rows are written with a NULL user_ord.
+ * <p>
+ * event_type, source and device_info are written as SMALLINT ids from the
+ * {@link EventAttributeEncoder} lookup tables and the string column is left NULL; values
+ * without an id (encoder failure, full dictionary, over-long device_info) keep their string.
+ */
+@Repository
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class UserBehaviorBatchWriter {
+
+    public static final String INSERT_SQL = "INSERT INTO user_behavior_events "
+            + "(user_id, event_type, source, event_time, event_data, session_id, device_info, ip_address, "
+            + "processed_time, topic, `partition`, `offset`, user_ord, event_type_id, source_id, device_info_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserDictionary userDictionary;
+    private final EventAttributeEncoder attributeEncoder;
+
+    @Value("${dictionary.events.user-ord.enabled:true}")
+    private boolean userOrdEnabled;
+
+    @Value("${dictionary.events.encode-attributes:true}")
+    private boolean attributeEncodingEnabled;
+
+    /**
+     * Ids of the batch's event_type, source and device_info values; missing values keep their string
+     */
+    private record AttributeIds(Map<String, Integer> eventTypes, Map<String, Integer> sources,
+                                Map<String, Integer> deviceInfos) {
+        static final AttributeIds NONE = new AttributeIds(Map.of(), Map.of(), Map.of());
+    }
+
+    /**
+     * Insert all entities in one JDBC batch
+     */
+    public void insertBatch(List<UserBehaviorEntity> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (userOrdEnabled) {
+            assignUserOrds(batch);
+        }
+        AttributeIds ids = attributeEncodingEnabled ? encodeAttributes(batch) : AttributeIds.NONE;
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, entity) -> bind(ps, entity, ids));
+    }
+
+    private AttributeIds encodeAttributes(List<UserBehaviorEntity> batch) {
+        List<String> eventTypes = new ArrayList<>(batch.size());
+        List<String> sources = new ArrayList<>(batch.size());
+        List<String> deviceInfos = new ArrayList<>(batch.size());
+        for (UserBehaviorEntity entity : batch) {
+            eventTypes.add(entity.getEventType());
+            sources.add(entity.getSource());
+            deviceInfos.add(entity.getDeviceInfo());
+        }
+        try {
+            return new AttributeIds(attributeEncoder.encode(Attribute.EVENT_TYPE, eventTypes),
+                    attributeEncoder.encode(Attribute.SOURCE, sources),
+                    attributeEncoder.encode(Attribute.DEVICE_INFO, deviceInfos));
+        } catch (Exception e) {
+            log.warn("Error encoding attributes of {} events, writing them as strings", batch.size(), e);
+            return AttributeIds.NONE;
+        }
+    }
+
+    private void assignUserOrds(List<UserBehaviorEntity> batch) {
+        List<String> userIds = new ArrayList<>(batch.size());
+        for (UserBehaviorEntity entity : batch) {
+            if (entity.getUserOrd() == null && entity.getUserId() != null) {
+                userIds.add(entity.getUserId());
+            }
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, Integer> ords = userDictionary.assign(userIds);
+            for (UserBehaviorEntity entity : batch) {
+                if (entity.getUserOrd() == null) {
+                    entity.setUserOrd(ords.get(entity.getUserId()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Error resolving user ordinals for {} events, writing them without user_ord", batch.size(), e);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, UserBehaviorEntity entity, AttributeIds ids) throws SQLException {
+        Integer eventTypeId = id(ids.eventTypes(), entity.getEventType());
+        Integer sourceId = id(ids.sources(), entity.getSource());
+        Integer deviceInfoId = id(ids.deviceInfos(), entity.getDeviceInfo());
+        ps.setString(1, entity.getUserId());
+        ps.setString(2, eventTypeId == null ? entity.getEventType() : null);
+        ps.setString(3, sourceId == null ? entity.getSource() : null);
+        ps.setTimestamp(4, Timestamp.valueOf(entity.getEventTime()));
+        ps.setString(5, entity.getEventData());
+        ps.setString(6, entity.getSessionId());
+        ps.setString(7, deviceInfoId == null ? entity.getDeviceInfo() : null);
+        ps.setString(8, entity.getIpAddress());
+        ps.setTimestamp(9, Timestamp.valueOf(entity.getProcessedTime()));
+        ps.setString(10, entity.getTopic());
+        if (entity.getPartition() != null) {
+            ps.setInt(11, entity.getPartition());
+        } else {
+            ps.setNull(11, Types.INTEGER);
+        }
+        if (entity.getOffset() != null) {
+            ps.setLong(12, entity.getOffset());
+        } else {
+            ps.setNull(12, Types.BIGINT);
+        }
+        if (entity.getUserOrd() != null) {
+            ps.setInt(13, entity.getUserOrd());
+        } else {
+            ps.setNull(13, Types.INTEGER);
+        }
+        setId(ps, 14, eventTypeId);
+        setId(ps, 15, sourceId);
+        setId(ps, 16, deviceInfoId);
+    }
+
+    private static Integer id(Map<String, Integer> ids, String value) {
+        return value == null ? null : ids.get(value);
+    }
+
+    private static void setId(PreparedStatement ps, int index, Integer id) throws SQLException {
+        if (id != null) {
+            ps.setInt(index, id);
+        } else {
+            ps.setNull(index, Types.SMALLINT);
+        }
+    }
+}
@@ -2,9 +2,12 @@ package com.microservice.user_behaviour.consumer.repository;
 
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.microservice.user_behaviour.consumer.entity.UserBehaviorEntity;
+import com.microservice.user_behaviour.dictionary.EventAttributeSql;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -12,11 +15,29 @@ import java.util.List;
 @Repository
 @Profile("consumer")
 public interface UserBehaviorRepository extends JpaRepository<UserBehaviorEntity, Long> {
-    
+
+    /**
+     * Events with event_type / source / device_info decoded from their dictionary ids
+     */
+    String SELECT_DECODED = "SELECT e.id, e.user_id, e.user_ord, "
+            + EventAttributeSql.EVENT_TYPE + " AS event_type, " + EventAttributeSql.SOURCE + " AS source, "
+            + "e.event_time, e.event_data, e.session_id, " + EventAttributeSql.DEVICE_INFO + " AS device_info, "
+            + "e.ip_address, e.processed_time, e.topic, e.`partition`, e.`offset` "
+            + "FROM user_behavior_events e" + EventAttributeSql.DECODE_JOINS;
+
+    @Query(value = SELECT_DECODED + "WHERE e.user_id = :userId AND " + EventAttributeSql.EVENT_TYPE_FILTER
+            + " AND e.event_time BETWEEN :start AND :end", nativeQuery = true)
     List<UserBehaviorEntity> findByUserIdAndEventTypeAndEventTimeBetween(
-            String userId, String eventType, LocalDateTime start, LocalDateTime end);
-    
-    List<UserBehaviorEntity> findByEventTypeOrderByEventTimeDesc(String eventType, org.springframework.data.domain.Pageable pageable);
-    
-    long countByEventTypeAndEventTimeBetween(String eventType, LocalDateTime start, LocalDateTime end);
-} 
\ No newline at end of file
+            @Param("userId") String userId, @Param("eventType") String eventType,
+            @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Query(value = SELECT_DECODED + "WHERE " + EventAttributeSql.EVENT_TYPE_FILTER
+            + " ORDER BY e.event_time DESC", nativeQuery = true)
+    List<UserBehaviorEntity> findByEventTypeOrderByEventTimeDesc(
+            @Param("eventType") String eventType, org.springframework.data.domain.Pageable pageable);
+
+    @Query(value = "SELECT COUNT(*) FROM user_behavior_events e WHERE " + EventAttributeSql.EVENT_TYPE_FILTER
+            + " AND e.event_time BETWEEN :start AND :end", nativeQuery = true)
+    long countByEventTypeAndEventTimeBetween(
+            @Param("eventType") String eventType, @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+}
@@ -0,0 +1,209 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.OrdinalBitmap;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 每日活跃用户位图
+ *
+ * 每个 事件类型(及汇总 all) × 天(事件时间) 一个按用户编号索引的 {@link OrdinalBitmap}。
+ * 最近 bitmap.open-days 天的位图保存在内存中，每隔 bitmap.flush.interval 毫秒把有变化的位图整体写入
+ * 本实例的分段 bitmap:active:{type}:{day}:{instance}，并把实例登记到 bitmap:active:{type}:{day}:segments；
+ * 查询服务取回全部分段后求并集。覆盖写是幂等的，实例重启后以新的分段继续累计。
+ * 早于 open-days 的迟到事件只计数不写入。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class ActiveUserBitmapWriter {
+
+    public static final String ALL_EVENT_TYPES = "all";
+    private static final String SEGMENT_KEY = "bitmap:active:%s:%s:%s";
+    private static final String SEGMENTS_KEY = "bitmap:active:%s:%s:segments";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final UserOrdinalService ordinals;
+    private final String instance;
+    private final long ttl;
+    private final int openDays;
+
+    private record BitmapKey(String eventType, String day) {}
+
+    private static final class DayBitmap {
+        private final OrdinalBitmap bitmap = new OrdinalBitmap();
+        private boolean dirty;
+    }
+
+    private final ConcurrentHashMap<BitmapKey, DayBitmap> bitmaps = new ConcurrentHashMap<>();
+    private final AtomicLong lateEvents = new AtomicLong(0);
+    private final AtomicLong flushedBitmaps = new AtomicLong(0);
+    private final AtomicLong failedFlushes = new AtomicLong(0);
+
+    public ActiveUserBitmapWriter(StringRedisTemplate stringRedisTemplate, UserOrdinalService ordinals,
+                                  @Value("${eureka.instance.instance-id:${spring.application.name}}") String instance,
+                                  @Value("${bitmap.ttl:34560000}") long ttl,
+                                  @Value("${bitmap.open-days:2}") int openDays) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ordinals = ordinals;
+        this.instance = instance;
+        this.ttl = ttl;
+        this.openDays = openDays;
+    }
+
+    /**
+     * 把一批事件的用户加入对应的日位图
+     */
+    public void update(List<UserBehaviorEvent> events) {
+        Set<String> userIds = events.stream()
+                .map(UserBehaviorEvent::getUserId)
+                .filter(id -> id != null)
+                .collect(Collectors.toSet());
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> ords;
+        try {
+            ords = ordinals.resolve(userIds);
+        } catch (Exception e) {
+            log.error("Error resolving ordinals of {} users, skipping active-user bitmaps", userIds.size(), e);
+            return;
+        }
+
+        LocalDate oldestOpen = LocalDate.now().minusDays(openDays - 1L);
+        for (UserBehaviorEvent event : events) {
+            Integer ordinal = ords.get(event.getUserId());
+            if (ordinal == null || event.getEventType() == null) {
+                continue;
+            }
+            LocalDateTime eventTime = event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now();
+            if (eventTime.toLocalDate().isBefore(oldestOpen)) {
+                lateEvents.incrementAndGet();
+                continue;
+            }
+            String day = TimeBuckets.dayLabel(eventTime);
+            add(new BitmapKey(ALL_EVENT_TYPES, day), ordinal);
+            add(new BitmapKey(event.getEventType(), day), ordinal);
+        }
+    }
+
+    private void add(BitmapKey key, int ordinal) {
+        DayBitmap day = bitmaps.computeIfAbsent(key, k -> new DayBitmap());
+        synchronized (day) {
+            if (day.bitmap.add(ordinal)) {
+                day.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * 写入有变化的位图，并释放已过 open-days 的位图
+     */
+    @Scheduled(fixedDelayString = "${bitmap.flush.interval:10000}")
+    public synchronized void flush() {
+        Map<BitmapKey, byte[]> dirty = new HashMap<>();
+        bitmaps.forEach((key, day) -> {
+            synchronized (day) {
+                if (day.dirty) {
+                    dirty.put(key, day.bitmap.serialize());
+                    day.dirty = false;
+                }
+            }
+        });
+
+        if (!dirty.isEmpty()) {
+            try {
+                write(dirty);
+                flushedBitmaps.addAndGet(dirty.size());
+                log.debug("Flushed {} active-user bitmaps", dirty.size());
+            } catch (Exception e) {
+                failedFlushes.incrementAndGet();
+                log.error("Error flushing {} active-user bitmaps, will retry", dirty.size(), e);
+                dirty.keySet().forEach(key -> {
+                    DayBitmap day = bitmaps.get(key);
+                    synchronized (day) {
+                        day.dirty = true;
+                    }
+                });
+                return;
+            }
+        }
+
+        String oldestOpen = TimeBuckets.dayLabel(LocalDate.now().minusDays(openDays - 1L).atStartOfDay());
+        bitmaps.entrySet().removeIf(entry -> {
+            if (entry.getKey().day().compareTo(oldestOpen) >= 0) {
+                return false;
+            }
+            synchronized (entry.getValue()) {
+                return !entry.getValue().dirty;
+            }
+        });
+    }
+
+    private void write(Map<BitmapKey, byte[]> dirty) {
+        byte[] member = instance.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            dirty.forEach((key, bytes) -> {
+                byte[] segment = bytes(String.format(SEGMENT_KEY, key.eventType(), key.day(), instance));
+                byte[] segments = bytes(String.format(SEGMENTS_KEY, key.eventType(), key.day()));
+                connection.stringCommands().set(segment, bytes);
+                connection.keyCommands().expire(segment, ttl);
+                connection.setCommands().sAdd(segments, member);
+                connection.keyCommands().expire(segments, ttl);
+            });
+            return null;
+        });
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 获取位图写入统计信息
+     */
+    public Map<String, Object> getBitmapStats() {
+        long bytes = 0;
+        for (DayBitmap day : bitmaps.values()) {
+            synchronized (day) {
+                bytes += day.bitmap.sizeInBytes();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("openBitmaps", bitmaps.size());
+        stats.put("bitmapBytes", bytes);
+        stats.put("cachedOrdinals", ordinals.cachedOrdinals());
+        stats.put("lateEvents", lateEvents.get());
+        stats.put("flushedBitmaps", flushedBitmaps.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+}
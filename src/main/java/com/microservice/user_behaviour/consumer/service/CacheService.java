@@ -8,11 +8,13 @@ import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.TrendingDecay;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,6 +26,10 @@ import lombok.extern.slf4j.Slf4j;
 public class CacheService {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StatsWriteBehindAggregator statsAggregator;
+    private final HeavyHitterTracker heavyHitterTracker;
+    private final TrendingLeaderboardService trendingService;
+    private final SnapshotPublisher snapshotPublisher;
     
     @Value("${cache.user.recent.events.size:100}")
     private int recentEventsSize;
@@ -37,7 +43,7 @@ public class CacheService {
     private static final String USER_RECENT_EVENTS_KEY = "user:%s:recent_events";
     private static final String EVENT_TYPE_COUNT_KEY = "stats:event_type_count";
     private static final String TOP_EVENTS_KEY = "stats:top_events";
-    private static final String USER_EVENT_COUNT_KEY = "stats:user_event_count";
+    private static final String USER_EVENT_COUNT_KEY = HeavyHitterTracker.LEADERBOARD_KEY;
     private static final String HOURLY_STATS_KEY = "stats:hourly:%s";
     private static final String DAILY_STATS_KEY = "stats:daily:%s";
     
@@ -91,24 +97,25 @@ public class CacheService {
     }
     
     /**
-     * 更新事件类型统计
+     * 更新事件类型统计 (写入写后聚合器，由其定期批量刷新到Redis)
+     * 小时/日统计按事件时间分桶，消费积压时事件仍落入其发生的时段
      */
-    public void updateEventTypeStats(String eventType) {
+    public void updateEventTypeStats(String eventType, LocalDateTime eventTime) {
         try {
             // 更新总体事件类型计数
-            redisTemplate.opsForZSet().incrementScore(EVENT_TYPE_COUNT_KEY, eventType, 1);
+            statsAggregator.increment(EVENT_TYPE_COUNT_KEY, eventType, 1, 0);
+            
+            LocalDateTime bucketTime = eventTime != null ? eventTime : LocalDateTime.now();
             
             // 更新小时级别统计
-            String currentHour = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH"));
-            String hourlyKey = String.format(HOURLY_STATS_KEY, currentHour);
-            redisTemplate.opsForZSet().incrementScore(hourlyKey, eventType, 1);
-            redisTemplate.expire(hourlyKey, 24 * 60 * 60, TimeUnit.SECONDS); // 24小时过期
+            String eventHour = bucketTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH"));
+            String hourlyKey = String.format(HOURLY_STATS_KEY, eventHour);
+            statsAggregator.increment(hourlyKey, eventType, 1, 24 * 60 * 60); // 24小时过期
             
             // 更新日级别统计
-            String currentDay = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            String dailyKey = String.format(DAILY_STATS_KEY, currentDay);
-            redisTemplate.opsForZSet().incrementScore(dailyKey, eventType, 1);
-            redisTemplate.expire(dailyKey, 7 * 24 * 60 * 60, TimeUnit.SECONDS); // 7天过期
+            String eventDay = bucketTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+            String dailyKey = String.format(DAILY_STATS_KEY, eventDay);
+            statsAggregator.increment(dailyKey, eventType, 1, 7 * 24 * 60 * 60); // 7天过期
             
             log.debug("Updated event type stats for: {}", eventType);
             
@@ -118,11 +125,12 @@ public class CacheService {
     }
     
     /**
-     * 更新用户活跃度统计
+     * 更新用户活跃度统计 (写入本地高频项摘要，由其定期合并到固定容量的排行榜)
+     * 同时按事件时间计入固定容量的小时活跃度桶，供查询服务合并最近N小时的排行榜
      */
-    public void updateUserActivityStats(String userId) {
+    public void updateUserActivityStats(String userId, LocalDateTime eventTime) {
         try {
-            redisTemplate.opsForZSet().incrementScore(USER_EVENT_COUNT_KEY, userId, 1);
+            heavyHitterTracker.offer(userId, eventTime != null ? eventTime : LocalDateTime.now());
             log.debug("Updated user activity stats for: {}", userId);
             
         } catch (Exception e) {
@@ -130,6 +138,18 @@ public class CacheService {
         }
     }
     
+    /**
+     * 更新按时间衰减的用户和事件类型趋势分数
+     */
+    public void updateTrendingScores(UserBehaviorEvent event) {
+        try {
+            trendingService.record(event.getUserId(), event.getEventType(), event.getEventTime());
+            
+        } catch (Exception e) {
+            log.error("Error updating trending scores for user: {}", event.getUserId(), e);
+        }
+    }
+    
     /**
      * 获取热门事件类型排行榜
      */
@@ -164,6 +184,32 @@ public class CacheService {
         }
     }
     
+    /**
+     * 获取按时间衰减的事件类型趋势排行榜
+     */
+    public Set<ZSetOperations.TypedTuple<Object>> getTrendingEventTypes(int topN) {
+        try {
+            return trendingService.getTrending(TrendingDecay.EVENT_TYPES, topN);
+            
+        } catch (Exception e) {
+            log.error("Error retrieving trending event types", e);
+            return Set.of();
+        }
+    }
+    
+    /**
+     * 获取按时间衰减的用户趋势排行榜
+     */
+    public Set<ZSetOperations.TypedTuple<Object>> getTrendingUsers(int topN) {
+        try {
+            return trendingService.getTrending(TrendingDecay.USERS, topN);
+            
+        } catch (Exception e) {
+            log.error("Error retrieving trending users", e);
+            return Set.of();
+        }
+    }
+    
     /**
      * 获取指定时间段的事件统计
      */
@@ -189,23 +235,13 @@ public class CacheService {
     }
     
     /**
-     * 缓存热门数据到专门的key中
+     * 缓存热门数据到专门的key中 (原子替换，读者不会看到空集合或部分数据)
      */
     public void cacheTopEvents(Set<ZSetOperations.TypedTuple<Object>> topEvents) {
         try {
-            // 清空旧数据
-            redisTemplate.delete(TOP_EVENTS_KEY);
+            long version = snapshotPublisher.publishSortedSet(TOP_EVENTS_KEY, topEvents, statsTtl);
             
-            // 添加新数据
-            for (ZSetOperations.TypedTuple<Object> event : topEvents) {
-                redisTemplate.opsForZSet().add(TOP_EVENTS_KEY, 
-                        event.getValue(), event.getScore());
-            }
-            
-            // 设置过期时间
-            redisTemplate.expire(TOP_EVENTS_KEY, statsTtl, TimeUnit.SECONDS);
-            
-            log.info("Cached {} top events", topEvents.size());
+            log.info("Cached {} top events (version {})", topEvents.size(), version);
             
         } catch (Exception e) {
             log.error("Error caching top events", e);
@@ -234,10 +270,8 @@ public class CacheService {
      * 检查Redis连接状态
      */
     public boolean isRedisConnected() {
-        try {
-            String result = redisTemplate.getConnectionFactory()
-                    .getConnection().ping();
-            return "PONG".equals(result);
+        try (RedisConnection connection = redisTemplate.getConnectionFactory().getConnection()) {
+            return "PONG".equals(connection.ping());
         } catch (Exception e) {
             log.error("Redis connection check failed", e);
             return false;
@@ -254,12 +288,21 @@ public class CacheService {
             stats.append("Event Type Count Keys: ")
                  .append(redisTemplate.opsForZSet().count(EVENT_TYPE_COUNT_KEY, 0, Double.MAX_VALUE))
                  .append("\n");
-            stats.append("User Activity Count Keys: ")
-                 .append(redisTemplate.opsForZSet().count(USER_EVENT_COUNT_KEY, 0, Double.MAX_VALUE))
+            stats.append("User Activity Leaderboard Size: ")
+                 .append(redisTemplate.opsForZSet().zCard(USER_EVENT_COUNT_KEY))
                  .append("\n");
             stats.append("Top Events Cached: ")
                  .append(redisTemplate.opsForZSet().count(TOP_EVENTS_KEY, 0, Double.MAX_VALUE))
                  .append("\n");
+            stats.append("Write-behind Aggregator: ")
+                 .append(statsAggregator.getAggregatorStats())
+                 .append("\n");
+            stats.append("Trending: ")
+                 .append(trendingService.getTrendingStats())
+                 .append("\n");
+            stats.append("Heavy Hitters: ")
+                 .append(heavyHitterTracker.getHeavyHitterStats())
+                 .append("\n");
             
             return stats.toString();
         } catch (Exception e) {
@@ -0,0 +1,342 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.consumer.sketch.SpaceSaving;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 活跃用户高频项跟踪
+ *
+ * 每个消费者实例在内存中维护固定总容量的 Space-Saving 摘要，定期把本周期的计数合并进
+ * Redis 中同样固定容量的排行榜 stats:user_heavy_hitters。合并脚本在 Redis 端执行同样的
+ * Space-Saving 规则：已在榜上的用户累加；榜满时替换最低分用户并继承其分数。
+ * 因此排行榜大小恒定，分数是真实次数的上界：本地摘要每周期高估不超过 N周期 / 本地容量，
+ * 排行榜再高估不超过 N / 排行榜容量 (N 为所有实例累计合并的事件数，同样记录在Redis中)，
+ * 超过该阈值的用户一定在榜上。
+ *
+ * 本地摘要按用户哈希分成若干分片，每个分片各自加锁，消费线程只在同一分片上竞争；
+ * 同一用户总落在同一分片，合并时直接拼接各分片的计数器即可。
+ *
+ * 按事件时间的小时活跃度桶 stats:users:hourly:{yyyy-MM-dd-HH} 用同样的方式维护：每个小时一组
+ * 分片摘要，合并进容量为 heavy-hitters.hourly.capacity 的小时排行榜。每个桶的成员数和每次合并的
+ * 写入量都有上限，查询服务合并最近7天的168个桶时也只处理有限个成员。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class HeavyHitterTracker {
+
+    public static final String LEADERBOARD_KEY = "stats:user_heavy_hitters";
+    public static final String LEADERBOARD_EVENTS_KEY = "stats:user_heavy_hitters:events";
+    public static final String USER_HOURLY_KEY = "stats:users:hourly:%s";
+    private static final String EVENTS_SUFFIX = ":events";
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+
+    /**
+     * KEYS[1] = 排行榜, KEYS[2] = 累计合并事件数; ARGV[1] = 容量, ARGV[2] = 本次事件数，
+     * ARGV[3] = 过期时间(秒, 0表示不设置)，之后为 成员, 增量 成对出现。返回所有实例累计合并的事件数
+     */
+    static final RedisScript<Long> MERGE_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1])\n"
+            + "for i = 4, #ARGV, 2 do\n"
+            + "  local member = ARGV[i]\n"
+            + "  local delta = tonumber(ARGV[i + 1])\n"
+            + "  if redis.call('ZSCORE', KEYS[1], member) then\n"
+            + "    redis.call('ZINCRBY', KEYS[1], delta, member)\n"
+            + "  elseif redis.call('ZCARD', KEYS[1]) < capacity then\n"
+            + "    redis.call('ZADD', KEYS[1], delta, member)\n"
+            + "  else\n"
+            + "    local min = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')\n"
+            + "    redis.call('ZREM', KEYS[1], min[1])\n"
+            + "    redis.call('ZADD', KEYS[1], tonumber(min[2]) + delta, member)\n"
+            + "  end\n"
+            + "end\n"
+            + "local total = redis.call('INCRBY', KEYS[2], tonumber(ARGV[2]))\n"
+            + "local ttl = tonumber(ARGV[3])\n"
+            + "if ttl > 0 then\n"
+            + "  redis.call('EXPIRE', KEYS[1], ttl)\n"
+            + "  redis.call('EXPIRE', KEYS[2], ttl)\n"
+            + "end\n"
+            + "return total",
+            Long.class);
+
+    /**
+     * 小时桶的一个分片
+     */
+    private record HourShard(String key, int shard) {}
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SpaceSaving[] shards;
+    private final int localCapacity;
+    private final int leaderboardCapacity;
+    private final ConcurrentHashMap<HourShard, SpaceSaving> hourlyShards = new ConcurrentHashMap<>();
+    private final int hourlyShardCapacity;
+    private final int hourlyCapacity;
+    private final long hourlyTtlSeconds;
+    private final int shutdownAttempts;
+    private final ReentrantLock mergeLock = new ReentrantLock();
+
+    private final AtomicLong mergeCount = new AtomicLong(0);
+    private final AtomicLong failedMerges = new AtomicLong(0);
+    private final AtomicLong mergedEvents = new AtomicLong(0);
+    private final AtomicLong leaderboardEvents = new AtomicLong(0);
+
+    public HeavyHitterTracker(RedisTemplate<String, Object> redisTemplate,
+                              @Value("${heavy-hitters.local.capacity:1000}") int localCapacity,
+                              @Value("${heavy-hitters.local.shards:16}") int shardCount,
+                              @Value("${heavy-hitters.leaderboard.capacity:1000}") int leaderboardCapacity,
+                              @Value("${heavy-hitters.hourly.capacity:1000}") int hourlyCapacity,
+                              @Value("${cache.user.hourly.ttl:608400}") long hourlyTtlSeconds,
+                              @Value("${heavy-hitters.merge.shutdown-attempts:3}") int shutdownAttempts) {
+        this.redisTemplate = redisTemplate;
+        // 用户按哈希均匀分到各分片，每个分片的事件数约为 N / 分片数，
+        // 分片容量取 总容量 / 分片数 时高估上界仍约为 N / 本地容量
+        this.shards = new SpaceSaving[Math.max(1, shardCount)];
+        int shardCapacity = shardCapacity(localCapacity);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new SpaceSaving(shardCapacity);
+        }
+        this.localCapacity = shardCapacity * shards.length;
+        this.leaderboardCapacity = leaderboardCapacity;
+        this.hourlyShardCapacity = shardCapacity(hourlyCapacity);
+        this.hourlyCapacity = hourlyCapacity;
+        this.hourlyTtlSeconds = hourlyTtlSeconds;
+        this.shutdownAttempts = shutdownAttempts;
+    }
+
+    private int shardCapacity(int capacity) {
+        return Math.max(1, (capacity + shards.length - 1) / shards.length);
+    }
+
+    /**
+     * 记录用户的一次事件，同时计入事件时间所在的小时桶
+     */
+    public void offer(String userId, LocalDateTime eventTime) {
+        SpaceSaving shard = shardOf(userId);
+        synchronized (shard) {
+            shard.offer(userId, 1);
+        }
+        String hourKey = String.format(USER_HOURLY_KEY, eventTime.format(HOUR_FORMAT));
+        offerHourly(hourKey, userId, 1);
+    }
+
+    private SpaceSaving shardOf(String userId) {
+        return shards[Math.floorMod(userId.hashCode(), shards.length)];
+    }
+
+    /**
+     * 计入小时桶分片。合并线程会在持有分片锁时移除空分片，
+     * 因此加锁后确认分片仍在表中，否则重新取一个，保证计数不会写进已移除的分片。
+     */
+    private void offerHourly(String hourKey, String userId, long count) {
+        HourShard id = new HourShard(hourKey, Math.floorMod(userId.hashCode(), shards.length));
+        while (true) {
+            SpaceSaving shard = hourlyShards.computeIfAbsent(id, k -> new SpaceSaving(hourlyShardCapacity));
+            synchronized (shard) {
+                if (hourlyShards.get(id) == shard) {
+                    shard.offer(userId, count);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 定时合并
+     */
+    @Scheduled(fixedDelayString = "${heavy-hitters.merge.interval:10000}")
+    public void scheduledMerge() {
+        merge();
+    }
+
+    /**
+     * 把本地摘要合并进Redis排行榜和小时桶。已有合并在进行时直接返回。
+     *
+     * @return 本次合并的计数器数
+     */
+    public int merge() {
+        if (!mergeLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return mergeLocked();
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    private int mergeLocked() {
+        return mergeLeaderboard() + mergeHourly();
+    }
+
+    private int mergeLeaderboard() {
+        List<SpaceSaving.Counter> counters = new ArrayList<>();
+        long events = 0;
+        for (SpaceSaving shard : shards) {
+            synchronized (shard) {
+                events += shard.total();
+                counters.addAll(shard.drain());
+            }
+        }
+        if (counters.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            Long total = mergeInto(LEADERBOARD_KEY, leaderboardCapacity, events, 0, counters);
+            mergeCount.incrementAndGet();
+            mergedEvents.addAndGet(events);
+            if (total != null) {
+                leaderboardEvents.set(total);
+            }
+            log.debug("Merged {} heavy-hitter counters into {} ({} events in total)", counters.size(),
+                    LEADERBOARD_KEY, total);
+            return counters.size();
+        } catch (Exception e) {
+            failedMerges.incrementAndGet();
+            log.error("Error merging {} heavy-hitter counters, re-queueing", counters.size(), e);
+            for (SpaceSaving.Counter counter : counters) {
+                SpaceSaving shard = shardOf(counter.item());
+                synchronized (shard) {
+                    shard.offer(counter.item(), counter.count());
+                }
+            }
+            return 0;
+        }
+    }
+
+    private int mergeHourly() {
+        Map<String, List<SpaceSaving.Counter>> byHour = new HashMap<>();
+        Map<String, Long> eventsByHour = new HashMap<>();
+        for (Map.Entry<HourShard, SpaceSaving> entry : hourlyShards.entrySet()) {
+            SpaceSaving shard = entry.getValue();
+            synchronized (shard) {
+                if (shard.size() == 0) {
+                    // 上一周期以来没有新事件的分片 (通常是已过去的小时) 被移除
+                    hourlyShards.remove(entry.getKey(), shard);
+                    continue;
+                }
+                String hourKey = entry.getKey().key();
+                eventsByHour.merge(hourKey, shard.total(), Long::sum);
+                byHour.computeIfAbsent(hourKey, k -> new ArrayList<>()).addAll(shard.drain());
+            }
+        }
+
+        int merged = 0;
+        for (Map.Entry<String, List<SpaceSaving.Counter>> entry : byHour.entrySet()) {
+            String hourKey = entry.getKey();
+            List<SpaceSaving.Counter> counters = entry.getValue();
+            try {
+                mergeInto(hourKey, hourlyCapacity, eventsByHour.get(hourKey), hourlyTtlSeconds, counters);
+                merged += counters.size();
+            } catch (Exception e) {
+                failedMerges.incrementAndGet();
+                log.error("Error merging {} counters into {}, re-queueing", counters.size(), hourKey, e);
+                counters.forEach(c -> offerHourly(hourKey, c.item(), c.count()));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 用合并脚本把计数器写入一个固定容量的排行榜
+     *
+     * @return 该排行榜累计合并的事件数
+     */
+    private Long mergeInto(String key, int capacity, long events, long ttlSeconds, List<SpaceSaving.Counter> counters) {
+        // 高频用户先合并，优先占据排行榜中的位置
+        counters.sort(Comparator.comparingLong(SpaceSaving.Counter::count).reversed());
+        List<Object> args = new ArrayList<>(counters.size() * 2 + 3);
+        args.add(capacity);
+        args.add(events);
+        args.add(ttlSeconds);
+        for (SpaceSaving.Counter counter : counters) {
+            args.add(counter.item());
+            args.add(counter.count());
+        }
+        String eventsKey = LEADERBOARD_KEY.equals(key) ? LEADERBOARD_EVENTS_KEY : key + EVENTS_SUFFIX;
+        return redisTemplate.execute(MERGE_SCRIPT, List.of(key, eventsKey), args.toArray());
+    }
+
+    /**
+     * 停机时把本地摘要合并出去，失败时重试若干次
+     */
+    @PreDestroy
+    public void shutdown() {
+        mergeLock.lock();
+        try {
+            for (int attempt = 1; attempt <= shutdownAttempts && pendingCounters() > 0; attempt++) {
+                int merged = mergeLocked();
+                log.info("Shutdown merge attempt {} merged {} heavy-hitter counters", attempt, merged);
+            }
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    private int pendingCounters() {
+        int size = 0;
+        for (SpaceSaving shard : shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        for (SpaceSaving shard : hourlyShards.values()) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 获取高频项跟踪统计信息
+     */
+    public Map<String, Object> getHeavyHitterStats() {
+        int counters = 0;
+        long events = 0;
+        long errorBound = 0;
+        for (SpaceSaving shard : shards) {
+            synchronized (shard) {
+                counters += shard.size();
+                events += shard.total();
+                errorBound = Math.max(errorBound, shard.errorBound());
+            }
+        }
+        return Map.ofEntries(
+                Map.entry("localShards", shards.length),
+                Map.entry("localCounters", counters),
+                Map.entry("localCapacity", localCapacity),
+                Map.entry("localEvents", events),
+                Map.entry("localErrorBound", errorBound),
+                Map.entry("leaderboardCapacity", leaderboardCapacity),
+                Map.entry("mergedEvents", mergedEvents.get()),
+                Map.entry("leaderboardEvents", leaderboardEvents.get()),
+                Map.entry("leaderboardErrorBound", leaderboardEvents.get() / leaderboardCapacity),
+                Map.entry("hourlyCapacity", hourlyCapacity),
+                Map.entry("hourlyShards", hourlyShards.size()),
+                Map.entry("mergeCount", mergeCount.get()),
+                Map.entry("failedMerges", failedMerges.get())
+        );
+    }
+}
@@ -1,12 +1,14 @@
 package com.microservice.user_behaviour.consumer.service;
 
+import java.time.DayOfWeek;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -14,6 +16,9 @@ import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.microservice.user_behaviour.consumer.anomaly.RateAnomalyDetector;
+import com.microservice.user_behaviour.consumer.sketch.HeatMatrix;
+
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,6 +29,12 @@ import lombok.extern.slf4j.Slf4j;
 public class HotDataAnalysisService {
 
     private final CacheService cacheService;
+    private final RateAnomalyDetector anomalyDetector;
+    private final UserHeatMatrixWriter heatMatrixWriter;
+    
+    private final String instanceTag = Long.toHexString(System.currentTimeMillis());
+    private final AtomicReference<HotDataSnapshot> snapshot = new AtomicReference<>(
+            new HotDataSnapshot(0, "\"" + instanceTag + "-0\"", LocalDateTime.now(), Map.of()));
     
     @Value("${hotdata.analysis.top.events:10}")
     private int topEventsCount;
@@ -51,8 +62,7 @@ public class HotDataAnalysisService {
             // 分析活跃用户
             analyzeActiveUsers();
             
-            // 分析趋势数据
-            analyzeTrendingData();
+            // 趋势变化由 RateAnomalyDetector 按分钟实时检测
             
             log.info("Hot data analysis completed successfully");
             
@@ -104,43 +114,6 @@ public class HotDataAnalysisService {
         }
     }
     
-    /**
-     * 分析趋势数据
-     */
-    private void analyzeTrendingData() {
-        String currentHour = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH"));
-        String previousHour = LocalDateTime.now().minusHours(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH"));
-        
-        Set<ZSetOperations.TypedTuple<Object>> currentHourStats = 
-                cacheService.getEventStatsForPeriod(currentHour, topEventsCount);
-        Set<ZSetOperations.TypedTuple<Object>> previousHourStats = 
-                cacheService.getEventStatsForPeriod(previousHour, topEventsCount);
-        
-        Map<String, Double> currentMap = currentHourStats.stream()
-                .collect(Collectors.toMap(
-                        tuple -> (String) tuple.getValue(),
-                        ZSetOperations.TypedTuple::getScore
-                ));
-        
-        Map<String, Double> previousMap = previousHourStats.stream()
-                .collect(Collectors.toMap(
-                        tuple -> (String) tuple.getValue(),
-                        ZSetOperations.TypedTuple::getScore
-                ));
-        
-        log.info("Trending analysis for current hour vs previous hour:");
-        currentMap.forEach((eventType, currentCount) -> {
-            Double previousCount = previousMap.getOrDefault(eventType, 0.0);
-            double growthRate = previousCount > 0 ? 
-                    ((currentCount - previousCount) / previousCount) * 100 : 100.0;
-            
-            if (Math.abs(growthRate) > 20) { // 增长率超过20%才记录
-                log.info("Event Type: {}, Current: {}, Previous: {}, Growth: {:.2f}%", 
-                        eventType, currentCount.intValue(), previousCount.intValue(), growthRate);
-            }
-        });
-    }
-    
     /**
      * 获取热度等级
      */
@@ -169,73 +142,110 @@ public class HotDataAnalysisService {
         }
     }
     
+    /**
+     * 定时重建热点数据快照，内容变化时原子替换并递增版本
+     */
+    @Scheduled(fixedDelayString = "${hotdata.snapshot.interval:3000}")
+    public void refreshSnapshot() {
+        try {
+            Map<String, Object> content = buildHotDataContent();
+            HotDataSnapshot current = snapshot.get();
+            if (!content.equals(current.report())) {
+                long version = current.version() + 1;
+                snapshot.set(new HotDataSnapshot(version, "\"" + instanceTag + "-" + version + "\"",
+                        LocalDateTime.now(), content));
+                log.debug("Hot data snapshot updated to version {}", version);
+            }
+        } catch (Exception e) {
+            log.error("Error refreshing hot data snapshot", e);
+        }
+    }
+    
+    /**
+     * 获取当前热点数据快照 (内存读取，不访问Redis)
+     */
+    public HotDataSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    
     /**
      * 获取实时热点数据报告
      */
     public Map<String, Object> getHotDataReport() {
+        return snapshot.get().toReport();
+    }
+    
+    /**
+     * 构建快照内容。只包含会随数据变化的部分，使内容不变时版本也不变
+     */
+    private Map<String, Object> buildHotDataContent() {
         Map<String, Object> report = new HashMap<>();
         
-        try {
-            // 获取热门事件类型
-            Set<ZSetOperations.TypedTuple<Object>> topEvents = 
-                    cacheService.getTopEventTypes(topEventsCount);
-            report.put("topEventTypes", topEvents);
-            
-            // 获取活跃用户
-            Set<ZSetOperations.TypedTuple<Object>> topUsers = 
-                    cacheService.getTopActiveUsers(topUsersCount);
-            report.put("topActiveUsers", topUsers);
-            
-            // 获取当前小时统计
-            String currentHour = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH"));
-            Set<ZSetOperations.TypedTuple<Object>> hourlyStats = 
-                    cacheService.getEventStatsForPeriod(currentHour, topEventsCount);
-            report.put("currentHourStats", hourlyStats);
-            
-            // 获取今日统计
-            String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            Set<ZSetOperations.TypedTuple<Object>> dailyStats = 
-                    cacheService.getEventStatsForPeriod(today, topEventsCount);
-            report.put("todayStats", dailyStats);
-            
-            // 添加缓存统计信息
-            report.put("cacheStats", cacheService.getCacheStats());
-            report.put("redisConnected", cacheService.isRedisConnected());
-            report.put("reportTime", LocalDateTime.now());
-            
-        } catch (Exception e) {
-            log.error("Error generating hot data report", e);
-            report.put("error", "Failed to generate report: " + e.getMessage());
-        }
+        // 获取热门事件类型
+        report.put("topEventTypes", cacheService.getTopEventTypes(topEventsCount));
+        
+        // 获取活跃用户
+        report.put("topActiveUsers", cacheService.getTopActiveUsers(topUsersCount));
+        
+        // 获取当前小时统计
+        String currentHour = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH"));
+        report.put("currentHourStats", cacheService.getEventStatsForPeriod(currentHour, topEventsCount));
+        
+        // 获取今日统计
+        String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        report.put("todayStats", cacheService.getEventStatsForPeriod(today, topEventsCount));
         
+        // 内存中的最近速率异常
+        report.put("recentAnomalies", anomalyDetector.getRecentAlerts());
+        
+        report.put("redisConnected", cacheService.isRedisConnected());
         return report;
     }
     
     /**
      * 获取用户行为热度分析
+     *
+     * 读取用户的 星期小时 × 事件类型 热度矩阵 (一次GET)，覆盖热度矩阵保留期内的全部事件
      */
     public Map<String, Object> getUserBehaviorHeatMap(String userId) {
         Map<String, Object> heatMap = new HashMap<>();
         
         try {
-            // 获取用户最近事件
-            List<com.microservice.user_behaviour.model.UserBehaviorEvent> recentEvents = 
-                    cacheService.getUserRecentEvents(userId, 50);
+            Map<String, int[]> matrix = heatMatrixWriter.read(userId);
             
-            // 分析事件类型分布
-            Map<String, Long> eventTypeDistribution = recentEvents.stream()
-                    .collect(Collectors.groupingBy(
-                            com.microservice.user_behaviour.model.UserBehaviorEvent::getEventType,
-                            Collectors.counting()
-                    ));
+            // 按事件类型和星期小时汇总
+            Map<String, Long> eventTypeDistribution = new LinkedHashMap<>();
+            long[] hourOfWeekTotals = new long[HeatMatrix.HOURS_PER_WEEK];
+            matrix.forEach((eventType, hours) -> {
+                long total = 0;
+                for (int hour = 0; hour < hours.length; hour++) {
+                    total += hours[hour];
+                    hourOfWeekTotals[hour] += hours[hour];
+                }
+                eventTypeDistribution.put(eventType, total);
+            });
+            long totalEventCount = eventTypeDistribution.values().stream().mapToLong(Long::longValue).sum();
             
             heatMap.put("userId", userId);
-            heatMap.put("recentEventCount", recentEvents.size());
+            heatMap.put("totalEventCount", totalEventCount);
             heatMap.put("eventTypeDistribution", eventTypeDistribution);
+            heatMap.put("hourOfWeek", hourOfWeekTotals);
+            heatMap.put("matrix", matrix);
             heatMap.put("analysisTime", LocalDateTime.now());
             
+            if (totalEventCount > 0) {
+                int peak = 0;
+                for (int hour = 1; hour < hourOfWeekTotals.length; hour++) {
+                    if (hourOfWeekTotals[hour] > hourOfWeekTotals[peak]) {
+                        peak = hour;
+                    }
+                }
+                heatMap.put("peakDayOfWeek", DayOfWeek.of(peak / 24 + 1).name());
+                heatMap.put("peakHour", peak % 24);
+            }
+            
             // 计算用户活跃度评分
-            double activityScore = calculateUserActivityScore(recentEvents);
+            double activityScore = calculateUserActivityScore(totalEventCount, eventTypeDistribution.size());
             heatMap.put("activityScore", activityScore);
             heatMap.put("activityLevel", getActivityLevel(activityScore));
             
@@ -250,22 +260,17 @@ public class HotDataAnalysisService {
     /**
      * 计算用户活跃度评分
      */
-    private double calculateUserActivityScore(List<com.microservice.user_behaviour.model.UserBehaviorEvent> events) {
-        if (events.isEmpty()) {
+    private double calculateUserActivityScore(long eventCount, int eventTypeCount) {
+        if (eventCount == 0) {
             return 0.0;
         }
         
         // 基于事件数量和类型多样性计算评分
-        double baseScore = events.size();
+        double baseScore = eventCount;
         
         // 事件类型多样性加分
-        long uniqueEventTypes = events.stream()
-                .map(com.microservice.user_behaviour.model.UserBehaviorEvent::getEventType)
-                .distinct()
-                .count();
-        
-        double diversityBonus = uniqueEventTypes * 10;
+        double diversityBonus = eventTypeCount * 10;
         
         return baseScore + diversityBonus;
     }
-} 
\ No newline at end of file
+} 
@@ -0,0 +1,28 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 不可变的热点数据快照
+ *
+ * version 只在报告内容变化时递增；etag 由实例启动标识和 version 组成，重启后不会与旧值冲突。
+ */
+public record HotDataSnapshot(long version, String etag, LocalDateTime generatedAt, Map<String, Object> report) {
+
+    public HotDataSnapshot {
+        report = Collections.unmodifiableMap(new HashMap<>(report));
+    }
+
+    /**
+     * 带版本和生成时间的报告
+     */
+    public Map<String, Object> toReport() {
+        Map<String, Object> withMeta = new HashMap<>(report);
+        withMeta.put("version", version);
+        withMeta.put("reportTime", generatedAt);
+        return withMeta;
+    }
+}
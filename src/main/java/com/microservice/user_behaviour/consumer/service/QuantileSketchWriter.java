@@ -0,0 +1,145 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.QuantileSketch;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * eventData 数值字段的分位数草图写入
+ *
+ * quantile.fields 配置要提取的 事件类型:字段 (如 PURCHASE:amount)。每个 事件类型 × 字段 × 小时/天(事件时间)
+ * 一个 {@link QuantileSketch} Hash：sketch:{eventType}:{field}:hour:{yyyy-MM-dd-HH} / :day:{yyyy-MM-dd}，
+ * 字段为对数桶编号，值为计数。每个批次先在内存中按桶折叠，再通过一次 pipeline HINCRBY。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class QuantileSketchWriter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<String, List<String>> fieldsByEventType;
+    private final QuantileSketch bucketing;
+    private final long hourTtl;
+    private final long dayTtl;
+
+    public QuantileSketchWriter(StringRedisTemplate stringRedisTemplate,
+                                @Value("${quantile.fields:PURCHASE:amount,SEARCH:results}") String fields,
+                                @Value("${quantile.relative-accuracy:0.01}") double relativeAccuracy,
+                                @Value("${quantile.hour.ttl:691200}") long hourTtl,
+                                @Value("${quantile.day.ttl:34560000}") long dayTtl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.fieldsByEventType = parseFields(fields);
+        this.bucketing = new QuantileSketch(relativeAccuracy);
+        this.hourTtl = hourTtl;
+        this.dayTtl = dayTtl;
+        log.info("Quantile sketches enabled for {}", fieldsByEventType);
+    }
+
+    /**
+     * 解析 "PURCHASE:amount,SEARCH:results"
+     */
+    static Map<String, List<String>> parseFields(String fields) {
+        Map<String, List<String>> parsed = new HashMap<>();
+        for (String entry : fields.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                if (!entry.isBlank()) {
+                    log.warn("Ignoring malformed quantile field '{}', expected EVENT_TYPE:field", entry);
+                }
+                continue;
+            }
+            parsed.computeIfAbsent(parts[0].trim(), k -> new ArrayList<>()).add(parts[1].trim());
+        }
+        return parsed;
+    }
+
+    /**
+     * 把一批事件中配置的数值字段加入对应的草图
+     */
+    public void update(List<UserBehaviorEvent> events) {
+        Map<String, Map<String, Long>> hourly = new HashMap<>();
+        Map<String, Map<String, Long>> daily = new HashMap<>();
+        for (UserBehaviorEvent event : events) {
+            List<String> fields = fieldsByEventType.get(event.getEventType());
+            if (fields == null || event.getEventData() == null) {
+                continue;
+            }
+            LocalDateTime eventTime = event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now();
+            String hour = TimeBuckets.hourLabel(eventTime);
+            String day = TimeBuckets.dayLabel(eventTime);
+            for (String field : fields) {
+                Double value = numericValue(event.getEventData().get(field));
+                if (value == null) {
+                    continue;
+                }
+                String bucket = bucketing.bucketField(value);
+                hourly.computeIfAbsent(String.format(TimeBuckets.QUANTILE_HOUR_KEY, event.getEventType(), field, hour), k -> new HashMap<>())
+                        .merge(bucket, 1L, Long::sum);
+                daily.computeIfAbsent(String.format(TimeBuckets.QUANTILE_DAY_KEY, event.getEventType(), field, day), k -> new HashMap<>())
+                        .merge(bucket, 1L, Long::sum);
+            }
+        }
+        if (hourly.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    write(ops, hourly, hourTtl);
+                    write(ops, daily, dayTtl);
+                    return null;
+                }
+            });
+            log.debug("Updated {} hourly quantile sketches", hourly.size());
+        } catch (Exception e) {
+            log.error("Error updating quantile sketches", e);
+        }
+    }
+
+    private void write(RedisOperations<String, String> ops, Map<String, Map<String, Long>> sketches, long ttl) {
+        sketches.forEach((key, buckets) -> {
+            buckets.forEach((bucket, count) -> ops.opsForHash().increment(key, bucket, count));
+            ops.expire(key, ttl, TimeUnit.SECONDS);
+        });
+    }
+
+    /**
+     * eventData 中的数值；JSON反序列化后可能是任意 Number 或数字字符串
+     */
+    private static Double numericValue(Object raw) {
+        double value;
+        if (raw instanceof Number number) {
+            value = number.doubleValue();
+        } else if (raw instanceof String text) {
+            try {
+                value = Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return Double.isFinite(value) ? value : null;
+    }
+}
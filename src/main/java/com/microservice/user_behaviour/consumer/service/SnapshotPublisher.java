@@ -0,0 +1,103 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 派生数据集的原子发布
+ *
+ * 新内容先整体写入一个临时key，再 RENAME 到目标key，并递增 {key}:version，
+ * 全部命令放在同一个 MULTI/EXEC 事务中一次提交：读者只会看到完整的旧版本或完整的新版本，
+ * 事务未提交时临时key也不会残留。内容为空时直接删除目标key。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class SnapshotPublisher {
+
+    private static final String VERSION_KEY = "%s:version";
+    private static final String TEMP_KEY = "%s:tmp:%s:%d";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final String instanceTag = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    /**
+     * 原子替换一个有序集合
+     *
+     * @return 发布后的版本号
+     */
+    public long publishSortedSet(String key, Set<ZSetOperations.TypedTuple<Object>> members, long ttlSeconds) {
+        return publish(key, members == null || members.isEmpty(), ttlSeconds,
+                (ops, tempKey) -> ops.opsForZSet().add(tempKey, members));
+    }
+
+    /**
+     * 原子替换一个Hash
+     *
+     * @return 发布后的版本号
+     */
+    public long publishHash(String key, Map<String, Object> entries, long ttlSeconds) {
+        return publish(key, entries == null || entries.isEmpty(), ttlSeconds,
+                (ops, tempKey) -> ops.opsForHash().putAll(tempKey, entries));
+    }
+
+    /**
+     * 当前已发布的版本号，从未发布时为0
+     */
+    public long currentVersion(String key) {
+        Object version = redisTemplate.opsForValue().get(String.format(VERSION_KEY, key));
+        return version instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private long publish(String key, boolean empty, long ttlSeconds,
+                         BiConsumer<RedisOperations<String, Object>, String> writer) {
+        String tempKey = String.format(TEMP_KEY, key, instanceTag, sequence.incrementAndGet());
+        String versionKey = String.format(VERSION_KEY, key);
+
+        List<Object> results = redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.multi();
+                if (empty) {
+                    ops.delete(key);
+                } else {
+                    writer.accept(ops, tempKey);
+                    if (ttlSeconds > 0) {
+                        ops.expire(tempKey, ttlSeconds, TimeUnit.SECONDS);
+                    }
+                    ops.rename(tempKey, key);
+                }
+                ops.opsForValue().increment(versionKey);
+                return ops.exec();
+            }
+        });
+
+        if (results == null || results.isEmpty()) {
+            throw new IllegalStateException("Publishing snapshot " + key + " was not committed");
+        }
+        long version = ((Number) results.get(results.size() - 1)).longValue();
+        log.debug("Published snapshot {} version {}", key, version);
+        return version;
+    }
+}
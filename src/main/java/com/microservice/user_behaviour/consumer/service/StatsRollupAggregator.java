@@ -0,0 +1,252 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用户行为统计汇总表写后聚合器
+ *
+ * 按 用户 × 事件类型 × 来源 × 小时(事件时间) 在内存中累计计数，每隔 rollup.flush.interval
+ * 毫秒在一个事务内批量 upsert 到小时表 user_behavior_stats_hourly 和日表 user_behavior_stats
+ * (计数累加)。查询服务的汇总接口直接读取这两张表，不再对原始事件表做 GROUP BY。
+ * 写入失败时整批回滚并重新入队；与其他写后统计一样，进程崩溃会丢失最多一个周期的增量。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class StatsRollupAggregator {
+
+    static final String HOURLY_UPSERT_SQL = "INSERT INTO user_behavior_stats_hourly "
+            + "(user_id, event_type, source, stat_hour, event_count, last_event_time) VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), "
+            + "last_event_time = GREATEST(COALESCE(last_event_time, VALUES(last_event_time)), VALUES(last_event_time))";
+
+    static final String DAILY_UPSERT_SQL = "INSERT INTO user_behavior_stats "
+            + "(user_id, event_type, source, stat_date, event_count, last_event_time) VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE event_count = event_count + VALUES(event_count), "
+            + "last_event_time = GREATEST(COALESCE(last_event_time, VALUES(last_event_time)), VALUES(last_event_time))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${rollup.flush.shutdown-attempts:3}")
+    private int shutdownAttempts;
+
+    private final ConcurrentHashMap<RollupKey, RollupCell> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicLong flushCount = new AtomicLong(0);
+    private final AtomicLong flushedRows = new AtomicLong(0);
+    private final AtomicLong failedFlushes = new AtomicLong(0);
+
+    /**
+     * 汇总维度: 用户 × 事件类型 × 来源 × 小时
+     */
+    record RollupKey(String userId, String eventType, String source, LocalDateTime hour) {}
+
+    /**
+     * 一次刷新中的一行增量
+     */
+    record RollupDelta(RollupKey key, long count, long lastEventTime) {}
+
+    private static final class RollupCell {
+        final LongAdder count = new LongAdder();
+        final LongAccumulator lastEventTime = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    }
+
+    private record DailyKey(String userId, String eventType, String source, LocalDate date) {}
+
+    /**
+     * 记录一个事件 (无锁)
+     */
+    public void record(UserBehaviorEvent event) {
+        if (event.getUserId() == null || event.getEventType() == null) {
+            return;
+        }
+        LocalDateTime eventTime = event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now();
+        RollupKey key = new RollupKey(event.getUserId(), event.getEventType(), Objects.toString(event.getSource(), ""),
+                eventTime.truncatedTo(ChronoUnit.HOURS));
+        add(key, 1, EventTimes.toMillis(eventTime));
+    }
+
+    private void add(RollupKey key, long count, long lastEventTime) {
+        RollupCell cell = pending.get(key);
+        if (cell == null) {
+            cell = pending.computeIfAbsent(key, k -> new RollupCell());
+        }
+        cell.count.add(count);
+        cell.lastEventTime.accumulate(lastEventTime);
+
+        // 与 StatsWriteBehindAggregator 相同: 单元格被刷新线程移除后由写入者取回残余增量
+        if (pending.get(key) != cell) {
+            long residual = cell.count.sumThenReset();
+            if (residual != 0) {
+                add(key, residual, cell.lastEventTime.get());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${rollup.flush.interval:5000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 把累计增量写入汇总表。已有刷新在进行时直接返回。
+     *
+     * @return 本次写入的小时行数
+     */
+    public int flush() {
+        if (!flushLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushLocked() {
+        List<RollupDelta> batch = drain();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(batch));
+            flushCount.incrementAndGet();
+            flushedRows.addAndGet(batch.size());
+            log.debug("Flushed {} rollup rows", batch.size());
+            return batch.size();
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            log.error("Error flushing {} rollup rows, re-queueing", batch.size(), e);
+            for (RollupDelta delta : batch) {
+                add(delta.key(), delta.count(), delta.lastEventTime());
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 取走所有非零增量；上一周期以来没有新增量的单元格被移除
+     */
+    List<RollupDelta> drain() {
+        List<RollupDelta> batch = new ArrayList<>();
+        for (Map.Entry<RollupKey, RollupCell> entry : pending.entrySet()) {
+            RollupKey key = entry.getKey();
+            RollupCell cell = entry.getValue();
+            long count = cell.count.sumThenReset();
+            if (count != 0) {
+                batch.add(new RollupDelta(key, count, cell.lastEventTime.get()));
+            } else if (pending.remove(key, cell)) {
+                long residual = cell.count.sumThenReset();
+                if (residual != 0) {
+                    batch.add(new RollupDelta(key, residual, cell.lastEventTime.get()));
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void write(List<RollupDelta> batch) {
+        // 固定的行顺序，避免多个消费者实例并发upsert同一批行时死锁
+        List<RollupDelta> hourly = new ArrayList<>(batch);
+        hourly.sort(Comparator.comparing((RollupDelta d) -> d.key().userId())
+                .thenComparing(d -> d.key().eventType())
+                .thenComparing(d -> d.key().source())
+                .thenComparing(d -> d.key().hour()));
+
+        TreeMap<DailyKey, long[]> daily = new TreeMap<>(Comparator.comparing(DailyKey::userId)
+                .thenComparing(DailyKey::eventType)
+                .thenComparing(DailyKey::source)
+                .thenComparing(DailyKey::date));
+        for (RollupDelta delta : hourly) {
+            RollupKey key = delta.key();
+            long[] row = daily.computeIfAbsent(
+                    new DailyKey(key.userId(), key.eventType(), key.source(), key.hour().toLocalDate()),
+                    k -> new long[] {0, Long.MIN_VALUE});
+            row[0] += delta.count();
+            row[1] = Math.max(row[1], delta.lastEventTime());
+        }
+
+        jdbcTemplate.batchUpdate(HOURLY_UPSERT_SQL, hourly, hourly.size(), (ps, delta) -> {
+            ps.setString(1, delta.key().userId());
+            ps.setString(2, delta.key().eventType());
+            ps.setString(3, delta.key().source());
+            ps.setTimestamp(4, Timestamp.valueOf(delta.key().hour()));
+            ps.setLong(5, delta.count());
+            ps.setTimestamp(6, Timestamp.valueOf(EventTimes.toLocalDateTime(delta.lastEventTime())));
+        });
+
+        List<Map.Entry<DailyKey, long[]>> dailyRows = new ArrayList<>(daily.entrySet());
+        jdbcTemplate.batchUpdate(DAILY_UPSERT_SQL, dailyRows, dailyRows.size(), (ps, row) -> {
+            ps.setString(1, row.getKey().userId());
+            ps.setString(2, row.getKey().eventType());
+            ps.setString(3, row.getKey().source());
+            ps.setObject(4, row.getKey().date());
+            ps.setLong(5, row.getValue()[0]);
+            ps.setTimestamp(6, Timestamp.valueOf(EventTimes.toLocalDateTime(row.getValue()[1])));
+        });
+    }
+
+    /**
+     * 停机时把剩余增量写入汇总表，失败时重试若干次
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushLock.lock();
+        try {
+            for (int attempt = 1; attempt <= shutdownAttempts && !pending.isEmpty(); attempt++) {
+                int written = flushLocked();
+                log.info("Shutdown rollup flush attempt {} wrote {} rows", attempt, written);
+            }
+            if (!pending.isEmpty()) {
+                List<RollupDelta> lost = drain();
+                log.warn("Discarding {} unflushed rollup rows on shutdown", lost.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 获取汇总聚合器统计信息
+     */
+    public Map<String, Object> getRollupStats() {
+        return Map.of(
+                "pendingRows", pending.size(),
+                "flushCount", flushCount.get(),
+                "flushedRows", flushedRows.get(),
+                "failedFlushes", failedFlushes.get()
+        );
+    }
+}
@@ -0,0 +1,255 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 统计计数写后聚合器 (write-behind)
+ *
+ * 所有监听线程把 stats:* 有序集合的增量写入内存中的分段累加器 (DoubleAdder)，
+ * 由单个刷新线程每隔 cache.stats.flush.interval 毫秒把累计增量通过一次 pipeline
+ * 批量 ZINCRBY 到 Redis。Redis 写入次数从 O(事件数) 降为 O(每个周期内不同的 key 数)，
+ * 代价是统计数据最多滞后一个刷新周期。
+ *
+ * 未刷新条目超过 max-pending 时唤醒刷新线程提前刷新 (监听线程从不直接访问Redis)；
+ * Redis长时间不可用时条目数达到 hard-cap 后，新出现的key的增量被丢弃并计数，内存不会无限增长。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class StatsWriteBehindAggregator {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${cache.stats.flush.max-pending:100000}")
+    private int maxPendingEntries; // 未刷新条目上限，超过后唤醒刷新线程提前刷新
+
+    @Value("${cache.stats.flush.hard-cap:400000}")
+    private int hardCapEntries; // 未刷新条目硬上限，达到后新key的增量被丢弃
+
+    @Value("${cache.stats.flush.min-spacing-ms:100}")
+    private long minFlushSpacingMs; // 提前刷新的最小间隔，避免Redis故障时每个事件都尝试刷新
+
+    @Value("${cache.stats.flush.shutdown-attempts:3}")
+    private int shutdownAttempts;
+
+    private final ConcurrentHashMap<StatKey, DoubleAdder> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicLong flushCount = new AtomicLong(0);
+    private final AtomicLong flushedEntries = new AtomicLong(0);
+    private final AtomicLong failedFlushes = new AtomicLong(0);
+    private final AtomicLong droppedDeltas = new AtomicLong(0);
+    private volatile long lastFlushAttempt = 0L;
+
+    private final ExecutorService earlyFlushExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("stats-early-flush-"));
+    private final AtomicBoolean earlyFlushRequested = new AtomicBoolean(false);
+
+    /**
+     * 一个待刷新的计数单元：有序集合key + 成员 + 过期时间(秒, 0表示不设置)
+     */
+    record StatKey(String key, String member, long ttlSeconds) {}
+
+    /**
+     * 一次刷新中需要写入Redis的增量
+     */
+    record PendingDelta(StatKey statKey, double delta) {}
+
+    /**
+     * 累加一个有序集合成员的分数增量 (无锁，不访问Redis)
+     */
+    public void increment(String key, String member, double delta, long ttlSeconds) {
+        add(new StatKey(key, member, ttlSeconds), delta);
+
+        if (pending.size() > maxPendingEntries
+                && System.currentTimeMillis() - lastFlushAttempt >= minFlushSpacingMs
+                && earlyFlushRequested.compareAndSet(false, true)) {
+            log.debug("Pending stats entries exceeded {}, flushing early", maxPendingEntries);
+            earlyFlushExecutor.execute(() -> {
+                try {
+                    flush();
+                } finally {
+                    earlyFlushRequested.set(false);
+                }
+            });
+        }
+    }
+
+    private void add(StatKey statKey, double delta) {
+        DoubleAdder adder = pending.get(statKey);
+        if (adder == null) {
+            if (pending.size() >= hardCapEntries) {
+                droppedDeltas.incrementAndGet();
+                return;
+            }
+            adder = pending.computeIfAbsent(statKey, k -> new DoubleAdder());
+        }
+        adder.add(delta);
+
+        // 刷新线程可能在我们拿到adder之后把它作为空闲条目移除了。
+        // 此时由我们自己取走剩余增量重新登记，保证每个增量恰好被统计一次。
+        if (pending.get(statKey) != adder) {
+            double residual = adder.sumThenReset();
+            if (residual != 0) {
+                add(statKey, residual);
+            }
+        }
+    }
+
+    /**
+     * 定时刷新
+     */
+    @Scheduled(fixedDelayString = "${cache.stats.flush.interval:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 把累计增量写入Redis。已有刷新在进行时直接返回。
+     *
+     * @return 本次写入的条目数
+     */
+    public int flush() {
+        if (!flushLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushLocked() {
+        lastFlushAttempt = System.currentTimeMillis();
+        List<PendingDelta> batch = drain();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            writeToRedis(batch);
+            flushCount.incrementAndGet();
+            flushedEntries.addAndGet(batch.size());
+            log.debug("Flushed {} aggregated stats entries to Redis", batch.size());
+            return batch.size();
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            log.error("Error flushing {} aggregated stats entries, re-queueing", batch.size(), e);
+            requeue(batch);
+            return 0;
+        }
+    }
+
+    /**
+     * 取走所有非零增量；上一周期以来没有新增量的条目会被移除，使内存只与活跃key数相关
+     */
+    List<PendingDelta> drain() {
+        List<PendingDelta> batch = new ArrayList<>();
+        for (Map.Entry<StatKey, DoubleAdder> entry : pending.entrySet()) {
+            StatKey statKey = entry.getKey();
+            DoubleAdder adder = entry.getValue();
+            double delta = adder.sumThenReset();
+            if (delta != 0) {
+                batch.add(new PendingDelta(statKey, delta));
+            } else if (pending.remove(statKey, adder)) {
+                // 移除与并发写入之间的残余增量
+                double residual = adder.sumThenReset();
+                if (residual != 0) {
+                    batch.add(new PendingDelta(statKey, residual));
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void requeue(List<PendingDelta> batch) {
+        for (PendingDelta delta : batch) {
+            add(delta.statKey(), delta.delta());
+        }
+    }
+
+    private void writeToRedis(List<PendingDelta> batch) {
+        Map<String, Long> ttls = new HashMap<>();
+        for (PendingDelta delta : batch) {
+            if (delta.statKey().ttlSeconds() > 0) {
+                ttls.putIfAbsent(delta.statKey().key(), delta.statKey().ttlSeconds());
+            }
+        }
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (PendingDelta delta : batch) {
+                    ops.opsForZSet().incrementScore(delta.statKey().key(), delta.statKey().member(), delta.delta());
+                }
+                ttls.forEach((key, ttl) -> ops.expire(key, ttl, TimeUnit.SECONDS));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 停机时把剩余增量交给Redis，失败时重试若干次
+     */
+    @PreDestroy
+    public void shutdown() {
+        earlyFlushExecutor.shutdownNow();
+        flushLock.lock();
+        try {
+            for (int attempt = 1; attempt <= shutdownAttempts && !pending.isEmpty(); attempt++) {
+                int written = flushLocked();
+                log.info("Shutdown flush attempt {} wrote {} stats entries", attempt, written);
+            }
+            if (!pending.isEmpty()) {
+                List<PendingDelta> lost = drain();
+                log.warn("Discarding {} unflushed stats entries on shutdown: {}", lost.size(), lost);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 获取聚合器统计信息
+     */
+    public Map<String, Object> getAggregatorStats() {
+        return Map.of(
+                "pendingEntries", pending.size(),
+                "maxPendingEntries", maxPendingEntries,
+                "flushCount", flushCount.get(),
+                "flushedEntries", flushedEntries.get(),
+                "failedFlushes", failedFlushes.get(),
+                "hardCapEntries", hardCapEntries,
+                "droppedDeltas", droppedDeltas.get()
+        );
+    }
+}
@@ -0,0 +1,139 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.util.EventTimes;
+import com.microservice.user_behaviour.util.TrendingDecay;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 按时间衰减的趋势排行榜 (用户 / 事件类型)
+ *
+ * 每个事件按 {@link TrendingDecay} 的前向衰减权重写入写后聚合器，分数只增不改写。
+ * 定时任务负责纪元切换时把上一纪元合并进来，并把每个排行榜裁剪到固定大小。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class TrendingLeaderboardService {
+
+    private static final List<String> KINDS = List.of(TrendingDecay.USERS, TrendingDecay.EVENT_TYPES);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final StatsWriteBehindAggregator statsAggregator;
+    private final TrendingDecay decay;
+    private final int maxSize;
+
+    public TrendingLeaderboardService(RedisTemplate<String, Object> redisTemplate,
+                                      StatsWriteBehindAggregator statsAggregator,
+                                      @Value("${trending.half-life-ms:21600000}") long halfLifeMillis,
+                                      @Value("${trending.epoch-ms:604800000}") long epochMillis,
+                                      @Value("${trending.max-size:1000}") int maxSize) {
+        this.redisTemplate = redisTemplate;
+        this.statsAggregator = statsAggregator;
+        this.decay = new TrendingDecay(halfLifeMillis, epochMillis);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 记录一个事件对用户和事件类型趋势分数的贡献
+     */
+    public void record(String userId, String eventType, LocalDateTime eventTime) {
+        long now = EventTimes.toMillis(LocalDateTime.now());
+        // 未来时间的事件按当前时间计，避免时钟错误的客户端抬高分数
+        long eventMillis = eventTime != null ? Math.min(EventTimes.toMillis(eventTime), now) : now;
+        long epoch = decay.epochOf(now);
+        double weight = decay.weight(eventMillis, epoch);
+        long ttlSeconds = keyTtlSeconds();
+
+        statsAggregator.increment(TrendingDecay.leaderboardKey(TrendingDecay.USERS, epoch), userId, weight, ttlSeconds);
+        statsAggregator.increment(TrendingDecay.leaderboardKey(TrendingDecay.EVENT_TYPES, epoch), eventType, weight, ttlSeconds);
+    }
+
+    /**
+     * 获取衰减到当前时刻的趋势排行榜
+     */
+    public Set<ZSetOperations.TypedTuple<Object>> getTrending(String kind, int topN) {
+        long now = EventTimes.toMillis(LocalDateTime.now());
+        long epoch = decay.epochOf(now);
+        // 当前纪元尚未合并上一纪元时，上一纪元的排行榜仍然更完整
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(TrendingDecay.carriedKey(epoch)))) {
+            epoch--;
+        }
+        Set<ZSetOperations.TypedTuple<Object>> raw = redisTemplate.opsForZSet()
+                .reverseRangeWithScores(TrendingDecay.leaderboardKey(kind, epoch), 0, topN - 1);
+        return decay.decayToNow(raw, epoch, now);
+    }
+
+    /**
+     * 定时维护：纪元切换时合并上一纪元，并裁剪排行榜
+     */
+    @Scheduled(fixedDelayString = "${trending.maintain.interval:60000}")
+    public void maintain() {
+        try {
+            long epoch = decay.epochOf(EventTimes.toMillis(LocalDateTime.now()));
+            carryPreviousEpoch(epoch);
+            for (String kind : KINDS) {
+                Long removed = redisTemplate.opsForZSet()
+                        .removeRange(TrendingDecay.leaderboardKey(kind, epoch), 0, -(maxSize + 1));
+                if (removed != null && removed > 0) {
+                    log.debug("Trimmed {} entries from trending {} leaderboard", removed, kind);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error maintaining trending leaderboards", e);
+        }
+    }
+
+    private void carryPreviousEpoch(long epoch) {
+        String carriedKey = TrendingDecay.carriedKey(epoch);
+        // 多个消费者实例中只有一个执行合并
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue()
+                .setIfAbsent(carriedKey, 1, Duration.ofSeconds(keyTtlSeconds())))) {
+            return;
+        }
+        try {
+            for (String kind : KINDS) {
+                String current = TrendingDecay.leaderboardKey(kind, epoch);
+                String previous = TrendingDecay.leaderboardKey(kind, epoch - 1);
+                redisTemplate.opsForZSet().unionAndStore(current, List.of(previous), current,
+                        Aggregate.SUM, Weights.of(1, decay.carryFactor()));
+                redisTemplate.expire(current, Duration.ofSeconds(keyTtlSeconds()));
+            }
+            log.info("Carried trending leaderboards of epoch {} into epoch {}", epoch - 1, epoch);
+        } catch (Exception e) {
+            redisTemplate.delete(carriedKey);
+            throw e;
+        }
+    }
+
+    private long keyTtlSeconds() {
+        return decay.epochMillis() * 2 / 1000;
+    }
+
+    /**
+     * 获取趋势排行榜统计信息
+     */
+    public Map<String, Object> getTrendingStats() {
+        long epoch = decay.epochOf(EventTimes.toMillis(LocalDateTime.now()));
+        return Map.of(
+                "epoch", epoch,
+                "carried", Boolean.TRUE.equals(redisTemplate.hasKey(TrendingDecay.carriedKey(epoch))),
+                "maxSize", maxSize
+        );
+    }
+}
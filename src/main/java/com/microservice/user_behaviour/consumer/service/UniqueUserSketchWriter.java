@@ -0,0 +1,92 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 独立用户数 HyperLogLog 写入
+ *
+ * 每个 事件类型(及汇总 all) × 小时/天(事件时间) 一个HLL:
+ * hll:users:{eventType}:hour:{yyyy-MM-dd-HH}、hll:users:{eventType}:day:{yyyy-MM-dd}。
+ * Redis HLL 每个key最多 12KB，标准误差 0.81%。每个批次在内存中按key去重后通过一次 pipeline PFADD。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class UniqueUserSketchWriter {
+
+    public static final String ALL_EVENT_TYPES = "all";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hll.hour.ttl:691200}")
+    private long hourTtl; // 8天，查询服务对更早的不完整日改用天HLL (需与查询服务一致)
+
+    @Value("${hll.day.ttl:34560000}")
+    private long dayTtl; // 400天
+
+    /**
+     * 把一批事件的用户加入对应的HLL
+     */
+    public void update(List<UserBehaviorEvent> events) {
+        Map<String, Set<String>> hourly = new HashMap<>();
+        Map<String, Set<String>> daily = new HashMap<>();
+        for (UserBehaviorEvent event : events) {
+            if (event.getUserId() == null || event.getEventType() == null) {
+                continue;
+            }
+            LocalDateTime eventTime = event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now();
+            String hour = TimeBuckets.hourLabel(eventTime);
+            String day = TimeBuckets.dayLabel(eventTime);
+            for (String type : new String[] {event.getEventType(), ALL_EVENT_TYPES}) {
+                hourly.computeIfAbsent(String.format(TimeBuckets.UNIQUE_USERS_HOUR_KEY, type, hour), k -> new HashSet<>()).add(event.getUserId());
+                daily.computeIfAbsent(String.format(TimeBuckets.UNIQUE_USERS_DAY_KEY, type, day), k -> new HashSet<>()).add(event.getUserId());
+            }
+        }
+        if (hourly.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    hourly.forEach((key, users) -> {
+                        ops.opsForHyperLogLog().add(key, users.toArray(new String[0]));
+                        ops.expire(key, hourTtl, TimeUnit.SECONDS);
+                    });
+                    daily.forEach((key, users) -> {
+                        ops.opsForHyperLogLog().add(key, users.toArray(new String[0]));
+                        ops.expire(key, dayTtl, TimeUnit.SECONDS);
+                    });
+                    return null;
+                }
+            });
+            log.debug("Updated {} hourly and {} daily unique-user sketches", hourly.size(), daily.size());
+        } catch (Exception e) {
+            log.error("Error updating unique-user sketches", e);
+        }
+    }
+}
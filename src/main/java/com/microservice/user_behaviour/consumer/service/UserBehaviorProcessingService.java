@@ -4,21 +4,43 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservice.user_behaviour.consumer.anomaly.RateAnomalyDetector;
 import com.microservice.user_behaviour.consumer.entity.UserBehaviorEntity;
-import com.microservice.user_behaviour.consumer.repository.UserBehaviorRepository;
+import com.microservice.user_behaviour.consumer.exception.PoisonRecordException;
+import com.microservice.user_behaviour.consumer.funnel.FunnelEngine;
+import com.microservice.user_behaviour.consumer.listener.DeadLetterPublisher;
+import com.microservice.user_behaviour.consumer.listener.ListenerBackpressureController;
+import com.microservice.user_behaviour.consumer.repository.UserBehaviorBatchWriter;
+import com.microservice.user_behaviour.consumer.session.SessionWindowEngine;
+import com.microservice.user_behaviour.consumer.window.EventTimeWindowEngine;
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,21 +50,126 @@ import lombok.extern.slf4j.Slf4j;
 @Profile("consumer")
 public class UserBehaviorProcessingService {
 
-    private final UserBehaviorRepository repository;
+    private final UserBehaviorBatchWriter batchWriter;
     private final ObjectMapper objectMapper;
     private final CacheService cacheService;
+    private final EventTimeWindowEngine windowEngine;
+    private final StatsRollupAggregator rollupAggregator;
+    private final UserSummaryWriter summaryWriter;
+    private final UniqueUserSketchWriter uniqueUserWriter;
+    private final QuantileSketchWriter quantileWriter;
+    private final UserHeatMatrixWriter heatMatrixWriter;
+    private final FunnelEngine funnelEngine;
+    private final ActiveUserBitmapWriter bitmapWriter;
+    private final RateAnomalyDetector anomalyDetector;
+    private final SessionWindowEngine sessionEngine;
+    private final ListenerBackpressureController backpressure;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final MeterRegistry meterRegistry;
     
-    // In-memory queue for batching events before database insertion
-    private final ConcurrentLinkedQueue<UserBehaviorEntity> processingQueue = new ConcurrentLinkedQueue<>();
+    private static final String WRITER_BACKPRESSURE_REASON = "writer-in-flight";
+    private static final String BUFFER_BACKPRESSURE_REASON = "buffer-high-water";
+    
+    // Rough per-entity heap overhead (object headers, boxed fields, LocalDateTimes)
+    private static final int ENTITY_BASE_BYTES = 256;
+    
+    // One buffer per topic partition, so listener threads never contend with each other
+    private final ConcurrentHashMap<TopicPartition, PartitionBuffer> buffers = new ConcurrentHashMap<>();
+    
+    // Events buffered across all partitions (O(1) instead of walking a queue)
+    private final AtomicInteger bufferedCount = new AtomicInteger(0);
     
     // Counter for events received
     private final AtomicInteger receivedCount = new AtomicInteger(0);
     private final AtomicInteger processedCount = new AtomicInteger(0);
     private final AtomicInteger cachedCount = new AtomicInteger(0);
     
+    // Full buffers handed to the writer but not yet written
+    private final AtomicInteger inFlightBatches = new AtomicInteger(0);
+    private final AtomicInteger failedBatches = new AtomicInteger(0);
+    private final AtomicInteger deadLetteredEvents = new AtomicInteger(0);
+    
+    // Everything held in heap until MySQL has it: buffered plus in-flight events and their estimated size
+    private final AtomicInteger pendingEvents = new AtomicInteger(0);
+    private final AtomicLong pendingBytes = new AtomicLong(0);
+    
     @Value("${app.batch.size:100}")
     private int batchSize;
     
+    @Value("${app.writer.threads:2}")
+    private int writerThreads;
+    
+    // Pause the listener once this many buffers are waiting on MySQL ...
+    @Value("${app.writer.max-in-flight:4}")
+    private int maxInFlightBatches;
+    
+    // ... and resume once the writer has drained down to this many
+    @Value("${app.writer.resume-in-flight:1}")
+    private int resumeInFlightBatches;
+    
+    // Inserts of a failed batch before its events are dead-lettered, with exponential backoff
+    @Value("${app.writer.retry.max-attempts:5}")
+    private int writerMaxAttempts;
+    
+    @Value("${app.writer.retry.backoff-ms:500}")
+    private long writerRetryBackoffMs;
+    
+    @Value("${app.writer.retry.max-backoff-ms:30000}")
+    private long writerMaxBackoffMs;
+    
+    // High-water marks for events held in heap; partitions are paused above either
+    // and resumed once both drop below low-water-ratio of their limit
+    @Value("${app.buffer.max-events:50000}")
+    private int maxPendingEvents;
+    
+    @Value("${app.buffer.max-bytes:67108864}")
+    private long maxPendingBytes;
+    
+    @Value("${app.buffer.low-water-ratio:0.5}")
+    private double lowWaterRatio;
+    
+    private Executor writerExecutor;
+    private Timer writerLatency;
+    private Timer writerQueueWait;
+    private DistributionSummary writerBatchSize;
+    
+    @PostConstruct
+    public void init() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(writerThreads, writerThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("event-writer-"));
+        writerExecutor = executor;
+        
+        Gauge.builder("consumer.buffer.events", bufferedCount, AtomicInteger::get)
+                .description("Events buffered in partition buffers, not yet handed to the writer")
+                .register(meterRegistry);
+        Gauge.builder("consumer.buffer.partitions", buffers, Map::size)
+                .description("Partition buffers currently allocated")
+                .register(meterRegistry);
+        Gauge.builder("consumer.buffer.pending-events", pendingEvents, AtomicInteger::get)
+                .description("Events buffered or in flight, not yet written to MySQL")
+                .register(meterRegistry);
+        Gauge.builder("consumer.buffer.pending-bytes", pendingBytes, AtomicLong::get)
+                .description("Estimated heap held by events not yet written to MySQL")
+                .register(meterRegistry);
+        Gauge.builder("consumer.writer.in-flight", inFlightBatches, AtomicInteger::get)
+                .description("Full buffers handed to the writer and not yet written")
+                .register(meterRegistry);
+        writerLatency = Timer.builder("consumer.writer.latency")
+                .description("Time spent writing one buffer to MySQL")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        writerQueueWait = Timer.builder("consumer.writer.queue-wait")
+                .description("Time a full buffer waited for a writer thread")
+                .register(meterRegistry);
+        writerBatchSize = DistributionSummary.builder("consumer.writer.batch-size")
+                .description("Events per buffer written to MySQL")
+                .register(meterRegistry);
+        
+        log.info("Event writer started: threads={}, maxInFlight={}, resumeInFlight={}", 
+                writerThreads, maxInFlightBatches, resumeInFlightBatches);
+    }
+    
     /**
      * Process a single user behavior event
      */
@@ -53,37 +180,19 @@ public class UserBehaviorProcessingService {
         try {
             // 1. 更新缓存 - 先更新缓存以提供实时数据
             updateCache(event);
+            updateAggregates(event);
+            summaryWriter.update(List.of(event));
+            uniqueUserWriter.update(List.of(event));
+            quantileWriter.update(List.of(event));
+            heatMatrixWriter.update(List.of(event));
+            funnelEngine.update(List.of(event));
+            bitmapWriter.update(List.of(event));
             
-            // 2. Convert event data to JSON string
-            String eventDataJson = null;
-            if (event.getEventData() != null) {
-                eventDataJson = objectMapper.writeValueAsString(event.getEventData());
-            }
-            
-            // 3. Create entity from event
-            UserBehaviorEntity entity = UserBehaviorEntity.builder()
-                    .userId(event.getUserId())
-                    .eventType(event.getEventType())
-                    .source(event.getSource())
-                    .eventTime(event.getEventTime())
-                    .eventData(eventDataJson)
-                    .sessionId(event.getSessionId())
-                    .deviceInfo(event.getDeviceInfo())
-                    .ipAddress(event.getIpAddress())
-                    .processedTime(LocalDateTime.now())
-                    .topic(topic)
-                    .partition(partition)
-                    .offset(offset)
-                    .build();
-            
-            // 4. Add to processing queue
-            processingQueue.add(entity);
-            receivedCount.incrementAndGet();
+            // 2. Convert event to entity
+            UserBehaviorEntity entity = toEntity(event, topic, partition, offset);
             
-            // 5. If queue size reaches threshold, flush to database
-            if (processingQueue.size() >= batchSize) {
-                flushQueue();
-            }
+            // 3. Add to the partition's buffer
+            bufferEntity(entity);
         } catch (JsonProcessingException e) {
             log.error("Error processing event data for event: {}", event, e);
         } catch (Exception e) {
@@ -91,6 +200,62 @@ public class UserBehaviorProcessingService {
         }
     }
     
+    /**
+     * Convert an event to its entity, serializing eventData to JSON
+     */
+    private UserBehaviorEntity toEntity(UserBehaviorEvent event, String topic, int partition, long offset) 
+            throws JsonProcessingException {
+        String eventDataJson = null;
+        if (event.getEventData() != null) {
+            eventDataJson = objectMapper.writeValueAsString(event.getEventData());
+        }
+        
+        return UserBehaviorEntity.builder()
+                .userId(event.getUserId())
+                .eventType(event.getEventType())
+                .source(event.getSource())
+                .eventTime(event.getEventTime())
+                .eventData(eventDataJson)
+                .sessionId(event.getSessionId())
+                .deviceInfo(event.getDeviceInfo())
+                .ipAddress(event.getIpAddress())
+                .processedTime(LocalDateTime.now())
+                .topic(topic)
+                .partition(partition)
+                .offset(offset)
+                .build();
+    }
+    
+    /**
+     * Add an entity to its partition's buffer, flushing the buffer once it reaches the batch size
+     */
+    private void bufferEntity(UserBehaviorEntity entity) {
+        PartitionBuffer buffer = buffers.computeIfAbsent(
+                new TopicPartition(entity.getTopic(), entity.getPartition()), tp -> new PartitionBuffer());
+        int buffered = buffer.add(entity);
+        bufferedCount.incrementAndGet();
+        receivedCount.incrementAndGet();
+        reserve(estimateSize(entity));
+        
+        if (buffered >= batchSize) {
+            flushBuffer(buffer);
+        }
+    }
+    
+    /**
+     * Count the event in the event-time windows and the MySQL rollups
+     */
+    private void updateAggregates(UserBehaviorEvent event) {
+        try {
+            windowEngine.accept(event.getEventType(), event.getEventTime());
+            rollupAggregator.record(event);
+            anomalyDetector.record(event.getEventType());
+            sessionEngine.accept(event);
+        } catch (Exception e) {
+            log.error("Error updating aggregates for event: {}", event, e);
+        }
+    }
+    
     /**
      * Update cache with event data
      */
@@ -100,10 +265,13 @@ public class UserBehaviorProcessingService {
             cacheService.cacheUserRecentEvent(event);
             
             // 更新事件类型统计
-            cacheService.updateEventTypeStats(event.getEventType());
+            cacheService.updateEventTypeStats(event.getEventType(), event.getEventTime());
             
             // 更新用户活跃度统计
-            cacheService.updateUserActivityStats(event.getUserId());
+            cacheService.updateUserActivityStats(event.getUserId(), event.getEventTime());
+            
+            // 更新时间衰减趋势分数
+            cacheService.updateTrendingScores(event);
             
             cachedCount.incrementAndGet();
             
@@ -137,39 +305,251 @@ public class UserBehaviorProcessingService {
     }
     
     /**
-     * Scheduled method to flush the queue even if it doesn't reach the threshold
+     * Process records from a Kafka poll, keeping each record's own topic, partition and offset.
+     * 
+     * All records are validated and converted before any of them touches the cache or the
+     * buffers, so a batch either applies completely or not at all. A batch containing a record
+     * that can never be processed fails with {@link PoisonRecordException} and can be retried
+     * in parts without duplicating side effects.
+     */
+    public void processRecords(List<ConsumerRecord<String, UserBehaviorEvent>> records) {
+        log.info("Processing {} records", records.size());
+        
+        // 1. Prepare: validate and convert every record, no side effects
+        List<UserBehaviorEvent> events = new ArrayList<>(records.size());
+        List<UserBehaviorEntity> entities = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, UserBehaviorEvent> record : records) {
+            UserBehaviorEvent event = record.value();
+            if (event == null) {
+                if (record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                    throw new PoisonRecordException("Record value could not be deserialized", record, null);
+                }
+                continue; // tombstone
+            }
+            validate(event, record);
+            if (event.getEventTime() == null) {
+                event.setEventTime(LocalDateTime.now());
+            }
+            try {
+                entities.add(toEntity(event, record.topic(), record.partition(), record.offset()));
+            } catch (JsonProcessingException e) {
+                throw new PoisonRecordException("Event data could not be serialized", record, e);
+            }
+            events.add(event);
+        }
+        
+        // 2. Apply: update cache and buffer for database insertion
+        for (int i = 0; i < events.size(); i++) {
+            updateCache(events.get(i));
+            updateAggregates(events.get(i));
+            bufferEntity(entities.get(i));
+        }
+        // One pipeline each for the per-user summaries, unique-user and quantile sketches, heat matrices and funnel counts of the whole batch
+        summaryWriter.update(events);
+        uniqueUserWriter.update(events);
+        quantileWriter.update(events);
+        heatMatrixWriter.update(events);
+        funnelEngine.update(events);
+        bitmapWriter.update(events);
+    }
+    
+    /**
+     * Reject events that would violate the not-null columns of user_behavior_events
+     */
+    private void validate(UserBehaviorEvent event, ConsumerRecord<String, UserBehaviorEvent> record) {
+        if (isBlank(event.getUserId()) || isBlank(event.getEventType()) || isBlank(event.getSource())) {
+            throw new PoisonRecordException(
+                    "Event is missing userId, eventType or source: " + event, record, null);
+        }
+    }
+    
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+    
+    /**
+     * Scheduled method to flush the buffers even if they don't reach the threshold
      */
     @Scheduled(fixedDelay = 10000) // Run every 10 seconds
     public void scheduledFlush() {
-        if (!processingQueue.isEmpty()) {
-            log.debug("Scheduled flush of {} events", processingQueue.size());
+        if (bufferedCount.get() > 0) {
+            log.debug("Scheduled flush of {} events", bufferedCount.get());
             flushQueue();
         }
     }
     
     /**
-     * Flush the queue to the database
+     * Flush every partition buffer to the database
      */
-    @Transactional
-    public synchronized void flushQueue() {
-        if (processingQueue.isEmpty()) {
+    public void flushQueue() {
+        for (PartitionBuffer buffer : buffers.values()) {
+            flushBuffer(buffer);
+        }
+    }
+    
+    /**
+     * Swap a partition buffer for an empty one and hand the full one to the writer.
+     * The calling (poll) thread never waits on MySQL; once too many buffers are
+     * in flight the listener container is paused instead.
+     */
+    private void flushBuffer(PartitionBuffer buffer) {
+        List<UserBehaviorEntity> batch = buffer.drain();
+        if (batch.isEmpty()) {
             return;
         }
+        bufferedCount.addAndGet(-batch.size());
         
-        List<UserBehaviorEntity> batch = new ArrayList<>(processingQueue.size());
-        while (!processingQueue.isEmpty()) {
-            UserBehaviorEntity entity = processingQueue.poll();
-            if (entity != null) {
-                batch.add(entity);
-            }
+        if (inFlightBatches.incrementAndGet() >= maxInFlightBatches) {
+            backpressure.pause(WRITER_BACKPRESSURE_REASON);
         }
         
-        if (!batch.isEmpty()) {
-            log.info("Flushing batch of {} events to database", batch.size());
-            repository.saveAll(batch);
-            processedCount.addAndGet(batch.size());
-            log.info("Successfully saved {} events. Total received: {}, processed: {}, cached: {}", 
-                    batch.size(), receivedCount.get(), processedCount.get(), cachedCount.get());
+        long submittedAt = System.nanoTime();
+        writerExecutor.execute(() -> writeBatch(batch, submittedAt));
+    }
+    
+    private void writeBatch(List<UserBehaviorEntity> batch, long submittedAt) {
+        writerQueueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        try {
+            writeWithRetry(batch);
+        } finally {
+            release(batch);
+            if (inFlightBatches.decrementAndGet() <= resumeInFlightBatches) {
+                backpressure.resume(WRITER_BACKPRESSURE_REASON);
+            }
+        }
+    }
+    
+    /**
+     * Write a batch whose offsets are already committed, so it must not be dropped: failed inserts
+     * are retried with exponential backoff while the batch stays in flight (pausing the listener
+     * through the writer backpressure), and after max-attempts every remaining event is sent to
+     * the dead-letter topic. If that fails too, the insert is retried again.
+     */
+    private void writeWithRetry(List<UserBehaviorEntity> batch) {
+        List<UserBehaviorEntity> remaining = new ArrayList<>(batch);
+        long backoffMs = writerRetryBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                log.info("Flushing batch of {} events to database", remaining.size());
+                writerLatency.record(() -> {
+                    batchWriter.insertBatch(remaining);
+                });
+                writerBatchSize.record(remaining.size());
+                processedCount.addAndGet(remaining.size());
+                log.info("Successfully saved {} events. Total received: {}, processed: {}, cached: {}", 
+                        remaining.size(), receivedCount.get(), processedCount.get(), cachedCount.get());
+                return;
+            } catch (Exception e) {
+                log.error("Error writing batch of {} events to database (attempt {})", remaining.size(), attempt, e);
+                if (attempt >= writerMaxAttempts && deadLetter(remaining, e)) {
+                    failedBatches.incrementAndGet();
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedBatches.incrementAndGet();
+                log.error("Interrupted while retrying, {} events were not written: {}", remaining.size(), remaining);
+                return;
+            }
+            backoffMs = Math.min(backoffMs * 2, writerMaxBackoffMs);
+        }
+    }
+    
+    /**
+     * Dead-letter the events of a batch, removing each one once the broker has acknowledged it
+     *
+     * @return true if every event was dead-lettered
+     */
+    private boolean deadLetter(List<UserBehaviorEntity> remaining, Exception cause) {
+        try {
+            while (!remaining.isEmpty()) {
+                deadLetterPublisher.publishUnwritten(remaining.get(0), cause);
+                remaining.remove(0);
+                deadLetteredEvents.incrementAndGet();
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to dead-letter {} events of a failed batch, retrying the insert", remaining.size(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Account for one more event held in heap and pause partitions past the high-water mark
+     */
+    private void reserve(long bytes) {
+        int events = pendingEvents.incrementAndGet();
+        long totalBytes = pendingBytes.addAndGet(bytes);
+        if (events >= maxPendingEvents || totalBytes >= maxPendingBytes) {
+            backpressure.pause(BUFFER_BACKPRESSURE_REASON);
+        }
+    }
+    
+    /**
+     * Release a written (or failed) batch and resume partitions below the low-water mark
+     */
+    private void release(List<UserBehaviorEntity> batch) {
+        long bytes = 0;
+        for (UserBehaviorEntity entity : batch) {
+            bytes += estimateSize(entity);
+        }
+        int events = pendingEvents.addAndGet(-batch.size());
+        long totalBytes = pendingBytes.addAndGet(-bytes);
+        if (events <= maxPendingEvents * lowWaterRatio && totalBytes <= maxPendingBytes * lowWaterRatio) {
+            backpressure.resume(BUFFER_BACKPRESSURE_REASON);
+        }
+    }
+    
+    /**
+     * Estimate the heap held by an entity (strings are UTF-16 in the worst case)
+     */
+    static long estimateSize(UserBehaviorEntity entity) {
+        return ENTITY_BASE_BYTES
+                + 2L * (length(entity.getUserId())
+                        + length(entity.getEventType())
+                        + length(entity.getSource())
+                        + length(entity.getEventData())
+                        + length(entity.getSessionId())
+                        + length(entity.getDeviceInfo())
+                        + length(entity.getIpAddress())
+                        + length(entity.getTopic()));
+    }
+    
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+    
+    /**
+     * Wait until every buffer handed to the writer has been written
+     *
+     * @return true if the writer drained within the timeout
+     */
+    public boolean awaitInFlightWrites(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlightBatches.get() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+    
+    /**
+     * Hand off whatever is still buffered and let the writer finish before shutdown
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flushQueue();
+        if (writerExecutor instanceof ExecutorService executorService) {
+            executorService.shutdown();
+            if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Event writer did not finish within 30s, {} batches still in flight", 
+                        inFlightBatches.get());
+            }
         }
     }
     
@@ -177,13 +557,18 @@ public class UserBehaviorProcessingService {
      * Get processing statistics
      */
     public Map<String, Object> getProcessingStats() {
-        return Map.of(
-                "queueSize", processingQueue.size(),
-                "receivedCount", receivedCount.get(),
-                "processedCount", processedCount.get(),
-                "cachedCount", cachedCount.get(),
-                "batchSize", batchSize,
-                "cacheHitRate", calculateCacheHitRate()
+        return Map.ofEntries(
+                Map.entry("queueSize", bufferedCount.get()),
+                Map.entry("pendingBytes", pendingBytes.get()),
+                Map.entry("receivedCount", receivedCount.get()),
+                Map.entry("processedCount", processedCount.get()),
+                Map.entry("cachedCount", cachedCount.get()),
+                Map.entry("batchSize", batchSize),
+                Map.entry("inFlightBatches", inFlightBatches.get()),
+                Map.entry("failedBatches", failedBatches.get()),
+                Map.entry("deadLetteredEvents", deadLetteredEvents.get()),
+                Map.entry("listenerPaused", backpressure.isPaused()),
+                Map.entry("cacheHitRate", calculateCacheHitRate())
         );
     }
     
@@ -198,7 +583,7 @@ public class UserBehaviorProcessingService {
     
     // Debug getter methods
     public int getQueueSize() {
-        return processingQueue.size();
+        return bufferedCount.get();
     }
     
     public int getReceivedCount() {
@@ -216,4 +601,27 @@ public class UserBehaviorProcessingService {
     public int getBatchSize() {
         return batchSize;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Events buffered for one topic partition. A partition is consumed by a single
+     * listener thread, so the lock is only ever contended by the scheduled flush.
+     */
+    private static final class PartitionBuffer {
+        
+        private List<UserBehaviorEntity> entries = new ArrayList<>();
+        
+        synchronized int add(UserBehaviorEntity entity) {
+            entries.add(entity);
+            return entries.size();
+        }
+        
+        synchronized List<UserBehaviorEntity> drain() {
+            if (entries.isEmpty()) {
+                return List.of();
+            }
+            List<UserBehaviorEntity> drained = entries;
+            entries = new ArrayList<>(drained.size());
+            return drained;
+        }
+    }
+}
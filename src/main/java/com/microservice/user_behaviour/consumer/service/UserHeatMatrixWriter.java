@@ -0,0 +1,112 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.consumer.sketch.HeatMatrix;
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用户活跃热度矩阵 user:{userId}:heat
+ *
+ * 按 {@link HeatMatrix} 布局增量维护每个用户的 星期小时 × 事件类型 计数。每个批次先按用户和单元折叠，
+ * 再通过一次 pipeline 对每个用户发一条带多个 INCRBY 子命令的 BITFIELD。读取是一次 GET。
+ */
+@Service
+@Slf4j
+@Profile("consumer")
+public class UserHeatMatrixWriter {
+
+    private static final String USER_HEAT_KEY = "user:%s:heat";
+    private static final BitFieldSubCommands.BitFieldType CELL_TYPE =
+            BitFieldSubCommands.BitFieldType.unsigned(HeatMatrix.CELL_BITS);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final HeatMatrix layout;
+    private final long ttl;
+
+    public UserHeatMatrixWriter(StringRedisTemplate stringRedisTemplate,
+                                @Value("${heatmap.event-types:PAGE_VIEW,BUTTON_CLICK,PRODUCT_VIEW,SEARCH,LINK_CLICK,ADD_TO_CART,PURCHASE,FORM_SUBMIT,LOGIN,LOGOUT,NOTIFICATION_RECEIVED,NOTIFICATION_CLICKED,OTHER}") String eventTypes,
+                                @Value("${heatmap.ttl:7776000}") long ttl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.layout = new HeatMatrix(Arrays.stream(eventTypes.split(",")).map(String::trim).filter(t -> !t.isEmpty()).toList());
+        this.ttl = ttl;
+    }
+
+    /**
+     * 把一批事件计入各自用户的热度矩阵
+     */
+    public void update(List<UserBehaviorEvent> events) {
+        Map<String, Map<Integer, Long>> cellsByUser = new HashMap<>();
+        for (UserBehaviorEvent event : events) {
+            if (event.getUserId() == null) {
+                continue;
+            }
+            LocalDateTime eventTime = event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now();
+            cellsByUser.computeIfAbsent(event.getUserId(), k -> new HashMap<>())
+                    .merge(layout.cell(event.getEventType(), eventTime), 1L, Long::sum);
+        }
+        if (cellsByUser.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    cellsByUser.forEach((userId, cells) -> {
+                        String key = String.format(USER_HEAT_KEY, userId);
+                        BitFieldSubCommands commands = BitFieldSubCommands.create();
+                        for (Map.Entry<Integer, Long> cell : cells.entrySet()) {
+                            commands = commands.incr(CELL_TYPE)
+                                    .valueAt(BitFieldSubCommands.Offset.offset(cell.getKey()).multipliedByTypeLength())
+                                    .overflow(BitFieldSubCommands.BitFieldIncrBy.Overflow.SAT)
+                                    .by(cell.getValue());
+                        }
+                        ops.opsForValue().bitField(key, commands);
+                        if (ttl > 0) {
+                            ops.expire(key, ttl, TimeUnit.SECONDS);
+                        }
+                    });
+                    return null;
+                }
+            });
+            log.debug("Updated heat matrices of {} users", cellsByUser.size());
+        } catch (Exception e) {
+            log.error("Error updating user heat matrices", e);
+        }
+    }
+
+    /**
+     * 读取用户的热度矩阵：事件类型 -> 168个星期小时计数 (只包含有计数的类型)
+     */
+    public Map<String, int[]> read(String userId) {
+        byte[] key = String.format(USER_HEAT_KEY, userId).getBytes(StandardCharsets.UTF_8);
+        byte[] raw = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> get(connection, key));
+        return layout.decode(raw);
+    }
+
+    private static byte[] get(RedisConnection connection, byte[] key) {
+        return connection.stringCommands().get(key);
+    }
+}
@@ -0,0 +1,88 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.dictionary.UserDictionary;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用户ID到位图编号的映射，供位图等按编号索引的结构使用
+ *
+ * 编号来自共享的用户字典 {@link UserDictionary} (MySQL user_dictionary)，位图编号 = user_ord - 1。
+ * 早期版本由Redis分配编号 (Hash user:ordinals)，已写入的位图依赖这些编号：启动时若该Hash仍存在，
+ * 按 user_ord = 旧编号 + 1 导入字典后删除，之后新用户从导入的最大编号之后继续分配。
+ * 导入失败时启动失败，避免在导入前分配出与旧编号冲突的编号。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+@DependsOn("consumerSchemaManager")
+public class UserOrdinalService {
+
+    static final String LEGACY_ORDINALS_KEY = "user:ordinals";
+    static final String LEGACY_NEXT_ORDINAL_KEY = "user:ordinals:next";
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    private final UserDictionary dictionary;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 获取(必要时分配)一批用户的位图编号
+     */
+    public Map<String, Integer> resolve(Collection<String> userIds) {
+        Map<String, Integer> result = new HashMap<>();
+        dictionary.assign(userIds).forEach((userId, userOrd) -> result.put(userId, UserDictionary.bitmapOrdinal(userOrd)));
+        return result;
+    }
+
+    public int cachedOrdinals() {
+        return dictionary.cachedUsers();
+    }
+
+    /**
+     * 一次性导入Redis中的旧编号；失败时保留Hash并让启动失败，下次启动重试
+     */
+    @PostConstruct
+    public void importLegacyOrdinals() {
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(LEGACY_ORDINALS_KEY))) {
+                return;
+            }
+            int scanned = 0;
+            Map<String, Integer> batch = new HashMap<>();
+            ScanOptions options = ScanOptions.scanOptions().count(IMPORT_BATCH_SIZE).build();
+            try (Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash().scan(LEGACY_ORDINALS_KEY, options)) {
+                while (cursor.hasNext()) {
+                    Map.Entry<Object, Object> entry = cursor.next();
+                    batch.put(entry.getKey().toString(), Integer.parseInt(entry.getValue().toString()) + 1);
+                    scanned++;
+                    if (batch.size() >= IMPORT_BATCH_SIZE) {
+                        dictionary.importOrdinals(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            dictionary.importOrdinals(batch);
+            stringRedisTemplate.delete(List.of(LEGACY_ORDINALS_KEY, LEGACY_NEXT_ORDINAL_KEY));
+            log.info("Imported {} legacy user ordinals from Redis into the user dictionary", scanned);
+        } catch (Exception e) {
+            // 导入前分配的新编号会与旧位图编号冲突，所以导入成功之前消费者不能启动
+            throw new IllegalStateException("Error importing legacy user ordinals from " + LEGACY_ORDINALS_KEY
+                    + "; the consumer cannot assign ordinals until they are imported", e);
+        }
+    }
+}
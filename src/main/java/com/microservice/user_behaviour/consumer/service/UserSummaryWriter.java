@@ -0,0 +1,152 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用户行为概要物化 (Redis Hash: user:{userId}:summary)
+ *
+ * 每个批次先在内存中按用户分组，再通过一次 pipeline 对每个用户执行一个Lua脚本原子更新:
+ * total、type:{事件类型}、day:{yyyyMMdd} 计数，first_seen / last_seen (毫秒)，
+ * since (该Hash开始统计的最早事件时间)。新的一天第一次写入时清理30天以前的 day:* 字段。
+ * 脚本在Redis端按字段合并计数，并跳过历史补齐之前比 since 更早的乱序事件 (由SQL补齐)。
+ * 查询服务读取该Hash即可O(1)得到概要，不再对事件表做聚合。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class UserSummaryWriter {
+
+    public static final String USER_SUMMARY_KEY = "user:%s:summary";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * KEYS[1] = 概要Hash; ARGV = 保留的最早day, ttl秒(0不过期), 之后每个事件为 事件时间(毫秒), type字段, day字段 三元组。
+     * 历史部分尚未补齐 (没有 base 字段) 时，比 since 更早的乱序事件不计入Hash:
+     * 它们属于查询服务从SQL补齐的 since 之前的部分，计入Hash会被重复统计
+     */
+    static final RedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>(
+            "local key = KEYS[1]\n"
+            + "local since = redis.call('HGET', key, 'since')\n"
+            + "local skipBefore = nil\n"
+            + "if since and redis.call('HEXISTS', key, 'base') == 0 then skipBefore = tonumber(since) end\n"
+            + "local counts, fields = {}, {}\n"
+            + "local total, first, last = 0, nil, nil\n"
+            + "for i = 3, #ARGV, 3 do\n"
+            + "  local t = tonumber(ARGV[i])\n"
+            + "  if not skipBefore or t >= skipBefore then\n"
+            + "    total = total + 1\n"
+            + "    if not first or t < tonumber(ARGV[first]) then first = i end\n"
+            + "    if not last or t > tonumber(ARGV[last]) then last = i end\n"
+            + "    for f = i + 1, i + 2 do\n"
+            + "      if not counts[ARGV[f]] then counts[ARGV[f]] = 0; fields[#fields + 1] = ARGV[f] end\n"
+            + "      counts[ARGV[f]] = counts[ARGV[f]] + 1\n"
+            + "    end\n"
+            + "  end\n"
+            + "end\n"
+            + "if total == 0 then return 0 end\n"
+            + "redis.call('HINCRBY', key, 'total', total)\n"
+            + "if not since then redis.call('HSET', key, 'since', ARGV[first]) end\n"
+            + "local firstSeen = redis.call('HGET', key, 'first_seen')\n"
+            + "if not firstSeen or tonumber(ARGV[first]) < tonumber(firstSeen) then redis.call('HSET', key, 'first_seen', ARGV[first]) end\n"
+            + "local lastSeen = redis.call('HGET', key, 'last_seen')\n"
+            + "if not lastSeen or tonumber(ARGV[last]) > tonumber(lastSeen) then redis.call('HSET', key, 'last_seen', ARGV[last]) end\n"
+            + "local newDay = false\n"
+            + "for _, f in ipairs(fields) do\n"
+            + "  local v = redis.call('HINCRBY', key, f, counts[f])\n"
+            + "  if string.sub(f, 1, 4) == 'day:' and v == counts[f] then newDay = true end\n"
+            + "end\n"
+            + "if newDay then\n"
+            + "  local cutoff = tonumber(ARGV[1])\n"
+            + "  for _, f in ipairs(redis.call('HKEYS', key)) do\n"
+            + "    if string.sub(f, 1, 4) == 'day:' and tonumber(string.sub(f, 5)) < cutoff then redis.call('HDEL', key, f) end\n"
+            + "  end\n"
+            + "end\n"
+            + "if tonumber(ARGV[2]) > 0 then redis.call('EXPIRE', key, ARGV[2]) end\n"
+            + "return total",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${summary.recent.days:30}")
+    private int recentDays;
+
+    @Value("${summary.ttl:0}")
+    private long summaryTtl; // 秒，0表示不过期 (过期后的概要需要查询服务重新从SQL补齐)
+
+    /**
+     * 一个用户在本批次中的事件，按 事件时间, type字段, day字段 展开为脚本参数
+     */
+    private static final class UserDelta {
+        final List<String> events = new ArrayList<>();
+
+        void add(UserBehaviorEvent event) {
+            LocalDateTime eventTime = event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now();
+            events.add(Long.toString(EventTimes.toMillis(eventTime)));
+            events.add("type:" + event.getEventType());
+            events.add("day:" + eventTime.format(DAY_FORMAT));
+        }
+    }
+
+    /**
+     * 用一批事件更新用户概要
+     */
+    public void update(List<UserBehaviorEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<String, UserDelta> deltas = new HashMap<>();
+        for (UserBehaviorEvent event : events) {
+            if (event.getUserId() != null && event.getEventType() != null) {
+                deltas.computeIfAbsent(event.getUserId(), id -> new UserDelta()).add(event);
+            }
+        }
+        String cutoffDay = LocalDate.now().minusDays(recentDays).format(DAY_FORMAT);
+
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    deltas.forEach((userId, delta) -> ops.execute(UPDATE_SCRIPT,
+                            List.of(String.format(USER_SUMMARY_KEY, userId)), args(delta, cutoffDay)));
+                    return null;
+                }
+            });
+            log.debug("Updated summaries for {} users", deltas.size());
+        } catch (Exception e) {
+            log.error("Error updating summaries for {} users", deltas.size(), e);
+        }
+    }
+
+    private Object[] args(UserDelta delta, String cutoffDay) {
+        List<String> args = new ArrayList<>(2 + delta.events.size());
+        args.add(cutoffDay);
+        args.add(Long.toString(summaryTtl));
+        args.addAll(delta.events);
+        return args.toArray();
+    }
+}
@@ -0,0 +1,67 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 把关闭的会话批量写入 user_sessions。
+ *
+ * 主键为 (user_id, session_id, session_start)，重试同一批会话是幂等的覆盖写。
+ */
+@Component
+@RequiredArgsConstructor
+@Profile("consumer")
+public class JdbcSessionSink implements SessionSink {
+
+    static final String UPSERT_SQL = "INSERT INTO user_sessions "
+            + "(user_id, session_id, session_start, session_end, duration_ms, event_count, bounce, emitter) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE session_end = VALUES(session_end), duration_ms = VALUES(duration_ms), "
+            + "event_count = VALUES(event_count), bounce = VALUES(bounce)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${eureka.instance.instance-id:${spring.application.name}}")
+    private String emitter;
+
+    @Override
+    public String name() {
+        return "mysql";
+    }
+
+    @Override
+    public void emit(List<SessionRecord> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                SessionRecord session = sessions.get(i);
+                ps.setString(1, session.userId());
+                ps.setString(2, session.sessionId());
+                ps.setTimestamp(3, Timestamp.valueOf(session.startTime()));
+                ps.setTimestamp(4, Timestamp.valueOf(session.endTime()));
+                ps.setLong(5, session.durationMillis());
+                ps.setInt(6, session.eventCount());
+                ps.setBoolean(7, session.bounce());
+                ps.setString(8, emitter);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return sessions.size();
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 按会话开始日期累加会话汇总计数 stats:sessions:{yyyy-MM-dd}
+ * (Hash: sessions, bounces, events, duration_ms)，多个消费者实例的结果在Redis中相加。
+ *
+ * 引擎在输出失败后会重试同一批会话，而失败的写入可能已在Redis中生效。每批会话按内容计算批次ID，
+ * 由一个Lua脚本先用 SET NX 写入批次标记 stats:sessions:batch:{id}，成功后才累加计数，
+ * 同一批会话重复输出时不会重复计数。
+ */
+@Component
+@RequiredArgsConstructor
+@Profile("consumer")
+public class RedisSessionSink implements SessionSink {
+
+    private static final String SESSION_STATS_KEY = "stats:sessions:%s";
+    static final String BATCH_KEY = "stats:sessions:batch:%s";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * KEYS[1] = 批次标记，之后为各天的汇总Hash; ARGV[1] = 汇总过期时间, ARGV[2] = 批次标记过期时间，
+     * 之后每天依次为 sessions, bounces, events, duration_ms 的增量。批次已写入过时返回0
+     */
+    static final RedisScript<Long> EMIT_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('SET', KEYS[1], '1', 'NX', 'EX', ARGV[2]) then\n"
+            + "  return 0\n"
+            + "end\n"
+            + "for i = 2, #KEYS do\n"
+            + "  local base = 2 + (i - 2) * 4\n"
+            + "  redis.call('HINCRBY', KEYS[i], 'sessions', ARGV[base + 1])\n"
+            + "  redis.call('HINCRBY', KEYS[i], 'bounces', ARGV[base + 2])\n"
+            + "  redis.call('HINCRBY', KEYS[i], 'events', ARGV[base + 3])\n"
+            + "  redis.call('HINCRBY', KEYS[i], 'duration_ms', ARGV[base + 4])\n"
+            + "  redis.call('EXPIRE', KEYS[i], ARGV[1])\n"
+            + "end\n"
+            + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${session.redis.ttl:34560000}")
+    private long statsTtl; // 400天
+
+    @Value("${session.redis.batch-ttl:86400}")
+    private long batchTtl; // 批次标记保留时间，需覆盖失败输出的重试时间
+
+    @Override
+    public String name() {
+        return "redis";
+    }
+
+    @Override
+    public void emit(List<SessionRecord> sessions) {
+        Map<String, long[]> byDay = new TreeMap<>();
+        for (SessionRecord session : sessions) {
+            long[] totals = byDay.computeIfAbsent(session.startTime().format(DAY_FORMAT), k -> new long[4]);
+            totals[0]++;
+            totals[1] += session.bounce() ? 1 : 0;
+            totals[2] += session.eventCount();
+            totals[3] += session.durationMillis();
+        }
+        if (byDay.isEmpty()) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(byDay.size() + 1);
+        List<String> args = new ArrayList<>(byDay.size() * 4 + 2);
+        keys.add(String.format(BATCH_KEY, batchId(sessions)));
+        args.add(String.valueOf(statsTtl));
+        args.add(String.valueOf(batchTtl));
+        byDay.forEach((day, totals) -> {
+            keys.add(String.format(SESSION_STATS_KEY, day));
+            for (long total : totals) {
+                args.add(String.valueOf(total));
+            }
+        });
+        stringRedisTemplate.execute(EMIT_SCRIPT, keys, args.toArray());
+    }
+
+    /**
+     * 按会话内容计算的批次ID，同一批会话重试时不变
+     */
+    static String batchId(List<SessionRecord> sessions) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (SessionRecord session : sessions) {
+                digest.update((session.userId() + '\u0000' + session.sessionId() + '\u0000' + session.startMillis()
+                        + '\u0000' + session.endMillis() + '\u0000' + session.eventCount() + '\n')
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 读取某天的会话指标: 会话数、跳出率、平均时长、平均事件数
+     */
+    public Map<String, Object> getDailyStats(LocalDate day) {
+        Map<Object, Object> raw = stringRedisTemplate.opsForHash().entries(String.format(SESSION_STATS_KEY, day.format(DAY_FORMAT)));
+        long sessions = parse(raw.get("sessions"));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("date", day.toString());
+        stats.put("sessions", sessions);
+        if (sessions > 0) {
+            stats.put("bounceRate", (double) parse(raw.get("bounces")) / sessions);
+            stats.put("avgEventsPerSession", (double) parse(raw.get("events")) / sessions);
+            stats.put("avgDurationMs", parse(raw.get("duration_ms")) / sessions);
+        }
+        return stats;
+    }
+
+    private static long parse(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+}
@@ -0,0 +1,31 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.time.LocalDateTime;
+
+import com.microservice.user_behaviour.util.EventTimes;
+
+/**
+ * 一个已关闭的会话: 同一 (userId, sessionId) 下相邻事件间隔不超过会话间隙的一段连续事件。
+ * sessionId 为空的事件按用户分段，sessionId 记为空字符串。
+ */
+public record SessionRecord(String userId, String sessionId, long startMillis, long endMillis, int eventCount) {
+
+    public long durationMillis() {
+        return endMillis - startMillis;
+    }
+
+    /**
+     * 只有一个事件的会话记为跳出
+     */
+    public boolean bounce() {
+        return eventCount == 1;
+    }
+
+    public LocalDateTime startTime() {
+        return EventTimes.toLocalDateTime(startMillis);
+    }
+
+    public LocalDateTime endTime() {
+        return EventTimes.toLocalDateTime(endMillis);
+    }
+}
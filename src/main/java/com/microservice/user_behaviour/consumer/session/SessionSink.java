@@ -0,0 +1,13 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.util.List;
+
+/**
+ * 已关闭会话的输出目标。失败时由引擎在下一周期重试同一批会话，实现需要对重复输出保持幂等。
+ */
+public interface SessionSink {
+
+    String name();
+
+    void emit(List<SessionRecord> sessions);
+}
@@ -0,0 +1,286 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一个分片内全部打开会话的状态 (非线程安全，由引擎按分片加锁)。
+ *
+ * 会话以槽位号存放在并列数组中 (userId、sessionId、key哈希、起止时间、事件数、到期桶)，
+ * key 到槽位号的索引是线性探测的 int 开放寻址表 (删除时回移探测链，无墓碑)，不为每个会话分配 map 节点和装箱对象。
+ * 每个会话约 60-100 字节数组空间 (含扩容余量、索引表和时间轮条目)，另加 userId / sessionId 两个字符串
+ * (UUID 形式的 sessionId 约 80 字节)，合计约 200 字节；关闭的槽位进入空闲列表复用。到期由 {@link TimerWheel} 驱动: 会话到期时间 = 最后事件时间 + 间隙，
+ * 只有到期桶变化时才重新登记，推进时只访问到期的槽位，不扫描全部会话。
+ * 打开会话数达到 capacity 时提前关闭最早到期的会话，内存上限固定。
+ */
+final class SessionStore {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    record SessionKey(String userId, String sessionId) {}
+
+    private final long gapMs;
+    private final long tickMs;
+    private final int capacity;
+    private final TimerWheel wheel;
+
+    /** 槽位号 + 1，0 为空 */
+    private int[] index = new int[128];
+    private int open;
+    private String[] userIds = new String[64];
+    private String[] sessionIds = new String[64];
+    private int[] hashes = new int[64];
+    private long[] starts = new long[64];
+    private long[] lasts = new long[64];
+    private int[] counts = new int[64];
+    private long[] buckets = new long[64];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int highWater;
+
+    /** 已处理(关闭)到的最后一个时间桶 */
+    private long processedBucket = NONE;
+
+    private long evictedSessions;
+    private long lateEvents;
+
+    SessionStore(long gapMs, long tickMs, int capacity) {
+        this.gapMs = gapMs;
+        this.tickMs = tickMs;
+        this.capacity = capacity;
+        // 一圈覆盖完整的会话间隙，正常情况下条目在第一圈内到期
+        this.wheel = new TimerWheel((int) (gapMs / tickMs) + 2);
+    }
+
+    /**
+     * 把一个事件计入其会话；间隔超过会话间隙时先关闭旧会话，容量不足时提前关闭最早到期的会话
+     *
+     * @param closed 接收因此关闭的会话
+     */
+    void add(SessionKey key, long eventTime, List<SessionRecord> closed) {
+        int hash = hash(key);
+        int existing = find(key, hash);
+        if (existing >= 0) {
+            int slot = index[existing] - 1;
+            if (eventTime > lasts[slot] + gapMs) {
+                closed.add(close(slot));
+            } else if (eventTime < starts[slot] - gapMs) {
+                // 属于一个更早的、已经关闭的会话
+                lateEvents++;
+                return;
+            } else {
+                starts[slot] = Math.min(starts[slot], eventTime);
+                lasts[slot] = Math.max(lasts[slot], eventTime);
+                counts[slot]++;
+                schedule(slot);
+                return;
+            }
+        }
+
+        if (open >= capacity) {
+            evict(closed);
+        }
+        int slot = allocate();
+        userIds[slot] = key.userId();
+        sessionIds[slot] = key.sessionId();
+        hashes[slot] = hash;
+        starts[slot] = eventTime;
+        lasts[slot] = eventTime;
+        counts[slot] = 1;
+        buckets[slot] = NONE;
+        insert(slot);
+        schedule(slot);
+    }
+
+    private static int hash(SessionKey key) {
+        int h = (key.userId().hashCode() * 31 + key.sessionId().hashCode()) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return 索引表中的位置，不存在时返回 -1
+     */
+    private int find(SessionKey key, int hash) {
+        int mask = index.length - 1;
+        for (int i = hash & mask; index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (hashes[slot] == hash && userIds[slot].equals(key.userId()) && sessionIds[slot].equals(key.sessionId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int slot) {
+        if ((open + 1) * 2 > index.length) {
+            int[] old = index;
+            index = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) {
+                    place(entry - 1);
+                }
+            }
+        }
+        place(slot);
+        open++;
+    }
+
+    private void place(int slot) {
+        int mask = index.length - 1;
+        int i = hashes[slot] & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    /**
+     * 删除索引项，把探测链上后面的项回移到空位 (其原位置不在空位和当前位置之间时)
+     */
+    private void remove(int slot) {
+        int mask = index.length - 1;
+        int hole = hashes[slot] & mask;
+        while (index[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int i = (hole + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int home = hashes[index[i] - 1] & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                index[hole] = index[i];
+                hole = i;
+            }
+        }
+        index[hole] = 0;
+        open--;
+    }
+
+    private void schedule(int slot) {
+        long bucket = Math.floorDiv(lasts[slot] + gapMs, tickMs);
+        if (processedBucket == NONE) {
+            processedBucket = bucket - 1;
+        }
+        bucket = Math.max(bucket, processedBucket + 1);
+        if (bucket != buckets[slot]) {
+            buckets[slot] = bucket;
+            wheel.schedule(slot, bucket);
+        }
+    }
+
+    /**
+     * 关闭所有在 watermark 之前到期的会话 (到期桶整体早于 watermark)
+     */
+    void expire(long watermark, List<SessionRecord> closed) {
+        advanceTo(Math.floorDiv(watermark, tickMs) - 1, closed);
+    }
+
+    private void advanceTo(long lastBucket, List<SessionRecord> closed) {
+        if (processedBucket == NONE || lastBucket <= processedBucket) {
+            return;
+        }
+        long steps = Math.min(lastBucket - processedBucket, wheel.size());
+        for (long b = processedBucket + 1; b <= processedBucket + steps; b++) {
+            int wheelIndex = wheel.indexOf(b);
+            wheel.sweep(wheelIndex, slot -> {
+                long bucket = buckets[slot];
+                if (bucket == NONE || wheel.indexOf(bucket) != wheelIndex) {
+                    return false; // 已关闭或已改期到其他槽位
+                }
+                if (bucket <= lastBucket) {
+                    closed.add(close(slot));
+                    return false;
+                }
+                return true; // 下一圈
+            });
+        }
+        processedBucket = lastBucket;
+    }
+
+    /**
+     * 按到期顺序提前关闭会话，直到打开会话数降到容量的90%以下
+     */
+    private void evict(List<SessionRecord> closed) {
+        int target = (int) (capacity * 0.9);
+        int before = closed.size();
+        int steps = 0;
+        while (open > target) {
+            if (steps++ < wheel.size()) {
+                advanceTo(processedBucket + 1, closed);
+            } else {
+                // 一整圈后仍未降到目标，剩余会话都在更远的圈上，直接跳到最早的到期桶
+                advanceTo(earliestBucket(), closed);
+                steps = 0;
+            }
+        }
+        evictedSessions += closed.size() - before;
+    }
+
+    private long earliestBucket() {
+        long earliest = Long.MAX_VALUE;
+        for (int slot = 0; slot < highWater; slot++) {
+            if (userIds[slot] != null) {
+                earliest = Math.min(earliest, buckets[slot]);
+            }
+        }
+        return earliest;
+    }
+
+    private SessionRecord close(int slot) {
+        SessionRecord record = new SessionRecord(userIds[slot], sessionIds[slot], starts[slot], lasts[slot], counts[slot]);
+        remove(slot);
+        userIds[slot] = null;
+        sessionIds[slot] = null;
+        buckets[slot] = NONE;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = slot;
+        return record;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (highWater == userIds.length) {
+            int size = userIds.length * 2;
+            userIds = Arrays.copyOf(userIds, size);
+            sessionIds = Arrays.copyOf(sessionIds, size);
+            hashes = Arrays.copyOf(hashes, size);
+            starts = Arrays.copyOf(starts, size);
+            lasts = Arrays.copyOf(lasts, size);
+            counts = Arrays.copyOf(counts, size);
+            buckets = Arrays.copyOf(buckets, size);
+        }
+        return highWater++;
+    }
+
+    /**
+     * 关闭全部打开的会话(停机时使用)
+     */
+    List<SessionRecord> closeAll() {
+        List<SessionRecord> closed = new ArrayList<>(open);
+        for (int slot = 0; slot < highWater; slot++) {
+            if (userIds[slot] != null) {
+                closed.add(close(slot));
+            }
+        }
+        return closed;
+    }
+
+    int openSessions() {
+        return open;
+    }
+
+    long wheelEntries() {
+        return wheel.entries();
+    }
+
+    long evictedSessions() {
+        return evictedSessions;
+    }
+
+    long lateEvents() {
+        return lateEvents;
+    }
+}
@@ -0,0 +1,227 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.microservice.user_behaviour.consumer.window.EventTimeWindowEngine;
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于间隙的会话窗口引擎
+ *
+ * 按 (userId, sessionId) 把事件归入会话，相邻事件的事件时间间隔超过 session.gap-ms 即切分为新会话。
+ * 打开的会话按key哈希分片存放在 {@link SessionStore} 中，由时间轮在事件时间水位线
+ * (与 {@link EventTimeWindowEngine} 共用) 越过 最后事件时间 + 间隙 后关闭。
+ * 关闭的会话按周期批量输出到各个 {@link SessionSink}，失败的输出在下一周期重试。
+ *
+ * 打开会话总数不超过 session.max-open (每个会话约200字节堆内存)；达到上限的分片提前关闭最早到期的会话。
+ * 会话状态只在内存中，停机时打开的会话按当前状态输出。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class SessionWindowEngine {
+
+    private final List<SessionSink> sinks;
+    private final EventTimeWindowEngine windowEngine;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${session.gap-ms:1800000}")
+    private long gapMs; // 30分钟
+
+    @Value("${session.tick-ms:10000}")
+    private long tickMs; // 时间轮精度，会话最多晚一个tick关闭
+
+    @Value("${session.max-open:500000}")
+    private int maxOpenSessions;
+
+    @Value("${session.shards:16}")
+    private int shardCount;
+
+    private SessionStore[] stores;
+    private final ConcurrentLinkedQueue<SessionRecord> closedQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<PendingEmit> retries = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong acceptedEvents = new AtomicLong(0);
+    private final AtomicLong closedSessions = new AtomicLong(0);
+    private final AtomicLong failedEmits = new AtomicLong(0);
+
+    private record PendingEmit(SessionSink sink, List<SessionRecord> sessions) {}
+
+    @PostConstruct
+    public void init() {
+        if (Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Session shard count must be a power of two: " + shardCount);
+        }
+        stores = new SessionStore[shardCount];
+        int perShard = Math.max(1, maxOpenSessions / shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            stores[i] = new SessionStore(gapMs, tickMs, perShard);
+        }
+        Gauge.builder("consumer.session.open", this, SessionWindowEngine::openSessions)
+                .description("Sessions currently open in the session window engine")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 把事件计入其会话
+     */
+    public void accept(UserBehaviorEvent event) {
+        if (event.getUserId() == null) {
+            return;
+        }
+        SessionStore.SessionKey key = new SessionStore.SessionKey(event.getUserId(),
+                event.getSessionId() != null ? event.getSessionId() : "");
+        long time = EventTimes.toMillis(event.getEventTime() != null ? event.getEventTime() : LocalDateTime.now());
+
+        SessionStore store = stores[spread(key.hashCode()) & (stores.length - 1)];
+        List<SessionRecord> closed = new ArrayList<>(0);
+        synchronized (store) {
+            store.add(key, time, closed);
+        }
+        closedQueue.addAll(closed);
+        acceptedEvents.incrementAndGet();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * 按水位线关闭到期的会话，并输出本周期内关闭的全部会话
+     */
+    @Scheduled(fixedDelayString = "${session.emit.interval:5000}")
+    public synchronized void advance() {
+        LocalDateTime watermark = windowEngine.getWatermark();
+        if (watermark != null) {
+            expire(EventTimes.toMillis(watermark));
+        }
+        flush();
+    }
+
+    /**
+     * 关闭在 watermark 之前到期的会话，关闭的会话进入待输出队列
+     */
+    synchronized void expire(long watermark) {
+        for (SessionStore store : stores) {
+            List<SessionRecord> closed = new ArrayList<>();
+            synchronized (store) {
+                store.expire(watermark, closed);
+            }
+            closedQueue.addAll(closed);
+        }
+    }
+
+    /**
+     * 重试失败的输出，并把待输出队列作为一批交给各个sink
+     */
+    synchronized void flush() {
+        List<PendingEmit> pending = new ArrayList<>();
+        PendingEmit next;
+        while ((next = retries.poll()) != null) {
+            pending.add(next);
+        }
+        for (PendingEmit emit : pending) {
+            emit(emit.sink(), emit.sessions());
+        }
+
+        List<SessionRecord> batch = new ArrayList<>();
+        SessionRecord session;
+        while ((session = closedQueue.poll()) != null) {
+            batch.add(session);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (SessionSink sink : sinks) {
+            emit(sink, batch);
+        }
+        closedSessions.addAndGet(batch.size());
+        meterRegistry.counter("consumer.session.closed").increment(batch.size());
+        log.debug("Emitted {} closed sessions", batch.size());
+    }
+
+    private void emit(SessionSink sink, List<SessionRecord> sessions) {
+        try {
+            sink.emit(sessions);
+        } catch (Exception e) {
+            failedEmits.incrementAndGet();
+            log.error("Error emitting {} sessions to {}, will retry", sessions.size(), sink.name(), e);
+            retries.add(new PendingEmit(sink, sessions));
+        }
+    }
+
+    /**
+     * 停机时输出所有打开的会话
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (SessionStore store : stores) {
+            synchronized (store) {
+                closedQueue.addAll(store.closeAll());
+            }
+        }
+        flush();
+        if (!retries.isEmpty()) {
+            log.warn("{} session emits still failing at shutdown, discarding", retries.size());
+        }
+    }
+
+    private int openSessions() {
+        int open = 0;
+        for (SessionStore store : stores) {
+            synchronized (store) {
+                open += store.openSessions();
+            }
+        }
+        return open;
+    }
+
+    /**
+     * 获取会话引擎统计信息
+     */
+    public Map<String, Object> getSessionStats() {
+        long wheelEntries = 0;
+        long evicted = 0;
+        long late = 0;
+        for (SessionStore store : stores) {
+            synchronized (store) {
+                wheelEntries += store.wheelEntries();
+                evicted += store.evictedSessions();
+                late += store.lateEvents();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("gapMs", gapMs);
+        stats.put("openSessions", openSessions());
+        stats.put("maxOpenSessions", maxOpenSessions);
+        stats.put("timerWheelEntries", wheelEntries);
+        stats.put("acceptedEvents", acceptedEvents.get());
+        stats.put("closedSessions", closedSessions.get());
+        stats.put("evictedSessions", evicted);
+        stats.put("lateEvents", late);
+        stats.put("pendingEmits", closedQueue.size());
+        stats.put("failedEmits", failedEmits.get());
+        stats.put("pendingRetries", retries.size());
+        return stats;
+    }
+}
@@ -0,0 +1,77 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import java.util.Arrays;
+
+/**
+ * 哈希时间轮: 每个槽位是一个 int[] 的会话槽位号列表，时间桶 b 落在槽位 b & mask。
+ *
+ * 时间轮本身不判断条目是否有效，由 {@link SessionStore} 在处理槽位时对照会话当前的到期桶
+ * 决定关闭、保留(下一圈)还是丢弃(会话已改期或已关闭)。
+ */
+final class TimerWheel {
+
+    private final int[][] slots;
+    private final int[] sizes;
+    private final int mask;
+
+    TimerWheel(int minSlots) {
+        int size = Integer.highestOneBit(Math.max(2, minSlots - 1)) << 1;
+        this.slots = new int[size][];
+        this.sizes = new int[size];
+        this.mask = size - 1;
+    }
+
+    int size() {
+        return slots.length;
+    }
+
+    int indexOf(long bucket) {
+        return (int) (bucket & mask);
+    }
+
+    void schedule(int id, long bucket) {
+        int index = indexOf(bucket);
+        int[] entries = slots[index];
+        if (entries == null) {
+            entries = new int[4];
+        } else if (sizes[index] == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[sizes[index]++] = id;
+        slots[index] = entries;
+    }
+
+    /**
+     * 遍历一个槽位，visitor 返回 true 的条目保留在槽位中
+     */
+    void sweep(int index, EntryVisitor visitor) {
+        int[] entries = slots[index];
+        int size = sizes[index];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (visitor.keep(entries[i])) {
+                entries[kept++] = entries[i];
+            }
+        }
+        sizes[index] = kept;
+        if (kept == 0) {
+            slots[index] = null;
+        }
+    }
+
+    /**
+     * 时间轮中的条目数 (包含尚未清理的过期条目)
+     */
+    long entries() {
+        long total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        boolean keep(int id);
+    }
+}
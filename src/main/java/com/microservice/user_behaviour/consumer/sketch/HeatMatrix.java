@@ -0,0 +1,75 @@
+package com.microservice.user_behaviour.consumer.sketch;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 星期小时(168) × 事件类型 的计数矩阵布局
+ *
+ * 每个单元是一个大端无符号16位计数 (Redis BITFIELD u16，饱和于65535)，按事件类型分行存放：
+ * 单元编号 = 类型行号 * 168 + 星期小时 (周一0点为0)。Redis字符串只分配到最大写入偏移，
+ * 所以常见类型放在前面的用户只占用少量字节；一整行为 336 字节。
+ * 类型行号由配置的类型列表决定，列表必须包含 OTHER (未配置的类型计入该行) 且只能在末尾追加，
+ * 这样追加新类型不会移动任何已有的行，包括 OTHER 行。
+ */
+public class HeatMatrix {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+    public static final int CELL_BITS = 16;
+    public static final String OTHER = "OTHER";
+
+    private final List<String> rows;
+    private final Map<String, Integer> rowIndex = new LinkedHashMap<>();
+    private final int otherRow;
+
+    public HeatMatrix(List<String> eventTypes) {
+        if (!eventTypes.contains(OTHER)) {
+            throw new IllegalArgumentException("Heat matrix event types must include " + OTHER
+                    + " at a fixed position: " + eventTypes);
+        }
+        this.rows = new ArrayList<>(eventTypes);
+        for (int i = 0; i < rows.size(); i++) {
+            rowIndex.putIfAbsent(rows.get(i), i);
+        }
+        this.otherRow = rowIndex.get(OTHER);
+    }
+
+    public List<String> rows() {
+        return List.copyOf(rows);
+    }
+
+    public static int hourOfWeek(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+    }
+
+    /**
+     * 事件类型在某时刻对应的单元编号
+     */
+    public int cell(String eventType, LocalDateTime time) {
+        int row = rowIndex.getOrDefault(eventType, otherRow);
+        return row * HOURS_PER_WEEK + hourOfWeek(time);
+    }
+
+    /**
+     * 解码Redis中的原始字节，只返回有计数的行
+     */
+    public Map<String, int[]> decode(byte[] raw) {
+        Map<String, int[]> matrix = new LinkedHashMap<>();
+        if (raw == null) {
+            return matrix;
+        }
+        int cells = raw.length / 2;
+        for (int cell = 0; cell < cells; cell++) {
+            int count = ((raw[2 * cell] & 0xFF) << 8) | (raw[2 * cell + 1] & 0xFF);
+            int row = cell / HOURS_PER_WEEK;
+            if (count == 0 || row >= rows.size()) {
+                continue;
+            }
+            matrix.computeIfAbsent(rows.get(row), k -> new int[HOURS_PER_WEEK])[cell % HOURS_PER_WEEK] = count;
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,163 @@
+package com.microservice.user_behaviour.consumer.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving 高频项(heavy hitter)摘要
+ *
+ * 固定 capacity 个计数器，按计数维护在带位置索引的最小堆中，每次更新 O(log capacity)。
+ * 未被跟踪的新项替换计数最小的计数器，并继承其计数作为误差 (error)。
+ * 设累计总数为 N：每个计数都是真实频次的上界，高估不超过其 error ≤ N / capacity；
+ * 真实频次大于 N / capacity 的项一定在摘要中。非线程安全，由调用方同步。
+ */
+public class SpaceSaving {
+
+    /**
+     * 一个计数器：count 为估计频次(上界)，count - error 为保证下界
+     */
+    public record Counter(String item, long count, long error) {}
+
+    private final int capacity;
+    private final String[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> positions;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.items = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * 记录 item 出现 increment 次
+     */
+    public void offer(String item, long increment) {
+        total += increment;
+        Integer pos = positions.get(item);
+        if (pos != null) {
+            counts[pos] += increment;
+            siftDown(pos);
+            return;
+        }
+        if (size < capacity) {
+            items[size] = item;
+            counts[size] = increment;
+            errors[size] = 0;
+            positions.put(item, size);
+            siftUp(size++);
+            return;
+        }
+        // 替换最小计数器，继承其计数作为误差
+        positions.remove(items[0]);
+        items[0] = item;
+        errors[0] = counts[0];
+        counts[0] += increment;
+        positions.put(item, 0);
+        siftDown(0);
+    }
+
+    /**
+     * 按估计频次降序返回前 n 个计数器
+     */
+    public List<Counter> top(int n) {
+        List<Counter> all = snapshot();
+        all.sort(Comparator.comparingLong(Counter::count).reversed());
+        return all.size() > n ? new ArrayList<>(all.subList(0, n)) : all;
+    }
+
+    /**
+     * 取走所有计数器并清空摘要
+     */
+    public List<Counter> drain() {
+        List<Counter> all = snapshot();
+        positions.clear();
+        for (int i = 0; i < size; i++) {
+            items[i] = null;
+        }
+        size = 0;
+        total = 0;
+        return all;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 自上次清空以来记录的总次数 N
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * 当前最大可能高估量 N / capacity
+     */
+    public long errorBound() {
+        return total / capacity;
+    }
+
+    private List<Counter> snapshot() {
+        List<Counter> all = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            all.add(new Counter(items[i], counts[i], errors[i]));
+        }
+        return all;
+    }
+
+    private void siftUp(int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (counts[parent] <= counts[pos]) {
+                break;
+            }
+            swap(pos, parent);
+            pos = parent;
+        }
+    }
+
+    private void siftDown(int pos) {
+        while (true) {
+            int left = 2 * pos + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+            if (counts[pos] <= counts[smallest]) {
+                return;
+            }
+            swap(pos, smallest);
+            pos = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String item = items[a];
+        long count = counts[a];
+        long error = errors[a];
+        items[a] = items[b];
+        counts[a] = counts[b];
+        errors[a] = errors[b];
+        items[b] = item;
+        counts[b] = count;
+        errors[b] = error;
+        positions.put(items[a], a);
+        positions.put(items[b], b);
+    }
+}
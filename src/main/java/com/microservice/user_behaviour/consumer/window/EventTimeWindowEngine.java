@@ -0,0 +1,254 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于事件时间(eventTime)的窗口聚合引擎
+ *
+ * 按事件类型在滚动窗口(小时/天)和滑动窗口中计数。水位线 = 已见最大事件时间 - 最大乱序时间，
+ * 数据流空闲超过 idle-timeout 后水位线随墙上时钟推进。窗口在水位线越过 窗口结束 + 允许迟到时间
+ * 后关闭，并且只输出一次到各个 {@link WindowSink}；之后落入该窗口的事件计入迟到侧计数器。
+ *
+ * 窗口状态只在内存中。停机时所有打开的窗口作为部分结果输出，重启后的实例以新的 emitter 继续累计，
+ * 两者相加即为完整结果；进程崩溃会丢失打开窗口中的计数。
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@Profile("consumer")
+public class EventTimeWindowEngine {
+
+    public static final String EVENT_TYPE_HOURLY = "event_type_hourly";
+    public static final String EVENT_TYPE_DAILY = "event_type_daily";
+    public static final String EVENT_TYPE_SLIDING = "event_type_sliding";
+
+    private final List<WindowSink> sinks;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${window.watermark.max-out-of-orderness-ms:60000}")
+    private long maxOutOfOrdernessMs;
+
+    @Value("${window.watermark.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${window.watermark.max-future-ms:60000}")
+    private long maxFutureMs; // 超前于墙上时钟的事件不推进水位线超过此值，避免错误时钟关闭全部窗口
+
+    @Value("${window.allowed-lateness-ms:300000}")
+    private long allowedLatenessMs;
+
+    @Value("${window.sliding.size-ms:3600000}")
+    private long slidingSizeMs;
+
+    @Value("${window.sliding.slide-ms:300000}")
+    private long slidingSlideMs;
+
+    @Value("${window.shards:16}")
+    private int shardCount;
+
+    private final KeyDictionary dictionary = new KeyDictionary();
+    private final Map<String, WindowStore> stores = new LinkedHashMap<>();
+    private final ConcurrentLinkedQueue<PendingEmit> retries = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong maxEventTime = new AtomicLong(Long.MIN_VALUE);
+    private volatile long lastEventWallClock = System.currentTimeMillis();
+    private volatile long watermark = Long.MIN_VALUE;
+
+    private final AtomicLong acceptedEvents = new AtomicLong(0);
+    private final AtomicLong lateEvents = new AtomicLong(0);
+    private final AtomicLong emittedWindows = new AtomicLong(0);
+    private final AtomicLong failedEmits = new AtomicLong(0);
+
+    private record PendingEmit(WindowSink sink, WindowResult result) {}
+
+    @PostConstruct
+    public void init() {
+        register(WindowSpec.tumbling(EVENT_TYPE_HOURLY, Duration.ofHours(1), "yyyy-MM-dd-HH"));
+        register(WindowSpec.tumbling(EVENT_TYPE_DAILY, Duration.ofDays(1), "yyyy-MM-dd"));
+        register(WindowSpec.sliding(EVENT_TYPE_SLIDING, Duration.ofMillis(slidingSizeMs),
+                Duration.ofMillis(slidingSlideMs), "yyyy-MM-dd-HH-mm"));
+
+        Gauge.builder("consumer.window.watermark.lag", this,
+                        engine -> engine.watermark == Long.MIN_VALUE ? 0
+                                : WindowSpec.toMillis(LocalDateTime.now()) - engine.watermark)
+                .description("Wall clock minus event-time watermark, in milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("consumer.window.keys", dictionary, KeyDictionary::size)
+                .description("Distinct keys in the window key dictionary")
+                .register(meterRegistry);
+    }
+
+    private void register(WindowSpec spec) {
+        stores.put(spec.name(), new WindowStore(spec, shardCount));
+    }
+
+    /**
+     * 按事件时间计入所有窗口
+     */
+    public void accept(String eventType, LocalDateTime eventTime) {
+        long time = WindowSpec.toMillis(eventTime != null ? eventTime : LocalDateTime.now());
+        int keyId = dictionary.idOf(eventType);
+
+        long cap = WindowSpec.toMillis(LocalDateTime.now()) + maxFutureMs;
+        long previous = maxEventTime.getAndAccumulate(Math.min(time, cap), Math::max);
+        if (time > previous) {
+            lastEventWallClock = System.currentTimeMillis();
+        }
+
+        boolean anyLate = false;
+        for (WindowStore store : stores.values()) {
+            long[] late = store.add(keyId, time);
+            if (late.length > 0) {
+                recordLate(store.spec(), late);
+                anyLate = true;
+            }
+        }
+        if (anyLate) {
+            lateEvents.incrementAndGet();
+        }
+        acceptedEvents.incrementAndGet();
+    }
+
+    private void recordLate(WindowSpec spec, long[] lateWindowStarts) {
+        meterRegistry.counter("consumer.window.late", "window", spec.name()).increment(lateWindowStarts.length);
+        for (WindowSink sink : sinks) {
+            if (sink instanceof LateEventRecorder recorder) {
+                for (long start : lateWindowStarts) {
+                    recorder.recordLate(spec, start);
+                }
+            }
+        }
+    }
+
+    /**
+     * 推进水位线，关闭并输出到期的窗口，重试之前失败的输出
+     */
+    @Scheduled(fixedDelayString = "${window.emit.interval:5000}")
+    public synchronized void advance() {
+        retryFailedEmits();
+
+        long max = maxEventTime.get();
+        if (max == Long.MIN_VALUE) {
+            return;
+        }
+        long candidate = max - maxOutOfOrdernessMs;
+        if (System.currentTimeMillis() - lastEventWallClock > idleTimeoutMs) {
+            candidate = Math.max(candidate,
+                    WindowSpec.toMillis(LocalDateTime.now()) - idleTimeoutMs - maxOutOfOrdernessMs);
+        }
+        if (candidate > watermark) {
+            watermark = candidate;
+        }
+
+        closeWindows(watermark - allowedLatenessMs);
+    }
+
+    /**
+     * 关闭结束时间不晚于 boundary 的窗口
+     *
+     * @return 输出的窗口数
+     */
+    synchronized int closeWindows(long boundary) {
+        int closed = 0;
+        for (WindowStore store : stores.values()) {
+            for (WindowResult result : store.close(boundary, dictionary)) {
+                emit(result);
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    private void emit(WindowResult result) {
+        for (WindowSink sink : sinks) {
+            emit(sink, result);
+        }
+        emittedWindows.incrementAndGet();
+        meterRegistry.counter("consumer.window.emitted", "window", result.spec().name()).increment();
+        log.debug("Emitted window {} {} with {} keys", result.spec().name(), result.label(), result.size());
+    }
+
+    private void emit(WindowSink sink, WindowResult result) {
+        try {
+            sink.emit(result);
+        } catch (Exception e) {
+            failedEmits.incrementAndGet();
+            log.error("Error emitting window {} {} to {}, will retry",
+                    result.spec().name(), result.label(), sink.name(), e);
+            retries.add(new PendingEmit(sink, result));
+        }
+    }
+
+    private void retryFailedEmits() {
+        List<PendingEmit> pending = new ArrayList<>();
+        PendingEmit next;
+        while ((next = retries.poll()) != null) {
+            pending.add(next);
+        }
+        for (PendingEmit emit : pending) {
+            emit(emit.sink(), emit.result());
+        }
+    }
+
+    /**
+     * 停机时输出所有打开的窗口(部分结果)
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        retryFailedEmits();
+        int closed = 0;
+        for (WindowStore store : stores.values()) {
+            for (WindowResult result : store.closeAll(dictionary)) {
+                emit(result);
+                closed++;
+            }
+        }
+        if (!retries.isEmpty()) {
+            log.warn("{} window emits still failing at shutdown, discarding", retries.size());
+        }
+        log.info("Emitted {} open windows on shutdown", closed);
+    }
+
+    public LocalDateTime getWatermark() {
+        long current = watermark;
+        return current == Long.MIN_VALUE ? null : WindowSpec.toLocalDateTime(current);
+    }
+
+    /**
+     * 获取窗口引擎统计信息
+     */
+    public Map<String, Object> getWindowStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("watermark", getWatermark());
+        stats.put("allowedLatenessMs", allowedLatenessMs);
+        stats.put("keys", dictionary.size());
+        stats.put("acceptedEvents", acceptedEvents.get());
+        stats.put("lateEvents", lateEvents.get());
+        stats.put("emittedWindows", emittedWindows.get());
+        stats.put("failedEmits", failedEmits.get());
+        stats.put("pendingRetries", retries.size());
+        Map<String, Object> open = new LinkedHashMap<>();
+        stores.forEach((name, store) -> open.put(name, store.openWindows()));
+        stats.put("openWindows", open);
+        return stats;
+    }
+}
@@ -0,0 +1,64 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 把关闭的窗口批量写入 event_window_stats。
+ *
+ * 主键包含 emitter(实例ID)，同一实例重复输出同一窗口是幂等的覆盖写；
+ * 不同实例(或重启前后)的部分结果各占一行，查询时按窗口求和。
+ */
+@Component
+@RequiredArgsConstructor
+@Profile("consumer")
+public class JdbcWindowSink implements WindowSink {
+
+    static final String UPSERT_SQL = "INSERT INTO event_window_stats "
+            + "(window_name, window_start, window_end, dim_key, emitter, event_count) VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE event_count = VALUES(event_count)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${eureka.instance.instance-id:${spring.application.name}}")
+    private String emitter;
+
+    @Override
+    public String name() {
+        return "mysql";
+    }
+
+    @Override
+    public void emit(WindowResult result) {
+        if (result.size() == 0) {
+            return;
+        }
+        Timestamp start = Timestamp.valueOf(result.startTime());
+        Timestamp end = Timestamp.valueOf(result.endTime());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, result.spec().name());
+                ps.setTimestamp(2, start);
+                ps.setTimestamp(3, end);
+                ps.setString(4, result.keys()[i]);
+                ps.setString(5, emitter);
+                ps.setLong(6, result.counts()[i]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return result.size();
+            }
+        });
+    }
+}
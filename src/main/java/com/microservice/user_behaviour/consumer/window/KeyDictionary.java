@@ -0,0 +1,45 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 维度key到连续int编号的字典。窗口状态只保存编号对应的计数(long[])，
+ * 每个key的字符串在整个进程中只存一份。
+ */
+final class KeyDictionary {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] keys = new String[64];
+    private int size;
+
+    int idOf(String key) {
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(key);
+            if (id != null) {
+                return id;
+            }
+            String[] current = keys;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = key;
+            keys = current;
+            // 先写入数组再发布编号，读到编号的线程一定能读到key
+            ids.put(key, size);
+            return size++;
+        }
+    }
+
+    String keyOf(int id) {
+        return keys[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,9 @@
+package com.microservice.user_behaviour.consumer.window;
+
+/**
+ * 由需要记录迟到事件侧计数的 {@link WindowSink} 实现
+ */
+public interface LateEventRecorder {
+
+    void recordLate(WindowSpec spec, long windowStart);
+}
@@ -0,0 +1,46 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.microservice.user_behaviour.consumer.service.StatsWriteBehindAggregator;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 把关闭的窗口写入 stats:window:{窗口}:{标签} 有序集合，迟到事件写入 stats:window:late:{窗口}。
+ *
+ * 通过写后聚合器累加 (ZINCRBY)，多个消费者实例各自输出的部分结果在Redis中相加。
+ */
+@Component
+@RequiredArgsConstructor
+@Profile("consumer")
+public class RedisWindowSink implements WindowSink, LateEventRecorder {
+
+    private static final String WINDOW_KEY = "stats:window:%s:%s";
+    private static final String LATE_KEY = "stats:window:late:%s";
+
+    private final StatsWriteBehindAggregator statsAggregator;
+
+    @Value("${window.redis.ttl:604800}")
+    private long windowTtl; // 7天
+
+    @Override
+    public String name() {
+        return "redis";
+    }
+
+    @Override
+    public void emit(WindowResult result) {
+        String key = String.format(WINDOW_KEY, result.spec().name(), result.label());
+        for (int i = 0; i < result.size(); i++) {
+            statsAggregator.increment(key, result.keys()[i], result.counts()[i], windowTtl);
+        }
+    }
+
+    @Override
+    public void recordLate(WindowSpec spec, long windowStart) {
+        statsAggregator.increment(String.format(LATE_KEY, spec.name()), spec.label(windowStart), 1, windowTtl);
+    }
+}
@@ -0,0 +1,29 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一个已关闭窗口的最终结果: keys[i] 在窗口内的计数为 counts[i]
+ */
+public record WindowResult(WindowSpec spec, long windowStart, String[] keys, long[] counts) {
+
+    public long windowEnd() {
+        return windowStart + spec.sizeMillis();
+    }
+
+    public LocalDateTime startTime() {
+        return WindowSpec.toLocalDateTime(windowStart);
+    }
+
+    public LocalDateTime endTime() {
+        return WindowSpec.toLocalDateTime(windowEnd());
+    }
+
+    public String label() {
+        return spec.label(windowStart);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,12 @@
+package com.microservice.user_behaviour.consumer.window;
+
+/**
+ * 关闭窗口的输出目标。每个窗口对每个sink只成功输出一次，失败时由引擎在下一周期重试，
+ * 因此实现需要对同一结果的重复输出保持幂等(或至少可接受)。
+ */
+public interface WindowSink {
+
+    String name();
+
+    void emit(WindowResult result);
+}
@@ -0,0 +1,56 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import com.microservice.user_behaviour.util.EventTimes;
+
+/**
+ * 事件时间窗口定义。滚动窗口 slide == size，滑动窗口 slide < size。
+ *
+ * 时间统一使用"本地纪元毫秒"({@link EventTimes})，这样小时/天窗口与
+ * 现有 stats:hourly / stats:daily 的本地时间分桶对齐。
+ */
+public record WindowSpec(String name, long sizeMillis, long slideMillis, DateTimeFormatter labelFormat) {
+
+    public WindowSpec {
+        if (sizeMillis <= 0 || slideMillis <= 0 || sizeMillis % slideMillis != 0) {
+            throw new IllegalArgumentException("Window size must be a positive multiple of slide: " + name);
+        }
+    }
+
+    public static WindowSpec tumbling(String name, Duration size, String labelPattern) {
+        return new WindowSpec(name, size.toMillis(), size.toMillis(), DateTimeFormatter.ofPattern(labelPattern));
+    }
+
+    public static WindowSpec sliding(String name, Duration size, Duration slide, String labelPattern) {
+        return new WindowSpec(name, size.toMillis(), slide.toMillis(), DateTimeFormatter.ofPattern(labelPattern));
+    }
+
+    public boolean isTumbling() {
+        return sizeMillis == slideMillis;
+    }
+
+    /**
+     * 包含该时刻的最后一个(最新的)窗口起点
+     */
+    public long lastWindowStart(long timeMillis) {
+        return Math.floorDiv(timeMillis, slideMillis) * slideMillis;
+    }
+
+    /**
+     * 窗口标签，使用窗口起点格式化
+     */
+    public String label(long windowStart) {
+        return toLocalDateTime(windowStart).format(labelFormat);
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return EventTimes.toMillis(time);
+    }
+
+    public static LocalDateTime toLocalDateTime(long millis) {
+        return EventTimes.toLocalDateTime(millis);
+    }
+}
@@ -0,0 +1,171 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 单个窗口定义的全部打开窗口状态。
+ *
+ * 按key编号分片，每个分片一把锁；分片内每个窗口只是一个 long[]，下标为分片内槽位
+ * (keyId >>> shardBits)，每个 (窗口, key) 只占8字节。
+ * closedBefore 之前结束的窗口已输出，落入这些窗口的事件按迟到处理。
+ */
+final class WindowStore {
+
+    private final WindowSpec spec;
+    private final int shardBits;
+    private final Shard[] shards;
+
+    /** 结束时间 <= closedBefore 的窗口已关闭 */
+    private volatile long closedBefore = Long.MIN_VALUE;
+
+    WindowStore(WindowSpec spec, int shardCount) {
+        if (Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Shard count must be a power of two: " + shardCount);
+        }
+        this.spec = spec;
+        this.shardBits = Integer.numberOfTrailingZeros(shardCount);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    WindowSpec spec() {
+        return spec;
+    }
+
+    /**
+     * 把一个事件计入其所属的全部窗口
+     *
+     * @return 因窗口已关闭而丢弃的窗口起点，没有迟到时为空
+     */
+    long[] add(int keyId, long eventTime) {
+        Shard shard = shards[keyId & (shards.length - 1)];
+        int slot = keyId >>> shardBits;
+        long[] late = null;
+        int lateCount = 0;
+
+        synchronized (shard) {
+            long boundary = closedBefore;
+            for (long start = spec.lastWindowStart(eventTime); start > eventTime - spec.sizeMillis();
+                    start -= spec.slideMillis()) {
+                if (start + spec.sizeMillis() <= boundary) {
+                    if (late == null) {
+                        late = new long[(int) (spec.sizeMillis() / spec.slideMillis())];
+                    }
+                    late[lateCount++] = start;
+                } else {
+                    shard.increment(start, slot);
+                }
+            }
+        }
+        return late == null ? EMPTY : Arrays.copyOf(late, lateCount);
+    }
+
+    /**
+     * 关闭所有在 boundary 之前结束的窗口，按窗口起点升序返回其结果
+     */
+    List<WindowResult> close(long boundary, KeyDictionary dictionary) {
+        if (boundary <= closedBefore) {
+            return List.of();
+        }
+        // 先发布边界再摘取分片状态: 拿到分片锁的写入者要么在摘取前计入，要么看到新边界
+        closedBefore = boundary;
+
+        TreeMap<Long, Accumulator> closing = new TreeMap<>();
+        for (int s = 0; s < shards.length; s++) {
+            Shard shard = shards[s];
+            synchronized (shard) {
+                Iterator<Map.Entry<Long, long[]>> it = shard.windows.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Long, long[]> entry = it.next();
+                    if (entry.getKey() + spec.sizeMillis() <= boundary) {
+                        closing.computeIfAbsent(entry.getKey(), k -> new Accumulator())
+                                .addShard(entry.getValue(), s, shardBits);
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        List<WindowResult> results = new ArrayList<>(closing.size());
+        closing.forEach((start, acc) -> results.add(acc.toResult(spec, start, dictionary)));
+        return results;
+    }
+
+    /**
+     * 关闭全部打开的窗口(停机时使用)
+     */
+    List<WindowResult> closeAll(KeyDictionary dictionary) {
+        return close(Long.MAX_VALUE, dictionary);
+    }
+
+    int openWindows() {
+        int count = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                count = Math.max(count, shard.windows.size());
+            }
+        }
+        return count;
+    }
+
+    long closedBefore() {
+        return closedBefore;
+    }
+
+    private static final long[] EMPTY = new long[0];
+
+    private static final class Shard {
+        private final HashMap<Long, long[]> windows = new HashMap<>();
+
+        void increment(long windowStart, int slot) {
+            long[] counts = windows.get(windowStart);
+            if (counts == null) {
+                counts = new long[Math.max(8, slot + 1)];
+                windows.put(windowStart, counts);
+            } else if (slot >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(slot + 1, counts.length * 2));
+                windows.put(windowStart, counts);
+            }
+            counts[slot]++;
+        }
+    }
+
+    /**
+     * 合并一个窗口在各分片中的非零计数
+     */
+    private static final class Accumulator {
+        private int[] ids = new int[16];
+        private long[] counts = new long[16];
+        private int size;
+
+        void addShard(long[] shardCounts, int shardIndex, int shardBits) {
+            for (int slot = 0; slot < shardCounts.length; slot++) {
+                if (shardCounts[slot] != 0) {
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        counts = Arrays.copyOf(counts, size * 2);
+                    }
+                    ids[size] = (slot << shardBits) | shardIndex;
+                    counts[size] = shardCounts[slot];
+                    size++;
+                }
+            }
+        }
+
+        WindowResult toResult(WindowSpec spec, long windowStart, KeyDictionary dictionary) {
+            String[] keys = new String[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = dictionary.keyOf(ids[i]);
+            }
+            return new WindowResult(spec, windowStart, keys, Arrays.copyOf(counts, size));
+        }
+    }
+}
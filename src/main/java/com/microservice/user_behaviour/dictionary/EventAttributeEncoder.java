@@ -0,0 +1,160 @@
+package com.microservice.user_behaviour.dictionary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 事件低基数字段 (event_type / source / device_info) 的字典编码器 (消费者使用)
+ *
+ * 每个字段一张查找表 (SMALLINT UNSIGNED 自增id, value 区分大小写唯一)，规则见 {@link EventAttributeSql}。
+ * 查找表很小，首次使用时整表载入本地缓存，之后只有新值才访问数据库 (INSERT IGNORE 后回读)。
+ * 查找表达到 dictionary.attributes.max-values 后不再分配新id，新值按原字符串写入。
+ */
+@Component
+@Slf4j
+@Profile("consumer")
+public class EventAttributeEncoder {
+
+    public enum Attribute {
+        EVENT_TYPE(EventAttributeSql.EVENT_TYPE_TABLE, "event_type", "event_type_id", 50),
+        SOURCE(EventAttributeSql.SOURCE_TABLE, "source", "source_id", 50),
+        DEVICE_INFO(EventAttributeSql.DEVICE_INFO_TABLE, "device_info", "device_info_id", 255);
+
+        private final String table;
+        private final String column;
+        private final String idColumn;
+        private final int maxLength;
+
+        Attribute(String table, String column, String idColumn, int maxLength) {
+            this.table = table;
+            this.column = column;
+            this.idColumn = idColumn;
+            this.maxLength = maxLength;
+        }
+
+        public String table() {
+            return table;
+        }
+
+        public String column() {
+            return column;
+        }
+
+        public String idColumn() {
+            return idColumn;
+        }
+    }
+
+    private static final int IN_LIST_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxValues;
+    private final Map<Attribute, Map<String, Integer>> caches = new EnumMap<>(Attribute.class);
+
+    public EventAttributeEncoder(JdbcTemplate jdbcTemplate,
+                                 @Value("${dictionary.attributes.max-values:65000}") int maxValues) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * 获取(必要时分配)一批值的id；过长或查找表已满的值不在结果中
+     */
+    public Map<String, Integer> encode(Attribute attribute, Collection<String> values) {
+        Map<String, Integer> cache = cache(attribute);
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String value : new LinkedHashSet<>(values)) {
+            if (value == null || value.length() > attribute.maxLength) {
+                continue;
+            }
+            Integer id = cache.get(value);
+            if (id != null) {
+                result.put(value, id);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        if (cache.size() + missing.size() > maxValues) {
+            log.warn("Dictionary {} is full ({} values), storing {} new values as strings",
+                    attribute.table, cache.size(), missing.size());
+            missing = missing.subList(0, Math.max(0, maxValues - cache.size()));
+        }
+        if (!missing.isEmpty()) {
+            List<String> sorted = new ArrayList<>(missing);
+            Collections.sort(sorted);
+            jdbcTemplate.batchUpdate("INSERT IGNORE INTO " + attribute.table + " (value) VALUES (?)",
+                    sorted, sorted.size(), (ps, value) -> ps.setString(1, value));
+            select(attribute, sorted, cache);
+            log.info("Added {} values to dictionary {}", sorted.size(), attribute.table);
+            for (String value : sorted) {
+                Integer id = cache.get(value);
+                if (id != null) {
+                    result.put(value, id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取各查找表的缓存大小
+     */
+    public Map<String, Object> getEncoderStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (caches) {
+            for (Attribute attribute : Attribute.values()) {
+                Map<String, Integer> cache = caches.get(attribute);
+                stats.put(attribute.table, cache == null ? 0 : cache.size());
+            }
+        }
+        stats.put("maxValues", maxValues);
+        return stats;
+    }
+
+    private Map<String, Integer> cache(Attribute attribute) {
+        synchronized (caches) {
+            Map<String, Integer> cache = caches.get(attribute);
+            if (cache == null) {
+                cache = new ConcurrentHashMap<>();
+                Map<String, Integer> loaded = cache;
+                jdbcTemplate.query("SELECT id, value FROM " + attribute.table,
+                        rs -> {
+                            loaded.put(rs.getString(2), rs.getInt(1));
+                        });
+                caches.put(attribute, cache);
+                log.info("Loaded {} values of dictionary {}", cache.size(), attribute.table);
+            }
+            return cache;
+        }
+    }
+
+    private void select(Attribute attribute, List<String> values, Map<String, Integer> cache) {
+        for (int from = 0; from < values.size(); from += IN_LIST_SIZE) {
+            List<String> chunk = values.subList(from, Math.min(values.size(), from + IN_LIST_SIZE));
+            jdbcTemplate.query("SELECT id, value FROM " + attribute.table + " WHERE value IN ("
+                            + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                    rs -> {
+                        cache.put(rs.getString(2), rs.getInt(1));
+                    }, chunk.toArray());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.microservice.user_behaviour.dictionary;
+
+/**
+ * SQL fragments for the dictionary-encoded columns of user_behavior_events.
+ * <p>
+ * event_type, source and device_info are stored as SMALLINT ids (event_type_id, source_id,
+ * device_info_id) into small lookup tables. The string column of a row is only filled when
+ * its value has no id, i.e. rows written before the encoding (until the consumer's backfill
+ * reaches them) and values beyond a dictionary's capacity. Reads decode with
+ * {@code COALESCE(dictionary value, string column)}; filters compare the id so they can use
+ * the SMALLINT indexes, falling back to the string column for rows without an id. Kept as constants so repository {@code @Query} annotations can use them.
+ */
+public final class EventAttributeSql {
+
+    public static final String EVENT_TYPE_TABLE = "event_type_dict";
+    public static final String SOURCE_TABLE = "event_source_dict";
+    public static final String DEVICE_INFO_TABLE = "device_info_dict";
+
+    /**
+     * Joins the lookup tables of the events table aliased {@code e}
+     */
+    public static final String DECODE_JOINS =
+            " LEFT JOIN " + EVENT_TYPE_TABLE + " dt ON dt.id = e.event_type_id"
+            + " LEFT JOIN " + SOURCE_TABLE + " ds ON ds.id = e.source_id"
+            + " LEFT JOIN " + DEVICE_INFO_TABLE + " dd ON dd.id = e.device_info_id ";
+
+    public static final String EVENT_TYPE = "COALESCE(dt.value, e.event_type)";
+    public static final String SOURCE = "COALESCE(ds.value, e.source)";
+    public static final String DEVICE_INFO = "COALESCE(dd.value, e.device_info)";
+
+    /**
+     * Id of the named parameter {@code :eventType}; NULL (matching nothing) for unknown types
+     */
+    public static final String EVENT_TYPE_ID_PARAM =
+            "(SELECT pt.id FROM " + EVENT_TYPE_TABLE + " pt WHERE pt.value = :eventType)";
+
+    /**
+     * Rows of the events table aliased {@code e} whose event type is the named parameter
+     * {@code :eventType}, whether stored as an id or (not yet encoded, or beyond the dictionary's
+     * capacity) as a string
+     */
+    public static final String EVENT_TYPE_FILTER = "(e.event_type_id = " + EVENT_TYPE_ID_PARAM
+            + " OR (e.event_type_id IS NULL AND e.event_type = :eventType))";
+
+    private EventAttributeSql() {
+    }
+}
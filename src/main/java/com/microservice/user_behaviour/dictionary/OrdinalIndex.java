@@ -0,0 +1,238 @@
+package com.microservice.user_behaviour.dictionary;
+
+/**
+ * Local two-way cache of the user dictionary without per-entry objects.
+ * <p>
+ * Both directions are open-addressing tables with linear probing over parallel arrays: user
+ * ids with their {@code int} ordinals, and ordinals with their user ids. Memory therefore
+ * depends on the number of cached users only, not on how high their ordinals are, and apart
+ * from the strings themselves a cached user costs a few array slots instead of map nodes and
+ * boxed Integers. Ordinal 0 is never assigned and marks an empty reverse slot.
+ * <p>
+ * At most {@code maxSize} users are cached. When full, each put evicts one user chosen by a
+ * CLOCK sweep over the forward table: users cached or looked up since the hand last passed them get a
+ * second chance. Removal shifts the following probe run back, so no tombstones accumulate.
+ * <p>
+ * Mappings never change once assigned, so a conflicting put is a bug. Thread-safe.
+ */
+final class OrdinalIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxSize;
+
+    private String[] keys;
+    private int[] ordinals;
+    private boolean[] referenced;
+
+    private int[] reverseKeys;
+    private String[] reverseValues;
+
+    private int size;
+    private int hand;
+    private long evictions;
+
+    OrdinalIndex(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        clear();
+    }
+
+    /**
+     * @return the cached ordinal, or 0 if the user is not cached
+     */
+    synchronized int ordinalOf(String userId) {
+        int slot = find(userId);
+        if (slot < 0) {
+            return 0;
+        }
+        referenced[slot] = true;
+        return ordinals[slot];
+    }
+
+    /**
+     * @return the cached user id, or null if the ordinal is not cached
+     */
+    synchronized String userIdOf(int ordinal) {
+        int slot = ordinal > 0 ? findReverse(ordinal) : -1;
+        if (slot < 0) {
+            return null;
+        }
+        String userId = reverseValues[slot];
+        referenced[find(userId)] = true;
+        return userId;
+    }
+
+    synchronized void put(String userId, int ordinal) {
+        if (ordinal <= 0) {
+            throw new IllegalArgumentException("Ordinal must be positive: " + ordinal);
+        }
+        int reverse = findReverse(ordinal);
+        if (reverse >= 0) {
+            String existing = reverseValues[reverse];
+            if (!existing.equals(userId)) {
+                throw new IllegalStateException("Ordinal " + ordinal + " already maps to " + existing
+                        + ", not " + userId);
+            }
+            return;
+        }
+        int current = find(userId);
+        if (current >= 0) {
+            throw new IllegalStateException("User " + userId + " already has ordinal " + ordinals[current]
+                    + ", not " + ordinal);
+        }
+        if (size >= maxSize) {
+            evict();
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        insert(userId, ordinal, true);
+        size++;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return number of users evicted to stay within the max size
+     */
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized void clear() {
+        allocate(INITIAL_CAPACITY * 2);
+        size = 0;
+        hand = 0;
+    }
+
+    private int find(String userId) {
+        int mask = keys.length - 1;
+        for (int i = hash(userId) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (userId.equals(keys[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findReverse(int ordinal) {
+        int mask = reverseKeys.length - 1;
+        for (int i = hash(ordinal) & mask; reverseKeys[i] != 0; i = (i + 1) & mask) {
+            if (reverseKeys[i] == ordinal) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Advance the clock hand to the first user not referenced since the last sweep and remove it
+     */
+    private void evict() {
+        int mask = keys.length - 1;
+        while (true) {
+            hand &= mask;
+            if (keys[hand] != null) {
+                if (!referenced[hand]) {
+                    int ordinal = ordinals[hand];
+                    removeAt(hand);
+                    removeReverseAt(findReverse(ordinal));
+                    size--;
+                    evictions++;
+                    return;
+                }
+                referenced[hand] = false;
+            }
+            hand++;
+        }
+    }
+
+    /**
+     * Backward-shift deletion: move later entries of the probe run into the hole when the hole
+     * lies between their home slot and their current slot
+     */
+    private void removeAt(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                ordinals[hole] = ordinals[i];
+                referenced[hole] = referenced[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        ordinals[hole] = 0;
+        referenced[hole] = false;
+    }
+
+    private void removeReverseAt(int slot) {
+        int mask = reverseKeys.length - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; reverseKeys[i] != 0; i = (i + 1) & mask) {
+            int home = hash(reverseKeys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                reverseKeys[hole] = reverseKeys[i];
+                reverseValues[hole] = reverseValues[i];
+                hole = i;
+            }
+        }
+        reverseKeys[hole] = 0;
+        reverseValues[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldOrdinals = ordinals;
+        boolean[] oldReferenced = referenced;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldOrdinals[i], oldReferenced[i]);
+            }
+        }
+        hand = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        ordinals = new int[capacity];
+        referenced = new boolean[capacity];
+        reverseKeys = new int[capacity];
+        reverseValues = new String[capacity];
+    }
+
+    private void insert(String userId, int ordinal, boolean wasReferenced) {
+        int mask = keys.length - 1;
+        int i = hash(userId) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = userId;
+        ordinals[i] = ordinal;
+        referenced[i] = wasReferenced;
+
+        int j = hash(ordinal) & mask;
+        while (reverseKeys[j] != 0) {
+            j = (j + 1) & mask;
+        }
+        reverseKeys[j] = ordinal;
+        reverseValues[j] = userId;
+    }
+
+    private static int hash(String userId) {
+        return hash(userId.hashCode());
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,209 @@
+package com.microservice.user_behaviour.dictionary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用户ID字典：为每个用户ID分配一个连续的整数编号 (user_ord)，消费者与查询服务共用
+ *
+ * 映射保存在 MySQL user_dictionary 表 (user_ord 自增主键, user_id 唯一)，一经分配不再改变，
+ * 因此两个服务可以各自在本地缓存 ({@link OrdinalIndex}，原始int数组，无装箱对象)。
+ * 只有本地缓存未命中的用户才访问数据库：先按ID批量查询，仍不存在的再 INSERT IGNORE 后回读，
+ * 自增值只会在多个实例同时插入同一新用户时产生少量空洞。本地缓存最多 dictionary.cache.max-size 个用户，
+ * 满了之后每缓存一个新用户按 CLOCK 淘汰一个最近未访问的用户。
+ */
+@Component
+@Slf4j
+@Profile({"consumer", "query"})
+public class UserDictionary {
+
+    static final String INSERT_SQL = "INSERT IGNORE INTO user_dictionary (user_id) VALUES (?)";
+    static final String IMPORT_SQL = "INSERT IGNORE INTO user_dictionary (user_ord, user_id) VALUES (?, ?)";
+    static final String SELECT_BY_USER_ID_SQL = "SELECT user_ord, user_id FROM user_dictionary WHERE user_id IN (%s)";
+    static final String SELECT_BY_ORDINAL_SQL = "SELECT user_ord, user_id FROM user_dictionary WHERE user_ord IN (%s)";
+    private static final int IN_LIST_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxCachedUsers;
+    private final OrdinalIndex index;
+
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
+    private final AtomicLong assignedOrdinals = new AtomicLong(0);
+
+    public UserDictionary(JdbcTemplate jdbcTemplate,
+                          @Value("${dictionary.cache.max-size:1000000}") int maxCachedUsers) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCachedUsers = maxCachedUsers;
+        this.index = new OrdinalIndex(maxCachedUsers);
+    }
+
+    /**
+     * 获取一批用户的编号，没有编号的用户分配新编号 (消费者使用)
+     */
+    public Map<String, Integer> assign(Collection<String> userIds) {
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missing = fromCache(userIds, result);
+        if (missing.isEmpty()) {
+            return result;
+        }
+        selectInto(missing, result);
+
+        List<String> unassigned = new ArrayList<>();
+        for (String userId : missing) {
+            if (!result.containsKey(userId)) {
+                unassigned.add(userId);
+            }
+        }
+        if (!unassigned.isEmpty()) {
+            // 固定顺序插入，减少多个实例并发插入时唯一索引上的死锁
+            Collections.sort(unassigned);
+            jdbcTemplate.batchUpdate(INSERT_SQL, unassigned, unassigned.size(),
+                    (ps, userId) -> ps.setString(1, userId));
+            selectInto(unassigned, result);
+            assignedOrdinals.addAndGet(unassigned.size());
+            for (String userId : unassigned) {
+                if (!result.containsKey(userId)) {
+                    throw new IllegalStateException("No ordinal assigned to user " + userId);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 只读查询一批用户的编号，没有编号的用户不在结果中 (查询服务使用)
+     */
+    public Map<String, Integer> lookup(Collection<String> userIds) {
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missing = fromCache(userIds, result);
+        if (!missing.isEmpty()) {
+            selectInto(missing, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return 用户编号，未分配时为 null
+     */
+    public Integer ordinalOf(String userId) {
+        return lookup(List.of(userId)).get(userId);
+    }
+
+    /**
+     * 按编号反查用户ID，未知编号不在结果中
+     */
+    public Map<Integer, String> userIds(Collection<Integer> ordinals) {
+        Map<Integer, String> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer ordinal : new LinkedHashSet<>(ordinals)) {
+            String userId = index.userIdOf(ordinal);
+            if (userId != null) {
+                result.put(ordinal, userId);
+            } else {
+                missing.add(ordinal);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += IN_LIST_SIZE) {
+            List<Integer> chunk = missing.subList(from, Math.min(missing.size(), from + IN_LIST_SIZE));
+            jdbcTemplate.query(String.format(SELECT_BY_ORDINAL_SQL, placeholders(chunk.size())), rs -> {
+                int ordinal = rs.getInt(1);
+                String userId = rs.getString(2);
+                cache(userId, ordinal);
+                result.put(ordinal, userId);
+            }, chunk.toArray());
+        }
+        return result;
+    }
+
+    /**
+     * 按给定编号导入映射 (迁移旧的编号来源)，已存在的用户或编号被忽略。
+     * 显式写入的编号大于当前自增值时，MySQL 会把自增值推进到其后。
+     */
+    public void importOrdinals(Map<String, Integer> ordinals) {
+        if (ordinals.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(ordinals.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        jdbcTemplate.batchUpdate(IMPORT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getValue());
+            ps.setString(2, entry.getKey());
+        });
+    }
+
+    /**
+     * 位图等以0为起点的结构使用的编号 (user_ord 从1开始)
+     */
+    public static int bitmapOrdinal(int userOrd) {
+        return userOrd - 1;
+    }
+
+    public int cachedUsers() {
+        return index.size();
+    }
+
+    /**
+     * 获取字典缓存统计信息
+     */
+    public Map<String, Object> getDictionaryStats() {
+        return Map.of(
+                "cachedUsers", index.size(),
+                "maxCachedUsers", maxCachedUsers,
+                "cacheHits", cacheHits.get(),
+                "cacheMisses", cacheMisses.get(),
+                "cacheEvictions", index.evictions(),
+                "assignedOrdinals", assignedOrdinals.get()
+        );
+    }
+
+    private List<String> fromCache(Collection<String> userIds, Map<String, Integer> result) {
+        List<String> missing = new ArrayList<>();
+        Set<String> distinct = userIds instanceof Set<String> set ? set : new LinkedHashSet<>(userIds);
+        for (String userId : distinct) {
+            int ordinal = index.ordinalOf(userId);
+            if (ordinal != 0) {
+                result.put(userId, ordinal);
+            } else {
+                missing.add(userId);
+            }
+        }
+        cacheHits.addAndGet(result.size());
+        cacheMisses.addAndGet(missing.size());
+        return missing;
+    }
+
+    private void selectInto(List<String> userIds, Map<String, Integer> result) {
+        for (int from = 0; from < userIds.size(); from += IN_LIST_SIZE) {
+            List<String> chunk = userIds.subList(from, Math.min(userIds.size(), from + IN_LIST_SIZE));
+            jdbcTemplate.query(String.format(SELECT_BY_USER_ID_SQL, placeholders(chunk.size())), rs -> {
+                int ordinal = rs.getInt(1);
+                String userId = rs.getString(2);
+                cache(userId, ordinal);
+                result.put(userId, ordinal);
+            }, chunk.toArray());
+        }
+    }
+
+    private void cache(String userId, int ordinal) {
+        index.put(userId, ordinal);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @ComponentScan(basePackages = {
     "com.microservice.user_behaviour.query",
     "com.microservice.user_behaviour.model",
+    "com.microservice.user_behaviour.dictionary",
     "com.microservice.user_behaviour.util"
 })
 @Profile("query")
@@ -1,5 +1,6 @@
 package com.microservice.user_behaviour.query.controller;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -19,8 +20,16 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.query.service.ActiveUserBitmapQueryService;
+import com.microservice.user_behaviour.query.service.ArchiveScanService;
+import com.microservice.user_behaviour.query.service.FunnelQueryService;
+import com.microservice.user_behaviour.query.service.QuantileQueryService;
+import com.microservice.user_behaviour.query.service.TrendingQueryService;
+import com.microservice.user_behaviour.query.service.UniqueUserCountService;
 import com.microservice.user_behaviour.query.service.UserBehaviorQueryService;
+import com.microservice.user_behaviour.query.service.WindowedLeaderboardService;
 import com.microservice.user_behaviour.query.client.ProcessingServiceClient;
+import com.microservice.user_behaviour.util.TrendingDecay;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -34,6 +43,13 @@ public class UserStatsController {
 
     private final UserBehaviorQueryService queryService;
     private final ProcessingServiceClient processingServiceClient;
+    private final UniqueUserCountService uniqueUserCountService;
+    private final TrendingQueryService trendingQueryService;
+    private final WindowedLeaderboardService windowedLeaderboardService;
+    private final QuantileQueryService quantileQueryService;
+    private final FunnelQueryService funnelQueryService;
+    private final ActiveUserBitmapQueryService bitmapQueryService;
+    private final ArchiveScanService archiveScanService;
     
     /**
      * 查询某用户最近N条行为事件
@@ -103,6 +119,46 @@ public class UserStatsController {
         return ResponseEntity.ok(topUsers);
     }
     
+    /**
+     * 查询最近一段时间内最活跃的用户 (合并小时桶，不访问MySQL)
+     * GET /api/query/stats/top-users?window=24h&topN=20  (window: 1h ~ 7d)
+     */
+    @GetMapping("/stats/top-users")
+    public ResponseEntity<?> getTopUsersInWindow(
+            @RequestParam(defaultValue = "24h") String window,
+            @RequestParam(defaultValue = "20") int topN) {
+        
+        log.info("Querying top users in window: window={}, topN={}", window, topN);
+        
+        try {
+            Set<ZSetOperations.TypedTuple<Object>> topUsers = windowedLeaderboardService.getTopUsers(window, topN);
+            log.info("Retrieved {} top users for window {}", topUsers.size(), window);
+            return ResponseEntity.ok(topUsers);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 查询按时间衰减的趋势排行榜 (分数为衰减到当前时刻的事件数)
+     * GET /api/query/stats/trending?type=users|event-types&topN=10
+     */
+    @GetMapping("/stats/trending")
+    public ResponseEntity<Set<ZSetOperations.TypedTuple<Object>>> getTrending(
+            @RequestParam(defaultValue = "users") String type,
+            @RequestParam(defaultValue = "10") int topN) {
+        
+        log.info("Querying trending {}: topN={}", type, topN);
+        
+        String kind = "event-types".equals(type) ? TrendingDecay.EVENT_TYPES : TrendingDecay.USERS;
+        Set<ZSetOperations.TypedTuple<Object>> trending = trendingQueryService.getTrending(kind, topN);
+        
+        log.info("Retrieved {} trending {}", trending.size(), type);
+        return ResponseEntity.ok(trending);
+    }
+    
     /**
      * 查询指定时间范围的事件统计
      * GET /api/query/stats/events/time-range?start=2024-01-15T10:00:00&end=2024-01-15T11:00:00&topN=10
@@ -121,6 +177,187 @@ public class UserStatsController {
         return ResponseEntity.ok(stats);
     }
     
+    /**
+     * 在已归档出MySQL的日期上查询时间范围的事件统计 (扫描冷数据段文件)，userId 可选
+     * GET /api/query/stats/archive/events/time-range?start=2024-01-01T00:00:00&end=2024-02-01T00:00:00&topN=10
+     */
+    @GetMapping("/stats/archive/events/time-range")
+    public ResponseEntity<Map<String, Object>> getArchivedEventStatsByTimeRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) String userId,
+            @RequestParam(defaultValue = "10") int topN) {
+        
+        log.info("Querying archived event stats: start={}, end={}, userId={}, topN={}", start, end, userId, topN);
+        return ResponseEntity.ok(archiveScanService.getEventStatsByTimeRange(userId, start, end, topN));
+    }
+    
+    /**
+     * 查询冷数据归档概况
+     * GET /api/query/stats/archive
+     */
+    @GetMapping("/stats/archive")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        return ResponseEntity.ok(archiveScanService.getArchiveStats());
+    }
+    
+    /**
+     * 查询时间范围内的独立用户数 (HyperLogLog估计值，标准误差约0.81%)
+     * GET /api/query/stats/unique-users?eventType=PAGE_VIEW&start=2024-01-15T00:00:00&end=2024-01-15T23:59:59
+     */
+    @GetMapping("/stats/unique-users")
+    public ResponseEntity<Map<String, Object>> getUniqueUsers(
+            @RequestParam(required = false) String eventType,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        
+        log.info("Querying unique users: eventType={}, start={}, end={}", eventType, start, end);
+        
+        try {
+            return ResponseEntity.ok(uniqueUserCountService.countUniqueUsers(eventType, start, end));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 查询事件数值字段在时间范围内的分位数 (相对误差约1%)
+     * GET /api/query/stats/quantiles?eventType=PURCHASE&field=amount&start=2024-01-15T00:00:00&end=2024-01-15T23:59:59&q=0.5,0.95,0.99
+     */
+    @GetMapping("/stats/quantiles")
+    public ResponseEntity<Map<String, Object>> getQuantiles(
+            @RequestParam String eventType,
+            @RequestParam String field,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "0.5,0.95,0.99") List<Double> q) {
+        
+        log.info("Querying quantiles: eventType={}, field={}, start={}, end={}, q={}", eventType, field, start, end, q);
+        
+        try {
+            return ResponseEntity.ok(quantileQueryService.getQuantiles(eventType, field, start, end, q));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 列出已配置的漏斗
+     * GET /api/query/stats/funnels
+     */
+    @GetMapping("/stats/funnels")
+    public ResponseEntity<List<Map<String, Object>>> listFunnels() {
+        return ResponseEntity.ok(funnelQueryService.listFunnels());
+    }
+    
+    /**
+     * 查询漏斗在时间范围内的各步转化 (按进入漏斗的时间统计)
+     * GET /api/query/stats/funnels/checkout?start=2024-01-15T00:00:00&end=2024-01-15T23:59:59
+     */
+    @GetMapping("/stats/funnels/{name}")
+    public ResponseEntity<Map<String, Object>> getFunnel(
+            @PathVariable String name,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        
+        log.info("Querying funnel: name={}, start={}, end={}", name, start, end);
+        
+        try {
+            return ResponseEntity.ok(funnelQueryService.getFunnel(name, start, end));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 查询留存: cohortDate 当天做过 cohortEvent 的用户在之后第N天又做过 returnEvent 的比例 (不传为任意事件)
+     * GET /api/query/stats/retention?cohortDate=2024-01-15&cohortEvent=SEARCH&days=1,7,30
+     */
+    @GetMapping("/stats/retention")
+    public ResponseEntity<Map<String, Object>> getRetention(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate cohortDate,
+            @RequestParam(required = false) String cohortEvent,
+            @RequestParam(required = false) String returnEvent,
+            @RequestParam(defaultValue = "1,7,30") List<Integer> days) {
+        
+        log.info("Querying retention: cohortDate={}, cohortEvent={}, returnEvent={}, days={}",
+                cohortDate, cohortEvent, returnEvent, days);
+        
+        try {
+            return ResponseEntity.ok(bitmapQueryService.getRetention(cohortDate, cohortEvent, returnEvent, days));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 查询在日期范围内做过全部 (mode=and) 或任一 (mode=or) 事件类型的用户数
+     * GET /api/query/stats/audience?eventTypes=SEARCH,PURCHASE&start=2024-01-01&end=2024-01-31&mode=and
+     */
+    @GetMapping("/stats/audience")
+    public ResponseEntity<Map<String, Object>> getAudience(
+            @RequestParam List<String> eventTypes,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+            @RequestParam(defaultValue = "and") String mode) {
+        
+        log.info("Querying audience: eventTypes={}, start={}, end={}, mode={}", eventTypes, start, end, mode);
+        
+        try {
+            if (!"and".equalsIgnoreCase(mode) && !"or".equalsIgnoreCase(mode)) {
+                throw new IllegalArgumentException("mode must be 'and' or 'or'");
+            }
+            return ResponseEntity.ok(bitmapQueryService.getAudience(eventTypes, start, end, "and".equalsIgnoreCase(mode)));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 查询用户在日期范围内做过某事件类型 (不传为任意事件) 的日期
+     * GET /api/query/users/{id}/active-days?eventType=PURCHASE&start=2024-01-01&end=2024-01-31
+     */
+    @GetMapping("/users/{id}/active-days")
+    public ResponseEntity<Map<String, Object>> getUserActiveDays(
+            @PathVariable String id,
+            @RequestParam(required = false) String eventType,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        
+        log.info("Querying active days: userId={}, eventType={}, start={}, end={}", id, eventType, start, end);
+        
+        try {
+            return ResponseEntity.ok(bitmapQueryService.getActiveDays(id, eventType, start, end));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+    
+    /**
+     * 查询今日独立用户数
+     * GET /api/query/stats/unique-users/today?eventType=PAGE_VIEW
+     */
+    @GetMapping("/stats/unique-users/today")
+    public ResponseEntity<Map<String, Object>> getTodayUniqueUsers(
+            @RequestParam(required = false) String eventType) {
+        
+        LocalDateTime now = LocalDateTime.now();
+        return ResponseEntity.ok(uniqueUserCountService.countUniqueUsers(
+                eventType, now.toLocalDate().atStartOfDay(), now));
+    }
+    
     /**
      * 分页查询所有事件
      * GET /api/query/events?page=0&size=20
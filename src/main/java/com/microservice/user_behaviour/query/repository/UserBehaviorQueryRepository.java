@@ -11,75 +11,159 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.microservice.user_behaviour.dictionary.EventAttributeSql;
 import com.microservice.user_behaviour.model.UserBehaviorEntity;
 
+/**
+ * 事件明细中的 event_type / source / device_info 以字典id存储 (见 {@link EventAttributeSql})，
+ * 返回实体的查询在SQL中解码；按事件类型过滤时比较id，使用 (event_type_id, event_time) 索引。
+ */
 @Repository
 @Profile("query")
 public interface UserBehaviorQueryRepository extends JpaRepository<UserBehaviorEntity, Long> {
 
+    /**
+     * 解码后的事件明细
+     */
+    String SELECT_DECODED = "SELECT e.id, e.user_id, "
+            + EventAttributeSql.EVENT_TYPE + " AS event_type, " + EventAttributeSql.SOURCE + " AS source, "
+            + "e.event_time, e.event_data, e.session_id, " + EventAttributeSql.DEVICE_INFO + " AS device_info, "
+            + "e.ip_address, e.processed_time, e.topic, e.`partition`, e.`offset` "
+            + "FROM user_behavior_events e" + EventAttributeSql.DECODE_JOINS;
+
+    /**
+     * 时间范围两端不在汇总表整小时内的原始事件 (边界由 UserBehaviorQueryService#fullHours 计算)
+     */
+    String PARTIAL_HOURS = "((e.event_time >= :startTime AND e.event_time < :fullFrom) "
+            + "OR (e.event_time >= :fullTo AND e.event_time <= :endTime)) ";
+
     /**
      * 根据用户ID查询用户行为事件，按时间倒序
      */
-    List<UserBehaviorEntity> findByUserIdOrderByEventTimeDesc(String userId, Pageable pageable);
+    @Query(value = SELECT_DECODED + "WHERE e.user_id = :userId ORDER BY e.event_time DESC", nativeQuery = true)
+    List<UserBehaviorEntity> findByUserIdOrderByEventTimeDesc(@Param("userId") String userId, Pageable pageable);
+    
+    /**
+     * 根据用户ID查询某时刻之后的行为事件，按时间倒序
+     * event_time 下界让分区表只扫描最近的分区
+     */
+    @Query(value = SELECT_DECODED + "WHERE e.user_id = :userId AND e.event_time >= :since ORDER BY e.event_time DESC",
+            nativeQuery = true)
+    List<UserBehaviorEntity> findByUserIdAndEventTimeAfterOrderByEventTimeDesc(
+            @Param("userId") String userId, @Param("since") LocalDateTime since, Pageable pageable);
     
     /**
      * 根据用户ID和事件类型查询
      */
+    @Query(value = SELECT_DECODED + "WHERE e.user_id = :userId AND " + EventAttributeSql.EVENT_TYPE_FILTER
+           + " ORDER BY e.event_time DESC", nativeQuery = true)
     List<UserBehaviorEntity> findByUserIdAndEventTypeOrderByEventTimeDesc(
-            String userId, String eventType, Pageable pageable);
+            @Param("userId") String userId, @Param("eventType") String eventType, Pageable pageable);
     
     /**
      * 根据时间范围查询用户行为
      */
+    @Query(value = SELECT_DECODED + "WHERE e.user_id = :userId AND e.event_time BETWEEN :startTime AND :endTime "
+           + "ORDER BY e.event_time DESC", nativeQuery = true)
     List<UserBehaviorEntity> findByUserIdAndEventTimeBetweenOrderByEventTimeDesc(
-            String userId, LocalDateTime startTime, LocalDateTime endTime);
+            @Param("userId") String userId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
     
     /**
-     * 统计用户各事件类型的数量
+     * 统计用户各事件类型的数量 (读取日汇总表)
      */
-    @Query("SELECT e.eventType, COUNT(e) FROM UserBehaviorEntity e WHERE e.userId = :userId GROUP BY e.eventType")
+    @Query(value = "SELECT s.event_type, SUM(s.event_count) FROM user_behavior_stats s " +
+           "WHERE s.user_id = :userId GROUP BY s.event_type", nativeQuery = true)
     List<Object[]> countEventTypesByUserId(@Param("userId") String userId);
     
     /**
-     * 统计最热门的事件类型
+     * 统计最热门的事件类型 (读取日汇总表)
      */
-    @Query("SELECT e.eventType, COUNT(e) as cnt FROM UserBehaviorEntity e GROUP BY e.eventType ORDER BY cnt DESC")
+    @Query(value = "SELECT s.event_type, SUM(s.event_count) AS cnt FROM user_behavior_stats s " +
+           "GROUP BY s.event_type ORDER BY cnt DESC", nativeQuery = true)
     List<Object[]> findTopEventTypes(Pageable pageable);
     
     /**
-     * 统计最活跃的用户
+     * 统计最活跃的用户 (读取日汇总表)
      */
-    @Query("SELECT e.userId, COUNT(e) as cnt FROM UserBehaviorEntity e GROUP BY e.userId ORDER BY cnt DESC")
+    @Query(value = "SELECT s.user_id, SUM(s.event_count) AS cnt FROM user_behavior_stats s " +
+           "GROUP BY s.user_id ORDER BY cnt DESC", nativeQuery = true)
     List<Object[]> findTopActiveUsers(Pageable pageable);
     
     /**
-     * 根据时间范围统计事件类型
+     * 根据时间范围 [startTime, endTime] 统计事件类型：整小时 [fullFrom, fullTo) 读取小时汇总表，
+     * 两端不足一小时的部分 [startTime, fullFrom) 和 [fullTo, endTime] 读取原始事件表
      */
-    @Query("SELECT e.eventType, COUNT(e) as cnt FROM UserBehaviorEntity e " +
-           "WHERE e.eventTime BETWEEN :startTime AND :endTime " +
-           "GROUP BY e.eventType ORDER BY cnt DESC")
+    @Query(value = "SELECT t.event_type, SUM(t.cnt) AS cnt FROM (" +
+           "SELECT s.event_type, SUM(s.event_count) AS cnt FROM user_behavior_stats_hourly s " +
+           "WHERE s.stat_hour >= :fullFrom AND s.stat_hour < :fullTo GROUP BY s.event_type " +
+           "UNION ALL SELECT " + EventAttributeSql.EVENT_TYPE + " AS event_type, COUNT(*) AS cnt " +
+           "FROM user_behavior_events e" + EventAttributeSql.DECODE_JOINS + "WHERE " + PARTIAL_HOURS +
+           "GROUP BY 1) t GROUP BY t.event_type ORDER BY cnt DESC", nativeQuery = true)
     List<Object[]> findEventTypeStatsByTimeRange(
             @Param("startTime") LocalDateTime startTime, 
             @Param("endTime") LocalDateTime endTime, 
+            @Param("fullFrom") LocalDateTime fullFrom,
+            @Param("fullTo") LocalDateTime fullTo,
             Pageable pageable);
     
     /**
-     * 获取用户在指定时间范围内的事件统计
+     * 获取用户在时间范围 [startTime, endTime] 内的事件数 (整小时读取小时汇总表，两端读取原始事件表)
      */
-    @Query("SELECT COUNT(e) FROM UserBehaviorEntity e WHERE e.userId = :userId " +
-           "AND e.eventTime BETWEEN :startTime AND :endTime")
+    @Query(value = "SELECT CAST((SELECT COALESCE(SUM(s.event_count), 0) FROM user_behavior_stats_hourly s " +
+           "WHERE s.user_id = :userId AND s.stat_hour >= :fullFrom AND s.stat_hour < :fullTo) + " +
+           "(SELECT COUNT(*) FROM user_behavior_events e WHERE e.user_id = :userId AND " + PARTIAL_HOURS + ") " +
+           "AS SIGNED)", nativeQuery = true)
     Long countUserEventsByTimeRange(
             @Param("userId") String userId,
             @Param("startTime") LocalDateTime startTime, 
+            @Param("endTime") LocalDateTime endTime,
+            @Param("fullFrom") LocalDateTime fullFrom,
+            @Param("fullTo") LocalDateTime fullTo);
+    
+    /**
+     * 统计用户在某时间之前各事件类型的数量 (用于补齐物化概要的历史部分)，按id分组后再解码
+     */
+    @Query(value = "SELECT COALESCE(dt.value, g.event_type) AS t, SUM(g.cnt) FROM (" +
+           "SELECT e.event_type_id, e.event_type, COUNT(*) AS cnt FROM user_behavior_events e " +
+           "WHERE e.user_id = :userId AND e.event_time < :before GROUP BY e.event_type_id, e.event_type) g " +
+           "LEFT JOIN " + EventAttributeSql.EVENT_TYPE_TABLE + " dt ON dt.id = g.event_type_id GROUP BY t",
+           nativeQuery = true)
+    List<Object[]> countEventTypesByUserIdBefore(
+            @Param("userId") String userId,
+            @Param("before") LocalDateTime before);
+    
+    /**
+     * 按天(yyyyMMdd)统计用户在时间范围内的事件数
+     */
+    @Query(value = "SELECT DATE_FORMAT(e.event_time, '%Y%m%d') AS d, COUNT(*) FROM user_behavior_events e " +
+           "WHERE e.user_id = :userId AND e.event_time >= :startTime AND e.event_time < :endTime " +
+           "GROUP BY d", nativeQuery = true)
+    List<Object[]> countDailyEventsByUserId(
+            @Param("userId") String userId,
+            @Param("startTime") LocalDateTime startTime,
             @Param("endTime") LocalDateTime endTime);
     
+    /**
+     * 用户最早的事件时间
+     */
+    @Query("SELECT MIN(e.eventTime) FROM UserBehaviorEntity e WHERE e.userId = :userId")
+    LocalDateTime findFirstEventTime(@Param("userId") String userId);
+    
     /**
      * 分页查询所有用户行为事件
      */
+    @Query(value = SELECT_DECODED + "ORDER BY e.event_time DESC",
+           countQuery = "SELECT COUNT(*) FROM user_behavior_events", nativeQuery = true)
     Page<UserBehaviorEntity> findAllByOrderByEventTimeDesc(Pageable pageable);
     
     /**
      * 根据事件类型查询
      */
-    Page<UserBehaviorEntity> findByEventTypeOrderByEventTimeDesc(String eventType, Pageable pageable);
+    @Query(value = SELECT_DECODED + "WHERE " + EventAttributeSql.EVENT_TYPE_FILTER
+           + " ORDER BY e.event_time DESC",
+           countQuery = "SELECT COUNT(*) FROM user_behavior_events e WHERE "
+           + EventAttributeSql.EVENT_TYPE_FILTER, nativeQuery = true)
+    Page<UserBehaviorEntity> findByEventTypeOrderByEventTimeDesc(@Param("eventType") String eventType, Pageable pageable);
 } 
\ No newline at end of file
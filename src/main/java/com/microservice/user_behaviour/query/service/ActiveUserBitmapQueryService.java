@@ -0,0 +1,219 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.dictionary.UserDictionary;
+import com.microservice.user_behaviour.util.OrdinalBitmap;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于每日活跃用户位图的留存与人群交集查询
+ *
+ * 每个 事件类型(all 为全部) × 天 的位图由各消费者实例的分段组成。读取时先一次 pipeline SMEMBERS
+ * 取得分段列表，再一次 pipeline GET 取回全部分段并求并集；留存和交集只做位图的 AND/OR，
+ * 不访问事件表。单个用户的活跃日通过共享用户字典取得其编号后逐日判断位图成员。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("query")
+public class ActiveUserBitmapQueryService {
+
+    public static final String ALL_EVENT_TYPES = "all";
+    private static final String SEGMENT_KEY = "bitmap:active:%s:%s:%s";
+    private static final String SEGMENTS_KEY = "bitmap:active:%s:%s:segments";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final UserDictionary userDictionary;
+
+    @Value("${bitmap.max-range-days:90}")
+    private int maxRangeDays;
+
+    private record DayKey(String eventType, LocalDate day) {}
+
+    /**
+     * cohortDate 当天做过 cohortEvent 的用户中，第 N 天 (N in days) 又做过 returnEvent 的人数和比例
+     */
+    public Map<String, Object> getRetention(LocalDate cohortDate, String cohortEvent, String returnEvent, List<Integer> days) {
+        String cohortType = cohortEvent != null ? cohortEvent : ALL_EVENT_TYPES;
+        String returnType = returnEvent != null ? returnEvent : ALL_EVENT_TYPES;
+        LocalDate today = LocalDate.now();
+
+        List<DayKey> keys = new ArrayList<>();
+        keys.add(new DayKey(cohortType, cohortDate));
+        for (Integer n : days) {
+            if (n == null || n <= 0 || n > maxRangeDays) {
+                throw new IllegalArgumentException("days must be between 1 and " + maxRangeDays);
+            }
+            if (!cohortDate.plusDays(n).isAfter(today)) {
+                keys.add(new DayKey(returnType, cohortDate.plusDays(n)));
+            }
+        }
+        Map<DayKey, OrdinalBitmap> bitmaps = load(keys);
+        OrdinalBitmap cohort = bitmaps.get(keys.get(0));
+        long cohortSize = cohort.cardinality();
+
+        List<Map<String, Object>> retention = new ArrayList<>();
+        for (Integer n : days) {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("day", n);
+            point.put("date", cohortDate.plusDays(n).toString());
+            OrdinalBitmap returned = bitmaps.get(new DayKey(returnType, cohortDate.plusDays(n)));
+            if (returned != null) {
+                long retained = cohort.andCardinality(returned);
+                point.put("retainedUsers", retained);
+                point.put("retentionRate", cohortSize == 0 ? null : (double) retained / cohortSize);
+            }
+            retention.add(point);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("cohortDate", cohortDate.toString());
+        result.put("cohortEvent", cohortType);
+        result.put("returnEvent", returnType);
+        result.put("cohortSize", cohortSize);
+        result.put("retention", retention);
+        return result;
+    }
+
+    /**
+     * [start, end] 内做过每一个 (mode=and) 或任意一个 (mode=or) 事件类型的用户数
+     */
+    public Map<String, Object> getAudience(List<String> eventTypes, LocalDate start, LocalDate end, boolean all) {
+        if (eventTypes.isEmpty()) {
+            throw new IllegalArgumentException("eventTypes must not be empty");
+        }
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("end must not be before start");
+        }
+        if (ChronoUnit.DAYS.between(start, end) >= maxRangeDays) {
+            throw new IllegalArgumentException("range must not exceed " + maxRangeDays + " days");
+        }
+
+        List<DayKey> keys = new ArrayList<>();
+        for (String eventType : eventTypes) {
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                keys.add(new DayKey(eventType, day));
+            }
+        }
+        Map<DayKey, OrdinalBitmap> bitmaps = load(keys);
+
+        Map<String, Long> perType = new LinkedHashMap<>();
+        OrdinalBitmap audience = null;
+        for (String eventType : eventTypes) {
+            OrdinalBitmap users = new OrdinalBitmap();
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                users = users.or(bitmaps.get(new DayKey(eventType, day)));
+            }
+            perType.put(eventType, users.cardinality());
+            audience = audience == null ? users : all ? audience.and(users) : audience.or(users);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("eventTypes", eventTypes);
+        result.put("mode", all ? "and" : "or");
+        result.put("startDate", start.toString());
+        result.put("endDate", end.toString());
+        result.put("usersPerEventType", perType);
+        result.put("users", audience.cardinality());
+        return result;
+    }
+
+    /**
+     * [start, end] 内用户做过 eventType (不传为任意事件) 的日期
+     */
+    public Map<String, Object> getActiveDays(String userId, String eventType, LocalDate start, LocalDate end) {
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("end must not be before start");
+        }
+        if (ChronoUnit.DAYS.between(start, end) >= maxRangeDays) {
+            throw new IllegalArgumentException("range must not exceed " + maxRangeDays + " days");
+        }
+        String type = eventType != null ? eventType : ALL_EVENT_TYPES;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("userId", userId);
+        result.put("eventType", type);
+        result.put("startDate", start.toString());
+        result.put("endDate", end.toString());
+
+        Integer userOrd = userDictionary.ordinalOf(userId);
+        List<String> activeDays = new ArrayList<>();
+        if (userOrd != null) {
+            List<DayKey> keys = new ArrayList<>();
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                keys.add(new DayKey(type, day));
+            }
+            Map<DayKey, OrdinalBitmap> bitmaps = load(keys);
+            int ordinal = UserDictionary.bitmapOrdinal(userOrd);
+            for (DayKey key : keys) {
+                if (bitmaps.get(key).contains(ordinal)) {
+                    activeDays.add(key.day().toString());
+                }
+            }
+        }
+        result.put("knownUser", userOrd != null);
+        result.put("activeDays", activeDays);
+        result.put("activeDayCount", activeDays.size());
+        return result;
+    }
+
+    /**
+     * 取回每个 (事件类型, 天) 的全部分段并求并集；没有数据的天为空位图
+     */
+    private Map<DayKey, OrdinalBitmap> load(List<DayKey> keys) {
+        List<Object> segmentLists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> connection.setCommands().sMembers(bytes(String.format(SEGMENTS_KEY,
+                    key.eventType(), TimeBuckets.dayLabel(key.day().atStartOfDay())))));
+            return null;
+        });
+
+        List<DayKey> owners = new ArrayList<>();
+        List<String> segmentKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (segmentLists.get(i) instanceof Set<?> segments) {
+                for (Object segment : segments) {
+                    owners.add(keys.get(i));
+                    segmentKeys.add(String.format(SEGMENT_KEY, keys.get(i).eventType(),
+                            TimeBuckets.dayLabel(keys.get(i).day().atStartOfDay()), segment));
+                }
+            }
+        }
+
+        List<Object> segmentBytes = segmentKeys.isEmpty() ? List.of()
+                : stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    segmentKeys.forEach(key -> connection.stringCommands().get(bytes(key)));
+                    return null;
+                }, null);
+
+        Map<DayKey, OrdinalBitmap> bitmaps = new HashMap<>();
+        keys.forEach(key -> bitmaps.put(key, new OrdinalBitmap()));
+        for (int i = 0; i < segmentKeys.size(); i++) {
+            if (segmentBytes.get(i) instanceof byte[] raw) {
+                bitmaps.merge(owners.get(i), OrdinalBitmap.deserialize(raw), OrdinalBitmap::or);
+            }
+        }
+        return bitmaps;
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
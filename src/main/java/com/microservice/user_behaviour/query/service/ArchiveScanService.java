@@ -0,0 +1,289 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.archive.EventSegment;
+import com.microservice.user_behaviour.archive.EventSegment.ColumnMeta;
+import com.microservice.user_behaviour.archive.EventSegmentReader;
+import com.microservice.user_behaviour.archive.EventSegmentReader.StringColumn;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 冷数据归档段文件上的聚合查询 (消费者归档并从MySQL删除的日期)
+ *
+ * 按列批量扫描：先用文件名日期、event_time / user_id 的 min/max 和段文件的用户布隆过滤器跳过整个文件，
+ * 再只解压用到的列，对基本类型数组算出选择向量 (满足时间和用户条件的行号)，最后按字典码在数组上计数，
+ * 不为每行创建对象。
+ */
+@Service
+@Slf4j
+@Profile("query")
+public class ArchiveScanService {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Value("${archive.dir:./data/archive}")
+    private String archiveDir;
+
+    /**
+     * 一个段文件中满足条件的行
+     */
+    private record Selection(EventSegmentReader reader, int[] rows, int size) {
+    }
+
+    @FunctionalInterface
+    private interface SegmentVisitor {
+        void visit(Selection selection) throws IOException;
+    }
+
+    /**
+     * 统计时间范围 [start, end) 内各事件类型的数量，userId 为空时统计所有用户；start/end 为空表示不限
+     */
+    public Map<String, Long> countEventTypes(String userId, LocalDateTime start, LocalDateTime end) {
+        Map<String, Long> counts = new HashMap<>();
+        scan(userId, start, end, selection -> countTypes(selection, counts));
+        return counts;
+    }
+
+    private static void countTypes(Selection selection, Map<String, Long> counts) throws IOException {
+        StringColumn types = selection.reader().strings(EventSegment.EVENT_TYPE);
+        int[] rows = selection.rows();
+        if (types.sorted()) {
+            long[] byCode = new long[types.dictionary().length + 1];
+            int[] codes = types.codes();
+            for (int i = 0; i < selection.size(); i++) {
+                byCode[codes[rows[i]]]++;
+            }
+            for (int code = 1; code < byCode.length; code++) {
+                if (byCode[code] > 0) {
+                    counts.merge(types.dictionary()[code - 1], byCode[code], Long::sum);
+                }
+            }
+        } else {
+            for (int i = 0; i < selection.size(); i++) {
+                String type = types.value(rows[i]);
+                if (type != null) {
+                    counts.merge(type, 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个用户在 before 之前的归档概要
+     *
+     * @param firstEventTime 最早事件时间，没有时为null
+     * @param eventTypes     各事件类型的数量
+     * @param daily          dailyFrom 起每天 (yyyyMMdd) 的事件数
+     */
+    public record UserArchiveSummary(LocalDateTime firstEventTime, Map<String, Long> eventTypes,
+                                     Map<String, Long> daily) {
+    }
+
+    /**
+     * 一次扫描同时得到用户的最早事件时间、事件类型计数和每日计数 (用户概要补齐历史部分时使用)
+     */
+    public UserArchiveSummary summarizeUser(String userId, LocalDateTime before, LocalDateTime dailyFrom) {
+        long[] first = {Long.MAX_VALUE};
+        Map<String, Long> types = new HashMap<>();
+        Map<String, Long> daily = new TreeMap<>();
+        long dailyFromMillis = EventTimes.toMillis(dailyFrom);
+        scan(userId, null, before, selection -> {
+            if (selection.size() == 0) {
+                return;
+            }
+            long[] times = selection.reader().longs(EventSegment.EVENT_TIME).values();
+            int[] rows = selection.rows();
+            first[0] = Math.min(first[0], times[rows[0]]);
+            countTypes(selection, types);
+            long recent = 0;
+            for (int i = 0; i < selection.size(); i++) {
+                recent += times[rows[i]] >= dailyFromMillis ? 1 : 0;
+            }
+            if (recent > 0) {
+                daily.merge(selection.reader().day().format(DAY_FORMAT), recent, Long::sum);
+            }
+        });
+        return new UserArchiveSummary(first[0] == Long.MAX_VALUE ? null : EventTimes.toLocalDateTime(first[0]),
+                types, daily);
+    }
+
+    /**
+     * 归档日期上的时间范围事件统计，返回结构与 UserBehaviorQueryService#getEventStatsByTimeRange 一致
+     */
+    public Map<String, Object> getEventStatsByTimeRange(String userId, LocalDateTime startTime,
+                                                        LocalDateTime endTime, int topN) {
+        Map<String, Long> eventTypeStats = new LinkedHashMap<>();
+        countEventTypes(userId, startTime, endTime).entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(topN)
+                .forEach(entry -> eventTypeStats.put(entry.getKey(), entry.getValue()));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("eventStats", eventTypeStats);
+        result.put("dailyCounts", countDaily(userId, startTime, endTime));
+        result.put("source", "archive");
+        result.put("timeRange", Map.of("start", startTime, "end", endTime));
+        return result;
+    }
+
+    /**
+     * 按天 (yyyyMMdd) 统计时间范围 [start, end) 内的事件数
+     */
+    public Map<String, Long> countDaily(String userId, LocalDateTime start, LocalDateTime end) {
+        Map<String, Long> counts = new TreeMap<>();
+        scan(userId, start, end, selection -> {
+            if (selection.size() > 0) {
+                counts.merge(selection.reader().day().format(DAY_FORMAT), (long) selection.size(), Long::sum);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * 用户在归档中最早的事件时间，没有时返回null
+     */
+    public LocalDateTime findFirstEventTime(String userId) {
+        long[] first = {Long.MAX_VALUE};
+        scan(userId, null, null, selection -> {
+            if (selection.size() > 0) {
+                long[] times = selection.reader().longs(EventSegment.EVENT_TIME).values();
+                first[0] = Math.min(first[0], times[selection.rows()[0]]);
+            }
+        });
+        return first[0] == Long.MAX_VALUE ? null : EventTimes.toLocalDateTime(first[0]);
+    }
+
+    /**
+     * 获取归档目录概况
+     */
+    public Map<String, Object> getArchiveStats() {
+        List<Path> files = segmentFiles(null, null);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dir", Paths.get(archiveDir).toAbsolutePath().toString());
+        stats.put("segmentFiles", files.size());
+        stats.put("firstDay", files.isEmpty() ? null : EventSegment.dayOf(files.get(0)).toString());
+        stats.put("lastDay", files.isEmpty() ? null : EventSegment.dayOf(files.get(files.size() - 1)).toString());
+        long rows = 0;
+        long bytes = 0;
+        for (Path file : files) {
+            try (EventSegmentReader reader = EventSegmentReader.open(file)) {
+                rows += reader.rowCount();
+                bytes += Files.size(file);
+            } catch (IOException e) {
+                log.warn("Skipping unreadable segment {}", file, e);
+            }
+        }
+        stats.put("rows", rows);
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    private void scan(String userId, LocalDateTime start, LocalDateTime end, SegmentVisitor visitor) {
+        long lo = start == null ? Long.MIN_VALUE : EventTimes.toMillis(start);
+        long hi = end == null ? Long.MAX_VALUE : EventTimes.toMillis(end);
+        for (Path file : segmentFiles(start == null ? null : start.toLocalDate(), end)) {
+            try (EventSegmentReader reader = EventSegmentReader.open(file)) {
+                if (reader.rowCount() == 0 || !overlaps(reader.meta(EventSegment.EVENT_TIME), lo, hi)
+                        || (userId != null && (!mayContain(reader.meta(EventSegment.USER_ID), userId)
+                                || !reader.mightContainUser(userId)))) {
+                    continue;
+                }
+                Selection selection = select(reader, userId, lo, hi);
+                if (selection != null) {
+                    visitor.visit(selection);
+                }
+            } catch (IOException e) {
+                log.warn("Skipping unreadable segment {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * 时间条件和用户条件的选择向量；用户不在该段的字典中时返回null
+     */
+    private static Selection select(EventSegmentReader reader, String userId, long lo, long hi) throws IOException {
+        int n = reader.rowCount();
+        long[] times = reader.longs(EventSegment.EVENT_TIME).values();
+        int[] rows = new int[n];
+        int size = 0;
+        if (userId == null) {
+            for (int i = 0; i < n; i++) {
+                rows[size] = i;
+                size += (times[i] >= lo && times[i] < hi) ? 1 : 0;
+            }
+            return new Selection(reader, rows, size);
+        }
+
+        StringColumn users = reader.strings(EventSegment.USER_ID);
+        int[] codes = users.codes();
+        if (users.sorted()) {
+            int code = users.codeOf(userId);
+            if (code < 0) {
+                return null;
+            }
+            for (int i = 0; i < n; i++) {
+                rows[size] = i;
+                size += (codes[i] == code && times[i] >= lo && times[i] < hi) ? 1 : 0;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                rows[size] = i;
+                size += (codes[i] != 0 && times[i] >= lo && times[i] < hi && userId.equals(users.value(i))) ? 1 : 0;
+            }
+        }
+        return new Selection(reader, rows, size);
+    }
+
+    private static boolean overlaps(ColumnMeta time, long lo, long hi) {
+        return time.min() == null || ((Long) time.max() >= lo && (Long) time.min() < hi);
+    }
+
+    private static boolean mayContain(ColumnMeta column, String value) {
+        return column.min() == null || column.max() == null
+                || (value.compareTo((String) column.min()) >= 0 && value.compareTo((String) column.max()) <= 0);
+    }
+
+    /**
+     * 日期在 [startDay, end) 内的段文件，按日期排序
+     */
+    private List<Path> segmentFiles(LocalDate startDay, LocalDateTime end) {
+        Path dir = Paths.get(archiveDir);
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.forEach(path -> {
+                LocalDate day = EventSegment.dayOf(path);
+                if (day != null && (startDay == null || !day.isBefore(startDay))
+                        && (end == null || day.atStartOfDay().isBefore(end))) {
+                    files.add(path);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to list archive directory {}", dir, e);
+        }
+        files.sort((a, b) -> EventSegment.dayOf(a).compareTo(EventSegment.dayOf(b)));
+        return files;
+    }
+}
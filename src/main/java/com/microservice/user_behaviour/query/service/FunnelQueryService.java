@@ -0,0 +1,133 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.util.FunnelDefinition;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 漏斗转化查询
+ *
+ * 消费者按进入漏斗的小时/天累计各步到达次数 (funnel:{name}:hour|day:*)。查询按 {@link TimeBuckets#cover}
+ * 选出覆盖范围的桶，一次 pipeline HGETALL 后逐步求和，代价只与桶数有关。
+ * funnel.definitions 需与消费者一致。
+ */
+@Service
+@Slf4j
+@Profile("query")
+public class FunnelQueryService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<String, FunnelDefinition> funnels = new LinkedHashMap<>();
+    private final int maxRangeDays;
+
+    public FunnelQueryService(StringRedisTemplate stringRedisTemplate,
+                              @Value("${funnel.definitions:checkout:PAGE_VIEW>BUTTON_CLICK|LINK_CLICK>SEARCH>PURCHASE}") String definitions,
+                              @Value("${funnel.max-range-days:400}") int maxRangeDays) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxRangeDays = maxRangeDays;
+        FunnelDefinition.parse(definitions).forEach(funnel -> funnels.put(funnel.name(), funnel));
+    }
+
+    /**
+     * 已配置的漏斗及其步骤
+     */
+    public List<Map<String, Object>> listFunnels() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (FunnelDefinition funnel : funnels.values()) {
+            List<String> steps = new ArrayList<>();
+            for (int i = 0; i < funnel.steps().size(); i++) {
+                steps.add(funnel.stepLabel(i));
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", funnel.name());
+            entry.put("steps", steps);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * 计算在 [start, end] 所覆盖小时内进入漏斗的用户的各步转化
+     */
+    public Map<String, Object> getFunnel(String name, LocalDateTime start, LocalDateTime end) {
+        FunnelDefinition funnel = funnels.get(name);
+        if (funnel == null) {
+            throw new IllegalArgumentException("Unknown funnel: " + name);
+        }
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("end must not be before start");
+        }
+        if (ChronoUnit.DAYS.between(start, end) > maxRangeDays) {
+            throw new IllegalArgumentException("range must not exceed " + maxRangeDays + " days");
+        }
+
+        List<String> keys = TimeBuckets.cover(start, end, funnel::hourKey, funnel::dayKey);
+        long[] counts = load(keys, funnel.steps().size());
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("step", i + 1);
+            step.put("eventTypes", funnel.stepLabel(i));
+            step.put("count", counts[i]);
+            step.put("conversionFromPrevious", i == 0 ? null : rate(counts[i], counts[i - 1]));
+            step.put("conversionFromStart", rate(counts[i], counts[0]));
+            steps.add(step);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("funnel", name);
+        result.put("startTime", start);
+        result.put("endTime", end);
+        result.put("steps", steps);
+        result.put("overallConversion", rate(counts[counts.length - 1], counts[0]));
+        result.put("buckets", keys.size());
+        return result;
+    }
+
+    private long[] load(List<String> keys, int stepCount) {
+        List<Object> hashes = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                keys.forEach(key -> ops.opsForHash().entries(key));
+                return null;
+            }
+        });
+
+        long[] counts = new long[stepCount];
+        for (Object hash : hashes) {
+            if (hash instanceof Map<?, ?> steps) {
+                steps.forEach((step, count) -> {
+                    int index = Integer.parseInt(step.toString());
+                    if (index >= 0 && index < stepCount) {
+                        counts[index] += Long.parseLong(count.toString());
+                    }
+                });
+            }
+        }
+        return counts;
+    }
+
+    private static Double rate(long count, long base) {
+        return base == 0 ? null : (double) count / base;
+    }
+}
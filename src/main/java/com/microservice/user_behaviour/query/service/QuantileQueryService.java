@@ -0,0 +1,113 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.util.QuantileSketch;
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * eventData 数值字段的分位数查询
+ *
+ * 按 {@link TimeBuckets#cover} 选出覆盖查询范围的小时/天草图，一次 pipeline HGETALL 取回后合并，
+ * 返回的分位数相对误差不超过 quantile.relative-accuracy (需与消费者一致)。
+ * 小时草图只保留 quantile.hour.ttl 秒，更早的不完整日改用整天草图，结果中 widenedToWholeDays 为 true。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("query")
+public class QuantileQueryService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${quantile.relative-accuracy:0.01}")
+    private double relativeAccuracy;
+
+    @Value("${quantile.max-range-days:400}")
+    private int maxRangeDays;
+
+    @Value("${quantile.hour.ttl:691200}")
+    private long hourTtl; // 秒，与消费者一致
+
+    /**
+     * 计算 [start, end] 所覆盖小时内 eventType 事件 field 字段的分位数
+     */
+    public Map<String, Object> getQuantiles(String eventType, String field, LocalDateTime start,
+                                            LocalDateTime end, List<Double> quantiles) {
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("end must not be before start");
+        }
+        if (ChronoUnit.DAYS.between(start, end) > maxRangeDays) {
+            throw new IllegalArgumentException("range must not exceed " + maxRangeDays + " days");
+        }
+
+        TimeBuckets.Cover cover = TimeBuckets.cover(start, end,
+                hour -> String.format(TimeBuckets.QUANTILE_HOUR_KEY, eventType, field, hour),
+                day -> String.format(TimeBuckets.QUANTILE_DAY_KEY, eventType, field, day),
+                LocalDateTime.now().minusSeconds(hourTtl));
+        List<String> keys = cover.keys();
+        QuantileSketch sketch = load(keys);
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Double q : quantiles) {
+            double value = sketch.quantile(q);
+            values.put(label(q), Double.isNaN(value) ? null : value);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("eventType", eventType);
+        result.put("field", field);
+        result.put("startTime", start);
+        result.put("endTime", end);
+        result.put("count", sketch.count());
+        result.put("quantiles", values);
+        result.put("relativeAccuracy", relativeAccuracy);
+        result.put("buckets", keys.size());
+        result.put("widenedToWholeDays", cover.widened());
+        return result;
+    }
+
+    private QuantileSketch load(List<String> keys) {
+        List<Object> hashes = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                keys.forEach(key -> ops.opsForHash().entries(key));
+                return null;
+            }
+        });
+
+        QuantileSketch sketch = new QuantileSketch(relativeAccuracy);
+        for (Object hash : hashes) {
+            if (hash instanceof Map<?, ?> buckets) {
+                buckets.forEach((bucket, count) -> sketch.addToBucket(bucket.toString(), Long.parseLong(count.toString())));
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * 0.95 -> p95, 0.999 -> p99.9
+     */
+    static String label(double q) {
+        return "p" + BigDecimal.valueOf(q).movePointRight(2).stripTrailingZeros().toPlainString();
+    }
+}
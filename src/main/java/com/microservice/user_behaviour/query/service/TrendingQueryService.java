@@ -0,0 +1,59 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.util.EventTimes;
+import com.microservice.user_behaviour.util.TrendingDecay;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 读取消费者维护的时间衰减趋势排行榜 (stats:trending:*)
+ *
+ * 半衰期和纪元长度必须与消费者配置一致。
+ */
+@Service
+@Slf4j
+@Profile("query")
+public class TrendingQueryService {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final TrendingDecay decay;
+
+    public TrendingQueryService(@Qualifier("queryRedisTemplate") RedisTemplate<String, Object> redisTemplate,
+                                @Value("${trending.half-life-ms:21600000}") long halfLifeMillis,
+                                @Value("${trending.epoch-ms:604800000}") long epochMillis) {
+        this.redisTemplate = redisTemplate;
+        this.decay = new TrendingDecay(halfLifeMillis, epochMillis);
+    }
+
+    /**
+     * 获取衰减到当前时刻的趋势排行榜，kind 为 {@link TrendingDecay#USERS} 或 {@link TrendingDecay#EVENT_TYPES}
+     */
+    public Set<ZSetOperations.TypedTuple<Object>> getTrending(String kind, int topN) {
+        try {
+            long now = EventTimes.toMillis(LocalDateTime.now());
+            long epoch = decay.epochOf(now);
+            // 当前纪元尚未合并上一纪元时，上一纪元的排行榜仍然更完整
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(TrendingDecay.carriedKey(epoch)))) {
+                epoch--;
+            }
+            Set<ZSetOperations.TypedTuple<Object>> raw = redisTemplate.opsForZSet()
+                    .reverseRangeWithScores(TrendingDecay.leaderboardKey(kind, epoch), 0, topN - 1);
+            log.debug("Retrieved {} trending {} from epoch {}", raw != null ? raw.size() : 0, kind, epoch);
+            return decay.decayToNow(raw, epoch, now);
+            
+        } catch (Exception e) {
+            log.error("Error retrieving trending {}", kind, e);
+            return Set.of();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于HyperLogLog的独立用户数查询
+ *
+ * 把查询范围拆成尽量少的桶：完整覆盖的自然日使用天HLL，首尾不完整的日使用小时HLL，
+ * 再用一次 PFCOUNT 多key 求并集基数。结果是估计值，标准误差约 0.81%。
+ * 小时HLL只保留 hll.hour.ttl 秒，更早的不完整日改用整天HLL，结果中 widenedToWholeDays 为 true。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("query")
+public class UniqueUserCountService {
+
+    public static final String ALL_EVENT_TYPES = "all";
+    public static final double STANDARD_ERROR = 0.0081;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${unique-users.max-range-days:400}")
+    private int maxRangeDays;
+
+    @Value("${hll.hour.ttl:691200}")
+    private long hourTtl; // 秒，与消费者一致
+
+    /**
+     * 统计 [start, end] 所覆盖小时内的独立用户数，eventType 为空时统计所有类型
+     */
+    public Map<String, Object> countUniqueUsers(String eventType, LocalDateTime start, LocalDateTime end) {
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("end must not be before start");
+        }
+        if (ChronoUnit.DAYS.between(start, end) > maxRangeDays) {
+            throw new IllegalArgumentException("range must not exceed " + maxRangeDays + " days");
+        }
+
+        String type = eventType == null || eventType.isBlank() ? ALL_EVENT_TYPES : eventType;
+        TimeBuckets.Cover cover = bucketKeys(type, start, end, LocalDateTime.now().minusSeconds(hourTtl));
+        List<String> keys = cover.keys();
+        Long count = stringRedisTemplate.opsForHyperLogLog().size(keys.toArray(new String[0]));
+        long uniqueUsers = count != null ? count : 0L;
+        log.debug("Unique users for {} between {} and {}: {} ({} buckets)", type, start, end, uniqueUsers, keys.size());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("eventType", type);
+        result.put("startTime", start);
+        result.put("endTime", end);
+        result.put("uniqueUsers", uniqueUsers);
+        result.put("buckets", keys.size());
+        result.put("widenedToWholeDays", cover.widened());
+        result.put("standardError", STANDARD_ERROR);
+        result.put("source", "hyperloglog");
+        return result;
+    }
+
+    /**
+     * 覆盖 [start, end] 所在小时的最少HLL key集合
+     */
+    static List<String> bucketKeys(String eventType, LocalDateTime start, LocalDateTime end) {
+        return bucketKeys(eventType, start, end, null).keys();
+    }
+
+    /**
+     * 同上，hoursFrom 之前的小时HLL已过期，所在日改用天HLL
+     */
+    static TimeBuckets.Cover bucketKeys(String eventType, LocalDateTime start, LocalDateTime end, LocalDateTime hoursFrom) {
+        return TimeBuckets.cover(start, end,
+                hour -> String.format(TimeBuckets.UNIQUE_USERS_HOUR_KEY, eventType, hour),
+                day -> String.format(TimeBuckets.UNIQUE_USERS_DAY_KEY, eventType, day),
+                hoursFrom);
+    }
+}
@@ -2,6 +2,7 @@ package com.microservice.user_behaviour.query.service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +36,7 @@ public class UserBehaviorQueryService {
     private final UserBehaviorQueryRepository repository;
     @Qualifier("queryRedisTemplate")
     private final RedisTemplate<String, Object> redisTemplate;
+    private final UserSummaryReader summaryReader;
     
     @Value("${query.cache.ttl:3600}") // 1小时缓存
     private long cacheTtl;
@@ -42,7 +44,11 @@ public class UserBehaviorQueryService {
     @Value("${query.cache.enable:true}")
     private boolean cacheEnabled;
     
+    @Value("${query.events.lookback-days:7,90}") // 逐级放宽的时间窗口，利用分区裁剪
+    private int[] lookbackDays;
+    
     // 缓存键前缀
+    private static final String TOP_USERS_KEY = "stats:user_heavy_hitters";
     private static final String USER_EVENTS_CACHE_KEY = "query:user:%s:events:%d";
     private static final String USER_SUMMARY_CACHE_KEY = "query:user:%s:summary";
     private static final String TOP_EVENT_TYPES_CACHE_KEY = "query:stats:top_event_types";
@@ -73,8 +79,7 @@ public class UserBehaviorQueryService {
         
         // 2. 缓存未命中，查询数据库
         log.info("Cache MISS for user events: userId={}, limit={}", userId, limit);
-        Pageable pageable = PageRequest.of(0, limit);
-        List<UserBehaviorEntity> entities = repository.findByUserIdOrderByEventTimeDesc(userId, pageable);
+        List<UserBehaviorEntity> entities = findRecentEvents(userId, limit);
         
         // 3. 转换为Event对象
         List<UserBehaviorEvent> events = entities.stream()
@@ -97,10 +102,40 @@ public class UserBehaviorQueryService {
     }
     
     /**
-     * 查询用户行为概要统计（缓存Aside模式）
+     * 按 lookbackDays 逐级放宽时间窗口查询最近事件，只扫描最近的分区；
+     * 窗口内不足 limit 条时才不带时间条件全表查询，结果与直接查询一致
+     */
+    private List<UserBehaviorEntity> findRecentEvents(String userId, int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+        if (lookbackDays != null) {
+            LocalDateTime now = LocalDateTime.now();
+            for (int days : lookbackDays) {
+                List<UserBehaviorEntity> entities = repository.findByUserIdAndEventTimeAfterOrderByEventTimeDesc(
+                        userId, now.minusDays(days), pageable);
+                if (entities.size() >= limit) {
+                    return entities;
+                }
+            }
+        }
+        return repository.findByUserIdOrderByEventTimeDesc(userId, pageable);
+    }
+    
+    /**
+     * 查询用户行为概要统计
+     * 优先读取消费者写入时维护的物化概要(O(1))，没有概要的用户走缓存Aside + SQL
      */
     @SuppressWarnings("unchecked")
     public Map<String, Object> getUserSummary(String userId) {
+        try {
+            Map<String, Object> materialized = summaryReader.getSummary(userId);
+            if (materialized != null) {
+                log.debug("Materialized summary HIT: userId={}", userId);
+                return materialized;
+            }
+        } catch (Exception e) {
+            log.warn("Materialized summary read failed: userId={}", userId, e);
+        }
+        
         String cacheKey = String.format(USER_SUMMARY_CACHE_KEY, userId);
         
         // 1. 先查缓存
@@ -163,7 +198,7 @@ public class UserBehaviorQueryService {
         try {
             // 直接从Redis有序集合读取
             Set<ZSetOperations.TypedTuple<Object>> cachedResults = 
-                    redisTemplate.opsForZSet().reverseRangeWithScores("stats:user_event_count", 0, topN - 1);
+                    redisTemplate.opsForZSet().reverseRangeWithScores(TOP_USERS_KEY, 0, topN - 1);
             
             if (cachedResults != null && !cachedResults.isEmpty()) {
                 log.info("Retrieved {} top active users from Redis cache", cachedResults.size());
@@ -206,12 +241,14 @@ public class UserBehaviorQueryService {
         
         // 从数据库查询
         Pageable pageable = PageRequest.of(0, topN);
-        List<Object[]> dbResults = repository.findEventTypeStatsByTimeRange(startTime, endTime, pageable);
+        LocalDateTime[] fullHours = fullHours(startTime, endTime);
+        List<Object[]> dbResults = repository.findEventTypeStatsByTimeRange(
+                startTime, endTime, fullHours[0], fullHours[1], pageable);
         
         Map<String, Long> eventTypeStats = dbResults.stream()
                 .collect(Collectors.toMap(
                         arr -> (String) arr[0],
-                        arr -> (Long) arr[1]
+                        arr -> ((Number) arr[1]).longValue()
                 ));
         
         result.put("eventStats", eventTypeStats);
@@ -221,6 +258,22 @@ public class UserBehaviorQueryService {
         return result;
     }
     
+    /**
+     * 时间范围 [start, end] 中完整落在内部的小时 [fullFrom, fullTo)，由小时汇总表提供；
+     * 两端不足一小时的部分由原始事件表提供。没有完整小时时 fullFrom = fullTo = end，整个范围读取原始事件表
+     */
+    static LocalDateTime[] fullHours(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime fullFrom = start.truncatedTo(ChronoUnit.HOURS);
+        if (fullFrom.isBefore(start)) {
+            fullFrom = fullFrom.plusHours(1);
+        }
+        LocalDateTime fullTo = end.truncatedTo(ChronoUnit.HOURS);
+        if (!fullFrom.isBefore(fullTo)) {
+            return new LocalDateTime[] {end, end};
+        }
+        return new LocalDateTime[] {fullFrom, fullTo};
+    }
+    
     /**
      * 分页查询所有事件
      */
@@ -252,7 +305,7 @@ public class UserBehaviorQueryService {
         Map<String, Long> eventTypeCounts = eventTypeStats.stream()
                 .collect(Collectors.toMap(
                         arr -> (String) arr[0],
-                        arr -> (Long) arr[1]
+                        arr -> ((Number) arr[1]).longValue()
                 ));
         
         // 计算总事件数
@@ -261,7 +314,9 @@ public class UserBehaviorQueryService {
         // 查询最近30天的事件数
         LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
         LocalDateTime now = LocalDateTime.now();
-        Long recentEventCount = repository.countUserEventsByTimeRange(userId, thirtyDaysAgo, now);
+        LocalDateTime[] fullHours = fullHours(thirtyDaysAgo, now);
+        Long recentEventCount = repository.countUserEventsByTimeRange(
+                userId, thirtyDaysAgo, now, fullHours[0], fullHours[1]);
         
         summary.put("userId", userId);
         summary.put("totalEvents", totalEvents);
@@ -280,7 +335,7 @@ public class UserBehaviorQueryService {
         List<Object[]> dbResults = repository.findTopEventTypes(pageable);
         
         return dbResults.stream()
-                .map(arr -> ZSetOperations.TypedTuple.of(arr[0], ((Long) arr[1]).doubleValue()))
+                .map(arr -> ZSetOperations.TypedTuple.of(arr[0], ((Number) arr[1]).doubleValue()))
                 .collect(Collectors.toSet());
     }
     
@@ -292,7 +347,7 @@ public class UserBehaviorQueryService {
         List<Object[]> dbResults = repository.findTopActiveUsers(pageable);
         
         return dbResults.stream()
-                .map(arr -> ZSetOperations.TypedTuple.of(arr[0], ((Long) arr[1]).doubleValue()))
+                .map(arr -> ZSetOperations.TypedTuple.of(arr[0], ((Number) arr[1]).doubleValue()))
                 .collect(Collectors.toSet());
     }
     
@@ -0,0 +1,153 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import com.microservice.user_behaviour.query.repository.UserBehaviorQueryRepository;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 读取消费者维护的用户概要Hash (user:{userId}:summary)
+ *
+ * 概要Hash只包含从 since 字段开始被消费的事件。对于功能上线前就已存在的用户，
+ * 第一次读取时从SQL补齐 since 之前的历史部分(只执行一次，由 base 字段标记)，之后读取都是一次HGETALL。
+ * 已归档出MySQL的日期由 {@link ArchiveScanService} 扫描段文件补齐。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@Profile("query")
+public class UserSummaryReader {
+
+    private static final String USER_SUMMARY_KEY = "user:%s:summary";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * KEYS[1] = 概要Hash; ARGV[1] = 历史最早事件时间(毫秒，可为空)，之后为 字段, 增量 成对出现。
+     * 用 HSETNX base 保证历史部分只被补齐一次
+     */
+    static final RedisScript<Long> MERGE_BASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HSETNX', KEYS[1], 'base', '1') == 0 then return 0 end\n"
+            + "for i = 2, #ARGV, 2 do redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) end\n"
+            + "if ARGV[1] ~= '' then\n"
+            + "  local first = redis.call('HGET', KEYS[1], 'first_seen')\n"
+            + "  if not first or tonumber(ARGV[1]) < tonumber(first) then redis.call('HSET', KEYS[1], 'first_seen', ARGV[1]) end\n"
+            + "end\n"
+            + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final UserBehaviorQueryRepository repository;
+    private final ArchiveScanService archiveScanService;
+
+    @Value("${summary.recent.days:30}")
+    private int recentDays;
+
+    /**
+     * 读取物化概要；该用户没有概要Hash时返回null
+     */
+    public Map<String, Object> getSummary(String userId) {
+        String key = String.format(USER_SUMMARY_KEY, userId);
+        Map<Object, Object> hash = stringRedisTemplate.opsForHash().entries(key);
+        if (hash.isEmpty()) {
+            return null;
+        }
+        if (!hash.containsKey("base") && hash.containsKey("since")) {
+            mergeBase(userId, key, Long.parseLong((String) hash.get("since")));
+            hash = stringRedisTemplate.opsForHash().entries(key);
+        }
+        return toSummary(userId, hash);
+    }
+
+    /**
+     * 从SQL和归档补齐 since 之前的历史计数
+     */
+    private void mergeBase(String userId, String key, long sinceMillis) {
+        LocalDateTime since = EventTimes.toLocalDateTime(sinceMillis);
+        LocalDateTime recentStart = LocalDate.now().minusDays(recentDays).atStartOfDay();
+
+        // 归档部分一次扫描得到三项结果
+        ArchiveScanService.UserArchiveSummary archived = archiveScanService.summarizeUser(userId, since, recentStart);
+        List<String> args = new ArrayList<>();
+        LocalDateTime first = repository.findFirstEventTime(userId);
+        LocalDateTime archivedFirst = archived.firstEventTime();
+        if (archivedFirst != null && (first == null || archivedFirst.isBefore(first))) {
+            first = archivedFirst;
+        }
+        args.add(first != null && first.isBefore(since) ? Long.toString(EventTimes.toMillis(first)) : "");
+
+        Map<String, Long> typeCounts = new HashMap<>(archived.eventTypes());
+        for (Object[] row : repository.countEventTypesByUserIdBefore(userId, since)) {
+            typeCounts.merge((String) row[0], ((Number) row[1]).longValue(), Long::sum);
+        }
+        long total = 0;
+        for (Map.Entry<String, Long> entry : typeCounts.entrySet()) {
+            total += entry.getValue();
+            args.add("type:" + entry.getKey());
+            args.add(Long.toString(entry.getValue()));
+        }
+        args.add("total");
+        args.add(Long.toString(total));
+        if (recentStart.isBefore(since)) {
+            Map<String, Long> dayCounts = new HashMap<>(archived.daily());
+            for (Object[] row : repository.countDailyEventsByUserId(userId, recentStart, since)) {
+                dayCounts.merge((String) row[0], ((Number) row[1]).longValue(), Long::sum);
+            }
+            for (Map.Entry<String, Long> entry : dayCounts.entrySet()) {
+                args.add("day:" + entry.getKey());
+                args.add(Long.toString(entry.getValue()));
+            }
+        }
+
+        Long merged = stringRedisTemplate.execute(MERGE_BASE_SCRIPT, List.of(key), args.toArray());
+        log.info("Merged {} historical events into summary of user {} (applied={})", total, userId, merged);
+    }
+
+    private Map<String, Object> toSummary(String userId, Map<Object, Object> hash) {
+        String cutoffDay = LocalDate.now().minusDays(recentDays - 1L).format(DAY_FORMAT);
+        Map<String, Long> eventTypeCounts = new HashMap<>();
+        long recent = 0;
+        for (Map.Entry<Object, Object> entry : hash.entrySet()) {
+            String field = (String) entry.getKey();
+            if (field.startsWith("type:")) {
+                eventTypeCounts.put(field.substring(5), Long.parseLong((String) entry.getValue()));
+            } else if (field.startsWith("day:") && field.substring(4).compareTo(cutoffDay) >= 0) {
+                recent += Long.parseLong((String) entry.getValue());
+            }
+        }
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("userId", userId);
+        summary.put("totalEvents", parseLong(hash.get("total")));
+        summary.put("recentEvents30Days", recent);
+        summary.put("eventTypeCounts", eventTypeCounts);
+        summary.put("firstSeen", toTime(hash.get("first_seen")));
+        summary.put("lastSeen", toTime(hash.get("last_seen")));
+        summary.put("lastUpdated", LocalDateTime.now());
+        summary.put("source", "materialized");
+        return summary;
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0L : Long.parseLong((String) value);
+    }
+
+    private static LocalDateTime toTime(Object millis) {
+        return millis == null ? null : EventTimes.toLocalDateTime(Long.parseLong((String) millis));
+    }
+}
@@ -0,0 +1,101 @@
+package com.microservice.user_behaviour.query.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 最近N小时的用户活跃度排行榜
+ *
+ * 消费者按事件时间把用户活跃度写入小时桶 stats:users:hourly:{yyyy-MM-dd-HH}，每个桶是固定容量的
+ * Space-Saving 排行榜 (heavy-hitters.hourly.capacity 个成员)，7天窗口也只合并有限个成员。
+ * 查询时用一次 ZUNIONSTORE 把最近N个小时桶合并到短期结果key，结果缓存到下一个小时桶开始
+ * (最长 leaderboard.result.ttl 秒，限制当前小时数据的滞后)，之后的请求只读结果key。
+ */
+@Service
+@Slf4j
+@Profile("query")
+public class WindowedLeaderboardService {
+
+    private static final String USER_HOURLY_STATS_KEY = "stats:users:hourly:%s";
+    private static final String RESULT_KEY = "query:leaderboard:users:%dh:%s";
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+    static final int MAX_WINDOW_HOURS = 7 * 24;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long resultTtlSeconds;
+
+    public WindowedLeaderboardService(@Qualifier("queryRedisTemplate") RedisTemplate<String, Object> redisTemplate,
+                                      @Value("${leaderboard.result.ttl:300}") long resultTtlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.resultTtlSeconds = resultTtlSeconds;
+    }
+
+    /**
+     * 查询最近 window (如 1h、24h、7d) 内最活跃的用户
+     */
+    public Set<ZSetOperations.TypedTuple<Object>> getTopUsers(String window, int topN) {
+        int hours = parseWindowHours(window);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime currentHour = now.truncatedTo(ChronoUnit.HOURS);
+        String resultKey = String.format(RESULT_KEY, hours, currentHour.format(HOUR_FORMAT));
+
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(resultKey))) {
+            List<String> buckets = bucketKeys(currentHour, hours);
+            Long size = redisTemplate.opsForZSet().unionAndStore(buckets.get(0), buckets.subList(1, buckets.size()), resultKey);
+            long untilRollover = Duration.between(now, currentHour.plusHours(1)).getSeconds();
+            redisTemplate.expire(resultKey, Duration.ofSeconds(Math.max(1, Math.min(untilRollover, resultTtlSeconds))));
+            log.info("Built {}h user leaderboard from {} hourly buckets ({} users)", hours, buckets.size(), size);
+        }
+
+        return redisTemplate.opsForZSet().reverseRangeWithScores(resultKey, 0, topN - 1);
+    }
+
+    /**
+     * 以 currentHour 结尾的最近 hours 个小时桶
+     */
+    static List<String> bucketKeys(LocalDateTime currentHour, int hours) {
+        List<String> keys = new ArrayList<>(hours);
+        for (int i = 0; i < hours; i++) {
+            keys.add(String.format(USER_HOURLY_STATS_KEY, currentHour.minusHours(i).format(HOUR_FORMAT)));
+        }
+        return keys;
+    }
+
+    /**
+     * 解析 "24h"、"7d" 形式的窗口，最长7天
+     */
+    static int parseWindowHours(String window) {
+        if (window == null || window.length() < 2) {
+            throw new IllegalArgumentException("window must look like 1h, 24h or 7d");
+        }
+        int amount;
+        try {
+            amount = Integer.parseInt(window.substring(0, window.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("window must look like 1h, 24h or 7d");
+        }
+        int hours = switch (Character.toLowerCase(window.charAt(window.length() - 1))) {
+            case 'h' -> amount;
+            case 'd' -> amount * 24;
+            default -> throw new IllegalArgumentException("window must look like 1h, 24h or 7d");
+        };
+        if (hours < 1 || hours > MAX_WINDOW_HOURS) {
+            throw new IllegalArgumentException("window must be between 1h and 7d");
+        }
+        return hours;
+    }
+}
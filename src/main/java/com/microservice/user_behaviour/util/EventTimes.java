@@ -0,0 +1,25 @@
+package com.microservice.user_behaviour.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Conversions between event times and "local epoch millis": the local wall-clock time
+ * read as if it were UTC. Buckets computed on these millis line up with the local-time
+ * hour/day keys (stats:hourly:*, stats:daily:*) used across the consumer and query services,
+ * and values written to Redis by the consumer can be decoded the same way by the query service.
+ */
+public final class EventTimes {
+
+    private EventTimes() {
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000 + time.getNano() / 1_000_000;
+    }
+
+    public static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+}
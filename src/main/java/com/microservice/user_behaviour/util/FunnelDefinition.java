@@ -0,0 +1,78 @@
+package com.microservice.user_behaviour.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A conversion funnel shared by the consumer, which tracks per-user progress and writes the
+ * per-hour/per-day step counts, and the query service, which reads them back. Funnels are
+ * configured as {@code name:STEP>STEP>...} separated by {@code ;}, where a step may accept
+ * several event types separated by {@code |}, e.g.
+ * {@code checkout:PAGE_VIEW>BUTTON_CLICK|LINK_CLICK>SEARCH>PURCHASE}.
+ * <p>
+ * Step counts are stored in hashes keyed by the hour/day in which the user entered the funnel
+ * (field = zero-based step index), so the counts of one bucket form a proper funnel: everyone
+ * counted at step i was also counted at step i-1.
+ */
+public record FunnelDefinition(String name, List<Set<String>> steps) {
+
+    public static final int MAX_STEPS = 255;
+    private static final String HOUR_KEY = "funnel:%s:hour:%s";
+    private static final String DAY_KEY = "funnel:%s:day:%s";
+
+    public FunnelDefinition {
+        if (steps.size() < 2 || steps.size() > MAX_STEPS) {
+            throw new IllegalArgumentException("Funnel " + name + " must have between 2 and " + MAX_STEPS + " steps");
+        }
+        steps = List.copyOf(steps);
+    }
+
+    /**
+     * Parse "checkout:PAGE_VIEW>BUTTON_CLICK|LINK_CLICK>SEARCH>PURCHASE;signup:PAGE_VIEW>FORM_SUBMIT"
+     */
+    public static List<FunnelDefinition> parse(String spec) {
+        List<FunnelDefinition> funnels = new ArrayList<>();
+        for (String entry : spec.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2 || parts[0].isBlank()) {
+                throw new IllegalArgumentException("Malformed funnel '" + entry + "', expected name:STEP>STEP");
+            }
+            List<Set<String>> steps = new ArrayList<>();
+            for (String step : parts[1].split(">")) {
+                Set<String> types = Arrays.stream(step.split("\\|"))
+                        .map(String::trim)
+                        .filter(type -> !type.isEmpty())
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+                if (types.isEmpty()) {
+                    throw new IllegalArgumentException("Empty step in funnel '" + entry + "'");
+                }
+                steps.add(types);
+            }
+            funnels.add(new FunnelDefinition(parts[0].trim(), steps));
+        }
+        return funnels;
+    }
+
+    public boolean matches(int step, String eventType) {
+        return steps.get(step).contains(eventType);
+    }
+
+    public String stepLabel(int step) {
+        return String.join("|", steps.get(step));
+    }
+
+    public String hourKey(String hourLabel) {
+        return String.format(HOUR_KEY, name, hourLabel);
+    }
+
+    public String dayKey(String dayLabel) {
+        return String.format(DAY_KEY, name, dayLabel);
+    }
+}
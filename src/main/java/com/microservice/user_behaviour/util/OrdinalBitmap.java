@@ -0,0 +1,383 @@
+package com.microservice.user_behaviour.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A compressed bitmap of non-negative int ordinals in the style of Roaring bitmaps, shared by
+ * the consumer (which builds the per-day active-user bitmaps) and the query service (which
+ * combines them). The ordinal space is cut into chunks of 2^16; each non-empty chunk is either
+ * a sorted array of its low 16 bits (up to 4096 values, 2 bytes per value) or a 2^16-bit
+ * bitmap (8KB), whichever is smaller. Sparse sets such as the buyers of one day therefore cost
+ * about 2 bytes per member and dense sets such as the daily active users at most 1 bit per
+ * ordinal.
+ * <p>
+ * Not thread-safe. The serialized form is: chunk count, then per chunk its key (u16) and
+ * cardinality (i32) followed by either the array values or the 1024 bitmap words.
+ */
+public final class OrdinalBitmap {
+
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public OrdinalBitmap() {
+    }
+
+    /**
+     * @return true if the ordinal was not yet present
+     */
+    public boolean add(int ordinal) {
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Ordinal must not be negative: " + ordinal);
+        }
+        char high = (char) (ordinal >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, high);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, high, new Container(new char[4], null, 0));
+        }
+        return containers[index].add((char) ordinal);
+    }
+
+    public boolean contains(int ordinal) {
+        if (ordinal < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, (char) (ordinal >>> 16));
+        return index >= 0 && containers[index].contains((char) ordinal);
+    }
+
+    public long cardinality() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality;
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Union of the two bitmaps as a new bitmap
+     */
+    public OrdinalBitmap or(OrdinalBitmap other) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Intersection of the two bitmaps as a new bitmap
+     */
+    public OrdinalBitmap and(OrdinalBitmap other) {
+        OrdinalBitmap result = new OrdinalBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (other.keys[j] < keys[i]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Size of the intersection without materializing it
+     */
+    public long andCardinality(OrdinalBitmap other) {
+        long total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (other.keys[j] < keys[i]) {
+                j++;
+            } else {
+                total += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Approximate serialized size in bytes
+     */
+    public long sizeInBytes() {
+        long bytes = 4;
+        for (int i = 0; i < size; i++) {
+            bytes += 6 + containers[i].payloadBytes();
+        }
+        return bytes;
+    }
+
+    public byte[] serialize() {
+        ByteBuffer buffer = ByteBuffer.allocate((int) sizeInBytes());
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            buffer.putChar(keys[i]);
+            buffer.putInt(container.cardinality);
+            if (container.words != null) {
+                for (long word : container.words) {
+                    buffer.putLong(word);
+                }
+            } else {
+                for (int v = 0; v < container.cardinality; v++) {
+                    buffer.putChar(container.values[v]);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    public static OrdinalBitmap deserialize(byte[] bytes) {
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        if (bytes == null || bytes.length == 0) {
+            return bitmap;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int chunks = buffer.getInt();
+        for (int i = 0; i < chunks; i++) {
+            char key = buffer.getChar();
+            int cardinality = buffer.getInt();
+            if (cardinality > ARRAY_MAX) {
+                long[] words = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    words[w] = buffer.getLong();
+                }
+                bitmap.append(key, new Container(null, words, cardinality));
+            } else {
+                char[] values = new char[cardinality];
+                for (int v = 0; v < cardinality; v++) {
+                    values[v] = buffer.getChar();
+                }
+                bitmap.append(key, new Container(values, null, cardinality));
+            }
+        }
+        return bitmap;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+
+    /**
+     * One chunk: sorted array form (values != null) or bitmap form (words != null)
+     */
+    private static final class Container {
+        private char[] values;
+        private long[] words;
+        private int cardinality;
+
+        Container(char[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) {
+                return new Container(null, words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new Container(values, null, cardinality);
+        }
+
+        boolean add(char low) {
+            if (words != null) {
+                long mask = 1L << low;
+                if ((words[low >>> 6] & mask) != 0) {
+                    return false;
+                }
+                words[low >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                words = toWords();
+                values = null;
+                return add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean contains(char low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        long[] toWords() {
+            if (words != null) {
+                return words.clone();
+            }
+            long[] result = new long[WORDS];
+            for (int v = 0; v < cardinality; v++) {
+                result[values[v] >>> 6] |= 1L << values[v];
+            }
+            return result;
+        }
+
+        Container copy() {
+            return words != null
+                    ? new Container(null, words.clone(), cardinality)
+                    : new Container(Arrays.copyOf(values, cardinality), null, cardinality);
+        }
+
+        Container or(Container other) {
+            if (words == null && other.words == null) {
+                char[] merged = new char[cardinality + other.cardinality];
+                int i = 0;
+                int j = 0;
+                int n = 0;
+                while (i < cardinality && j < other.cardinality) {
+                    char a = values[i];
+                    char b = other.values[j];
+                    if (a == b) {
+                        merged[n++] = a;
+                        i++;
+                        j++;
+                    } else if (a < b) {
+                        merged[n++] = a;
+                        i++;
+                    } else {
+                        merged[n++] = b;
+                        j++;
+                    }
+                }
+                while (i < cardinality) {
+                    merged[n++] = values[i++];
+                }
+                while (j < other.cardinality) {
+                    merged[n++] = other.values[j++];
+                }
+                if (n > ARRAY_MAX) {
+                    return fromWords(new Container(merged, null, n).toWords());
+                }
+                return new Container(merged, null, n);
+            }
+            long[] result = toWords();
+            if (other.words != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] |= other.words[w];
+                }
+            } else {
+                for (int v = 0; v < other.cardinality; v++) {
+                    result[other.values[v] >>> 6] |= 1L << other.values[v];
+                }
+            }
+            return fromWords(result);
+        }
+
+        Container and(Container other) {
+            if (words != null && other.words != null) {
+                long[] result = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] = words[w] & other.words[w];
+                }
+                return fromWords(result);
+            }
+            Container array = words == null ? this : other;
+            Container probe = array == this ? other : this;
+            char[] result = new char[array.cardinality];
+            int n = 0;
+            for (int v = 0; v < array.cardinality; v++) {
+                if (probe.contains(array.values[v])) {
+                    result[n++] = array.values[v];
+                }
+            }
+            return new Container(result, null, n);
+        }
+
+        int andCardinality(Container other) {
+            if (words != null && other.words != null) {
+                int total = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    total += Long.bitCount(words[w] & other.words[w]);
+                }
+                return total;
+            }
+            Container array = words == null ? this : other;
+            Container probe = array == this ? other : this;
+            int total = 0;
+            for (int v = 0; v < array.cardinality; v++) {
+                if (probe.contains(array.values[v])) {
+                    total++;
+                }
+            }
+            return total;
+        }
+
+        int payloadBytes() {
+            return words != null ? WORDS * 8 : cardinality * 2;
+        }
+    }
+}
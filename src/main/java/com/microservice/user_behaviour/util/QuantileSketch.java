@@ -0,0 +1,151 @@
+package com.microservice.user_behaviour.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Mergeable quantile sketch with a relative-error guarantee (DDSketch). Values are counted in
+ * logarithmic buckets ((gamma^(i-1), gamma^i], gamma = (1 + a) / (1 - a)), so every quantile
+ * is returned within a relative error a of the true value, regardless of the distribution.
+ * Merging is adding bucket counts, which lets the consumer keep one Redis hash per bucket and
+ * time slice (field = bucket, HINCRBY per value) and lets the query service merge any set of
+ * hashes. Bucket fields are "p{i}" for positive values, "n{i}" for negative ones and "z" for
+ * values too close to zero to index.
+ */
+public final class QuantileSketch {
+
+    public static final String ZERO_FIELD = "z";
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final NavigableMap<Integer, Long> positive = new TreeMap<>();
+    private final NavigableMap<Integer, Long> negative = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relative accuracy must be in (0, 1)");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public void add(double value) {
+        addToBucket(bucketField(value), 1);
+    }
+
+    /**
+     * Hash field of the bucket that value falls into
+     */
+    public String bucketField(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("value must be finite");
+        }
+        if (Math.abs(value) < MIN_INDEXABLE) {
+            return ZERO_FIELD;
+        }
+        int index = (int) Math.ceil(Math.log(Math.abs(value)) / logGamma);
+        return (value > 0 ? "p" : "n") + index;
+    }
+
+    /**
+     * Adds count values to the bucket named by a hash field; unknown fields are ignored
+     */
+    public void addToBucket(String field, long bucketCount) {
+        if (bucketCount <= 0 || field == null || field.isEmpty()) {
+            return;
+        }
+        if (ZERO_FIELD.equals(field)) {
+            zeroCount += bucketCount;
+        } else {
+            int index;
+            try {
+                index = Integer.parseInt(field.substring(1));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            switch (field.charAt(0)) {
+                case 'p' -> positive.merge(index, bucketCount, Long::sum);
+                case 'n' -> negative.merge(index, bucketCount, Long::sum);
+                default -> {
+                    return;
+                }
+            }
+        }
+        count += bucketCount;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("cannot merge sketches with different accuracy");
+        }
+        other.positive.forEach((index, c) -> positive.merge(index, c, Long::sum));
+        other.negative.forEach((index, c) -> negative.merge(index, c, Long::sum));
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    /**
+     * Bucket counts as hash fields, the representation stored in Redis
+     */
+    public Map<String, Long> toFields() {
+        Map<String, Long> fields = new HashMap<>();
+        positive.forEach((index, c) -> fields.put("p" + index, c));
+        negative.forEach((index, c) -> fields.put("n" + index, c));
+        if (zeroCount > 0) {
+            fields.put(ZERO_FIELD, zeroCount);
+        }
+        return fields;
+    }
+
+    /**
+     * Value at quantile q (0..1), or NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("quantile must be in [0, 1]");
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        long seen = 0;
+        // most negative first: larger index means larger magnitude
+        for (Map.Entry<Integer, Long> bucket : negative.descendingMap().entrySet()) {
+            seen += bucket.getValue();
+            if (seen > rank) {
+                return -bucketValue(bucket.getKey());
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0.0;
+        }
+        for (Map.Entry<Integer, Long> bucket : positive.entrySet()) {
+            seen += bucket.getValue();
+            if (seen > rank) {
+                return bucketValue(bucket.getKey());
+            }
+        }
+        return Double.NaN; // unreachable: the buckets add up to count
+    }
+
+    /**
+     * Representative value of bucket i, within the relative accuracy of every value in it
+     */
+    private double bucketValue(int index) {
+        return 2 * Math.exp(index * logGamma) / (1 + Math.exp(logGamma));
+    }
+}
@@ -0,0 +1,91 @@
+package com.microservice.user_behaviour.util;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Hour and day bucket labels shared by the consumer, which writes per-bucket Redis keys, and
+ * the query service, which merges them over a range. {@link #cover} picks the fewest buckets
+ * for a range: day buckets for whole days and hour buckets for the partial days at either end.
+ * Hour buckets expire long before day buckets, so a partial day whose hours are no longer kept
+ * is covered by its whole day instead. The key formats of the buckets written by both sides are
+ * kept here.
+ */
+public final class TimeBuckets {
+
+    public static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+    public static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * Unique-user HyperLogLogs: event type (or "all"), bucket label
+     */
+    public static final String UNIQUE_USERS_HOUR_KEY = "hll:users:%s:hour:%s";
+    public static final String UNIQUE_USERS_DAY_KEY = "hll:users:%s:day:%s";
+
+    /**
+     * Quantile sketches of an eventData field: event type, field, bucket label
+     */
+    public static final String QUANTILE_HOUR_KEY = "sketch:%s:%s:hour:%s";
+    public static final String QUANTILE_DAY_KEY = "sketch:%s:%s:day:%s";
+
+    /**
+     * Buckets chosen by {@link #cover(LocalDateTime, LocalDateTime, Function, Function, LocalDateTime)}
+     *
+     * @param widened true if a partial day was covered by its whole day because its hour buckets had expired
+     */
+    public record Cover(List<String> keys, boolean widened) {
+    }
+
+    private TimeBuckets() {
+    }
+
+    public static String hourLabel(LocalDateTime time) {
+        return time.format(HOUR_FORMAT);
+    }
+
+    public static String dayLabel(LocalDateTime time) {
+        return time.format(DAY_FORMAT);
+    }
+
+    /**
+     * Keys of the buckets covering every hour touched by [start, end]
+     *
+     * @param hourKey maps an hour label to its key
+     * @param dayKey  maps a day label to its key
+     */
+    public static List<String> cover(LocalDateTime start, LocalDateTime end,
+                                     Function<String, String> hourKey, Function<String, String> dayKey) {
+        return cover(start, end, hourKey, dayKey, null).keys();
+    }
+
+    /**
+     * Keys of the buckets covering every hour touched by [start, end], using the day bucket for
+     * hours before hoursFrom (whose hour buckets have expired)
+     *
+     * @param hoursFrom oldest hour whose bucket still exists, null if hour buckets never expire
+     */
+    public static Cover cover(LocalDateTime start, LocalDateTime end, Function<String, String> hourKey,
+                              Function<String, String> dayKey, LocalDateTime hoursFrom) {
+        List<String> keys = new ArrayList<>();
+        boolean widened = false;
+        LocalDateTime hour = start.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime lastHour = end.truncatedTo(ChronoUnit.HOURS);
+        while (!hour.isAfter(lastHour)) {
+            LocalDateTime dayStart = hour.truncatedTo(ChronoUnit.DAYS);
+            boolean wholeDay = hour.equals(dayStart) && !dayStart.plusHours(23).isAfter(lastHour);
+            if (wholeDay || (hoursFrom != null && hour.isBefore(hoursFrom))) {
+                keys.add(dayKey.apply(dayLabel(dayStart)));
+                widened |= !wholeDay;
+                hour = dayStart.plusDays(1);
+            } else {
+                keys.add(hourKey.apply(hourLabel(hour)));
+                hour = hour.plusHours(1);
+            }
+        }
+        return new Cover(keys, widened);
+    }
+}
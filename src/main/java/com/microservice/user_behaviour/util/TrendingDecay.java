@@ -0,0 +1,97 @@
+package com.microservice.user_behaviour.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+
+/**
+ * Forward-decay scoring shared by the consumer (writes) and query service (reads) for the
+ * trending leaderboards. An event at time t adds 2^((t - epochStart) / halfLife) to its
+ * member's score, so scores only ever grow and never need rewriting as time passes; a reader
+ * multiplies by 2^(-(now - epochStart) / halfLife) to get counts decayed to the present.
+ * <p>
+ * The weights grow exponentially, so the time line is cut into fixed epochs (local epoch
+ * millis, see {@link EventTimes}) with one key per epoch. When an epoch starts, the previous
+ * epoch's key is folded in once, scaled by {@link #carryFactor()}, and a marker key records
+ * that the carry is done; until then readers keep using the previous epoch.
+ */
+public final class TrendingDecay {
+
+    public static final String USERS = "users";
+    public static final String EVENT_TYPES = "event_types";
+    private static final String LEADERBOARD_KEY = "stats:trending:%s:%d";
+    private static final String CARRIED_KEY = "stats:trending:carried:%d";
+
+    private final long halfLifeMillis;
+    private final long epochMillis;
+
+    public TrendingDecay(long halfLifeMillis, long epochMillis) {
+        if (halfLifeMillis <= 0 || epochMillis <= 0) {
+            throw new IllegalArgumentException("half-life and epoch must be positive");
+        }
+        if (epochMillis / halfLifeMillis > 900) {
+            // 2^1024 overflows a double; keep well clear of it
+            throw new IllegalArgumentException("epoch must not exceed 900 half-lives");
+        }
+        this.halfLifeMillis = halfLifeMillis;
+        this.epochMillis = epochMillis;
+    }
+
+    public long epochOf(long millis) {
+        return Math.floorDiv(millis, epochMillis);
+    }
+
+    public long epochStart(long epoch) {
+        return epoch * epochMillis;
+    }
+
+    public long epochMillis() {
+        return epochMillis;
+    }
+
+    /**
+     * Score contributed by one event at eventMillis to the leaderboard of the given epoch
+     */
+    public double weight(long eventMillis, long epoch) {
+        return Math.pow(2, (double) (eventMillis - epochStart(epoch)) / halfLifeMillis);
+    }
+
+    /**
+     * Converts a raw score of the given epoch into a count decayed to nowMillis
+     */
+    public double decayToNow(double score, long epoch, long nowMillis) {
+        return score * Math.pow(2, -(double) (nowMillis - epochStart(epoch)) / halfLifeMillis);
+    }
+
+    /**
+     * Scale applied to the previous epoch's scores when they are carried into the next epoch
+     */
+    public double carryFactor() {
+        return Math.pow(2, -(double) epochMillis / halfLifeMillis);
+    }
+
+    /**
+     * Converts raw leaderboard entries into decayed counts, keeping their order
+     */
+    public Set<ZSetOperations.TypedTuple<Object>> decayToNow(Set<ZSetOperations.TypedTuple<Object>> raw,
+                                                             long epoch, long nowMillis) {
+        Set<ZSetOperations.TypedTuple<Object>> decayed = new LinkedHashSet<>();
+        if (raw != null) {
+            for (ZSetOperations.TypedTuple<Object> tuple : raw) {
+                double score = tuple.getScore() != null ? tuple.getScore() : 0.0;
+                decayed.add(new DefaultTypedTuple<>(tuple.getValue(), decayToNow(score, epoch, nowMillis)));
+            }
+        }
+        return decayed;
+    }
+
+    public static String leaderboardKey(String kind, long epoch) {
+        return String.format(LEADERBOARD_KEY, kind, epoch);
+    }
+
+    public static String carriedKey(long epoch) {
+        return String.format(CARRIED_KEY, epoch);
+    }
+}
@@ -0,0 +1,114 @@
+package com.microservice.user_behaviour.archive;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.microservice.user_behaviour.archive.EventSegment.Encoding;
+import com.microservice.user_behaviour.archive.EventSegmentReader.StringColumn;
+
+@DisplayName("冷数据归档段文件测试")
+class EventSegmentTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 15);
+    private static final long BASE = 1_705_276_800_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("写入后按行读回，行按事件时间排序，空值保留")
+    void writeAndRead_ShouldRoundTripRowsInTimeOrder() throws IOException {
+        EventSegmentWriter writer = new EventSegmentWriter(DAY);
+        writer.add(row(2L, "user2", "SEARCH", BASE + 2000, null, null));
+        writer.add(row(1L, "user1", "PAGE_VIEW", BASE + 1000, "{\"page\":\"/\"}", 3L));
+        Path file = EventSegment.file(dir, DAY);
+        writer.write(file);
+
+        try (EventSegmentReader reader = EventSegmentReader.open(file)) {
+            assertEquals(DAY, reader.day());
+            assertEquals(2, reader.rowCount());
+            List<Object[]> rows = reader.readRows();
+            assertArrayEquals(row(1L, "user1", "PAGE_VIEW", BASE + 1000, "{\"page\":\"/\"}", 3L), rows.get(0));
+            assertArrayEquals(row(2L, "user2", "SEARCH", BASE + 2000, null, null), rows.get(1));
+        }
+        assertEquals(DAY, EventSegment.dayOf(file));
+    }
+
+    @Test
+    @DisplayName("文件尾的用户布隆过滤器包含所有写入的用户，排除绝大多数其他用户")
+    void userFilter_ShouldContainWrittenUsers() throws IOException {
+        EventSegmentWriter writer = new EventSegmentWriter(DAY);
+        for (int i = 0; i < 1000; i++) {
+            writer.add(row(i, "user" + i, "PAGE_VIEW", BASE + i, null, null));
+        }
+        Path file = EventSegment.file(dir, DAY);
+        writer.write(file);
+
+        try (EventSegmentReader reader = EventSegmentReader.open(file)) {
+            int falsePositives = 0;
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(reader.mightContainUser("user" + i));
+                falsePositives += reader.mightContainUser("other" + i) ? 1 : 0;
+            }
+            assertTrue(falsePositives < 50, "false positives: " + falsePositives);
+            assertEquals(1000, reader.readRows().size());
+        }
+    }
+
+    @Test
+    @DisplayName("分块段文件名带来源标记和序号，按天的单个文件没有来源标记")
+    void partFile_ShouldCarryDayAndTag() {
+        Path part = EventSegment.file(dir, DAY, "p202401", 3);
+        assertEquals("events-20240115-p202401-3.seg", part.getFileName().toString());
+        assertEquals(DAY, EventSegment.dayOf(part));
+        assertEquals("p202401", EventSegment.tagOf(part));
+        assertNull(EventSegment.tagOf(EventSegment.file(dir, DAY)));
+        assertNull(EventSegment.dayOf(dir.resolve("events-20240115x.seg")));
+    }
+
+    @Test
+    @DisplayName("按基数选择编码，并记录 min/max 和空值数")
+    void write_ShouldChooseEncodingsAndRecordStats() throws IOException {
+        EventSegmentWriter writer = new EventSegmentWriter(DAY);
+        for (int i = 0; i < 100; i++) {
+            writer.add(row(i, "user" + (i % 5), i < 60 ? "PAGE_VIEW" : "SEARCH", BASE + i * 1000L, "{\"i\":" + i + "}", null));
+        }
+        Path file = EventSegment.file(dir, DAY);
+        writer.write(file);
+
+        try (EventSegmentReader reader = EventSegmentReader.open(file)) {
+            assertEquals(Encoding.DICT_RLE, reader.meta(EventSegment.EVENT_TYPE).encoding());
+            assertEquals(Encoding.DICT, reader.meta(EventSegment.USER_ID).encoding());
+            assertEquals(Encoding.PLAIN, reader.meta(EventSegment.EVENT_DATA).encoding());
+            assertEquals(BASE, reader.meta(EventSegment.EVENT_TIME).min());
+            assertEquals(BASE + 99_000L, reader.meta(EventSegment.EVENT_TIME).max());
+            assertEquals("user0", reader.meta(EventSegment.USER_ID).min());
+            assertEquals(100, reader.meta(EventSegment.PARTITION).nullCount());
+            assertNull(reader.meta(EventSegment.PARTITION).min());
+
+            StringColumn types = reader.strings(EventSegment.EVENT_TYPE);
+            assertEquals("PAGE_VIEW", types.value(59));
+            assertEquals("SEARCH", types.value(60));
+            assertEquals(2, types.codeOf("SEARCH"));
+            assertEquals(-1, types.codeOf("LOGIN"));
+        }
+    }
+
+    private static Object[] row(long id, String userId, String eventType, long eventTime, String eventData, Long partition) {
+        return new Object[] {
+                id, userId, eventType, "web", eventTime, "session-" + userId, null, "127.0.0.1", eventData,
+                eventTime + 5, "user-behavior-events", partition, partition == null ? null : id
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package com.microservice.user_behaviour.consumer.anomaly;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("速率异常检测测试")
+class RateAnomalyDetectorTest {
+
+    private static final long START = 1_700_000_000_000L / RateAnomalyDetector.MINUTE_MILLIS * RateAnomalyDetector.MINUTE_MILLIS;
+
+    @Mock
+    private AnomalyAlertPublisher publisher;
+
+    private RateAnomalyDetector detector;
+    private final Random random = new Random(3);
+    private long minute = START;
+
+    @BeforeEach
+    void setUp() {
+        detector = new RateAnomalyDetector(publisher, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(detector, "alpha", 0.1);
+        ReflectionTestUtils.setField(detector, "seasonalAlpha", 0.3);
+        ReflectionTestUtils.setField(detector, "threshold", 4.0);
+        ReflectionTestUtils.setField(detector, "minDelta", 20.0);
+        ReflectionTestUtils.setField(detector, "warmupMinutes", 15);
+        ReflectionTestUtils.setField(detector, "cooldownMinutes", 5);
+        ReflectionTestUtils.setField(detector, "recentAlertsSize", 10);
+    }
+
+    private List<AnomalyAlert> runMinute(int events) {
+        for (int i = 0; i < events; i++) {
+            detector.record("PAGE_VIEW");
+        }
+        List<AnomalyAlert> alerts = detector.closeMinute(minute);
+        minute += RateAnomalyDetector.MINUTE_MILLIS;
+        return alerts;
+    }
+
+    private void warmUp(int minutes) {
+        for (int i = 0; i < minutes; i++) {
+            assertTrue(runMinute(95 + random.nextInt(11)).isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("平稳流量不产生告警")
+    void closeMinute_SteadyRate_ShouldNotAlert() {
+        warmUp(60);
+
+        verify(publisher, never()).publish(any());
+    }
+
+    @Test
+    @DisplayName("突增在该分钟结束时被检测为SPIKE并发布")
+    void closeMinute_Spike_ShouldPublishSpikeAlert() {
+        warmUp(30);
+
+        List<AnomalyAlert> alerts = runMinute(400);
+
+        assertEquals(1, alerts.size());
+        assertEquals(AnomalyAlert.Kind.SPIKE, alerts.get(0).kind());
+        assertEquals(400, alerts.get(0).observed());
+        verify(publisher, times(1)).publish(alerts.get(0));
+        assertEquals(alerts, detector.getRecentAlerts());
+    }
+
+    @Test
+    @DisplayName("流量骤降被检测为DROP，冷却期内不重复告警")
+    void closeMinute_Drop_ShouldAlertOncePerCooldown() {
+        warmUp(30);
+
+        List<AnomalyAlert> first = runMinute(0);
+        List<AnomalyAlert> second = runMinute(0);
+
+        assertEquals(1, first.size());
+        assertEquals(AnomalyAlert.Kind.DROP, first.get(0).kind());
+        assertTrue(second.isEmpty());
+    }
+
+    @Test
+    @DisplayName("预热期内不告警")
+    void closeMinute_DuringWarmup_ShouldNotAlert() {
+        warmUp(5);
+
+        assertTrue(runMinute(1000).isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("消费者表结构检查测试")
+class ConsumerSchemaManagerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private ConsumerSchemaManager schemaManager;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(schemaManager, "migrationMaxRows", 1000L);
+    }
+
+    @Test
+    @DisplayName("大表缺少列时不执行迁移，启动失败")
+    void createTables_LargeTableMissingColumn_ShouldFailStartup() {
+        when(jdbcTemplate.queryForObject(contains("information_schema.columns"), eq(Integer.class), anyString(), anyString()))
+                .thenReturn(0);
+        when(jdbcTemplate.queryForObject(contains("information_schema.tables"), eq(Long.class), anyString()))
+                .thenReturn(5000L);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, schemaManager::createTables);
+
+        assertTrue(e.getMessage().contains("user_behavior_events.user_ord"));
+        verify(jdbcTemplate, never()).execute(contains("ALTER TABLE"));
+    }
+
+    @Test
+    @DisplayName("小表缺少列时直接迁移，正常启动")
+    void createTables_SmallTableMissingColumn_ShouldMigrate() {
+        when(jdbcTemplate.queryForObject(contains("information_schema.columns"), eq(Integer.class), anyString(), anyString()))
+                .thenReturn(0);
+        when(jdbcTemplate.queryForObject(contains("information_schema.tables"), eq(Long.class), anyString()))
+                .thenReturn(10L);
+
+        schemaManager.createTables();
+
+        verify(jdbcTemplate).execute(contains("ADD COLUMN user_ord"));
+    }
+}
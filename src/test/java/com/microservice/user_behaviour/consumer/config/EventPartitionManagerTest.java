@@ -0,0 +1,90 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.microservice.user_behaviour.consumer.config.EventPartitionManager.Granularity;
+import com.microservice.user_behaviour.consumer.config.EventPartitionManager.Partition;
+
+@DisplayName("事件表分区规划测试")
+class EventPartitionManagerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 30);
+
+    @Test
+    @DisplayName("只有pmax时从今天开始预建分区")
+    void partitionsToCreate_OnlyMax_ShouldStartToday() {
+        List<Partition> partitions = List.of(new Partition("pmax", null, 0));
+
+        List<LocalDate> starts = EventPartitionManager.partitionsToCreate(partitions, Granularity.DAY, TODAY, 2);
+
+        assertEquals(List.of(TODAY, TODAY.plusDays(1), TODAY.plusDays(2)), starts);
+    }
+
+    @Test
+    @DisplayName("已预建足够的分区时不再创建，按月分区跨月")
+    void partitionsToCreate_ShouldContinueFromLastBound() {
+        List<Partition> days = List.of(
+                new Partition("p20240330", LocalDate.of(2024, 3, 31), 10),
+                new Partition("p20240331", LocalDate.of(2024, 4, 1), 0),
+                new Partition("pmax", null, 0));
+        assertTrue(EventPartitionManager.partitionsToCreate(days, Granularity.DAY, TODAY, 1).isEmpty());
+
+        List<Partition> months = List.of(new Partition("p202403", LocalDate.of(2024, 4, 1), 10),
+                new Partition("pmax", null, 0));
+        assertEquals(List.of(LocalDate.of(2024, 4, 1), LocalDate.of(2024, 5, 1)),
+                EventPartitionManager.partitionsToCreate(months, Granularity.MONTH, TODAY, 2));
+    }
+
+    @Test
+    @DisplayName("转换未分区的表时分区名唯一且上界严格递增")
+    void conversionStarts_ShouldNotRepeatFirstPartition() {
+        LocalDate first = LocalDate.of(2023, 3, 1);
+
+        List<LocalDate> starts = EventPartitionManager.conversionStarts(first, Granularity.MONTH, TODAY, 2);
+        String sql = EventPartitionManager.definitions(starts, Granularity.MONTH, true);
+
+        assertEquals(first, starts.get(0));
+        assertEquals(LocalDate.of(2024, 5, 1), starts.get(starts.size() - 1));
+        assertEquals(15, starts.size());
+        for (int i = 1; i < starts.size(); i++) {
+            assertTrue(starts.get(i).isAfter(starts.get(i - 1)));
+        }
+        assertEquals(1, sql.split("PARTITION p202303 ", -1).length - 1);
+        assertTrue(sql.startsWith("PARTITION p202303 VALUES LESS THAN ('2023-04-01'), "
+                + "PARTITION p202304 VALUES LESS THAN ('2023-05-01')"));
+    }
+
+    @Test
+    @DisplayName("只删除上界不晚于截止日期的分区，不删除pmax")
+    void partitionsToDrop_ShouldKeepMaxAndRecentPartitions() {
+        List<Partition> partitions = List.of(
+                new Partition("p20240101", LocalDate.of(2024, 1, 2), 5),
+                new Partition("p20240102", LocalDate.of(2024, 1, 3), 5),
+                new Partition("p20240103", LocalDate.of(2024, 1, 4), 5),
+                new Partition("pmax", null, 0));
+
+        assertEquals(List.of("p20240101", "p20240102"),
+                EventPartitionManager.partitionsToDrop(partitions, LocalDate.of(2024, 1, 3)));
+    }
+
+    @Test
+    @DisplayName("存在pmax时拆分pmax，并解析分区上界")
+    void addPartitionsSql_WithMax_ShouldReorganizeMax() {
+        String sql = EventPartitionManager.addPartitionsSql(List.of(new Partition("pmax", null, 0)),
+                List.of(TODAY), Granularity.DAY);
+
+        assertEquals("ALTER TABLE user_behavior_events REORGANIZE PARTITION pmax INTO ("
+                + "PARTITION p20240330 VALUES LESS THAN ('2024-03-31'), "
+                + "PARTITION pmax VALUES LESS THAN (MAXVALUE))", sql);
+        assertEquals(LocalDate.of(2024, 3, 31), EventPartitionManager.parseBound("'2024-03-31 00:00:00'"));
+        assertNull(EventPartitionManager.parseBound("MAXVALUE"));
+    }
+}
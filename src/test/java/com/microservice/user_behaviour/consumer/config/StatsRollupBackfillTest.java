@@ -0,0 +1,81 @@
+package com.microservice.user_behaviour.consumer.config;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("汇总表回填测试")
+class StatsRollupBackfillTest {
+
+    private static final LocalDateTime TARGET = LocalDateTime.of(2024, 1, 15, 14, 0);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private StatsRollupBackfill backfill;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        backfill = new StatsRollupBackfill(jdbcTemplate, transactionTemplate, stringRedisTemplate, "consumer-1");
+        ReflectionTestUtils.setField(backfill, "hoursPerRun", 24);
+        ReflectionTestUtils.setField(backfill, "settleMinutes", 10L);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(StatsRollupBackfill.TARGET_KEY)).thenReturn(TARGET.toString());
+        when(valueOperations.get(StatsRollupBackfill.CURSOR_KEY)).thenReturn(TARGET.plusHours(1).toString());
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    @Test
+    @DisplayName("目标小时在一天中间时，当天结束前不标记完成")
+    void runLocked_MidDayTarget_ShouldWaitForTheDayToEnd() {
+        backfill.runLocked(LocalDateTime.of(2024, 1, 15, 20, 0));
+
+        verify(jdbcTemplate, never()).update(eq("DELETE FROM user_behavior_stats WHERE stat_date = ?"), any(Object[].class));
+        verify(valueOperations, never()).set(eq(StatsRollupBackfill.DONE_KEY), anyString());
+    }
+
+    @Test
+    @DisplayName("目标小时在一天中间时，当天结束后按整天的小时行重建日汇总再标记完成")
+    void runLocked_MidDayTarget_ShouldRebuildTargetDay() {
+        LocalDate day = TARGET.toLocalDate();
+
+        backfill.runLocked(LocalDateTime.of(2024, 1, 16, 0, 30));
+
+        verify(jdbcTemplate).update("DELETE FROM user_behavior_stats WHERE stat_date = ?", day);
+        verify(jdbcTemplate).update(StatsRollupBackfill.REBUILD_DAILY_SQL, day, day.atStartOfDay(),
+                day.plusDays(1).atStartOfDay());
+        verify(valueOperations).set(StatsRollupBackfill.DONE_KEY, TARGET.toString());
+    }
+}
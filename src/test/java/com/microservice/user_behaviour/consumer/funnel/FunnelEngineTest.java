@@ -0,0 +1,127 @@
+package com.microservice.user_behaviour.consumer.funnel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.FunnelDefinition;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("增量漏斗引擎测试")
+class FunnelEngineTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 20);
+    private static final String HOUR_KEY = "funnel:checkout:hour:2024-05-01-10";
+    private static final String DAY_KEY = "funnel:checkout:day:2024-05-01";
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    private FunnelEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new FunnelEngine(stringRedisTemplate, "checkout:PAGE_VIEW>BUTTON_CLICK|LINK_CLICK>SEARCH>PURCHASE",
+                3_600_000L, 1000, 691200, 34560000);
+    }
+
+    private static UserBehaviorEvent event(String userId, String type, LocalDateTime time) {
+        return UserBehaviorEvent.builder().userId(userId).eventType(type).eventTime(time).build();
+    }
+
+    @Test
+    @DisplayName("按顺序完成的步骤计入进入漏斗的小时和天")
+    void advance_StepsInOrder_ShouldCountEachStepInEntryHour() {
+        FunnelEngine.StepCounts counts = engine.advance(List.of(
+                event("user1", "PAGE_VIEW", T0),
+                event("user1", "PAGE_VIEW", T0.plusMinutes(1)),
+                event("user1", "LINK_CLICK", T0.plusMinutes(2)),
+                event("user1", "SEARCH", T0.plusMinutes(50)),
+                event("user1", "PURCHASE", T0.plusMinutes(55)),
+                event("user2", "PAGE_VIEW", T0)));
+
+        assertEquals(Map.of("0", 2L, "1", 1L, "2", 1L, "3", 1L), counts.hourly().get(HOUR_KEY));
+        assertEquals(counts.hourly().get(HOUR_KEY), counts.daily().get(DAY_KEY));
+    }
+
+    @Test
+    @DisplayName("跳过的步骤不推进，超出完成窗口后重新进入")
+    void advance_OutOfOrderOrExpired_ShouldNotConvert() {
+        FunnelEngine.StepCounts counts = engine.advance(List.of(
+                event("user1", "PAGE_VIEW", T0),
+                event("user1", "SEARCH", T0.plusMinutes(1)),
+                event("user1", "BUTTON_CLICK", T0.plusMinutes(90)),
+                event("user1", "PAGE_VIEW", T0.plusMinutes(91))));
+
+        assertEquals(Map.of("0", 1L), counts.hourly().get(HOUR_KEY));
+        assertEquals(Map.of("0", 1L), counts.hourly().get("funnel:checkout:hour:2024-05-01-11"));
+        assertEquals(2L, engine.getFunnelStats().get("stepsReached"));
+    }
+
+    @Test
+    @DisplayName("状态跨批次保留")
+    void advance_AcrossBatches_ShouldKeepUserState() {
+        engine.advance(List.of(event("user1", "PAGE_VIEW", T0)));
+        FunnelEngine.StepCounts counts = engine.advance(List.of(event("user1", "BUTTON_CLICK", T0.plusMinutes(5))));
+
+        assertEquals(Map.of("1", 1L), counts.hourly().get(HOUR_KEY));
+        assertTrue(engine.advance(List.of(event("user1", "PURCHASE", T0.plusMinutes(6)))).hourly().isEmpty());
+    }
+
+    @Test
+    @DisplayName("写入失败的计数合并进下一次写入")
+    @SuppressWarnings("unchecked")
+    void update_WriteFailure_ShouldMergeIntoNextWrite() {
+        RedisOperations<String, String> operations = mock(RedisOperations.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(operations.opsForHash()).thenReturn(hashOperations);
+        when(stringRedisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenThrow(new RuntimeException("redis down"))
+                .thenAnswer(invocation -> {
+                    invocation.<SessionCallback<Object>>getArgument(0).execute(operations);
+                    return List.of();
+                });
+
+        engine.update(List.of(event("user1", "PAGE_VIEW", T0)));
+        assertEquals(1, engine.getFunnelStats().get("pendingRetryBuckets"));
+        engine.update(List.of(event("user2", "PAGE_VIEW", T0), event("user1", "LINK_CLICK", T0.plusMinutes(1))));
+
+        verify(hashOperations).increment(HOUR_KEY, "0", 2L);
+        verify(hashOperations).increment(HOUR_KEY, "1", 1L);
+        verify(hashOperations).increment(DAY_KEY, "0", 2L);
+        assertEquals(0, engine.getFunnelStats().get("pendingRetryBuckets"));
+        assertEquals(1L, engine.getFunnelStats().get("failedWrites"));
+    }
+
+    @Test
+    @DisplayName("漏斗定义解析")
+    void parse_ShouldSupportAlternativesAndRejectMalformed() {
+        List<FunnelDefinition> funnels = FunnelDefinition.parse("a:PAGE_VIEW>BUTTON_CLICK|LINK_CLICK; b:LOGIN>PURCHASE");
+
+        assertEquals(2, funnels.size());
+        assertEquals("BUTTON_CLICK|LINK_CLICK", funnels.get(0).stepLabel(1));
+        assertTrue(funnels.get(0).matches(1, "LINK_CLICK"));
+        assertThrows(IllegalArgumentException.class, () -> FunnelDefinition.parse("a:PAGE_VIEW"));
+        assertThrows(IllegalArgumentException.class, () -> FunnelDefinition.parse("PAGE_VIEW>CLICK"));
+    }
+}
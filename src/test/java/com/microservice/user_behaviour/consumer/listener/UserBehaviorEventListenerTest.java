@@ -0,0 +1,137 @@
+package com.microservice.user_behaviour.consumer.listener;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.Acknowledgment;
+
+import com.microservice.user_behaviour.consumer.exception.PoisonRecordException;
+import com.microservice.user_behaviour.consumer.service.UserBehaviorProcessingService;
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("用户行为事件监听器测试")
+class UserBehaviorEventListenerTest {
+
+    @Mock
+    private UserBehaviorProcessingService processingService;
+
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private UserBehaviorEventListener listener;
+
+    @Test
+    @DisplayName("直接隔离有毒记录，其余记录正常处理并确认")
+    void onMessage_PoisonRecord_ShouldDeadLetterOnlyPoisonAndAcknowledge() {
+        // Given
+        List<ConsumerRecord<String, UserBehaviorEvent>> records = records(8);
+        ConsumerRecord<String, UserBehaviorEvent> poison = records.get(5);
+        List<ConsumerRecord<String, UserBehaviorEvent>> processed = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<ConsumerRecord<String, UserBehaviorEvent>> batch = invocation.getArgument(0);
+            if (batch.contains(poison)) {
+                throw new PoisonRecordException("invalid", poison, null);
+            }
+            processed.addAll(batch);
+            return null;
+        }).when(processingService).processRecords(anyList());
+
+        // When
+        listener.onMessage(records, acknowledgment);
+
+        // Then
+        verify(deadLetterPublisher, times(1)).publish(eq(poison), any(PoisonRecordException.class));
+        verify(acknowledgment, times(1)).acknowledge();
+        List<ConsumerRecord<String, UserBehaviorEvent>> expected = new ArrayList<>(records);
+        expected.remove(poison);
+        assertEquals(expected.size(), processed.size());
+        assertTrue(processed.containsAll(expected));
+        // 1条有毒: 1次失败尝试 + 1次成功处理
+        verify(processingService, times(2)).processRecords(anyList());
+    }
+
+    @Test
+    @DisplayName("死信发送失败时不应用任何记录，整批重投不会重复计数")
+    void onMessage_DeadLetterFailure_ShouldApplyNothing() {
+        // Given
+        List<ConsumerRecord<String, UserBehaviorEvent>> records = records(8);
+        ConsumerRecord<String, UserBehaviorEvent> first = records.get(2);
+        ConsumerRecord<String, UserBehaviorEvent> second = records.get(6);
+        List<ConsumerRecord<String, UserBehaviorEvent>> processed = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<ConsumerRecord<String, UserBehaviorEvent>> batch = invocation.getArgument(0);
+            if (batch.contains(first)) {
+                throw new PoisonRecordException("invalid", first, null);
+            }
+            if (batch.contains(second)) {
+                throw new PoisonRecordException("invalid", second, null);
+            }
+            processed.addAll(batch);
+            return null;
+        }).when(processingService).processRecords(anyList());
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) == second) {
+                throw new IllegalStateException("Kafka down");
+            }
+            return null;
+        }).when(deadLetterPublisher).publish(any(ConsumerRecord.class), any(PoisonRecordException.class));
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> listener.onMessage(records, acknowledgment));
+        assertTrue(processed.isEmpty());
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    @DisplayName("非有毒记录异常不确认，交由容器重试")
+    void onMessage_TransientFailure_ShouldNotAcknowledge() {
+        // Given
+        doThrow(new IllegalStateException("database down"))
+                .when(processingService).processRecords(anyList());
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> listener.onMessage(records(4), acknowledgment));
+        verify(acknowledgment, never()).acknowledge();
+        verify(deadLetterPublisher, never()).publish(any(), any());
+    }
+
+    private static List<ConsumerRecord<String, UserBehaviorEvent>> records(int count) {
+        List<ConsumerRecord<String, UserBehaviorEvent>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UserBehaviorEvent event = UserBehaviorEvent.builder()
+                    .userId("user" + i).eventType("PAGE_VIEW").source("web").build();
+            records.add(new ConsumerRecord<>("user-behavior", 0, i, "user" + i, event));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,113 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("活跃用户高频项跟踪测试")
+class HeavyHitterTrackerTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2024, 1, 15, 10, 30);
+
+    private HeavyHitterTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new HeavyHitterTracker(redisTemplate, 64, 4, 10, 64, 3600, 3);
+    }
+
+    @Test
+    @DisplayName("合并时拼接所有分片的计数器，排行榜误差上界按Redis中所有实例的累计事件数计算")
+    @SuppressWarnings("unchecked")
+    void merge_ShouldDrainAllShardsAndUseSharedEventTotal() {
+        List<Object> args = new ArrayList<>();
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of(HeavyHitterTracker.LEADERBOARD_KEY,
+                HeavyHitterTracker.LEADERBOARD_EVENTS_KEY)), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    Object[] all = invocation.getArguments();
+                    args.addAll(Arrays.asList(all).subList(2, all.length));
+                    // 其它实例已合并过 990 个事件
+                    return 1000L;
+                });
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("stats:users:hourly:2024-01-15-10",
+                "stats:users:hourly:2024-01-15-10:events")), any(Object[].class))).thenReturn(10L);
+
+        for (int i = 0; i < 10; i++) {
+            tracker.offer("user" + i, HOUR);
+        }
+        assertEquals(20, tracker.merge());
+
+        assertEquals(10, args.get(0));
+        assertEquals(10L, args.get(1));
+        assertEquals(0L, args.get(2));
+        assertEquals(3 + 10 * 2, args.size());
+        assertEquals(0, tracker.getHeavyHitterStats().get("localCounters"));
+        assertEquals(10L, tracker.getHeavyHitterStats().get("mergedEvents"));
+        assertEquals(100L, tracker.getHeavyHitterStats().get("leaderboardErrorBound"));
+    }
+
+    @Test
+    @DisplayName("合并失败时计数器回到各自分片")
+    @SuppressWarnings("unchecked")
+    void merge_Failure_ShouldRequeueCounters() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RuntimeException("redis down"));
+
+        tracker.offer("user1", HOUR);
+        tracker.offer("user1", HOUR);
+        tracker.offer("user2", HOUR);
+
+        assertEquals(0, tracker.merge());
+        assertEquals(2, tracker.getHeavyHitterStats().get("localCounters"));
+        assertEquals(3L, tracker.getHeavyHitterStats().get("localEvents"));
+        assertEquals(2L, tracker.getHeavyHitterStats().get("failedMerges"));
+    }
+
+    @Test
+    @DisplayName("小时桶按事件时间分开合并，带容量和过期时间，空的小时分片在下次合并时移除")
+    @SuppressWarnings("unchecked")
+    void merge_ShouldFeedCappedHourlyBuckets() {
+        List<List<Object>> hourlyArgs = new ArrayList<>();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    Object[] all = invocation.getArguments();
+                    List<String> keys = invocation.getArgument(1);
+                    if (keys.get(0).startsWith("stats:users:hourly:")) {
+                        hourlyArgs.add(Arrays.asList(all).subList(2, all.length));
+                    }
+                    return 1L;
+                });
+
+        tracker.offer("user1", HOUR);
+        tracker.offer("user1", HOUR.plusHours(1));
+        tracker.merge();
+
+        assertEquals(2, hourlyArgs.size());
+        for (List<Object> args : hourlyArgs) {
+            assertEquals(List.of(64, 1L, 3600L), args.subList(0, 3));
+        }
+        assertEquals(2, tracker.getHeavyHitterStats().get("hourlyShards"));
+        tracker.merge();
+        assertEquals(0, tracker.getHeavyHitterStats().get("hourlyShards"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservice.user_behaviour.consumer.anomaly.RateAnomalyDetector;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("热点数据快照测试")
+class HotDataAnalysisServiceTest {
+
+    @Mock
+    private CacheService cacheService;
+
+    @Mock
+    private RateAnomalyDetector anomalyDetector;
+
+    @Mock
+    private UserHeatMatrixWriter heatMatrixWriter;
+
+    @InjectMocks
+    private HotDataAnalysisService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "topEventsCount", 10);
+        ReflectionTestUtils.setField(service, "topUsersCount", 20);
+        lenient().when(cacheService.getTopActiveUsers(anyInt())).thenReturn(Set.of());
+        lenient().when(cacheService.getEventStatsForPeriod(anyString(), anyInt())).thenReturn(Set.of());
+        lenient().when(cacheService.isRedisConnected()).thenReturn(true);
+        lenient().when(anomalyDetector.getRecentAlerts()).thenReturn(List.of());
+    }
+
+    @Test
+    @DisplayName("内容不变时快照版本和ETag保持不变")
+    void refreshSnapshot_UnchangedContent_ShouldKeepVersion() {
+        when(cacheService.getTopEventTypes(anyInt())).thenReturn(Set.of(new DefaultTypedTuple<>("PAGE_VIEW", 5.0)));
+
+        service.refreshSnapshot();
+        HotDataSnapshot first = service.getSnapshot();
+        service.refreshSnapshot();
+
+        assertEquals(1, first.version());
+        assertSame(first, service.getSnapshot());
+    }
+
+    @Test
+    @DisplayName("内容变化时原子替换为新版本")
+    void refreshSnapshot_ChangedContent_ShouldBumpVersion() {
+        when(cacheService.getTopEventTypes(anyInt()))
+                .thenReturn(Set.of(new DefaultTypedTuple<>("PAGE_VIEW", 5.0)))
+                .thenReturn(Set.of(new DefaultTypedTuple<>("PAGE_VIEW", 6.0)));
+
+        service.refreshSnapshot();
+        HotDataSnapshot first = service.getSnapshot();
+        service.refreshSnapshot();
+        HotDataSnapshot second = service.getSnapshot();
+
+        assertEquals(2, second.version());
+        assertNotEquals(first.etag(), second.etag());
+        assertEquals(2L, service.getHotDataReport().get("version"));
+    }
+
+    @Test
+    @DisplayName("读取报告只访问内存快照")
+    void getHotDataReport_ShouldNotTouchRedis() {
+        CacheService untouched = Mockito.mock(CacheService.class);
+        HotDataAnalysisService fresh = new HotDataAnalysisService(untouched, anomalyDetector, heatMatrixWriter);
+
+        fresh.getHotDataReport();
+
+        verifyNoInteractions(untouched);
+    }
+
+    @Test
+    @DisplayName("热度分析由热度矩阵汇总类型分布和峰值时段")
+    void getUserBehaviorHeatMap_ShouldSummarizeMatrix() {
+        int[] pageViews = new int[168];
+        pageViews[24 + 9] = 30; // 周二 09:00
+        int[] purchases = new int[168];
+        purchases[24 + 9] = 2;
+        purchases[0] = 1;
+        Map<String, int[]> matrix = new LinkedHashMap<>();
+        matrix.put("PAGE_VIEW", pageViews);
+        matrix.put("PURCHASE", purchases);
+        when(heatMatrixWriter.read("user1")).thenReturn(matrix);
+
+        Map<String, Object> heatMap = service.getUserBehaviorHeatMap("user1");
+
+        assertEquals(33L, heatMap.get("totalEventCount"));
+        assertEquals(Map.of("PAGE_VIEW", 30L, "PURCHASE", 3L), heatMap.get("eventTypeDistribution"));
+        assertEquals("TUESDAY", heatMap.get("peakDayOfWeek"));
+        assertEquals(9, heatMap.get("peakHour"));
+        assertEquals(53.0, heatMap.get("activityScore"));
+        verifyNoInteractions(cacheService);
+    }
+}
@@ -0,0 +1,93 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("派生数据集原子发布测试")
+class SnapshotPublisherTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private RedisOperations<String, Object> operations;
+
+    @Mock
+    private ZSetOperations<String, Object> zSetOperations;
+
+    @Mock
+    private ValueOperations<String, Object> valueOperations;
+
+    @InjectMocks
+    private SnapshotPublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(redisTemplate.execute(any(SessionCallback.class)))
+                .thenAnswer(invocation -> ((SessionCallback<?>) invocation.getArgument(0)).execute(operations));
+        when(operations.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    @DisplayName("新集合写入临时key后在同一事务中RENAME到目标key")
+    void publishSortedSet_ShouldBuildTempKeyAndRenameInOneTransaction() {
+        Set<ZSetOperations.TypedTuple<Object>> members = Set.of(new DefaultTypedTuple<>("PAGE_VIEW", 10.0));
+        when(operations.opsForZSet()).thenReturn(zSetOperations);
+        when(operations.exec()).thenReturn(List.of(1L, true, 7L));
+
+        long version = publisher.publishSortedSet("stats:top_events", members, 3600);
+
+        assertEquals(7L, version);
+        ArgumentCaptor<String> tempKey = ArgumentCaptor.forClass(String.class);
+        InOrder order = inOrder(operations, zSetOperations, valueOperations);
+        order.verify(operations).multi();
+        order.verify(zSetOperations).add(tempKey.capture(), eq(members));
+        order.verify(operations).expire(tempKey.getValue(), 3600, TimeUnit.SECONDS);
+        order.verify(operations).rename(tempKey.getValue(), "stats:top_events");
+        order.verify(valueOperations).increment("stats:top_events:version");
+        order.verify(operations).exec();
+        assertTrue(tempKey.getValue().startsWith("stats:top_events:tmp:"));
+        verify(operations, never()).delete(anyString());
+    }
+
+    @Test
+    @DisplayName("空集合直接删除目标key")
+    void publishSortedSet_Empty_ShouldDeleteTarget() {
+        when(operations.exec()).thenReturn(List.of(1L, 8L));
+
+        long version = publisher.publishSortedSet("stats:top_events", Set.of(), 3600);
+
+        assertEquals(8L, version);
+        verify(operations).delete("stats:top_events");
+        verify(operations, never()).rename(anyString(), anyString());
+    }
+}
@@ -0,0 +1,114 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("统计汇总聚合器测试")
+class StatsRollupAggregatorTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private StatsRollupAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        lenient().doAnswer(invocation -> {
+            Consumer<TransactionStatus> callback = invocation.getArgument(0);
+            callback.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    @DisplayName("同一用户/类型/来源/小时的事件折叠为一行")
+    void record_SameHour_ShouldFoldIntoOneRow() {
+        aggregator.record(event("user1", "PAGE_VIEW", T0.plusMinutes(1)));
+        aggregator.record(event("user1", "PAGE_VIEW", T0.plusMinutes(59)));
+        aggregator.record(event("user1", "PAGE_VIEW", T0.plusHours(1)));
+
+        List<StatsRollupAggregator.RollupDelta> batch = aggregator.drain();
+
+        assertEquals(2, batch.size());
+        StatsRollupAggregator.RollupDelta tenOClock = batch.stream()
+                .filter(d -> d.key().hour().equals(T0))
+                .findFirst().orElseThrow();
+        assertEquals(2L, tenOClock.count());
+    }
+
+    @Test
+    @DisplayName("刷新时小时行合并为日行")
+    @SuppressWarnings("unchecked")
+    void flush_HourlyRows_ShouldMergeIntoDailyRows() {
+        aggregator.record(event("user1", "PAGE_VIEW", T0));
+        aggregator.record(event("user1", "PAGE_VIEW", T0.plusHours(3)));
+        aggregator.record(event("user2", "CLICK", T0));
+
+        assertEquals(3, aggregator.flush());
+
+        ArgumentCaptor<Collection<Object>> hourly = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection<Object>> daily = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(eq(StatsRollupAggregator.HOURLY_UPSERT_SQL), hourly.capture(), eq(3),
+                any(ParameterizedPreparedStatementSetter.class));
+        verify(jdbcTemplate).batchUpdate(eq(StatsRollupAggregator.DAILY_UPSERT_SQL), daily.capture(), eq(2),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(3, hourly.getValue().size());
+        assertEquals(2, daily.getValue().size());
+    }
+
+    @Test
+    @DisplayName("写入失败时增量被重新入队")
+    @SuppressWarnings("unchecked")
+    void flush_DatabaseFailure_ShouldRequeueRows() {
+        doThrow(new RuntimeException("MySQL down")).when(jdbcTemplate).batchUpdate(
+                anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        aggregator.record(event("user1", "PAGE_VIEW", T0));
+        aggregator.record(event("user1", "PAGE_VIEW", T0));
+
+        assertEquals(0, aggregator.flush());
+        assertEquals(1L, aggregator.getRollupStats().get("failedFlushes"));
+
+        List<StatsRollupAggregator.RollupDelta> batch = aggregator.drain();
+        assertEquals(1, batch.size());
+        assertEquals(2L, batch.get(0).count());
+    }
+
+    private static UserBehaviorEvent event(String userId, String eventType, LocalDateTime eventTime) {
+        return UserBehaviorEvent.builder()
+                .userId(userId).eventType(eventType).source("web").eventTime(eventTime).build();
+    }
+}
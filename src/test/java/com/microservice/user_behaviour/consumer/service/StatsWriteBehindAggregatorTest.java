@@ -0,0 +1,172 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("统计写后聚合器测试")
+class StatsWriteBehindAggregatorTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @InjectMocks
+    private StatsWriteBehindAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(aggregator, "maxPendingEntries", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(aggregator, "hardCapEntries", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(aggregator, "minFlushSpacingMs", 100L);
+        ReflectionTestUtils.setField(aggregator, "shutdownAttempts", 3);
+    }
+
+    @Test
+    @DisplayName("同一成员的增量在刷新前被折叠")
+    void increment_SameMember_ShouldFoldIntoOneEntry() {
+        for (int i = 0; i < 100; i++) {
+            aggregator.increment("stats:event_type_count", "PAGE_VIEW", 1, 0);
+        }
+        aggregator.increment("stats:event_type_count", "CLICK", 1, 0);
+
+        List<StatsWriteBehindAggregator.PendingDelta> batch = aggregator.drain();
+
+        assertEquals(2, batch.size());
+        double pageViews = batch.stream()
+                .filter(d -> d.statKey().member().equals("PAGE_VIEW"))
+                .mapToDouble(StatsWriteBehindAggregator.PendingDelta::delta)
+                .sum();
+        assertEquals(100.0, pageViews, 0.0);
+    }
+
+    @Test
+    @DisplayName("空闲条目在下一次刷新时被移除")
+    void drain_IdleEntries_ShouldBeEvicted() {
+        aggregator.increment("stats:user_event_count", "user1", 1, 0);
+
+        assertEquals(1, aggregator.drain().size());
+        assertEquals(1, aggregator.getAggregatorStats().get("pendingEntries"));
+
+        assertTrue(aggregator.drain().isEmpty());
+        assertEquals(0, aggregator.getAggregatorStats().get("pendingEntries"));
+    }
+
+    @Test
+    @DisplayName("并发写入与刷新时增量不丢失也不重复")
+    void drain_ConcurrentWriters_ShouldCountEveryIncrementExactlyOnce() throws Exception {
+        int writers = 4;
+        int incrementsPerWriter = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch done = new CountDownLatch(writers);
+        AtomicBoolean running = new AtomicBoolean(true);
+        DoubleAdder drained = new DoubleAdder();
+
+        for (int w = 0; w < writers; w++) {
+            executor.submit(() -> {
+                for (int i = 0; i < incrementsPerWriter; i++) {
+                    aggregator.increment("stats:user_event_count", "user" + (i % 8), 1, 0);
+                }
+                done.countDown();
+            });
+        }
+
+        Thread flusher = new Thread(() -> {
+            while (running.get()) {
+                aggregator.drain().forEach(d -> drained.add(d.delta()));
+            }
+        });
+        flusher.start();
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        running.set(false);
+        flusher.join();
+        executor.shutdown();
+        aggregator.drain().forEach(d -> drained.add(d.delta()));
+
+        assertEquals((double) writers * incrementsPerWriter, drained.sum(), 0.0);
+    }
+
+    @Test
+    @DisplayName("Redis写入失败时增量被重新入队")
+    void flush_RedisFailure_ShouldRequeueDeltas() {
+        doThrow(new RuntimeException("Redis down"))
+                .when(redisTemplate).executePipelined(any(SessionCallback.class));
+
+        aggregator.increment("stats:event_type_count", "PAGE_VIEW", 3, 0);
+
+        assertEquals(0, aggregator.flush());
+        assertEquals(1L, aggregator.getAggregatorStats().get("failedFlushes"));
+
+        List<StatsWriteBehindAggregator.PendingDelta> batch = aggregator.drain();
+        assertEquals(1, batch.size());
+        assertEquals(3.0, batch.get(0).delta(), 0.0);
+    }
+
+    @Test
+    @DisplayName("Redis不可用时达到硬上限后丢弃新key的增量，已有key继续累加")
+    void increment_HardCapReached_ShouldDropNewKeysOnly() {
+        ReflectionTestUtils.setField(aggregator, "hardCapEntries", 2);
+
+        aggregator.increment("stats:user_event_count", "user1", 1, 0);
+        aggregator.increment("stats:user_event_count", "user2", 1, 0);
+        aggregator.increment("stats:user_event_count", "user3", 1, 0);
+        aggregator.increment("stats:user_event_count", "user1", 1, 0);
+
+        assertEquals(2, aggregator.getAggregatorStats().get("pendingEntries"));
+        assertEquals(1L, aggregator.getAggregatorStats().get("droppedDeltas"));
+        double total = aggregator.drain().stream().mapToDouble(StatsWriteBehindAggregator.PendingDelta::delta).sum();
+        assertEquals(3.0, total, 0.0);
+    }
+
+    @Test
+    @DisplayName("超过max-pending时在刷新线程上提前刷新，不阻塞写入线程")
+    void increment_OverMaxPending_ShouldFlushOnBackgroundThread() throws Exception {
+        ReflectionTestUtils.setField(aggregator, "maxPendingEntries", 0);
+        CountDownLatch flushed = new CountDownLatch(1);
+        AtomicBoolean onCaller = new AtomicBoolean(true);
+        Thread caller = Thread.currentThread();
+        doAnswer(invocation -> {
+            onCaller.set(Thread.currentThread() == caller);
+            flushed.countDown();
+            return List.of();
+        }).when(redisTemplate).executePipelined(any(SessionCallback.class));
+
+        aggregator.increment("stats:event_type_count", "PAGE_VIEW", 1, 0);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertFalse(onCaller.get());
+        aggregator.shutdown();
+    }
+
+    @Test
+    @DisplayName("没有增量时不访问Redis")
+    void flush_NothingPending_ShouldNotTouchRedis() {
+        assertEquals(0, aggregator.flush());
+        verify(redisTemplate, never()).executePipelined(any(SessionCallback.class));
+    }
+}
@@ -2,11 +2,13 @@ package com.microservice.user_behaviour.consumer.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
@@ -15,11 +17,14 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -27,21 +32,31 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microservice.user_behaviour.consumer.entity.UserBehaviorEntity;
-import com.microservice.user_behaviour.consumer.repository.UserBehaviorRepository;
+import com.microservice.user_behaviour.consumer.exception.PoisonRecordException;
+import com.microservice.user_behaviour.consumer.funnel.FunnelEngine;
+import com.microservice.user_behaviour.consumer.listener.DeadLetterPublisher;
+import com.microservice.user_behaviour.consumer.listener.ListenerBackpressureController;
+import com.microservice.user_behaviour.consumer.repository.UserBehaviorBatchWriter;
+import com.microservice.user_behaviour.consumer.anomaly.RateAnomalyDetector;
+import com.microservice.user_behaviour.consumer.session.SessionWindowEngine;
+import com.microservice.user_behaviour.consumer.window.EventTimeWindowEngine;
 import com.microservice.user_behaviour.model.UserBehaviorEvent;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @ExtendWith(MockitoExtension.class)
 @DisplayName("用户行为处理服务测试")
 class UserBehaviorProcessingServiceTest {
 
     @Mock
-    private UserBehaviorRepository repository;
+    private UserBehaviorBatchWriter batchWriter;
 
     @Mock
     private ObjectMapper objectMapper;
@@ -49,6 +64,45 @@ class UserBehaviorProcessingServiceTest {
     @Mock
     private CacheService cacheService;
 
+    @Mock
+    private EventTimeWindowEngine windowEngine;
+
+    @Mock
+    private StatsRollupAggregator rollupAggregator;
+
+    @Mock
+    private UserSummaryWriter summaryWriter;
+
+    @Mock
+    private UniqueUserSketchWriter uniqueUserWriter;
+
+    @Mock
+    private QuantileSketchWriter quantileWriter;
+
+    @Mock
+    private UserHeatMatrixWriter heatMatrixWriter;
+
+    @Mock
+    private FunnelEngine funnelEngine;
+
+    @Mock
+    private ActiveUserBitmapWriter bitmapWriter;
+
+    @Mock
+    private RateAnomalyDetector anomalyDetector;
+
+    @Mock
+    private SessionWindowEngine sessionEngine;
+
+    @Mock
+    private ListenerBackpressureController backpressure;
+
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private UserBehaviorProcessingService processingService;
 
@@ -59,6 +113,18 @@ class UserBehaviorProcessingServiceTest {
     void setUp() {
         // Set batchSize to 1 so the queue auto-flushes
         ReflectionTestUtils.setField(processingService, "batchSize", 1);
+        ReflectionTestUtils.setField(processingService, "writerThreads", 1);
+        ReflectionTestUtils.setField(processingService, "maxInFlightBatches", 4);
+        ReflectionTestUtils.setField(processingService, "resumeInFlightBatches", 1);
+        ReflectionTestUtils.setField(processingService, "maxPendingEvents", 10_000);
+        ReflectionTestUtils.setField(processingService, "maxPendingBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(processingService, "lowWaterRatio", 0.5);
+        ReflectionTestUtils.setField(processingService, "writerMaxAttempts", 3);
+        ReflectionTestUtils.setField(processingService, "writerRetryBackoffMs", 1L);
+        ReflectionTestUtils.setField(processingService, "writerMaxBackoffMs", 1L);
+        processingService.init();
+        // Run the writer on the calling thread so flushes complete synchronously
+        ReflectionTestUtils.setField(processingService, "writerExecutor", (Executor) Runnable::run);
         
         testEvent = UserBehaviorEvent.builder()
                 .userId("user123")
@@ -94,8 +160,19 @@ class UserBehaviorProcessingServiceTest {
         // Then
         // 验证缓存更新被调用
         verify(cacheService, times(1)).cacheUserRecentEvent(eq(testEvent));
-        verify(cacheService, times(1)).updateEventTypeStats(eq("PAGE_VIEW"));
-        verify(cacheService, times(1)).updateUserActivityStats(eq("user123"));
+        verify(cacheService, times(1)).updateEventTypeStats(eq("PAGE_VIEW"), eq(testEvent.getEventTime()));
+        verify(windowEngine, times(1)).accept(eq("PAGE_VIEW"), eq(testEvent.getEventTime()));
+        verify(rollupAggregator, times(1)).record(eq(testEvent));
+        verify(anomalyDetector, times(1)).record(eq("PAGE_VIEW"));
+        verify(sessionEngine, times(1)).accept(eq(testEvent));
+        verify(summaryWriter, times(1)).update(eq(List.of(testEvent)));
+        verify(uniqueUserWriter, times(1)).update(eq(List.of(testEvent)));
+        verify(quantileWriter, times(1)).update(eq(List.of(testEvent)));
+        verify(heatMatrixWriter, times(1)).update(eq(List.of(testEvent)));
+        verify(funnelEngine, times(1)).update(eq(List.of(testEvent)));
+        verify(bitmapWriter, times(1)).update(eq(List.of(testEvent)));
+        verify(cacheService, times(1)).updateUserActivityStats(eq("user123"), eq(testEvent.getEventTime()));
+        verify(cacheService, times(1)).updateTrendingScores(eq(testEvent));
 
         // 验证统计计数器 (queue auto-flushes with batchSize=1)
         assertEquals(1, processingService.getReceivedCount());
@@ -196,7 +273,7 @@ class UserBehaviorProcessingServiceTest {
 
         // Then
         ArgumentCaptor<List<UserBehaviorEntity>> captor = ArgumentCaptor.forClass(List.class);
-        verify(repository, times(1)).saveAll(captor.capture());
+        verify(batchWriter, times(1)).insertBatch(captor.capture());
         
         List<UserBehaviorEntity> savedEntities = captor.getValue();
         assertEquals(2, savedEntities.size());
@@ -204,6 +281,118 @@ class UserBehaviorProcessingServiceTest {
         assertEquals(0, processingService.getQueueSize()); // 队列应该被清空
     }
 
+    @Test
+    @DisplayName("数据库写入失败时退避重试，成功后不丢批次")
+    void flushQueue_TransientDatabaseFailure_ShouldRetryBatch() {
+        doThrow(new RuntimeException("MySQL down")).doNothing().when(batchWriter).insertBatch(anyList());
+
+        processingService.processEvent(testEvent, "test-topic", 0, 100L);
+
+        verify(batchWriter, times(2)).insertBatch(anyList());
+        verify(deadLetterPublisher, never()).publishUnwritten(any(UserBehaviorEntity.class), any());
+        assertEquals(1, processingService.getProcessedCount());
+        assertEquals(0, processingService.getProcessingStats().get("failedBatches"));
+    }
+
+    @Test
+    @DisplayName("重试耗尽后批次中的事件进入死信主题")
+    void flushQueue_PersistentDatabaseFailure_ShouldDeadLetterBatch() {
+        doThrow(new RuntimeException("MySQL down")).when(batchWriter).insertBatch(anyList());
+
+        processingService.processEvent(testEvent, "test-topic", 0, 100L);
+
+        verify(batchWriter, times(3)).insertBatch(anyList());
+        ArgumentCaptor<UserBehaviorEntity> captor = ArgumentCaptor.forClass(UserBehaviorEntity.class);
+        verify(deadLetterPublisher).publishUnwritten(captor.capture(), any());
+        assertEquals(100L, captor.getValue().getOffset());
+        assertEquals(1, processingService.getProcessingStats().get("failedBatches"));
+        assertEquals(1, processingService.getProcessingStats().get("deadLetteredEvents"));
+        assertEquals(0, processingService.getProcessingStats().get("inFlightBatches"));
+    }
+
+    @Test
+    @DisplayName("死信发送失败时继续重试写入而不是丢弃批次")
+    void flushQueue_DeadLetterFailure_ShouldKeepRetryingInsert() {
+        doThrow(new RuntimeException("MySQL down")).doThrow(new RuntimeException("MySQL down"))
+                .doThrow(new RuntimeException("MySQL down")).doNothing()
+                .when(batchWriter).insertBatch(anyList());
+        doThrow(new IllegalStateException("Kafka down"))
+                .when(deadLetterPublisher).publishUnwritten(any(UserBehaviorEntity.class), any());
+
+        processingService.processEvent(testEvent, "test-topic", 0, 100L);
+
+        verify(batchWriter, times(4)).insertBatch(anyList());
+        assertEquals(1, processingService.getProcessedCount());
+        assertEquals(0, processingService.getProcessingStats().get("deadLetteredEvents"));
+    }
+
+    @Test
+    @DisplayName("按分区缓冲，各分区独立达到阈值后刷新")
+    void processEvent_MultiplePartitions_ShouldFlushPerPartition() {
+        // Given
+        ReflectionTestUtils.setField(processingService, "batchSize", 2);
+
+        // When
+        processingService.processEvent(testEvent, "test-topic", 0, 100L);
+        processingService.processEvent(testEvent, "test-topic", 1, 200L);
+        processingService.processEvent(testEvent, "test-topic", 0, 101L);
+
+        // Then
+        ArgumentCaptor<List<UserBehaviorEntity>> captor = ArgumentCaptor.forClass(List.class);
+        verify(batchWriter, times(1)).insertBatch(captor.capture());
+        assertTrue(captor.getValue().stream().allMatch(entity -> entity.getPartition() == 0));
+        assertEquals(2, captor.getValue().size());
+        assertEquals(1, processingService.getQueueSize()); // 分区1仍在缓冲
+    }
+
+    @Test
+    @DisplayName("在途批次达到上限时暂停监听，写完后恢复")
+    void flushQueue_TooManyBatchesInFlight_ShouldPauseAndResumeListener() {
+        // Given - 写入线程不执行任务，模拟MySQL阻塞
+        List<Runnable> pendingWrites = new ArrayList<>();
+        ReflectionTestUtils.setField(processingService, "writerExecutor", (Executor) pendingWrites::add);
+        ReflectionTestUtils.setField(processingService, "maxInFlightBatches", 2);
+
+        // When
+        processingService.processEvent(testEvent, "test-topic", 0, 100L);
+        processingService.processEvent(testEvent, "test-topic", 1, 200L);
+
+        // Then
+        verify(backpressure, times(1)).pause(eq("writer-in-flight"));
+        verify(batchWriter, never()).insertBatch(anyList());
+
+        // When - 写入完成
+        pendingWrites.forEach(Runnable::run);
+
+        // Then
+        verify(backpressure, atLeastOnce()).resume(eq("writer-in-flight"));
+        assertEquals(2, processingService.getProcessedCount());
+    }
+
+    @Test
+    @DisplayName("缓冲超过高水位时暂停分区，写入后低于低水位时恢复")
+    void processEvent_BufferAboveHighWater_ShouldPauseAndResumePartitions() {
+        // Given
+        ReflectionTestUtils.setField(processingService, "batchSize", 10);
+        ReflectionTestUtils.setField(processingService, "maxPendingEvents", 3);
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            processingService.processEvent(testEvent, "test-topic", 0, 100L + i);
+        }
+
+        // Then
+        verify(backpressure, times(1)).pause(eq("buffer-high-water"));
+        verify(backpressure, never()).resume(eq("buffer-high-water"));
+
+        // When
+        processingService.flushQueue();
+
+        // Then
+        verify(backpressure, times(1)).resume(eq("buffer-high-water"));
+        assertEquals(0L, processingService.getProcessingStats().get("pendingBytes"));
+    }
+
     @Test
     @DisplayName("空队列刷新不执行数据库操作")
     void flushQueue_EmptyQueue_ShouldNotCallRepository() {
@@ -211,7 +400,7 @@ class UserBehaviorProcessingServiceTest {
         processingService.flushQueue();
 
         // Then
-        verify(repository, never()).saveAll(anyList());
+        verify(batchWriter, never()).insertBatch(anyList());
         assertEquals(0, processingService.getProcessedCount());
     }
 
@@ -289,4 +478,23 @@ class UserBehaviorProcessingServiceTest {
         assertEquals(1, processingService.getReceivedCount());
         assertEquals(0, processingService.getQueueSize()); // Auto-flushed
     }
-} 
\ No newline at end of file
+
+    @Test
+    @DisplayName("批次中有毒记录时整批失败且不产生副作用")
+    void processRecords_PoisonRecord_ShouldFailWithoutSideEffects() {
+        // Given
+        UserBehaviorEvent invalid = UserBehaviorEvent.builder()
+                .eventType("PAGE_VIEW").source("web").build(); // 缺少userId
+        List<ConsumerRecord<String, UserBehaviorEvent>> records = List.of(
+                new ConsumerRecord<>("test-topic", 0, 100L, "user123", testEvent),
+                new ConsumerRecord<>("test-topic", 0, 101L, null, invalid));
+
+        // When & Then
+        PoisonRecordException e = assertThrows(PoisonRecordException.class,
+                () -> processingService.processRecords(records));
+        assertEquals(101L, e.getRecord().offset());
+        verify(cacheService, never()).cacheUserRecentEvent(any());
+        verify(batchWriter, never()).insertBatch(anyList());
+        assertEquals(0, processingService.getReceivedCount());
+    }
+}
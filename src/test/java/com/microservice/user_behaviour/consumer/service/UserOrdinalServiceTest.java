@@ -0,0 +1,52 @@
+package com.microservice.user_behaviour.consumer.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.microservice.user_behaviour.dictionary.UserDictionary;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("用户位图编号服务测试")
+class UserOrdinalServiceTest {
+
+    @Mock
+    private UserDictionary dictionary;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @InjectMocks
+    private UserOrdinalService service;
+
+    @Test
+    @DisplayName("旧编号导入失败时启动失败，不分配新编号")
+    void importLegacyOrdinals_Failure_ShouldFailStartup() {
+        when(stringRedisTemplate.hasKey(UserOrdinalService.LEGACY_ORDINALS_KEY))
+                .thenThrow(new RedisConnectionFailureException("redis down"));
+
+        assertThrows(IllegalStateException.class, service::importLegacyOrdinals);
+        verify(dictionary, never()).importOrdinals(anyMap());
+    }
+
+    @Test
+    @DisplayName("没有旧编号时直接启动")
+    void importLegacyOrdinals_NoLegacyHash_ShouldSkip() {
+        when(stringRedisTemplate.hasKey(UserOrdinalService.LEGACY_ORDINALS_KEY)).thenReturn(false);
+
+        service.importLegacyOrdinals();
+
+        verify(dictionary, never()).importOrdinals(anyMap());
+    }
+}
@@ -0,0 +1,78 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservice.user_behaviour.util.EventTimes;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("会话汇总Redis输出测试")
+class RedisSessionSinkTest {
+
+    private static final long DAY1 = EventTimes.toMillis(LocalDateTime.of(2024, 1, 15, 10, 0));
+    private static final long DAY2 = EventTimes.toMillis(LocalDateTime.of(2024, 1, 16, 10, 0));
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @InjectMocks
+    private RedisSessionSink sink;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(sink, "statsTtl", 1000L);
+        ReflectionTestUtils.setField(sink, "batchTtl", 60L);
+    }
+
+    @Test
+    @DisplayName("按天汇总后由脚本连同批次标记一次写入，重试同一批会话使用相同的批次标记")
+    @SuppressWarnings("unchecked")
+    void emit_RetriedBatch_ShouldReuseBatchGuard() {
+        List<SessionRecord> sessions = List.of(
+                new SessionRecord("user1", "s1", DAY1, DAY1 + 60_000, 3),
+                new SessionRecord("user2", "s2", DAY1, DAY1, 1),
+                new SessionRecord("user1", "s3", DAY2, DAY2 + 1_000, 2));
+
+        sink.emit(sessions);
+        sink.emit(sessions);
+
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(stringRedisTemplate, times(2)).execute(eq(RedisSessionSink.EMIT_SCRIPT), keys.capture(), args.capture());
+        String guard = String.format(RedisSessionSink.BATCH_KEY, RedisSessionSink.batchId(sessions));
+        assertEquals(List.of(guard, "stats:sessions:2024-01-15", "stats:sessions:2024-01-16"), keys.getAllValues().get(0));
+        assertEquals(keys.getAllValues().get(0), keys.getAllValues().get(1));
+        assertEquals(List.of("1000", "60", "2", "1", "4", "60000", "1", "0", "2", "1000"),
+                List.of(args.getAllValues().get(0)));
+    }
+
+    @Test
+    @DisplayName("不同批次的批次ID不同，空批次不写Redis")
+    @SuppressWarnings("unchecked")
+    void batchId_ShouldDependOnSessions() {
+        assertNotEquals(RedisSessionSink.batchId(List.of(new SessionRecord("user1", "s1", DAY1, DAY1, 1))),
+                RedisSessionSink.batchId(List.of(new SessionRecord("user1", "s1", DAY1, DAY1 + 1, 1))));
+
+        sink.emit(List.of());
+        verify(stringRedisTemplate, times(0)).execute(any(), anyList(), any(Object[].class));
+    }
+}
@@ -0,0 +1,179 @@
+package com.microservice.user_behaviour.consumer.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservice.user_behaviour.consumer.window.EventTimeWindowEngine;
+import com.microservice.user_behaviour.model.UserBehaviorEvent;
+import com.microservice.user_behaviour.util.EventTimes;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("会话窗口引擎测试")
+class SessionWindowEngineTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+    private static final long GAP_MS = 30 * 60_000L;
+
+    @Mock
+    private SessionSink sink;
+
+    @Mock
+    private EventTimeWindowEngine windowEngine;
+
+    private SessionWindowEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = newEngine(1000, 4);
+    }
+
+    private SessionWindowEngine newEngine(int maxOpen, int shards) {
+        SessionWindowEngine created = new SessionWindowEngine(List.of(sink), windowEngine, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(created, "gapMs", GAP_MS);
+        ReflectionTestUtils.setField(created, "tickMs", 10_000L);
+        ReflectionTestUtils.setField(created, "maxOpenSessions", maxOpen);
+        ReflectionTestUtils.setField(created, "shardCount", shards);
+        created.init();
+        return created;
+    }
+
+    private static UserBehaviorEvent event(String userId, String sessionId, LocalDateTime time) {
+        return UserBehaviorEvent.builder()
+                .userId(userId)
+                .sessionId(sessionId)
+                .eventType("PAGE_VIEW")
+                .eventTime(time)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SessionRecord> emitted() {
+        ArgumentCaptor<List<SessionRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(sink).emit(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    @DisplayName("水位线越过 最后事件+间隙 后会话关闭并输出")
+    void expire_AfterGap_ShouldCloseSession() {
+        engine.accept(event("user1", "s1", T0));
+        engine.accept(event("user1", "s1", T0.plusMinutes(5)));
+        engine.accept(event("user1", "s1", T0.plusMinutes(12)));
+
+        engine.expire(EventTimes.toMillis(T0.plusMinutes(40)));
+        engine.flush();
+        verify(sink, never()).emit(anyList());
+
+        engine.expire(EventTimes.toMillis(T0.plusMinutes(43)));
+        engine.flush();
+
+        List<SessionRecord> sessions = emitted();
+        assertEquals(1, sessions.size());
+        SessionRecord session = sessions.get(0);
+        assertEquals("s1", session.sessionId());
+        assertEquals(3, session.eventCount());
+        assertEquals(12 * 60_000L, session.durationMillis());
+        assertFalse(session.bounce());
+        assertEquals(0, engine.getSessionStats().get("openSessions"));
+    }
+
+    @Test
+    @DisplayName("同一会话中间隔超过间隙的事件切分出新会话")
+    void accept_EventAfterGap_ShouldSplitSession() {
+        engine.accept(event("user1", null, T0));
+        engine.accept(event("user1", null, T0.plusMinutes(45)));
+        engine.flush();
+
+        List<SessionRecord> sessions = emitted();
+        assertEquals(1, sessions.size());
+        assertEquals("", sessions.get(0).sessionId());
+        assertTrue(sessions.get(0).bounce());
+        assertEquals(1, engine.getSessionStats().get("openSessions"));
+    }
+
+    @Test
+    @DisplayName("乱序事件在间隙内时延长会话起点")
+    void accept_OutOfOrderWithinGap_ShouldExtendStart() {
+        engine.accept(event("user1", "s1", T0.plusMinutes(10)));
+        engine.accept(event("user1", "s1", T0));
+        engine.shutdown();
+
+        SessionRecord session = emitted().get(0);
+        assertEquals(T0, session.startTime());
+        assertEquals(T0.plusMinutes(10), session.endTime());
+        assertEquals(2, session.eventCount());
+    }
+
+    @Test
+    @DisplayName("打开会话数达到上限时提前关闭最早到期的会话")
+    void accept_OverCapacity_ShouldEvictEarliestSessions() {
+        engine = newEngine(10, 1);
+        for (int i = 0; i < 20; i++) {
+            engine.accept(event("user" + i, "s", T0.plusMinutes(i)));
+        }
+        engine.flush();
+
+        List<SessionRecord> sessions = emitted();
+        assertTrue((int) engine.getSessionStats().get("openSessions") <= 10);
+        assertEquals(20, sessions.size() + (int) engine.getSessionStats().get("openSessions"));
+        assertEquals("user0", sessions.get(0).userId());
+        assertEquals((long) sessions.size(), engine.getSessionStats().get("evictedSessions"));
+    }
+
+    @Test
+    @DisplayName("大量会话扩容索引后，交错关闭和新建仍能找到各自的会话")
+    void accept_ManySessions_ShouldKeepIndexConsistent() {
+        engine = newEngine(100_000, 1);
+        for (int i = 0; i < 5000; i++) {
+            engine.accept(event("user" + i, "s" + (i % 3), T0));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            // 间隔超过间隙: 关闭旧会话并在同一个key下新建
+            engine.accept(event("user" + i, "s" + (i % 3), T0.plusMinutes(45)));
+        }
+        for (int i = 0; i < 5000; i++) {
+            engine.accept(event("user" + i, "s" + (i % 3), T0.plusMinutes(i % 2 == 0 ? 50 : 20)));
+        }
+        assertEquals(5000, engine.getSessionStats().get("openSessions"));
+
+        engine.shutdown();
+        List<SessionRecord> sessions = emitted();
+        assertEquals(7500, sessions.size());
+        assertEquals(2500 + 5000 * 2, sessions.stream().mapToInt(SessionRecord::eventCount).sum());
+    }
+
+    @Test
+    @DisplayName("输出失败的会话在下一周期重试")
+    void flush_SinkFailure_ShouldRetry() {
+        doThrow(new RuntimeException("MySQL down")).doNothing().when(sink).emit(anyList());
+
+        engine.accept(event("user1", "s1", T0));
+        engine.expire(EventTimes.toMillis(T0.plusHours(1)));
+        engine.flush();
+        engine.flush();
+
+        verify(sink, times(2)).emit(anyList());
+        assertEquals(1L, engine.getSessionStats().get("failedEmits"));
+        assertEquals(0, engine.getSessionStats().get("pendingRetries"));
+    }
+}
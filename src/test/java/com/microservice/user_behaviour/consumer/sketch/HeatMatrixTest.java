@@ -0,0 +1,69 @@
+package com.microservice.user_behaviour.consumer.sketch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("热度矩阵布局测试")
+class HeatMatrixTest {
+
+    private final HeatMatrix layout = new HeatMatrix(List.of("PAGE_VIEW", "PURCHASE", HeatMatrix.OTHER));
+
+    @Test
+    @DisplayName("单元编号按类型分行、周一0点为0")
+    void cell_ShouldBeTypeMajor() {
+        LocalDateTime mondayMidnight = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime sundayLate = LocalDateTime.of(2024, 1, 7, 23, 59);
+
+        assertEquals(0, layout.cell("PAGE_VIEW", mondayMidnight));
+        assertEquals(167, layout.cell("PAGE_VIEW", sundayLate));
+        assertEquals(168, layout.cell("PURCHASE", mondayMidnight));
+        assertEquals(2 * 168 + 167, layout.cell("UNKNOWN", sundayLate));
+        assertEquals(List.of("PAGE_VIEW", "PURCHASE", HeatMatrix.OTHER), layout.rows());
+    }
+
+    @Test
+    @DisplayName("解码大端u16并跳过空行和截断的字节")
+    void decode_ShouldReadBigEndianCounts() {
+        byte[] raw = new byte[2 * (168 + 2) + 1];
+        raw[2 * 5] = 0x01;          // PAGE_VIEW 星期小时5 = 256 + 2
+        raw[2 * 5 + 1] = 0x02;
+        raw[2 * 169] = (byte) 0xFF; // PURCHASE 星期小时1 = 65535 (饱和值)
+        raw[2 * 169 + 1] = (byte) 0xFF;
+
+        Map<String, int[]> matrix = layout.decode(raw);
+
+        assertEquals(2, matrix.size());
+        assertEquals(258, matrix.get("PAGE_VIEW")[5]);
+        assertEquals(65535, matrix.get("PURCHASE")[1]);
+        assertEquals(168, matrix.get("PURCHASE").length);
+        assertTrue(layout.decode(null).isEmpty());
+    }
+
+    @Test
+    @DisplayName("在OTHER之后追加类型不移动已有的行，旧数据按原类型解码；未包含OTHER的列表被拒绝")
+    void append_ShouldKeepExistingRows() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 3, 0);
+        byte[] raw = new byte[2 * 3 * 168];
+        raw[2 * layout.cell("UNKNOWN", time) + 1] = 7;
+        raw[2 * layout.cell("PURCHASE", time) + 1] = 2;
+
+        HeatMatrix appended = new HeatMatrix(List.of("PAGE_VIEW", "PURCHASE", HeatMatrix.OTHER, "SEARCH"));
+        Map<String, int[]> matrix = appended.decode(raw);
+
+        assertEquals(layout.cell("UNKNOWN", time), appended.cell("UNKNOWN", time));
+        assertEquals(7, matrix.get(HeatMatrix.OTHER)[3]);
+        assertEquals(2, matrix.get("PURCHASE")[3]);
+        assertFalse(matrix.containsKey("SEARCH"));
+        assertEquals(3 * 168 + 3, appended.cell("SEARCH", time));
+        assertThrows(IllegalArgumentException.class, () -> new HeatMatrix(List.of("PAGE_VIEW", "PURCHASE")));
+    }
+}
@@ -0,0 +1,76 @@
+package com.microservice.user_behaviour.consumer.sketch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Space-Saving 高频项摘要测试")
+class SpaceSavingTest {
+
+    @Test
+    @DisplayName("不同项数不超过容量时计数精确")
+    void offer_WithinCapacity_ShouldCountExactly() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                sketch.offer("user" + i, 1);
+            }
+        }
+
+        List<SpaceSaving.Counter> top = sketch.top(3);
+
+        assertEquals(List.of(
+                new SpaceSaving.Counter("user4", 5, 0),
+                new SpaceSaving.Counter("user3", 4, 0),
+                new SpaceSaving.Counter("user2", 3, 0)), top);
+    }
+
+    @Test
+    @DisplayName("偏斜数据流中高频用户一定被保留且高估不超过 N/容量")
+    void offer_SkewedStream_ShouldKeepHeavyHittersWithinErrorBound() {
+        SpaceSaving sketch = new SpaceSaving(50);
+        Map<String, Long> truth = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // 10个重度用户占一半流量，其余分散在10万长尾用户上
+            String user = random.nextBoolean() ? "heavy" + random.nextInt(10) : "tail" + random.nextInt(100_000);
+            truth.merge(user, 1L, Long::sum);
+            sketch.offer(user, 1);
+        }
+
+        assertEquals(50, sketch.size());
+        long bound = sketch.errorBound();
+        List<SpaceSaving.Counter> top = sketch.top(10);
+        for (SpaceSaving.Counter counter : top) {
+            assertTrue(counter.item().startsWith("heavy"), counter.item());
+            long actual = truth.get(counter.item());
+            assertTrue(counter.count() >= actual);
+            assertTrue(counter.count() - actual <= bound);
+            assertTrue(counter.count() - counter.error() <= actual);
+        }
+    }
+
+    @Test
+    @DisplayName("drain 取走所有计数器并清空摘要")
+    void drain_ShouldReturnAllCountersAndReset() {
+        SpaceSaving sketch = new SpaceSaving(2);
+        sketch.offer("a", 3);
+        sketch.offer("b", 1);
+        sketch.offer("c", 1); // 替换 b，继承其计数 1 作为误差
+
+        List<SpaceSaving.Counter> top = sketch.top(2);
+        assertEquals(new SpaceSaving.Counter("a", 3, 0), top.get(0));
+        assertEquals(new SpaceSaving.Counter("c", 2, 1), top.get(1));
+
+        assertEquals(2, sketch.drain().size());
+        assertEquals(0, sketch.size());
+        assertEquals(0, sketch.total());
+    }
+}
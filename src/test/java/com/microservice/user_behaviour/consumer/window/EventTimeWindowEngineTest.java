@@ -0,0 +1,160 @@
+package com.microservice.user_behaviour.consumer.window;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("事件时间窗口引擎测试")
+class EventTimeWindowEngineTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    @Mock
+    private RedisWindowSink sink;
+
+    private EventTimeWindowEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new EventTimeWindowEngine(List.of(sink), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(engine, "maxOutOfOrdernessMs", 60_000L);
+        ReflectionTestUtils.setField(engine, "idleTimeoutMs", Long.MAX_VALUE / 4);
+        ReflectionTestUtils.setField(engine, "maxFutureMs", Long.MAX_VALUE / 4);
+        ReflectionTestUtils.setField(engine, "allowedLatenessMs", 300_000L);
+        ReflectionTestUtils.setField(engine, "slidingSizeMs", 3_600_000L);
+        ReflectionTestUtils.setField(engine, "slidingSlideMs", 900_000L);
+        ReflectionTestUtils.setField(engine, "shardCount", 4);
+        engine.init();
+    }
+
+    @Test
+    @DisplayName("事件按事件时间而非处理时间归入小时窗口")
+    void accept_BacklogEvents_ShouldLandInTheirEventHour() {
+        engine.accept("PAGE_VIEW", T0.plusMinutes(5));
+        engine.accept("PAGE_VIEW", T0.plusMinutes(50));
+        engine.accept("CLICK", T0.plusMinutes(59));
+        engine.accept("PAGE_VIEW", T0.plusHours(1).plusMinutes(1));
+
+        engine.closeWindows(WindowSpec.toMillis(T0.plusHours(1)));
+
+        WindowResult hour = emitted(EventTimeWindowEngine.EVENT_TYPE_HOURLY).get(0);
+        assertEquals("2024-05-01-10", hour.label());
+        assertEquals(Map.of("PAGE_VIEW", 2L, "CLICK", 1L), asMap(hour));
+    }
+
+    @Test
+    @DisplayName("滑动窗口中每个事件计入 size/slide 个窗口")
+    void accept_SlidingWindow_ShouldCountEventInEveryOverlappingWindow() {
+        engine.accept("SEARCH", T0.plusMinutes(20));
+
+        engine.closeWindows(WindowSpec.toMillis(T0.plusHours(3)));
+
+        List<WindowResult> sliding = emitted(EventTimeWindowEngine.EVENT_TYPE_SLIDING);
+        assertEquals(4, sliding.size()); // 1小时窗口, 15分钟步长
+        assertEquals(List.of("2024-05-01-09-30", "2024-05-01-09-45", "2024-05-01-10-00", "2024-05-01-10-15"),
+                sliding.stream().map(WindowResult::label).toList());
+        sliding.forEach(w -> assertArrayEquals(new long[] {1L}, w.counts()));
+    }
+
+    @Test
+    @DisplayName("窗口关闭后只输出一次，迟到事件计入侧计数器")
+    void closeWindows_LateEvent_ShouldEmitOnceAndCountLate() {
+        engine.accept("PAGE_VIEW", T0.plusMinutes(10));
+        engine.closeWindows(WindowSpec.toMillis(T0.plusHours(1)));
+        engine.closeWindows(WindowSpec.toMillis(T0.plusHours(1).plusMinutes(30)));
+
+        engine.accept("PAGE_VIEW", T0.plusMinutes(20));
+
+        assertEquals(1, emitted(EventTimeWindowEngine.EVENT_TYPE_HOURLY).size());
+        verify(sink, times(1)).recordLate(
+                argThat(spec -> spec.name().equals(EventTimeWindowEngine.EVENT_TYPE_HOURLY)),
+                eq(WindowSpec.toMillis(T0)));
+        assertEquals(1L, engine.getWindowStats().get("lateEvents"));
+    }
+
+    @Test
+    @DisplayName("水位线 = 最大事件时间 - 乱序时间，窗口在允许迟到时间之后关闭")
+    void advance_Watermark_ShouldCloseWindowAfterAllowedLateness() {
+        engine.accept("PAGE_VIEW", T0.plusMinutes(10));
+        engine.accept("PAGE_VIEW", T0.plusHours(1).plusMinutes(5)); // 水位线 11:04, 关闭边界 10:59
+        engine.advance();
+        assertEquals(0, emitted(EventTimeWindowEngine.EVENT_TYPE_HOURLY).size());
+
+        engine.accept("PAGE_VIEW", T0.plusHours(1).plusMinutes(7)); // 水位线 11:06, 关闭边界 11:01
+        engine.advance();
+        assertEquals(1, emitted(EventTimeWindowEngine.EVENT_TYPE_HOURLY).size());
+        assertEquals(T0.plusHours(1).plusMinutes(6), engine.getWatermark());
+    }
+
+    @Test
+    @DisplayName("输出失败的窗口在下一周期重试")
+    void advance_SinkFailure_ShouldRetryEmit() {
+        when(sink.name()).thenReturn("redis");
+        doThrow(new RuntimeException("down")).doNothing().when(sink).emit(any());
+
+        engine.accept("PAGE_VIEW", T0.plusMinutes(10));
+        engine.closeWindows(WindowSpec.toMillis(T0.plusHours(1)));
+        assertEquals(1, engine.getWindowStats().get("pendingRetries"));
+
+        engine.advance();
+
+        assertEquals(0, engine.getWindowStats().get("pendingRetries"));
+    }
+
+    @Test
+    @DisplayName("大量key分布在不同分片时计数正确合并")
+    void closeWindows_ManyKeys_ShouldMergeShards() {
+        IntStream.range(0, 1000).forEach(i -> engine.accept("type" + i, T0.plusSeconds(i)));
+        engine.accept("type7", T0.plusMinutes(30));
+
+        engine.closeWindows(WindowSpec.toMillis(T0.plusHours(1)));
+
+        Map<String, Long> counts = asMap(emitted(EventTimeWindowEngine.EVENT_TYPE_HOURLY).get(0));
+        assertEquals(1000, counts.size());
+        assertEquals(2L, counts.get("type7"));
+        assertEquals(1L, counts.get("type999"));
+    }
+
+    private List<WindowResult> emitted(String windowName) {
+        ArgumentCaptor<WindowResult> captor = ArgumentCaptor.forClass(WindowResult.class);
+        verify(sink, atLeast(0)).emit(captor.capture());
+        List<WindowResult> results = new ArrayList<>();
+        for (WindowResult result : captor.getAllValues()) {
+            if (result.spec().name().equals(windowName)) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private static Map<String, Long> asMap(WindowResult result) {
+        return IntStream.range(0, result.size()).boxed()
+                .collect(Collectors.toMap(i -> result.keys()[i], i -> result.counts()[i]));
+    }
+}
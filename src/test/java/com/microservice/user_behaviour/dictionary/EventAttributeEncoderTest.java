@@ -0,0 +1,111 @@
+package com.microservice.user_behaviour.dictionary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.microservice.user_behaviour.dictionary.EventAttributeEncoder.Attribute;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("事件字段字典编码器测试")
+class EventAttributeEncoderTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private EventAttributeEncoder encoder;
+
+    /** 模拟的 event_type_dict 表 */
+    private final Map<String, Integer> table = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        encoder = new EventAttributeEncoder(jdbcTemplate, 3);
+        table.put("PAGE_VIEW", 1);
+        table.put("SEARCH", 2);
+
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Map.Entry<String, Integer> row : table.entrySet()) {
+                handler.processRow(row(row.getValue(), row.getKey()));
+            }
+            return null;
+        }).when(jdbcTemplate).query(eq("SELECT id, value FROM event_type_dict"), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    @DisplayName("已有的值从整表载入的缓存中编码，不写数据库")
+    void encode_KnownValues_ShouldUseLoadedTable() {
+        Map<String, Integer> ids = encoder.encode(Attribute.EVENT_TYPE, List.of("PAGE_VIEW", "SEARCH", "PAGE_VIEW"));
+
+        assertEquals(Map.of("PAGE_VIEW", 1, "SEARCH", 2), ids);
+        verify(jdbcTemplate, never()).batchUpdate(any(String.class), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    @DisplayName("新值插入查找表后回读id，超出容量的值不编码")
+    void encode_NewValues_ShouldInsertUpToCapacity() {
+        doAnswer(invocation -> {
+            List<String> values = invocation.getArgument(1);
+            values.forEach(value -> table.putIfAbsent(value, table.size() + 1));
+            return new int[][] {};
+        }).when(jdbcTemplate).batchUpdate(startsWith("INSERT IGNORE INTO event_type_dict"), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int i = 2; i < invocation.getArguments().length; i++) {
+                String value = (String) invocation.getArgument(i);
+                handler.processRow(row(table.get(value), value));
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT id, value FROM event_type_dict WHERE value IN"),
+                any(RowCallbackHandler.class), any(Object[].class));
+
+        Map<String, Integer> ids = encoder.encode(Attribute.EVENT_TYPE, List.of("SEARCH", "PURCHASE", "LOGIN"));
+
+        assertEquals(2, ids.get("SEARCH"));
+        assertEquals(3, ids.get("PURCHASE"));
+        assertFalse(ids.containsKey("LOGIN"));
+    }
+
+    @Test
+    @DisplayName("超长的值不编码")
+    void encode_TooLongValue_ShouldBeSkipped() {
+        Map<String, Integer> ids = encoder.encode(Attribute.EVENT_TYPE, List.of("X".repeat(51)));
+
+        assertEquals(Map.of(), ids);
+    }
+
+    private static ResultSet row(int id, String value) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getInt(1)).thenReturn(id);
+        when(rs.getString(2)).thenReturn(value);
+        return rs;
+    }
+}
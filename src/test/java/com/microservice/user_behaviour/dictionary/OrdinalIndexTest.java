@@ -0,0 +1,119 @@
+package com.microservice.user_behaviour.dictionary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("用户字典本地缓存测试")
+class OrdinalIndexTest {
+
+    @Test
+    @DisplayName("扩容后正反查询仍然正确")
+    void put_ManyUsers_ShouldResolveBothDirections() {
+        OrdinalIndex index = new OrdinalIndex(100_000);
+        for (int ord = 1; ord <= 50_000; ord++) {
+            index.put("user" + ord, ord);
+        }
+
+        assertEquals(50_000, index.size());
+        for (int ord = 1; ord <= 50_000; ord += 997) {
+            assertEquals(ord, index.ordinalOf("user" + ord));
+            assertEquals("user" + ord, index.userIdOf(ord));
+        }
+        assertEquals(0, index.ordinalOf("user0"));
+        assertNull(index.userIdOf(50_001));
+    }
+
+    @Test
+    @DisplayName("用户ID区分大小写")
+    void ordinalOf_DifferentCase_ShouldBeDistinctUsers() {
+        OrdinalIndex index = new OrdinalIndex(100_000);
+        index.put("User1", 1);
+        index.put("user1", 2);
+
+        assertEquals(1, index.ordinalOf("User1"));
+        assertEquals(2, index.ordinalOf("user1"));
+    }
+
+    @Test
+    @DisplayName("重复写入相同映射被忽略，冲突映射被拒绝")
+    void put_ConflictingMapping_ShouldThrow() {
+        OrdinalIndex index = new OrdinalIndex(100_000);
+        index.put("user1", 7);
+        index.put("user1", 7);
+
+        assertEquals(1, index.size());
+        assertThrows(IllegalStateException.class, () -> index.put("user2", 7));
+        assertThrows(IllegalStateException.class, () -> index.put("user1", 8));
+        assertThrows(IllegalArgumentException.class, () -> index.put("user3", 0));
+    }
+
+    @Test
+    @DisplayName("清空后不再命中")
+    void clear_ShouldDropAllEntries() {
+        OrdinalIndex index = new OrdinalIndex(100_000);
+        index.put("user1", 5000);
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertEquals(0, index.ordinalOf("user1"));
+        assertNull(index.userIdOf(5000));
+    }
+
+    @Test
+    @DisplayName("编号稀疏时只按缓存的用户数占用内存")
+    void put_SparseOrdinals_ShouldResolveBothDirections() {
+        OrdinalIndex index = new OrdinalIndex(10);
+        index.put("user1", 2_000_000_000);
+        index.put("user2", 7);
+
+        assertEquals(2_000_000_000, index.ordinalOf("user1"));
+        assertEquals("user1", index.userIdOf(2_000_000_000));
+        assertEquals("user2", index.userIdOf(7));
+        assertNull(index.userIdOf(8));
+    }
+
+    @Test
+    @DisplayName("达到上限后逐个淘汰最近未访问的用户，而不是整体清空")
+    void put_Full_ShouldEvictUnreferencedUsers() {
+        OrdinalIndex index = new OrdinalIndex(100);
+        for (int ord = 1; ord <= 100; ord++) {
+            index.put("user" + ord, ord);
+        }
+        // 第一次淘汰时指针扫过一整圈，清除所有访问标记
+        index.put("user101", 101);
+        assertEquals(100, index.size());
+        assertEquals(1, index.evictions());
+
+        List<Integer> hot = new ArrayList<>();
+        for (int ord = 1; ord <= 50; ord++) {
+            if (index.ordinalOf("user" + ord) == ord) {
+                hot.add(ord);
+            }
+        }
+        for (int ord = 102; ord <= 150; ord++) {
+            index.put("user" + ord, ord);
+        }
+
+        assertEquals(100, index.size());
+        assertEquals(50, index.evictions());
+        for (int ord : hot) {
+            assertEquals("user" + ord, index.userIdOf(ord));
+        }
+        for (int ord = 101; ord <= 150; ord++) {
+            assertEquals(ord, index.ordinalOf("user" + ord));
+        }
+        int cold = 0;
+        for (int ord = 51; ord <= 100; ord++) {
+            cold += index.ordinalOf("user" + ord) != 0 ? 1 : 0;
+        }
+        assertTrue(cold <= 1);
+    }
+}
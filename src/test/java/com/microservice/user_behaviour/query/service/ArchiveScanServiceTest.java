@@ -0,0 +1,98 @@
+package com.microservice.user_behaviour.query.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservice.user_behaviour.archive.EventSegment;
+import com.microservice.user_behaviour.archive.EventSegmentWriter;
+import com.microservice.user_behaviour.util.EventTimes;
+
+@DisplayName("冷数据归档扫描服务测试")
+class ArchiveScanServiceTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2024, 1, 15);
+    private static final LocalDate DAY2 = LocalDate.of(2024, 1, 16);
+
+    @TempDir
+    Path dir;
+
+    private ArchiveScanService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = new ArchiveScanService();
+        ReflectionTestUtils.setField(service, "archiveDir", dir.toString());
+
+        EventSegmentWriter day1 = new EventSegmentWriter(DAY1);
+        day1.add(row(1, "user1", "PAGE_VIEW", DAY1.atTime(9, 0)));
+        day1.add(row(2, "user1", "SEARCH", DAY1.atTime(10, 0)));
+        day1.add(row(3, "user2", "PAGE_VIEW", DAY1.atTime(11, 0)));
+        day1.write(EventSegment.file(dir, DAY1));
+
+        EventSegmentWriter day2 = new EventSegmentWriter(DAY2);
+        day2.add(row(4, "user1", "PAGE_VIEW", DAY2.atTime(8, 0)));
+        day2.add(row(5, "user3", "PURCHASE", DAY2.atTime(12, 0)));
+        day2.write(EventSegment.file(dir, DAY2));
+    }
+
+    @Test
+    @DisplayName("按时间范围统计所有用户的事件类型")
+    void countEventTypes_AllUsers_ShouldCountWithinRange() {
+        Map<String, Long> counts = service.countEventTypes(null, DAY1.atTime(10, 0), DAY2.atTime(12, 0));
+
+        assertEquals(Map.of("SEARCH", 1L, "PAGE_VIEW", 2L), counts);
+    }
+
+    @Test
+    @DisplayName("按用户统计事件类型和每日事件数，跳过不含该用户的文件")
+    void countByUser_ShouldOnlyCountThatUser() {
+        assertEquals(Map.of("PAGE_VIEW", 2L, "SEARCH", 1L), service.countEventTypes("user1", null, null));
+        assertEquals(Map.of("20240115", 2L, "20240116", 1L),
+                service.countDaily("user1", DAY1.atStartOfDay(), DAY2.plusDays(1).atStartOfDay()));
+        assertEquals(Map.of("20240116", 1L), service.countDaily("user3", null, null));
+    }
+
+    @Test
+    @DisplayName("最早事件时间")
+    void findFirstEventTime_ShouldReturnEarliestArchivedEvent() {
+        assertEquals(DAY1.atTime(11, 0), service.findFirstEventTime("user2"));
+        assertNull(service.findFirstEventTime("unknown"));
+    }
+
+    @Test
+    @DisplayName("一次扫描得到用户的最早事件时间、截止时间前的类型计数和起始日之后的每日计数")
+    void summarizeUser_ShouldCollectAllInOnePass() {
+        ArchiveScanService.UserArchiveSummary summary =
+                service.summarizeUser("user1", DAY2.atTime(9, 0), DAY2.atStartOfDay());
+
+        assertEquals(DAY1.atTime(9, 0), summary.firstEventTime());
+        assertEquals(Map.of("PAGE_VIEW", 2L, "SEARCH", 1L), summary.eventTypes());
+        assertEquals(Map.of("20240116", 1L), summary.daily());
+
+        ArchiveScanService.UserArchiveSummary unknown =
+                service.summarizeUser("unknown", DAY2.plusDays(1).atStartOfDay(), DAY1.atStartOfDay());
+        assertNull(unknown.firstEventTime());
+        assertTrue(unknown.eventTypes().isEmpty());
+        assertTrue(unknown.daily().isEmpty());
+    }
+
+    private static Object[] row(long id, String userId, String eventType, LocalDateTime eventTime) {
+        return new Object[] {
+                id, userId, eventType, "web", EventTimes.toMillis(eventTime), null, null, null, null,
+                null, "user-behavior-events", 0L, id
+        };
+    }
+}
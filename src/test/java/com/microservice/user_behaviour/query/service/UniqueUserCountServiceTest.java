@@ -0,0 +1,108 @@
+package com.microservice.user_behaviour.query.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HyperLogLogOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservice.user_behaviour.util.TimeBuckets;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("独立用户数查询测试")
+class UniqueUserCountServiceTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private HyperLogLogOperations<String, String> hyperLogLogOperations;
+
+    @InjectMocks
+    private UniqueUserCountService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "maxRangeDays", 400);
+        ReflectionTestUtils.setField(service, "hourTtl", 691200L);
+    }
+
+    @Test
+    @DisplayName("完整覆盖的日使用天HLL，首尾不完整的日使用小时HLL")
+    void bucketKeys_ShouldUseDayKeysForWholeDays() {
+        List<String> keys = UniqueUserCountService.bucketKeys("PAGE_VIEW",
+                LocalDateTime.of(2024, 1, 14, 22, 30), LocalDateTime.of(2024, 1, 16, 1, 15));
+
+        assertEquals(List.of(
+                "hll:users:PAGE_VIEW:hour:2024-01-14-22",
+                "hll:users:PAGE_VIEW:hour:2024-01-14-23",
+                "hll:users:PAGE_VIEW:day:2024-01-15",
+                "hll:users:PAGE_VIEW:hour:2024-01-16-00",
+                "hll:users:PAGE_VIEW:hour:2024-01-16-01"), keys);
+    }
+
+    @Test
+    @DisplayName("同一小时内的查询只使用一个小时HLL")
+    void bucketKeys_SingleHour_ShouldUseOneKey() {
+        List<String> keys = UniqueUserCountService.bucketKeys("all",
+                LocalDateTime.of(2024, 1, 15, 10, 5), LocalDateTime.of(2024, 1, 15, 10, 55));
+
+        assertEquals(List.of("hll:users:all:hour:2024-01-15-10"), keys);
+    }
+
+    @Test
+    @DisplayName("小时HLL已过期的不完整日改用天HLL并标记")
+    void bucketKeys_ExpiredHours_ShouldWidenToDayKeys() {
+        TimeBuckets.Cover cover = UniqueUserCountService.bucketKeys("PAGE_VIEW",
+                LocalDateTime.of(2024, 1, 14, 22, 30), LocalDateTime.of(2024, 1, 16, 1, 15),
+                LocalDateTime.of(2024, 1, 16, 1, 0));
+
+        assertEquals(List.of(
+                "hll:users:PAGE_VIEW:day:2024-01-14",
+                "hll:users:PAGE_VIEW:day:2024-01-15",
+                "hll:users:PAGE_VIEW:day:2024-01-16"), cover.keys());
+        assertTrue(cover.widened());
+
+        assertFalse(UniqueUserCountService.bucketKeys("PAGE_VIEW",
+                LocalDateTime.of(2024, 1, 15, 0, 0), LocalDateTime.of(2024, 1, 15, 23, 59),
+                LocalDateTime.of(2024, 1, 16, 0, 0)).widened());
+    }
+
+    @Test
+    @DisplayName("多个桶通过一次PFCOUNT合并计数")
+    void countUniqueUsers_ShouldMergeBucketsWithOnePfcount() {
+        when(stringRedisTemplate.opsForHyperLogLog()).thenReturn(hyperLogLogOperations);
+        when(hyperLogLogOperations.size(any(String[].class))).thenReturn(1234L);
+
+        Map<String, Object> result = service.countUniqueUsers(null,
+                LocalDateTime.of(2024, 1, 15, 0, 0), LocalDateTime.of(2024, 1, 16, 23, 59));
+
+        assertEquals("all", result.get("eventType"));
+        assertEquals(1234L, result.get("uniqueUsers"));
+        assertEquals(2, result.get("buckets"));
+        assertEquals(false, result.get("widenedToWholeDays"));
+    }
+
+    @Test
+    @DisplayName("结束时间早于开始时间时拒绝查询")
+    void countUniqueUsers_InvertedRange_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> service.countUniqueUsers("PAGE_VIEW",
+                LocalDateTime.of(2024, 1, 15, 10, 0), LocalDateTime.of(2024, 1, 15, 9, 0)));
+    }
+}
@@ -1,5 +1,6 @@
 package com.microservice.user_behaviour.query.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -14,6 +15,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.lenient;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -61,6 +63,9 @@ class UserBehaviorQueryServiceTest {
     @Mock
     private ZSetOperations<String, Object> zSetOperations;
 
+    @Mock
+    private UserSummaryReader summaryReader;
+
     @InjectMocks
     private UserBehaviorQueryService queryService;
 
@@ -198,6 +203,26 @@ class UserBehaviorQueryServiceTest {
         verify(listOperations, never()).range(anyString(), anyLong(), anyLong());
     }
 
+    @Test
+    @DisplayName("获取用户事件 - 最近时间窗口内已足够时不做全表查询")
+    void getUserEvents_EnoughRecentEvents_ShouldNotQueryWithoutTimeBound() {
+        // Given
+        ReflectionTestUtils.setField(queryService, "cacheEnabled", false);
+        ReflectionTestUtils.setField(queryService, "lookbackDays", new int[] {7, 90});
+        
+        when(repository.findByUserIdAndEventTimeAfterOrderByEventTimeDesc(eq("user123"), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of())
+                .thenReturn(testEntities);
+
+        // When
+        List<UserBehaviorEvent> result = queryService.getUserEvents("user123", 1);
+
+        // Then
+        assertEquals(1, result.size());
+        verify(repository, times(2)).findByUserIdAndEventTimeAfterOrderByEventTimeDesc(eq("user123"), any(LocalDateTime.class), any(Pageable.class));
+        verify(repository, never()).findByUserIdOrderByEventTimeDesc(anyString(), any(Pageable.class));
+    }
+
     @Test
     @DisplayName("获取热门事件类型 - 从Redis缓存读取")
     void getTopEventTypes_FromRedisCache_ShouldReturnCachedResults() {
@@ -230,7 +255,7 @@ class UserBehaviorQueryServiceTest {
                 ZSetOperations.TypedTuple.of("user456", 30.0)
         );
         
-        when(zSetOperations.reverseRangeWithScores(eq("stats:user_event_count"), eq(0L), eq(9L)))
+        when(zSetOperations.reverseRangeWithScores(eq("stats:user_heavy_hitters"), eq(0L), eq(9L)))
                 .thenReturn(cachedResults);
 
         // When
@@ -241,7 +266,7 @@ class UserBehaviorQueryServiceTest {
         assertEquals(2, result.size());
         
         // 验证从Redis读取
-        verify(zSetOperations, times(1)).reverseRangeWithScores(eq("stats:user_event_count"), eq(0L), eq(9L));
+        verify(zSetOperations, times(1)).reverseRangeWithScores(eq("stats:user_heavy_hitters"), eq(0L), eq(9L));
     }
 
     @Test
@@ -297,4 +322,56 @@ class UserBehaviorQueryServiceTest {
         // 验证空结果不会更新缓存 (检查不会调用delete说明没有尝试缓存)
         verify(redisTemplate, never()).delete(eq(cacheKey));
     }
-} 
\ No newline at end of file
+
+    @Test
+    @DisplayName("获取用户概要 - 物化概要命中时不查询数据库")
+    void getUserSummary_MaterializedHit_ShouldNotQueryDatabase() {
+        // Given
+        Map<String, Object> materialized = Map.of("userId", "user123", "totalEvents", 42L);
+        when(summaryReader.getSummary(eq("user123"))).thenReturn(materialized);
+
+        // When
+        Map<String, Object> result = queryService.getUserSummary("user123");
+
+        // Then
+        assertEquals(materialized, result);
+        verify(repository, never()).countEventTypesByUserId(anyString());
+        verify(redisTemplate, never()).opsForValue();
+    }
+
+    @Test
+    @DisplayName("获取用户概要 - 没有物化概要时回退到SQL")
+    void getUserSummary_NoMaterializedSummary_ShouldFallbackToDatabase() {
+        // Given
+        when(summaryReader.getSummary(eq("user123"))).thenReturn(null);
+        when(valueOperations.get(eq("query:user:user123:summary"))).thenReturn(null);
+        when(repository.countEventTypesByUserId(eq("user123")))
+                .thenReturn(List.<Object[]>of(new Object[] {"PAGE_VIEW", new BigDecimal(3)}));
+        when(repository.countUserEventsByTimeRange(eq("user123"), any(), any(), any(), any())).thenReturn(2L);
+
+        // When
+        Map<String, Object> result = queryService.getUserSummary("user123");
+
+        // Then
+        assertEquals(3L, result.get("totalEvents"));
+        assertEquals(2L, result.get("recentEvents30Days"));
+        verify(valueOperations, times(1)).set(eq("query:user:user123:summary"), any(), eq(3600L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("时间范围拆分为汇总表整小时和原始表两端")
+    void fullHours_ShouldSplitRangeIntoWholeHoursAndPartialEdges() {
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 10, 15);
+        LocalDateTime end = LocalDateTime.of(2024, 5, 1, 13, 40);
+        assertArrayEquals(new LocalDateTime[] {LocalDateTime.of(2024, 5, 1, 11, 0), LocalDateTime.of(2024, 5, 1, 13, 0)},
+                UserBehaviorQueryService.fullHours(start, end));
+
+        LocalDateTime hour = LocalDateTime.of(2024, 5, 1, 10, 0);
+        assertArrayEquals(new LocalDateTime[] {hour, hour.plusHours(1)},
+                UserBehaviorQueryService.fullHours(hour, hour.plusHours(1)));
+
+        // 不足一个完整小时时整个范围读取原始事件表
+        LocalDateTime shortEnd = LocalDateTime.of(2024, 5, 1, 11, 20);
+        assertArrayEquals(new LocalDateTime[] {shortEnd, shortEnd}, UserBehaviorQueryService.fullHours(start, shortEnd));
+    }
+}
@@ -0,0 +1,93 @@
+package com.microservice.user_behaviour.query.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("窗口活跃用户排行榜测试")
+class WindowedLeaderboardServiceTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, Object> zSetOperations;
+
+    private WindowedLeaderboardService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new WindowedLeaderboardService(redisTemplate, 300);
+        lenient().when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+    }
+
+    @Test
+    @DisplayName("结果key不存在时合并最近24个小时桶")
+    @SuppressWarnings("unchecked")
+    void getTopUsers_NoCachedResult_ShouldUnionLast24Buckets() {
+        when(redisTemplate.hasKey(anyString())).thenReturn(false);
+        when(zSetOperations.reverseRangeWithScores(anyString(), eq(0L), eq(19L))).thenReturn(Set.of());
+
+        service.getTopUsers("24h", 20);
+
+        ArgumentCaptor<Collection<String>> others = ArgumentCaptor.forClass(Collection.class);
+        verify(zSetOperations).unionAndStore(anyString(), others.capture(), anyString());
+        assertEquals(23, others.getValue().size());
+        verify(redisTemplate).expire(anyString(), any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("结果key存在时直接读取，不再合并")
+    void getTopUsers_CachedResult_ShouldNotUnion() {
+        when(redisTemplate.hasKey(anyString())).thenReturn(true);
+        when(zSetOperations.reverseRangeWithScores(anyString(), eq(0L), eq(9L))).thenReturn(Set.of());
+
+        service.getTopUsers("7d", 10);
+
+        verify(zSetOperations, never()).unionAndStore(anyString(), anyCollection(), anyString());
+    }
+
+    @Test
+    @DisplayName("小时桶按时间倒序覆盖整个窗口")
+    void bucketKeys_ShouldCoverWindowEndingAtCurrentHour() {
+        List<String> keys = WindowedLeaderboardService.bucketKeys(LocalDateTime.of(2024, 1, 15, 1, 0), 3);
+
+        assertEquals(List.of(
+                "stats:users:hourly:2024-01-15-01",
+                "stats:users:hourly:2024-01-15-00",
+                "stats:users:hourly:2024-01-14-23"), keys);
+    }
+
+    @Test
+    @DisplayName("窗口解析：支持小时和天，最长7天")
+    void parseWindowHours_ShouldAcceptHoursAndDays() {
+        assertEquals(1, WindowedLeaderboardService.parseWindowHours("1h"));
+        assertEquals(168, WindowedLeaderboardService.parseWindowHours("7d"));
+        assertThrows(IllegalArgumentException.class, () -> WindowedLeaderboardService.parseWindowHours("8d"));
+        assertThrows(IllegalArgumentException.class, () -> WindowedLeaderboardService.parseWindowHours("abc"));
+    }
+}
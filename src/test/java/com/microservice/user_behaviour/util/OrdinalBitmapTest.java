@@ -0,0 +1,91 @@
+package com.microservice.user_behaviour.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("压缩位图测试")
+class OrdinalBitmapTest {
+
+    private static OrdinalBitmap bitmap(BitSet bits) {
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        bits.stream().forEach(bitmap::add);
+        return bitmap;
+    }
+
+    /**
+     * 在 [0, range) 内随机取 count 个编号
+     */
+    private static BitSet random(Random random, int range, int count) {
+        BitSet bits = new BitSet(range);
+        for (int i = 0; i < count; i++) {
+            bits.set(random.nextInt(range));
+        }
+        return bits;
+    }
+
+    @Test
+    @DisplayName("添加与查询，稀疏块用数组、稠密块用位图")
+    void add_ShouldTrackMembershipAndChooseContainer() {
+        OrdinalBitmap bitmap = new OrdinalBitmap();
+        assertTrue(bitmap.add(5));
+        assertFalse(bitmap.add(5));
+        assertTrue(bitmap.add(70_000));
+        assertTrue(bitmap.contains(70_000));
+        assertFalse(bitmap.contains(6));
+        assertEquals(2, bitmap.cardinality());
+        assertEquals(4 + 2 * (6 + 2), bitmap.sizeInBytes());
+
+        OrdinalBitmap dense = new OrdinalBitmap();
+        for (int i = 0; i < 10_000; i++) {
+            dense.add(i * 2);
+        }
+        assertEquals(10_000, dense.cardinality());
+        assertEquals(4 + 6 + 8192, dense.sizeInBytes());
+    }
+
+    @Test
+    @DisplayName("AND/OR 与 BitSet 结果一致")
+    void andOr_ShouldMatchBitSet() {
+        Random random = new Random(42);
+        // 混合稀疏与稠密的块
+        BitSet a = random(random, 1_000_000, 200_000);
+        BitSet b = random(random, 1_000_000, 3_000);
+        b.or(random(random, 200_000, 150_000));
+        OrdinalBitmap x = bitmap(a);
+        OrdinalBitmap y = bitmap(b);
+
+        BitSet and = (BitSet) a.clone();
+        and.and(b);
+        BitSet or = (BitSet) a.clone();
+        or.or(b);
+
+        assertEquals(and.cardinality(), x.and(y).cardinality());
+        assertEquals(and.cardinality(), x.andCardinality(y));
+        assertEquals(or.cardinality(), x.or(y).cardinality());
+        OrdinalBitmap union = x.or(y);
+        or.stream().limit(1000).forEach(i -> assertTrue(union.contains(i)));
+    }
+
+    @Test
+    @DisplayName("序列化往返")
+    void serialize_RoundTrip_ShouldPreserveContents() {
+        Random random = new Random(7);
+        BitSet bits = random(random, 500_000, 50_000);
+        OrdinalBitmap original = bitmap(bits);
+
+        byte[] bytes = original.serialize();
+        OrdinalBitmap copy = OrdinalBitmap.deserialize(bytes);
+
+        assertEquals(original.sizeInBytes(), bytes.length);
+        assertEquals(bits.cardinality(), copy.cardinality());
+        assertEquals(bits.cardinality(), copy.andCardinality(original));
+        assertTrue(OrdinalBitmap.deserialize(null).isEmpty());
+    }
+}
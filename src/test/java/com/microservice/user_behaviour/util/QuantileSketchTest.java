@@ -0,0 +1,68 @@
+package com.microservice.user_behaviour.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("分位数草图测试")
+class QuantileSketchTest {
+
+    private static final double ACCURACY = 0.01;
+
+    @Test
+    @DisplayName("分位数的相对误差不超过配置的精度")
+    void quantile_ShouldBeWithinRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        Random random = new Random(7);
+        double[] values = new double[20_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 2 + 4); // 长尾分布
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[] {0.5, 0.95, 0.99}) {
+            double expected = values[(int) Math.floor(q * (values.length - 1))];
+            double actual = sketch.quantile(q);
+            assertTrue(Math.abs(actual - expected) <= ACCURACY * expected,
+                    "q=" + q + " expected=" + expected + " actual=" + actual);
+        }
+    }
+
+    @Test
+    @DisplayName("按Hash字段合并的结果与直接合并一致")
+    void addToBucket_FromFields_ShouldEqualMerge() {
+        QuantileSketch first = new QuantileSketch(ACCURACY);
+        QuantileSketch second = new QuantileSketch(ACCURACY);
+        for (int i = 1; i <= 500; i++) {
+            first.add(i);
+            second.add(-i);
+            second.add(0);
+        }
+
+        QuantileSketch merged = new QuantileSketch(ACCURACY);
+        merged.merge(first);
+        merged.merge(second);
+
+        QuantileSketch fromFields = new QuantileSketch(ACCURACY);
+        first.toFields().forEach(fromFields::addToBucket);
+        second.toFields().forEach(fromFields::addToBucket);
+
+        assertEquals(1500, fromFields.count());
+        assertEquals(merged.toFields(), fromFields.toFields());
+        assertEquals(0.0, fromFields.quantile(0.5), 0.0);
+        assertTrue(fromFields.quantile(0.0) < -490);
+        assertTrue(fromFields.quantile(1.0) > 490);
+    }
+
+    @Test
+    @DisplayName("空草图返回NaN")
+    void quantile_Empty_ShouldReturnNaN() {
+        assertTrue(Double.isNaN(new QuantileSketch(ACCURACY).quantile(0.5)));
+    }
+}
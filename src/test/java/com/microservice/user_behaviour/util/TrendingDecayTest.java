@@ -0,0 +1,48 @@
+package com.microservice.user_behaviour.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("前向衰减评分测试")
+class TrendingDecayTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long WEEK = 7 * 24 * HOUR;
+
+    private final TrendingDecay decay = new TrendingDecay(6 * HOUR, WEEK);
+
+    @Test
+    @DisplayName("每经过一个半衰期，事件的衰减计数减半")
+    void decayToNow_ShouldHalveEveryHalfLife() {
+        long epoch = 2800;
+        long eventTime = decay.epochStart(epoch) + 10 * HOUR;
+        double score = decay.weight(eventTime, epoch);
+
+        assertEquals(1.0, decay.decayToNow(score, epoch, eventTime), 1e-9);
+        assertEquals(0.5, decay.decayToNow(score, epoch, eventTime + 6 * HOUR), 1e-9);
+        assertEquals(0.25, decay.decayToNow(score, epoch, eventTime + 12 * HOUR), 1e-9);
+    }
+
+    @Test
+    @DisplayName("合并到下一纪元后的分数与在原纪元中衰减的结果一致")
+    void carryFactor_ShouldPreserveDecayedCounts() {
+        long epoch = 2800;
+        long eventTime = decay.epochStart(epoch) + WEEK - HOUR;
+        double previousScore = 3 * decay.weight(eventTime, epoch);
+        long now = decay.epochStart(epoch + 1) + 2 * HOUR;
+
+        double carried = previousScore * decay.carryFactor();
+
+        assertEquals(decay.decayToNow(previousScore, epoch, now),
+                decay.decayToNow(carried, epoch + 1, now), 1e-9);
+    }
+
+    @Test
+    @DisplayName("纪元过长会导致指数溢出时拒绝配置")
+    void constructor_EpochTooLong_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new TrendingDecay(HOUR, 1000 * HOUR));
+    }
+}